@@ -18,8 +18,12 @@ public class BlockSpec {
 
   private final Tag tag;
 
+  /** Cached hash of the tag, block specs are hashed on every block palette lookup. */
+  private final int hash;
+
   public BlockSpec(@NotNull Tag tag) {
     this.tag = tag;
+    this.hash = tag.hashCode();
   }
 
   public static BlockSpec deserialize(DataInputStream in) throws IOException {
@@ -36,12 +40,16 @@ public class BlockSpec {
 
   @Override
   public int hashCode() {
-    return tag.hashCode();
+    return hash;
   }
 
   @Override
   public boolean equals(Object obj) {
-    return (obj instanceof BlockSpec) && ((BlockSpec) obj).tag.equals(tag);
+    if (obj == this) {
+      return true;
+    }
+    return (obj instanceof BlockSpec) && ((BlockSpec) obj).hash == hash
+        && ((BlockSpec) obj).tag.equals(tag);
   }
 
   /**
@@ -44,8 +44,10 @@ import java.util.function.Consumer;
  * This class also manages material properties.
  *
  * <p>Before <code>{@link BlockPalette#unsynchronize()}</code> is called, <code>{@link BlockPalette}</code> is thread safe
- * for N writer and N reader threads. It locks on <code>{@link BlockPalette#put(BlockSpec)}</code>, and has concurrent
- * data structures to achieve this.</p>
+ * for N writer and N reader threads. Looking up an existing block in <code>{@link BlockPalette#put(BlockSpec)}</code>
+ * does not lock, only adding a new block does. A block is always added to the palette list before its ID is
+ * published in the block map, so any ID returned by <code>put</code> can immediately be resolved with
+ * <code>{@link BlockPalette#get(int)}</code> by any thread.</p>
  *
  * After <code>{@link BlockPalette#unsynchronize()}</code> is called, it is only safe to be read by multiple threads concurrently.
  */
@@ -54,6 +56,17 @@ public class BlockPalette {
   public final int airId, stoneId, waterId;
   public static final int ANY_ID = Octree.ANY_TYPE;
 
+  /** Block property flags, stored per palette ID in {@link #blockFlags}. */
+  public static final int FLAG_OPAQUE = 1;
+  public static final int FLAG_SOLID = 1 << 1;
+  public static final int FLAG_WATER = 1 << 2;
+  public static final int FLAG_WATER_FILLED = 1 << 3;
+  public static final int FLAG_LAVA = 1 << 4;
+  public static final int FLAG_ENTITY = 1 << 5;
+  public static final int FLAG_BLOCK_ENTITY = 1 << 6;
+  public static final int FLAG_EMITTER = 1 << 7;
+  public static final int FLAG_LOCAL_INTERSECT = 1 << 8;
+
   private final Map<String, Consumer<Block>> materialProperties;
 
   /** Stone blocks are used for filling invisible regions in the Octree. */
@@ -62,12 +75,23 @@ public class BlockPalette {
   private final Map<BlockSpec, Integer> blockMap;
   private List<Block> palette;
 
+  /**
+   * Dense table of block property flags indexed by palette ID. This is used in the
+   * chunk loading loops to avoid dereferencing the block instances for every voxel.
+   * The table is grown (and the new entries filled in) whenever a block is added.
+   */
+  private volatile int[] blockFlags;
+
   private ReentrantLock lock = new ReentrantLock();
 
   public BlockPalette(Map<BlockSpec, Integer> initialMap, List<Block> initialList) {
     this.blockMap = initialMap;
     this.palette = initialList;
     this.materialProperties = getDefaultMaterialProperties();
+    this.blockFlags = new int[Math.max(64, initialList.size() * 2)];
+    for (int i = 0; i < initialList.size(); ++i) {
+      blockFlags[i] = computeFlags(initialList.get(i));
+    }
     CompoundTag airTag = new CompoundTag();
     airTag.add("Name", new StringTag("minecraft:air"));
     CompoundTag stoneTag = new CompoundTag();
@@ -110,21 +134,30 @@ public class BlockPalette {
   }
 
   /**
-   * locks to avoid race conditions between writer threads
+   * Adds a new block to the palette and returns the palette index.
+   *
+   * <p>Existing blocks are looked up without locking. Only when the block is not yet in the
+   * palette a lock is taken to avoid race conditions between writer threads.
    */
   public int put(BlockSpec spec) {
+    Integer id = blockMap.get(spec);
+    if (id != null) {
+      return id;
+    }
     final ReentrantLock lock = this.lock;
     lock.lock();
     try {
-      Integer id = blockMap.get(spec);
+      id = blockMap.get(spec);
       if (id != null) {
         return id;
       }
       id = palette.size();
-      blockMap.put(spec, id);
       Block block = spec.toBlock();
       applyMaterial(block);
+      setFlags(id, block);
       palette.add(block);
+      // Publish the ID last so that concurrent readers never see an ID without a block.
+      blockMap.put(spec, id);
       return id;
     } finally {
       lock.unlock();
@@ -137,6 +170,107 @@ public class BlockPalette {
     return palette.get(id);
   }
 
+  /**
+   * Get the property flags of a block in this palette.
+   *
+   * @param id ID of a block in this palette, or {@link #ANY_ID}
+   * @return the flags of the block, a combination of the <code>FLAG_*</code> constants
+   */
+  public int getFlags(int id) {
+    if (id == ANY_ID) {
+      id = stoneId;
+    }
+    return blockFlags[id];
+  }
+
+  /** @return <code>true</code> if the block with the given ID is opaque */
+  public boolean isOpaque(int id) {
+    return (getFlags(id) & FLAG_OPAQUE) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID is solid */
+  public boolean isSolid(int id) {
+    return (getFlags(id) & FLAG_SOLID) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID is a water block */
+  public boolean isWater(int id) {
+    return (getFlags(id) & FLAG_WATER) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID is water or waterlogged */
+  public boolean isWaterFilled(int id) {
+    return (getFlags(id) & FLAG_WATER_FILLED) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID is a lava block */
+  public boolean isLava(int id) {
+    return (getFlags(id) & FLAG_LAVA) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID is converted to an entity */
+  public boolean isEntity(int id) {
+    return (getFlags(id) & FLAG_ENTITY) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID has a block entity */
+  public boolean isBlockEntity(int id) {
+    return (getFlags(id) & FLAG_BLOCK_ENTITY) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID emits light */
+  public boolean isEmitter(int id) {
+    return (getFlags(id) & FLAG_EMITTER) != 0;
+  }
+
+  /** @return <code>true</code> if the block with the given ID uses local intersection */
+  public boolean isLocalIntersect(int id) {
+    return (getFlags(id) & FLAG_LOCAL_INTERSECT) != 0;
+  }
+
+  /**
+   * Recompute the property flags of all blocks in this palette. This needs to be called
+   * when block properties are changed outside of the palette.
+   */
+  public void updateFlags() {
+    final ReentrantLock lock = this.lock;
+    lock.lock();
+    try {
+      for (int i = 0; i < palette.size(); ++i) {
+        setFlags(i, palette.get(i));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Store the flags of a block, growing the flag table if needed.
+   * Must be called while holding the lock.
+   */
+  private void setFlags(int id, Block block) {
+    int[] flags = blockFlags;
+    if (id >= flags.length) {
+      flags = Arrays.copyOf(flags, Math.max(id + 1, flags.length * 2));
+    }
+    flags[id] = computeFlags(block);
+    blockFlags = flags;
+  }
+
+  private static int computeFlags(Block block) {
+    int flags = 0;
+    if (block.opaque) flags |= FLAG_OPAQUE;
+    if (block.solid) flags |= FLAG_SOLID;
+    if (block.isWater()) flags |= FLAG_WATER;
+    if (block.isWaterFilled()) flags |= FLAG_WATER_FILLED;
+    if (block instanceof Lava) flags |= FLAG_LAVA;
+    if (block.isEntity()) flags |= FLAG_ENTITY;
+    if (block.isBlockEntity()) flags |= FLAG_BLOCK_ENTITY;
+    if (block.emittance > 1e-4) flags |= FLAG_EMITTER;
+    if (block.localIntersect) flags |= FLAG_LOCAL_INTERSECT;
+    return flags;
+  }
+
   /**
    * Get the block specification by its ID in this palette.
    * @param id ID of a block in this palette
@@ -208,6 +342,7 @@ public class BlockPalette {
             applyMaterial(block);
           }
         });
+    updateFlags();
   }
 
   /**
@@ -229,6 +364,7 @@ public class BlockPalette {
    */
   public void applyMaterials() {
     palette.forEach(this::applyMaterial);
+    updateFlags();
   }
 
   /** @return Default material properties. */
@@ -602,7 +738,7 @@ public class BlockPalette {
       throw new IOException("Incompatible block palette format.");
     }
     int numBlocks = in.readInt();
-    Map<BlockSpec, Integer> blockMap = new HashMap<>(numBlocks);
+    Map<BlockSpec, Integer> blockMap = new ConcurrentHashMap<>(numBlocks);
     List<Block> blocks = new ArrayList<>(numBlocks);
     for (int i = 0; i < numBlocks; ++i) {
       BlockSpec spec = BlockSpec.deserialize(in);
@@ -2,9 +2,12 @@ package se.llbit.chunky.chunk;
 
 import se.llbit.chunky.chunk.biome.BiomeData;
 import se.llbit.nbt.CompoundTag;
+import se.llbit.util.BitBuffer;
 
 import java.util.Collection;
 
+import static se.llbit.chunky.world.Chunk.*;
+
 /**
  * Interface designed to allow for any chunk data structure behind it
  *
@@ -42,6 +45,49 @@ public interface ChunkData {
    */
   void setBlockAt(int x, int y, int z, int block);
 
+  /**
+   * Set all blocks of a 16x16x16 section from a section palette and packed palette indices,
+   * as stored in the Minecraft save format. Palette indices are stored in YZX order.
+   * Indices outside of the section palette are ignored.
+   *
+   * Implementations may keep a reference to the data array instead of decoding it.
+   *
+   * @param sectionY Y position of the section (block Y divided by 16)
+   * @param palette block palette IDs for each section palette index
+   * @param data packed palette indices, or <code>null</code> if the whole section is <code>palette[0]</code>
+   * @param bitsPerBlock number of bits per palette index
+   * @param aligned whether palette indices are aligned to 64-bit boundaries (since 20w17a)
+   */
+  default void setSection(int sectionY, int[] palette, long[] data, int bitsPerBlock, boolean aligned) {
+    int sectionMinBlockY = sectionY << 4;
+    if (data == null) {
+      int block = palette[0];
+      for (int y = 0; y < SECTION_Y_MAX; y++) {
+        int blockY = sectionMinBlockY + y;
+        for (int z = 0; z < Z_MAX; z++) {
+          for (int x = 0; x < X_MAX; x++) {
+            setBlockAt(x, blockY, z, block);
+          }
+        }
+      }
+      return;
+    }
+    int[] indices = new int[SECTION_BYTES];
+    BitBuffer.unpack(data, bitsPerBlock, aligned, indices, 0, SECTION_BYTES);
+    int i = 0;
+    for (int y = 0; y < SECTION_Y_MAX; y++) {
+      int blockY = sectionMinBlockY + y;
+      for (int z = 0; z < Z_MAX; z++) {
+        for (int x = 0; x < X_MAX; x++) {
+          int b0 = indices[i++];
+          if (b0 < palette.length) {
+            setBlockAt(x, blockY, z, palette[b0]);
+          }
+        }
+      }
+    }
+  }
+
   /**
    * @param x X position of the requested block
    * @param y Y position of the requested block
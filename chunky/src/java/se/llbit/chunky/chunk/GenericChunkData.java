@@ -4,6 +4,7 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import se.llbit.chunky.chunk.biome.BiomeData;
 import se.llbit.chunky.chunk.biome.UnknownBiomeData;
 import se.llbit.nbt.CompoundTag;
+import se.llbit.util.BitBuffer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,6 +54,36 @@ public class GenericChunkData implements ChunkData {
     sectionData.blocks[chunkIndex(x & (X_MAX - 1), y & (SECTION_Y_MAX - 1), z & (Z_MAX - 1))] = block;
   }
 
+  @Override public void setSection(int sectionY, int[] palette, long[] data, int bitsPerBlock, boolean aligned) {
+    if (data == null) {
+      ChunkData.super.setSection(sectionY, palette, data, bitsPerBlock, aligned);
+      return;
+    }
+    if(minSectionY > sectionY)
+      minSectionY = sectionY;
+    if(maxSectionY < sectionY)
+      maxSectionY = sectionY;
+
+    SectionData sectionData = sections.get(sectionY);
+    boolean isNew = sectionData == null;
+    if (isNew) {
+      sectionData = new SectionData(sectionY);
+    }
+    // Decode the palette indices straight into the section and then map them to block IDs in place.
+    int[] blocks = sectionData.blocks;
+    BitBuffer.unpack(data, bitsPerBlock, aligned, blocks, 0, blocks.length);
+    int nonEmpty = 0;
+    for (int i = 0; i < blocks.length; ++i) {
+      int b0 = blocks[i];
+      int block = b0 < palette.length ? palette[b0] : 0;
+      blocks[i] = block;
+      nonEmpty |= block;
+    }
+    if (isNew && nonEmpty != 0) {
+      sections.put(sectionY, sectionData);
+    }
+  }
+
   @Override public boolean isBlockOnEdge(int x, int y, int z) {
     return y <= minSectionY << 4 || y >= ((maxSectionY << 4) | 0xF)
       || x <= 0 || x >= 15
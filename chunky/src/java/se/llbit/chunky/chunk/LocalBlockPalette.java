@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.chunk;
+
+import se.llbit.nbt.ListTag;
+import se.llbit.nbt.Tag;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A palette that is local to a single chunk-loading thread and maps block tags to IDs in a
+ * shared <code>{@link BlockPalette}</code>.
+ *
+ * <p>Tags are cached by identity, so repeated lookups of the same tag instance (like the shared
+ * legacy block tags, or the section palettes of a chunk) never have to hash or compare NBT data.
+ * Tags that were not seen before are interned in the global palette, which does not lock for
+ * blocks that already exist. This class is not thread safe, create one per thread and chunk.
+ */
+public class LocalBlockPalette {
+  private final BlockPalette palette;
+  private final Map<Tag, Integer> ids = new IdentityHashMap<>();
+
+  public LocalBlockPalette(BlockPalette palette) {
+    this.palette = palette;
+  }
+
+  /** @return the shared palette backing this local palette */
+  public BlockPalette getPalette() {
+    return palette;
+  }
+
+  /**
+   * Get the global palette ID of a block tag, adding the block to the global palette if needed.
+   */
+  public int put(Tag tag) {
+    Integer id = ids.get(tag);
+    if (id == null) {
+      id = palette.put(tag);
+      ids.put(tag, id);
+    }
+    return id;
+  }
+
+  /**
+   * Map a section palette to global palette IDs.
+   *
+   * @param sectionPalette the palette tag of a chunk section
+   * @return global palette IDs, indexed by the section palette index
+   */
+  public int[] put(ListTag sectionPalette) {
+    int[] subpalette = new int[sectionPalette.size()];
+    for (int i = 0; i < subpalette.length; ++i) {
+      subpalette[i] = put(sectionPalette.get(i));
+    }
+    return subpalette;
+  }
+
+  /** Forget all cached tags. */
+  public void clear() {
+    ids.clear();
+  }
+}
@@ -0,0 +1,224 @@
+package se.llbit.chunky.chunk;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import se.llbit.chunky.chunk.biome.BiomeData;
+import se.llbit.chunky.chunk.biome.UnknownBiomeData;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.util.BitBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+import static se.llbit.chunky.world.Chunk.*;
+
+/**
+ * A palette-compressed implementation of Chunk Data
+ * Supports blocks at any Y range
+ *
+ * Sections are stored the same way as in the Minecraft save format: a section palette of
+ * block palette IDs plus the packed palette indices, or only a single palette entry
+ * for sections consisting of one block type. {@link #getBlockAt(int, int, int)} reads
+ * blocks directly from the packed data, so sections are never expanded only to be read.
+ * A section is expanded to one block palette ID per block, and its packed data dropped,
+ * the first time a block in it is changed with {@link #setBlockAt(int, int, int, int)}.
+ */
+public class PalettedChunkData implements ChunkData {
+  private int minSectionY = Integer.MAX_VALUE;
+  private int maxSectionY = Integer.MIN_VALUE;
+
+  private final Int2ObjectOpenHashMap<SectionData> sections = new Int2ObjectOpenHashMap<>();
+  private BiomeData biomeData = UnknownBiomeData.INSTANCE;
+  private final Collection<CompoundTag> tileEntities = new ArrayList<>();
+  private final Collection<CompoundTag> entities = new ArrayList<>();
+
+  @Override public int minY() {
+    return minSectionY << 4;
+  }
+
+  @Override public int maxY() {
+    return ((maxSectionY+1) << 4);
+  }
+
+  @Override public int getBlockAt(int x, int y, int z) {
+    SectionData sectionData = sections.get(y >> 4);
+    if (sectionData == null)
+      return 0;
+    return sectionData.get(chunkIndex(x & (X_MAX - 1), y & (SECTION_Y_MAX - 1), z & (Z_MAX - 1)));
+  }
+
+  @Override public void setBlockAt(int x, int y, int z, int block) {
+    int sectionY = y >> 4;
+    updateSectionRange(sectionY);
+
+    SectionData sectionData = sections.get(sectionY);
+    if (sectionData == null) {
+      if (block == 0)
+        return;
+      sectionData = new SectionData(new int[] { 0 }, null, 0, false);
+      sections.put(sectionY, sectionData);
+    }
+    sectionData.set(chunkIndex(x & (X_MAX - 1), y & (SECTION_Y_MAX - 1), z & (Z_MAX - 1)), block);
+  }
+
+  /**
+   * Set a whole section without decoding it. The packed data array is not copied and must not be
+   * modified afterwards.
+   */
+  @Override public void setSection(int sectionY, int[] palette, long[] data, int bitsPerBlock, boolean aligned) {
+    updateSectionRange(sectionY);
+    if (data == null && palette[0] == 0) {
+      sections.remove(sectionY);
+      return;
+    }
+    sections.put(sectionY, new SectionData(palette, data, bitsPerBlock, aligned));
+  }
+
+  private void updateSectionRange(int sectionY) {
+    if(minSectionY > sectionY)
+      minSectionY = sectionY;
+    if(maxSectionY < sectionY)
+      maxSectionY = sectionY;
+  }
+
+  @Override public boolean isBlockOnEdge(int x, int y, int z) {
+    return y <= minSectionY << 4 || y >= ((maxSectionY << 4) | 0xF)
+      || x <= 0 || x >= 15
+      || z <= 0 || z >= 15;
+  }
+
+  @Override public Collection<CompoundTag> getTileEntities() {
+    return tileEntities;
+  }
+
+  @Override
+  public void addTileEntity(CompoundTag tileEntity) {
+    tileEntities.add(tileEntity);
+  }
+
+  @Override public Collection<CompoundTag> getEntities() {
+    return entities;
+  }
+
+  @Override
+  public void addEntity(CompoundTag entity) {
+    entities.add(entity);
+  }
+
+  @Override public void clear() {
+    minSectionY = Integer.MAX_VALUE;
+    maxSectionY = Integer.MIN_VALUE;
+    sections.clear();
+    biomeData.clear();
+    tileEntities.clear();
+    entities.clear();
+  }
+
+  @Override
+  public BiomeData getBiomeData() {
+    return biomeData;
+  }
+
+  @Override
+  public void setBiomeData(BiomeData biomeData) {
+    this.biomeData = biomeData;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return sections.isEmpty() && entities.isEmpty() && tileEntities.isEmpty();
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    PalettedChunkData that = (PalettedChunkData) o;
+    return minSectionY == that.minSectionY && maxSectionY == that.maxSectionY && Objects.equals(sections, that.sections) && Objects.equals(biomeData, that.biomeData) && Objects.equals(tileEntities, that.tileEntities) && Objects.equals(entities, that.entities);
+  }
+
+  @Override public int hashCode() {
+    int result = Objects.hash(minSectionY, maxSectionY, sections, tileEntities, entities);
+    result = 31 * result + biomeData.hashCode();
+    return result;
+  }
+
+  private static class SectionData {
+    /** Block palette IDs of this section. */
+    private final int[] palette;
+    /**
+     * Packed palette indices, or null if the whole section is <code>palette[0]</code> or
+     * the section has been expanded.
+     */
+    private long[] data;
+    private final int bitsPerBlock;
+    private final boolean aligned;
+    /**
+     * Block palette IDs of all blocks, null until a block in the section is changed.
+     * Reading a section is thread safe, changing it while it is read is not.
+     */
+    private int[] blocks = null;
+
+    public SectionData(int[] palette, long[] data, int bitsPerBlock, boolean aligned) {
+      this.palette = palette;
+      this.data = data;
+      this.bitsPerBlock = bitsPerBlock;
+      this.aligned = aligned;
+    }
+
+    public int get(int index) {
+      if (blocks != null) {
+        return blocks[index];
+      }
+      if (data == null) {
+        return palette[0];
+      }
+      int b0 = BitBuffer.get(data, bitsPerBlock, aligned, index);
+      // Out of range indices are treated as air, same as when decoding sections into other chunk data.
+      return b0 < palette.length ? palette[b0] : 0;
+    }
+
+    public void set(int index, int block) {
+      if (blocks == null) {
+        if (data == null && palette[0] == block) {
+          return;
+        }
+        blocks = decode();
+        data = null;
+      }
+      blocks[index] = block;
+    }
+
+    /** @return the blocks of the section, decoding them if the section has not been expanded */
+    private int[] blocks() {
+      return blocks != null ? blocks : decode();
+    }
+
+    /** Decode the whole section in one pass. */
+    private int[] decode() {
+      int[] decoded = new int[SECTION_BYTES];
+      if (data == null) {
+        Arrays.fill(decoded, palette[0]);
+        return decoded;
+      }
+      BitBuffer.unpack(data, bitsPerBlock, aligned, decoded, 0, SECTION_BYTES);
+      for (int i = 0; i < decoded.length; ++i) {
+        int b0 = decoded[i];
+        // Out of range indices are treated as air, same as when decoding sections into other chunk data.
+        decoded[i] = b0 < palette.length ? palette[b0] : 0;
+      }
+      return decoded;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      SectionData that = (SectionData) o;
+      return Arrays.equals(blocks(), that.blocks());
+    }
+
+    @Override public int hashCode() {
+      return Arrays.hashCode(blocks());
+    }
+  }
+}
@@ -3,6 +3,7 @@ package se.llbit.chunky.chunk;
 import se.llbit.chunky.chunk.biome.BiomeData;
 import se.llbit.chunky.chunk.biome.UnknownBiomeData;
 import se.llbit.nbt.CompoundTag;
+import se.llbit.util.BitBuffer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -51,6 +52,22 @@ public class SimpleChunkData implements ChunkData {
     blocks[chunkIndex(x & (X_MAX - 1), y, z & (Z_MAX - 1))] = block;
   }
 
+  @Override public void setSection(int sectionY, int[] palette, long[] data, int bitsPerBlock, boolean aligned) {
+    if (data == null || sectionY < 0 || sectionY > 15) {
+      ChunkData.super.setSection(sectionY, palette, data, bitsPerBlock, aligned);
+      return;
+    }
+    isEmpty = false;
+    // Sections are contiguous in the block array, decode the palette indices straight into it
+    // and then map them to block IDs in place.
+    int offset = sectionY * SECTION_BYTES;
+    BitBuffer.unpack(data, bitsPerBlock, aligned, blocks, offset, SECTION_BYTES);
+    for (int i = offset; i < offset + SECTION_BYTES; ++i) {
+      int b0 = blocks[i];
+      blocks[i] = b0 < palette.length ? palette[b0] : 0;
+    }
+  }
+
   @Override public boolean isBlockOnEdge(int x, int y, int z) {
     return x <= 0 || x >= 15 || z <= 0 || z >= 15 || y <= 0 || y >= 255;
   }
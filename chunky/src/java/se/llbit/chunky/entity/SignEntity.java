@@ -27,6 +27,7 @@ import se.llbit.json.JsonParser;
 import se.llbit.json.JsonParser.SyntaxError;
 import se.llbit.json.JsonValue;
 import se.llbit.math.*;
+import se.llbit.math.primitive.InstancedModel;
 import se.llbit.math.primitive.Primitive;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.Tag;
@@ -178,8 +179,6 @@ public class SignEntity extends Entity {
   private final JsonArray[] frontText;
   private final JsonArray[] backText;
   private final int angle;
-  private final SignTexture frontTexture;
-  private final SignTexture backTexture;
   private final Texture texture;
   private final String material;
 
@@ -189,13 +188,10 @@ public class SignEntity extends Entity {
 
   public SignEntity(Vector3 position, JsonArray[] frontText, JsonArray[] backText, int direction, String material) {
     super(position);
-    Texture signTexture = SignEntity.textureFromMaterial(material);
     this.frontText = frontText;
     this.backText = backText;
     this.angle = direction;
-    this.frontTexture = frontText != null ? new SignTexture(frontText, signTexture, 24, 12, 2 / 64., 18 / 32., 26 / 64., 30 / 32., 4, 1, 10) : null;
-    this.backTexture = backText != null ? new SignTexture(backText, signTexture, 24, 12, 28 / 64., 18 / 32., 52 / 64., 30 / 32., 4, 1, 10) : null;
-    this.texture = signTexture;
+    this.texture = SignEntity.textureFromMaterial(material);
     this.material = material;
   }
 
@@ -337,18 +333,30 @@ public class SignEntity extends Entity {
     Collection<Primitive> primitives = new LinkedList<>();
     Transform transform = Transform.NONE
       .translate(position.x + offset.x, position.y + offset.y, position.z + offset.z);
-    for (int i = 0; i < sides.length; ++i) {
-      Quad quad = rot[angle][i];
-      Texture tex = texture;
-      if (i == 0 && frontTexture != null) {
-        tex = frontTexture;
-        quad = frontFaceWithText[angle];
-      } else if (i == 1 && backTexture != null) {
-        tex = backTexture;
-        quad = backFaceWithText[angle];
+    // Signs with the same material, direction and text share their geometry and text textures.
+    // The text textures are only rendered when the model is created.
+    String key = "sign:" + material + ":" + angle
+      + ":" + (frontText != null ? textToJson(frontText).toCompactString() : "")
+      + ":" + (backText != null ? textToJson(backText).toCompactString() : "");
+    InstancedModel model = InstancedModel.get(key, () -> {
+      SignTexture frontTexture = frontText != null ? new SignTexture(frontText, texture, 24, 12, 2 / 64., 18 / 32., 26 / 64., 30 / 32., 4, 1, 10) : null;
+      SignTexture backTexture = backText != null ? new SignTexture(backText, texture, 24, 12, 28 / 64., 18 / 32., 52 / 64., 30 / 32., 4, 1, 10) : null;
+      Collection<Primitive> faces = new LinkedList<>();
+      for (int i = 0; i < sides.length; ++i) {
+        Quad quad = rot[angle][i];
+        Texture tex = texture;
+        if (i == 0 && frontTexture != null) {
+          tex = frontTexture;
+          quad = frontFaceWithText[angle];
+        } else if (i == 1 && backTexture != null) {
+          tex = backTexture;
+          quad = backFaceWithText[angle];
+        }
+        quad.addTriangles(faces, new TextureMaterial(tex), Transform.NONE);
       }
-      quad.addTriangles(primitives, new TextureMaterial(tex), transform);
-    }
+      return faces;
+    });
+    primitives.add(model.instance(transform));
     return primitives;
   }
 
@@ -29,6 +29,7 @@ import se.llbit.math.Transform;
 import se.llbit.math.Vector3;
 import se.llbit.math.Vector4;
 import se.llbit.math.primitive.Box;
+import se.llbit.math.primitive.InstancedModel;
 import se.llbit.math.primitive.Primitive;
 
 import java.util.Collection;
@@ -316,10 +317,37 @@ public class SkullEntity extends Entity {
         break;
     }
 
-    return primitives(transform);
+    Collection<Primitive> faces = new LinkedList<>();
+    if (type == Kind.DRAGON) {
+      // The dragon head model is moved up after the placement transform.
+      faces.add(model(type).instance(transform.translate(0, 0.5 - 4 / 16., 0)));
+    } else {
+      faces.add(model(type).instance(transform));
+    }
+    return faces;
+  }
+
+  /**
+   * Get the shared model of a skull type, centered on the origin.
+   */
+  private static InstancedModel model(Kind type) {
+    return InstancedModel.get("skull:" + type, () -> {
+      if (type == Kind.DRAGON) {
+        return dragonHeadFaces(Transform.NONE.translate(-0.5, -0.5, -0.5 - 1.5 / 16.));
+      } else {
+        return headFaces(type, Transform.NONE);
+      }
+    });
   }
 
   public Collection<Primitive> primitives(Transform transform) {
+    if (type == Kind.DRAGON) {
+      return dragonHeadPrimitives(transform);
+    }
+    return headFaces(type, transform);
+  }
+
+  private static Collection<Primitive> headFaces(Kind type, Transform transform) {
     Collection<Primitive> faces = new LinkedList<>();
     EntityTexture texture;
     switch (type) {
@@ -338,8 +366,6 @@ public class SkullEntity extends Entity {
       case CREEPER:
         texture = Texture.creeper;
         break;
-      case DRAGON:
-        return dragonHeadPrimitives(transform);
       default:
         texture = Texture.steve;
     }
@@ -355,9 +381,12 @@ public class SkullEntity extends Entity {
   }
 
   public Collection<Primitive> dragonHeadPrimitives(Transform transform) {
-    transform = Transform.NONE.translate(-0.5, -0.5, -0.5 - 1.5 / 16.)
+    return dragonHeadFaces(Transform.NONE.translate(-0.5, -0.5, -0.5 - 1.5 / 16.)
         .chain(transform)
-        .translate(0, 0.5 - 4/16., 0);
+        .translate(0, 0.5 - 4/16., 0));
+  }
+
+  private static Collection<Primitive> dragonHeadFaces(Transform transform) {
     Collection<Primitive> faces = new LinkedList<>();
     Material material = new TextureMaterial(Texture.dragon);
     for (Quad quad : dragonHead) {
@@ -33,6 +33,7 @@ import se.llbit.math.Quad;
 import se.llbit.math.Transform;
 import se.llbit.math.Vector3;
 import se.llbit.math.Vector4;
+import se.llbit.math.primitive.InstancedModel;
 import se.llbit.math.primitive.Primitive;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.ListTag;
@@ -185,10 +186,17 @@ public class StandingBanner extends Entity {
     Collection<Primitive> faces = new LinkedList<>();
     Transform transform = Transform.NONE
         .translate(position.x + offset.x, position.y + offset.y, position.z + offset.z);
-    Material material = getBannerTexture(design);
-    for (Quad quad : rot[rotation]) {
-      quad.addTriangles(faces, material, transform);
-    }
+    // Banners with the same design and rotation share their geometry.
+    InstancedModel model = InstancedModel.get(
+        "standing_banner:" + rotation + ":" + design.toCompactString(), () -> {
+          Collection<Primitive> modelFaces = new LinkedList<>();
+          Material material = getBannerTexture(design);
+          for (Quad quad : rot[rotation]) {
+            quad.addTriangles(modelFaces, material, Transform.NONE);
+          }
+          return modelFaces;
+        });
+    faces.add(model.instance(transform));
     return faces;
   }
 
@@ -31,6 +31,7 @@ import se.llbit.chunky.plugin.TabTransformer;
 import se.llbit.chunky.renderer.*;
 import se.llbit.chunky.renderer.RenderManager;
 import se.llbit.chunky.renderer.export.PictureExportFormat;
+import se.llbit.chunky.renderer.renderdump.RenderDump;
 import se.llbit.chunky.renderer.scene.AsynchronousSceneManager;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.renderer.scene.SceneFactory;
@@ -178,7 +179,7 @@ public class Chunky {
         }
       }
       if (options.reloadChunks) {
-        sceneManager.reloadChunks();
+        sceneManager.reloadChangedChunks();
       }
       sceneManager.getScene().startHeadlessRender();
 
@@ -199,6 +200,8 @@ public class Chunky {
       return 1;
     } finally {
       renderManager.shutdown();
+      // Render dumps are written in the background, finish them before exiting.
+      RenderDump.awaitPendingSaves();
     }
   }
 
@@ -21,6 +21,10 @@ package se.llbit.chunky.main;
 import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.renderer.ConsoleProgressListener;
 import se.llbit.chunky.renderer.RenderContext;
+import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
+import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
+import se.llbit.chunky.renderer.postprocessing.PostProcessingFilters;
+import se.llbit.chunky.renderer.renderdump.RenderDumpMerger;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.ResourcePackLoader;
 import se.llbit.json.JsonNumber;
@@ -30,9 +34,12 @@ import se.llbit.json.JsonParser.SyntaxError;
 import se.llbit.json.JsonString;
 import se.llbit.json.JsonValue;
 import se.llbit.json.PrettyPrinter;
+import se.llbit.imageformats.png.PngFileWriter;
 import se.llbit.log.Log;
+import se.llbit.math.ColorUtil;
 import se.llbit.util.mojangapi.MojangApi;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.annotation.Nullable;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -47,9 +54,11 @@ import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 public class CommandLineOptions {
@@ -81,6 +90,9 @@ public class CommandLineOptions {
     final boolean requiresTextures;
   }
 
+  /** Maximum number of render dumps that can be merged with -merge-dumps. */
+  private static final int MAX_MERGED_DUMPS = 1000;
+
   /**
    * This is the usage output generated for the --help flag.
    */
@@ -96,7 +108,7 @@ public class CommandLineOptions {
           "  -tile-width <NUM>      use the specified tile width for rendering",
           "  -spp-per-pass <NUM>    use the specified samples per pixel per pass for rendering",
           "  -target <NUM>          override target SPP to be NUM in headless mode",
-          "  -reload-chunks         reload the selected chunks before rendering the scene",
+          "  -reload-chunks         reload changed chunks before rendering the scene",
           "  -f                     render the scene even if loading the scene fails (e.g. ignore missing octree)",
           "  -set <NAME> <VALUE>    set a global configuration option and exit",
           "  -set <NAME> <VALUE> <SCENE>",
@@ -107,6 +119,9 @@ public class CommandLineOptions {
           "  -list-scenes           print a list of all scenes in the scene directory",
           "  -merge-dump <SCENE> <PATH>",
           "                         merge a render dump into the given scene",
+          "  -merge-dumps <SCENE> <PATHS> [PNG]",
+          "                         merge several render dumps into the given scene in one pass,",
+          "                         optionally saving the merged image as PNG",
           "  -help                  show this text", "", "Notes:",
           "<SCENE> can be either the path to a Scene Description File ("
               + Scene.EXTENSION + "),",
@@ -481,6 +496,48 @@ public class CommandLineOptions {
       }
     });
 
+    registerOption("-merge-dumps", new Range(2, MAX_MERGED_DUMPS), arguments -> {
+      mode = Mode.CLI_OPERATION;
+      options.sceneName = arguments.get(0);
+      List<String> paths = new ArrayList<>(arguments.subList(1, arguments.size()));
+      File pngFile = null;
+      if (paths.size() > 1 && paths.get(paths.size() - 1).toLowerCase().endsWith(".png")) {
+        pngFile = new File(paths.remove(paths.size() - 1));
+      }
+      File sceneFile = options.getSceneDescriptionFile();
+      if (!sceneFile.isFile()) {
+        Log.error("Not a valid scene: " + options.sceneName);
+        configurationError = true;
+        exitCode = 1;
+        return;
+      }
+      String sceneName = sceneFile.getName();
+      sceneName = sceneName.substring(0, sceneName.length() - Scene.EXTENSION.length());
+      File sceneDump = new File(sceneFile.getParentFile(), sceneName + ".dump");
+      List<File> dumps = new ArrayList<>();
+      // The scene dump may also be given explicitly, each dump must only be merged once.
+      Set<File> mergedDumps = new HashSet<>();
+      if (sceneDump.isFile()) {
+        dumps.add(sceneDump);
+        mergedDumps.add(canonicalFile(sceneDump));
+      }
+      for (String dumpPath : paths) {
+        File dumpFile = new File(dumpPath);
+        if (!dumpFile.isFile()) {
+          Log.error("Not a valid render dump file: " + dumpPath);
+          configurationError = true;
+          exitCode = 1;
+          return;
+        }
+        if (!mergedDumps.add(canonicalFile(dumpFile))) {
+          Log.warn("Skipping render dump that is already merged: " + dumpPath);
+          continue;
+        }
+        dumps.add(dumpFile);
+      }
+      exitCode = mergeDumps(sceneFile, sceneDump, dumps, pngFile);
+    });
+
     // When mode is set to Mode.CLI_OPERATION, then an option handler has performed
     // something and we should quit.
     // If configurationError is set to true then an option handler encountered an
@@ -580,6 +637,75 @@ public class CommandLineOptions {
     System.out.println();
   }
 
+  /**
+   * Merge render dumps into the render dump of a scene in one streaming pass,
+   * and update the render progress in the scene description.
+   *
+   * @param pngFile if not {@code null}, the merged image is also written to this PNG file
+   * @return the exit code
+   */
+  private static int mergeDumps(File sceneFile, File sceneDump, List<File> dumps,
+      @Nullable File pngFile) {
+    TaskTracker taskTracker = new TaskTracker(new ConsoleProgressListener());
+    try {
+      JsonObject desc = readSceneJson(sceneFile);
+      RenderDumpMerger merger = new RenderDumpMerger(dumps);
+      Log.infof("Merging %d render dumps, total SPP: %d", dumps.size(), merger.getSpp());
+
+      PostProcessingFilter filter = PostProcessingFilters
+          .getPostProcessingFilterFromId(desc.get("postprocess").stringValue(""))
+          .orElse(Scene.DEFAULT_POSTPROCESSING_FILTER);
+      if (pngFile != null && !(filter instanceof PixelPostProcessingFilter)) {
+        Log.warnf("The post processing filter %s can not be applied while merging, the PNG is not written.",
+            filter.getName());
+        pngFile = null;
+      }
+      if (pngFile == null) {
+        merger.mergeInto(sceneDump, null, taskTracker);
+      } else {
+        PixelPostProcessingFilter pixelFilter = (PixelPostProcessingFilter) filter;
+        double exposure = desc.get("exposure").doubleValue(Scene.DEFAULT_EXPOSURE);
+        int width = merger.getWidth();
+        int[] row = new int[width];
+        double[] pixel = new double[3];
+        try (PngFileWriter writer = new PngFileWriter(pngFile);
+            PngFileWriter.ScanlineWriter scanlines = writer.scanlineWriter(width, merger.getHeight())) {
+          merger.mergeInto(sceneDump, (samples, y, rows) -> {
+            for (int r = 0; r < rows; ++r) {
+              for (int x = 0; x < width; ++x) {
+                pixelFilter.processPixel(width, rows, samples, x, r, exposure, pixel);
+                Arrays.setAll(pixel, k -> Math.min(1, pixel[k]));
+                row[x] = ColorUtil.getRGB(pixel);
+              }
+              scanlines.writeRow(row, 0);
+            }
+          }, taskTracker);
+        }
+        Log.info("Saved merged image to " + pngFile);
+      }
+
+      desc.set("spp", new JsonNumber(merger.getSpp()));
+      desc.set("renderTime", new JsonNumber("" + merger.getRenderTime()));
+      writeSceneJson(sceneFile, desc);
+      Log.info("Current scene SPP: " + merger.getSpp());
+      return 0;
+    } catch (IOException | IllegalStateException e) {
+      Log.error("Failed to merge render dumps.", e);
+      return 1;
+    } catch (SyntaxError e) {
+      Log.error("Failed to read the scene description: JSON syntax error");
+      return 1;
+    }
+  }
+
+  private static File canonicalFile(File file) {
+    try {
+      return file.getCanonicalFile();
+    } catch (IOException e) {
+      return file.getAbsoluteFile();
+    }
+  }
+
   private static JsonObject readSceneJson(File file) throws IOException, SyntaxError {
     try (FileInputStream in = new FileInputStream(file)) {
       JsonParser parser = new JsonParser(in);
@@ -22,6 +22,7 @@ import se.llbit.chunky.plugin.PluginApi;
 import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PreviewFilter;
+import se.llbit.chunky.renderer.postprocessing.SpanPostProcessingFilter;
 import se.llbit.chunky.renderer.scene.PathTracer;
 import se.llbit.chunky.renderer.scene.PreviewRayTracer;
 import se.llbit.chunky.renderer.scene.Scene;
@@ -31,6 +32,7 @@ import se.llbit.math.ColorUtil;
 import se.llbit.util.TaskTracker;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
@@ -157,6 +159,36 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    */
   protected SnapshotControl snapshotControl = SnapshotControl.DEFAULT;
 
+  /**
+   * Render state copied at a render pass boundary for {@link #takeDumpSnapshot()}, waiting to be
+   * written by a scene save.
+   */
+  private final AtomicReference<Scene> dumpSnapshot = new AtomicReference<>();
+
+  /**
+   * Set while render passes are running, the render workers may be writing to the sample buffer.
+   * Guarded by {@link #bufferedScene}.
+   */
+  private boolean rendering = false;
+
+  /**
+   * Set to copy a render dump snapshot at the next render pass boundary.
+   * Guarded by {@link #bufferedScene}.
+   */
+  private boolean dumpSnapshotRequested = false;
+
+  /**
+   * Set while the render workers trace the scene, between render pass boundaries.
+   * Guarded by {@link #bufferedScene}.
+   */
+  private boolean tracing = false;
+
+  /**
+   * Number of tasks waiting for or running in {@link #withRenderPaused(Runnable)}.
+   * Guarded by {@link #bufferedScene}.
+   */
+  private int pauseRequests = 0;
+
   protected SceneProvider sceneProvider;
   public final RenderContext context;
 
@@ -191,7 +223,7 @@ public class DefaultRenderManager extends Thread implements RenderManager {
 
     // Initialize callbacks here since java will complain `bufferedScene` is not initialized yet.
     // (nothing important in the rest of the constructor)
-    this.previewCallback = () -> {
+    this.previewCallback = pausable(() -> {
       sendSceneStatus(bufferedScene.sceneStatus());
 
       renderStatusListeners.forEach(listener -> {
@@ -205,9 +237,9 @@ public class DefaultRenderManager extends Thread implements RenderManager {
 
       frameStart = System.currentTimeMillis();
       return !finalizeAllFrames || sceneProvider.pollSceneStateChange();
-    };
+    });
 
-    this.renderCallback = () -> {
+    this.renderCallback = pausable(() -> {
       long elapsedTime = System.currentTimeMillis() - frameStart;
 
       sceneProvider.withSceneProtected(scene -> {
@@ -222,6 +254,15 @@ public class DefaultRenderManager extends Thread implements RenderManager {
 
         this.finalizeFrame(getRenderer().autoPostProcess() && finalizeAllFrames);
 
+        if (dumpSnapshotRequested) {
+          // Copy the samples while the workers are idle. The dump is written in the background.
+          // Render dump checkpoints also save the scene through takeDumpSnapshot(), so the samples
+          // are only copied for a save that is waiting.
+          dumpSnapshot.set(bufferedScene.renderDumpSnapshot());
+          dumpSnapshotRequested = false;
+          bufferedScene.notifyAll();
+        }
+
         frameCompletionListener.accept(bufferedScene, bufferedScene.spp);
         updateRenderProgress();
 
@@ -233,9 +274,48 @@ public class DefaultRenderManager extends Thread implements RenderManager {
 
       frameStart = System.currentTimeMillis();
       return mode == RenderMode.PAUSED || sceneProvider.pollSceneStateChange();
+    });
+  }
+
+  /**
+   * Wrap a post render callback so that the render stops tracing at the pass boundary
+   * while {@link #withRenderPaused(Runnable)} tasks run.
+   */
+  private BooleanSupplier pausable(BooleanSupplier callback) {
+    return () -> {
+      endTracing();
+      boolean done = callback.getAsBoolean();
+      if (!done) {
+        try {
+          startTracing();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return true;
+        }
+      }
+      return done;
     };
   }
 
+  /**
+   * Wait until no paused tasks are pending, then mark the start of a render pass.
+   */
+  private void startTracing() throws InterruptedException {
+    synchronized (bufferedScene) {
+      while (pauseRequests > 0) {
+        bufferedScene.wait();
+      }
+      tracing = true;
+    }
+  }
+
+  private void endTracing() {
+    synchronized (bufferedScene) {
+      tracing = false;
+      bufferedScene.notifyAll();
+    }
+  }
+
   /**
    * This controls most of the render manager logic.
    */
@@ -303,7 +383,12 @@ public class DefaultRenderManager extends Thread implements RenderManager {
             // Preview with no CPU limit
             pool.setCpuLoad(100);
             render.setPostRender(previewCallback);
-            render.render(this);
+            startTracing();
+            try {
+              render.render(this);
+            } finally {
+              endTracing();
+            }
             pool.setCpuLoad(cpuLoad);
           }
         } else {
@@ -315,7 +400,18 @@ public class DefaultRenderManager extends Thread implements RenderManager {
             });
           } else if (mode != RenderMode.PAUSED) {
             render.setPostRender(renderCallback);
-            render.render(this);
+            startTracing();
+            synchronized (bufferedScene) {
+              rendering = true;
+            }
+            try {
+              render.render(this);
+            } finally {
+              synchronized (bufferedScene) {
+                rendering = false;
+              }
+              endTracing();
+            }
           }
         }
 
@@ -420,7 +516,35 @@ public class DefaultRenderManager extends Thread implements RenderManager {
       PostProcessingFilter filter = bufferedScene.getPostProcessingFilter();
       if (mode == RenderMode.PREVIEW) filter = PreviewFilter.INSTANCE;
 
-      if (filter instanceof PixelPostProcessingFilter) {
+      if (filter instanceof SpanPostProcessingFilter) {
+        SpanPostProcessingFilter spanFilter = (SpanPostProcessingFilter) filter;
+
+        int width = bufferedScene.width;
+        int height = bufferedScene.height;
+        double[] sampleBuffer = bufferedScene.getSampleBuffer();
+        int[] pixels = bufferedScene.getBackBuffer().data;
+        double exposure = bufferedScene.getExposure();
+
+        // Split up to 10 tasks per thread, each processing whole rows into a contiguous span
+        int tasksPerThread = 10;
+        int rowsPerTask = Math.max(1, height / (pool.threads * tasksPerThread));
+        ArrayList<RenderWorkerPool.RenderJobFuture> jobs = new ArrayList<>(pool.threads * tasksPerThread + 1);
+
+        for (int y = 0; y < height; y += rowsPerTask) {
+          int start = y * width;
+          int length = Math.min(rowsPerTask, height - y) * width;
+          jobs.add(pool.submit(worker ->
+              spanFilter.processSpan(sampleBuffer, start * 3, exposure, pixels, start, length)));
+        }
+
+        try {
+          for (RenderWorkerPool.RenderJobFuture job : jobs) {
+            job.awaitFinish();
+          }
+        } catch (InterruptedException e) {
+          // Interrupted
+        }
+      } else if (filter instanceof PixelPostProcessingFilter) {
         PixelPostProcessingFilter pixelFilter = (PixelPostProcessingFilter) filter;
 
         int width = bufferedScene.width;
@@ -569,6 +693,53 @@ public class DefaultRenderManager extends Thread implements RenderManager {
     return status;
   }
 
+  @Override
+  public Scene takeDumpSnapshot() throws InterruptedException {
+    synchronized (bufferedScene) {
+      Scene snapshot = dumpSnapshot.getAndSet(null);
+      if (snapshot != null && snapshot.spp == bufferedScene.spp) {
+        return snapshot;
+      }
+      // Wait for the workers to finish the current render pass. Listeners called by the render
+      // manager thread already run at a render pass boundary.
+      while (rendering && Thread.currentThread() != this) {
+        dumpSnapshotRequested = true;
+        bufferedScene.wait();
+        snapshot = dumpSnapshot.getAndSet(null);
+        if (snapshot != null) {
+          return snapshot;
+        }
+      }
+      // No render pass is running, so the sample buffer can be copied now.
+      return bufferedScene.renderDumpSnapshot();
+    }
+  }
+
+  @Override
+  public void withRenderPaused(Runnable task) throws InterruptedException {
+    synchronized (bufferedScene) {
+      pauseRequests += 1;
+      try {
+        // Post render callbacks run at a pass boundary, so they do not need to wait.
+        while (tracing && Thread.currentThread() != this) {
+          bufferedScene.wait();
+        }
+      } catch (InterruptedException e) {
+        pauseRequests -= 1;
+        bufferedScene.notifyAll();
+        throw e;
+      }
+    }
+    try {
+      task.run();
+    } finally {
+      synchronized (bufferedScene) {
+        pauseRequests -= 1;
+        bufferedScene.notifyAll();
+      }
+    }
+  }
+
   @Override
   public void withSampleBufferProtected(SampleBufferConsumer consumer) {
     synchronized (bufferedScene) {
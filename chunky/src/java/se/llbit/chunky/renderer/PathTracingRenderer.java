@@ -21,6 +21,8 @@ import se.llbit.chunky.renderer.scene.PathTracer;
 import se.llbit.chunky.renderer.scene.RayTracer;
 import se.llbit.chunky.renderer.scene.Scene;
 
+import java.util.Arrays;
+
 public class PathTracingRenderer extends TileBasedRenderer {
   protected final String id;
   protected final String name;
@@ -68,12 +70,21 @@ public class PathTracingRenderer extends TileBasedRenderer {
     double invHeight = 1.0 / fullHeight;
 
     double[] sampleBuffer = scene.getSampleBuffer();
+    float[] alphaBuffer = scene.getAlphaSamples();
+    // The alpha channel is accumulated from the primary rays, so that exporting a transparent
+    // sky frame does not need an extra pass tracing the sky visibility of each pixel. Rays that
+    // reach the sky through glass and other transparent surfaces count towards the sky coverage.
+    boolean accumulateAlpha = scene.transparentSky() && tracer instanceof PathTracer;
 
     while (scene.spp < scene.getTargetSpp()) {
       int spp = scene.spp;
       int branchCount = (tracer instanceof PathTracer) ? scene.getCurrentBranchCount() : 1;
       double sinv = 1.0 / (sppPerPass * branchCount + spp);
 
+      if (spp == 0 && !accumulateAlpha) {
+        Arrays.fill(alphaBuffer, Float.NaN);
+      }
+
       submitTiles(manager, (state, pixel) -> {
         int x = pixel.firstInt();
         int y = pixel.secondInt();
@@ -81,6 +92,7 @@ public class PathTracingRenderer extends TileBasedRenderer {
         double sr = 0;
         double sg = 0;
         double sb = 0;
+        double covered = 0;
 
         for (int k = 0; k < sppPerPass; k++) {
           double ox = state.random.nextDouble();
@@ -89,7 +101,10 @@ public class PathTracingRenderer extends TileBasedRenderer {
           cam.calcViewRay(state.ray, state.random,
               -halfWidth + (x + ox + cropX) * invHeight,
               -0.5 + (y + oy + cropY) * invHeight);
+          state.skyTransmittance = 0;
+          state.transmittedWeight = 1;
           scene.rayTrace(tracer, state);
+          covered += 1 - state.skyTransmittance;
 
           sr += state.ray.color.x * branchCount;
           sg += state.ray.color.y * branchCount;
@@ -100,6 +115,18 @@ public class PathTracingRenderer extends TileBasedRenderer {
         sampleBuffer[offset + 0] = (sampleBuffer[offset + 0] * spp + sr) * sinv;
         sampleBuffer[offset + 1] = (sampleBuffer[offset + 1] * spp + sg) * sinv;
         sampleBuffer[offset + 2] = (sampleBuffer[offset + 2] * spp + sb) * sinv;
+
+        if (accumulateAlpha) {
+          int index = y * width + x;
+          double alpha = alphaBuffer[index];
+          if (spp == 0) {
+            alpha = 0;
+          } else if (Double.isNaN(alpha)) {
+            // Resuming a render without alpha samples, estimate the previous samples once.
+            alpha = (scene.skyAlpha(x, y, state) & 0xFF) / 255.0;
+          }
+          alphaBuffer[index] = (float) ((alpha * spp + covered * branchCount) * sinv);
+        }
       });
 
       manager.pool.awaitEmpty();
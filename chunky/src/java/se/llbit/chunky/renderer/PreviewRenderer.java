@@ -23,6 +23,8 @@ import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.math.Ray;
 import se.llbit.util.TaskTracker;
 
+import java.util.Arrays;
+
 public class PreviewRenderer extends TileBasedRenderer {
   protected final String id;
   protected final String name;
@@ -77,6 +79,8 @@ public class PreviewRenderer extends TileBasedRenderer {
     int tz = (int) Math.floor(target.o.z + target.d.z * Ray.OFFSET);
 
     double[] sampleBuffer = scene.getSampleBuffer();
+    // The preview does not accumulate alpha samples, the alpha channel is traced on export.
+    Arrays.fill(scene.getAlphaSamples(), Float.NaN);
 
     for (int i = 0; i < 2; i++) {
       int sampleNum = i;
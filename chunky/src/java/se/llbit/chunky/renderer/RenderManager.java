@@ -103,6 +103,31 @@ public interface RenderManager {
 
   RenderStatus getRenderStatus();
 
+  /**
+   * Take a snapshot of the render state for a render dump. The snapshot copied at the last render
+   * dump checkpoint is used while it matches the current render status. Otherwise the samples
+   * are copied at the next render pass boundary, or immediately if no render is running.
+   *
+   * <p>The caller must not hold the scene locks, they are needed to finish a render pass.
+   *
+   * @return the snapshot, or {@code null} if the render manager can not take snapshots
+   */
+  default Scene takeDumpSnapshot() throws InterruptedException {
+    return null;
+  }
+
+  /**
+   * Run a task while no render pass traces the scene, for example to modify the octrees that
+   * the render shares with the scene in place. Render passes wait at the next pass boundary
+   * until the task is done.
+   *
+   * <p>The caller may hold the scene lock, but not the locks of the render manager.
+   * Implementations that trace the scene concurrently with scene edits must override this.
+   */
+  default void withRenderPaused(Runnable task) throws InterruptedException {
+    task.run();
+  }
+
   /**
    * Start up the renderer.
    * This should start all worker threads used by the renderer.
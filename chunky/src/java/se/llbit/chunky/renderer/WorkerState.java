@@ -28,4 +28,18 @@ public class WorkerState {
   public Ray ray;
   public Vector4 attenuation = new Vector4();
   public Random random;
+
+  /**
+   * Fraction of the primary ray that reached the sky, either directly or through
+   * transparent surfaces. Accumulated by the path tracer for the alpha channel of
+   * transparent sky renders.
+   */
+  public double skyTransmittance;
+
+  /**
+   * Weight of the ray currently traced by the path tracer towards {@link #skyTransmittance}.
+   * This is the share of the primary ray that has only been transmitted or refracted so
+   * far, and zero for reflected rays.
+   */
+  public double transmittedWeight;
 }
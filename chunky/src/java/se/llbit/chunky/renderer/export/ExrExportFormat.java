@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.export;
+
+import se.llbit.chunky.plugin.PluginApi;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.imageformats.exr.ExrFileWriter;
+import se.llbit.util.TaskTracker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * OpenEXR with 16-bit half float channels and ZIP compression.
+ *
+ * <p>The color channels hold the linear samples without post-processing, like PFM. With a
+ * transparent sky the colors are premultiplied by the alpha channel, as usual for OpenEXR.
+ * Plugins can add extra layers (AOVs) with {@link #addLayer(Layer)}.
+ */
+public class ExrExportFormat implements PictureExportFormat {
+
+  /** Width and height of the tiles in tiled files. */
+  public static final int TILE_SIZE = 64;
+
+  /** An extra image layer written to OpenEXR files. */
+  @PluginApi
+  public interface Layer {
+    /**
+     * @return the layer name, used as prefix of the channel names
+     */
+    String getName();
+
+    /**
+     * @return the channel names in this layer, for example {@code R}, {@code G}, {@code B}
+     */
+    String[] getChannels();
+
+    /**
+     * Read the values of {@code rows} rows starting at row {@code y0}.
+     * This is called concurrently from worker threads.
+     *
+     * @param channels one array of {@code rows * width} values for each channel of the layer
+     */
+    void read(Scene scene, int y0, int rows, float[][] channels);
+  }
+
+  private static final List<Layer> layers = new CopyOnWriteArrayList<>();
+
+  private final boolean tiled;
+
+  public ExrExportFormat(boolean tiled) {
+    this.tiled = tiled;
+  }
+
+  /**
+   * Add a layer to be written to all OpenEXR images.
+   *
+   * @param layer Layer implementation
+   */
+  @PluginApi
+  public static void addLayer(Layer layer) {
+    layers.add(layer);
+  }
+
+  @Override
+  public String getName() {
+    return tiled ? "EXR_TILED" : "EXR";
+  }
+
+  @Override
+  public String getDescription() {
+    return tiled ? "OpenEXR, 16-bit half float, tiled" : "OpenEXR, 16-bit half float";
+  }
+
+  @Override
+  public String getExtension() {
+    return ".exr";
+  }
+
+  @Override
+  public boolean isTransparencySupported() {
+    return true;
+  }
+
+  @Override
+  public boolean isStreaming(Scene scene) {
+    return true;
+  }
+
+  @Override
+  public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
+    int width = scene.canvasWidth();
+    boolean alpha = scene.transparentSky();
+    List<Layer> extraLayers = new ArrayList<>(layers);
+    List<String> channels = new ArrayList<>();
+    channels.add("R");
+    channels.add("G");
+    channels.add("B");
+    if (alpha) {
+      channels.add("A");
+    }
+    for (Layer layer : extraLayers) {
+      for (String channel : layer.getChannels()) {
+        channels.add(layer.getName() + "." + channel);
+      }
+    }
+
+    FrameStripes frame = new FrameStripes(scene, null, alpha);
+    ExrFileWriter.BlockReader reader = (y0, rows) -> {
+      FrameStripes.Stripe stripe = frame.readStripe(y0, rows);
+      float[][] values = new float[channels.size()][rows * width];
+      for (int i = 0; i < rows * width; ++i) {
+        float a = alpha ? (stripe.alpha[i] & 0xFF) / 255.f : 1;
+        values[0][i] = (float) stripe.rgb[i * 3] * a;
+        values[1][i] = (float) stripe.rgb[i * 3 + 1] * a;
+        values[2][i] = (float) stripe.rgb[i * 3 + 2] * a;
+        if (alpha) {
+          values[3][i] = a;
+        }
+      }
+      int channel = alpha ? 4 : 3;
+      for (Layer layer : extraLayers) {
+        int count = layer.getChannels().length;
+        float[][] layerValues = new float[count][];
+        System.arraycopy(values, channel, layerValues, 0, count);
+        layer.read(scene, y0, rows, layerValues);
+        channel += count;
+      }
+      return values;
+    };
+
+    try (TaskTracker.Task task = taskTracker.task("Writing OpenEXR", scene.canvasHeight());
+        ExrFileWriter writer = new ExrFileWriter(out)) {
+      writer.write(width, scene.canvasHeight(), channels.toArray(new String[0]),
+          ExrFileWriter.Compression.ZIP, tiled ? TILE_SIZE : 0, reader, task);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.export;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.WorkerState;
+import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.math.ColorUtil;
+import se.llbit.math.Ray;
+import se.llbit.util.TaskTracker;
+import se.llbit.util.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the image of a scene in stripes of rows, straight from the sample buffer.
+ *
+ * <p>Stripes are post-processed in parallel on the common thread pool and passed to the
+ * consumer in order, on the calling thread. Only a few stripes are kept in memory at a time,
+ * so export formats using this do not need the back buffer or the alpha channel of the scene.
+ */
+public class FrameStripes {
+  /** Approximate number of pixels in a stripe. */
+  public static final int STRIPE_PIXELS = 1 << 16;
+
+  /** Upper bound on the pixels in stripes read ahead of the consumer. */
+  private static final long MAX_PENDING_PIXELS = 16L * STRIPE_PIXELS;
+
+  /** Receives the stripes of an image. */
+  public interface StripeConsumer {
+    void accept(Stripe stripe) throws IOException;
+  }
+
+  /** A stripe of whole image rows. */
+  public static class Stripe {
+    /** The first row of this stripe. */
+    public final int y0;
+
+    /** Number of rows in this stripe. */
+    public final int rows;
+
+    /** Width of the image. */
+    public final int width;
+
+    /** RGB values, three per pixel, in row-major order. */
+    public final double[] rgb;
+
+    /** Alpha value per pixel, or {@code null} if the alpha channel was not requested. */
+    @Nullable public final byte[] alpha;
+
+    Stripe(int y0, int rows, int width, boolean alpha) {
+      this.y0 = y0;
+      this.rows = rows;
+      this.width = width;
+      this.rgb = new double[rows * width * 3];
+      this.alpha = alpha ? new byte[rows * width] : null;
+    }
+
+    /**
+     * @return the pixel at index {@code i} in this stripe as 8-bit RGB, with the color
+     * values clamped to 1
+     */
+    public int getRGB(int i) {
+      return ColorUtil.getRGB(
+          Math.min(1.0, rgb[i * 3]),
+          Math.min(1.0, rgb[i * 3 + 1]),
+          Math.min(1.0, rgb[i * 3 + 2]));
+    }
+  }
+
+  private final Scene scene;
+  private final int width;
+  private final int height;
+  @Nullable private final PixelPostProcessingFilter filter;
+  private final boolean alpha;
+
+  /**
+   * @param filter the filter used to post-process pixels, or {@code null} to read the linear
+   * samples without exposure
+   * @param alpha {@code true} to include the alpha channel of the scene
+   */
+  public FrameStripes(Scene scene, @Nullable PixelPostProcessingFilter filter, boolean alpha) {
+    this.scene = scene;
+    this.width = scene.canvasWidth();
+    this.height = scene.canvasHeight();
+    this.filter = filter;
+    this.alpha = alpha;
+  }
+
+  /**
+   * @return the default stripe height for an image of the given width
+   */
+  public static int stripeHeight(int width) {
+    return Math.max(1, STRIPE_PIXELS / Math.max(1, width));
+  }
+
+  /**
+   * Read the image in stripes of the given height, from the top or from the bottom of the
+   * image. The last stripe in reading order may have fewer rows. Progress is reported
+   * in rows.
+   *
+   * <p>Up to two stripes per thread are read ahead, fewer for tall stripes of wide images
+   * so that the stripes in memory stay small compared to the image.
+   */
+  public void read(int stripeHeight, boolean bottomUp, StripeConsumer consumer,
+      TaskTracker.Task task) throws IOException {
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    int maxPending = (int) Math.max(1, Math.min(2 * pool.getParallelism(),
+        MAX_PENDING_PIXELS / ((long) stripeHeight * width)));
+    ArrayDeque<Future<Stripe>> pending = new ArrayDeque<>();
+    int stripes = (height + stripeHeight - 1) / stripeHeight;
+    int done = 0;
+    task.update(height, 0);
+    for (int i = 0; i < stripes; ++i) {
+      int y0;
+      int rows;
+      if (bottomUp) {
+        int y1 = height - i * stripeHeight;
+        y0 = Math.max(0, y1 - stripeHeight);
+        rows = y1 - y0;
+      } else {
+        y0 = i * stripeHeight;
+        rows = Math.min(stripeHeight, height - y0);
+      }
+      pending.add(pool.submit(() -> readStripe(y0, rows)));
+      if (pending.size() >= maxPending) {
+        Stripe stripe = await(pending.poll());
+        consumer.accept(stripe);
+        done += stripe.rows;
+        task.update(height, done);
+      }
+    }
+    while (!pending.isEmpty()) {
+      Stripe stripe = await(pending.poll());
+      consumer.accept(stripe);
+      done += stripe.rows;
+      task.update(height, done);
+    }
+  }
+
+  /**
+   * Read a single stripe. This can be called concurrently, for writers that process
+   * stripes on their own worker threads.
+   */
+  public Stripe readStripe(int y0, int rows) {
+    Stripe stripe = new Stripe(y0, rows, width, alpha);
+    double[] samples = scene.getSampleBuffer();
+    double exposure = scene.getExposure();
+    double[] pixel = new double[3];
+    WorkerState state = null;
+    if (alpha) {
+      state = new WorkerState();
+      state.ray = new Ray();
+    }
+    int i = 0;
+    for (int y = y0; y < y0 + rows; ++y) {
+      for (int x = 0; x < width; ++x) {
+        if (filter != null) {
+          filter.processPixel(width, height, samples, x, y, exposure, pixel);
+          System.arraycopy(pixel, 0, stripe.rgb, i * 3, 3);
+        } else {
+          System.arraycopy(samples, (y * width + x) * 3, stripe.rgb, i * 3, 3);
+        }
+        if (alpha) {
+          stripe.alpha[i] = scene.alpha(x, y, state);
+        }
+        i += 1;
+      }
+    }
+    return stripe;
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while reading image stripes.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -48,6 +48,11 @@ public class PfmExportFormat implements PictureExportFormat {
     return false;
   }
 
+  @Override
+  public boolean isStreaming(Scene scene) {
+    return true;
+  }
+
   @Override
   public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
     try (TaskTracker.Task task = taskTracker.task("Writing PFM rows", scene.canvasHeight());
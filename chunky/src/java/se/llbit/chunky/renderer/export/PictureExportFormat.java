@@ -58,6 +58,18 @@ public interface PictureExportFormat {
     return false;
   }
 
+  /**
+   * Check if this format writes the picture straight from the sample buffer of the scene,
+   * for example using {@link FrameStripes}. The scene then does not post-process the whole
+   * frame or compute the alpha channel before writing the picture.
+   *
+   * @param scene Scene to export
+   * @return True if this format does not need the back buffer of the scene, false otherwise
+   */
+  default boolean isStreaming(Scene scene) {
+    return false;
+  }
+
   /**
    * Write the picture of the given scene into the given output stream, optionally reporting
    * progress to a task tracker.
@@ -39,7 +39,10 @@ public abstract class PictureExportFormats {
     PNG = png;
 
     registerFormat(new Tiff32ExportFormat());
+    registerFormat(new Tiff32TiledExportFormat());
     registerFormat(new PfmExportFormat());
+    registerFormat(new ExrExportFormat(false));
+    registerFormat(new ExrExportFormat(true));
   }
 
   /**
@@ -19,6 +19,7 @@ package se.llbit.chunky.renderer.export;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
 import se.llbit.chunky.renderer.projection.ProjectionMode;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.BitmapImage;
@@ -46,16 +47,25 @@ public class PngExportFormat implements PictureExportFormat {
     return true;
   }
 
+  @Override
+  public boolean isStreaming(Scene scene) {
+    return scene.getEffectivePostProcessingFilter() instanceof PixelPostProcessingFilter;
+  }
+
   @Override
   public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
     try (TaskTracker.Task task = taskTracker.task("Writing PNG");
         PngFileWriter writer = new PngFileWriter(out)) {
-      BitmapImage backBuffer = scene.getBackBuffer();
-      if (scene.transparentSky()) {
-        writer.write(backBuffer.data, scene.getAlphaChannel(), scene.canvasWidth(),
-            scene.canvasHeight(), task);
+      if (isStreaming(scene)) {
+        writeStripes(scene, writer, task);
       } else {
-        writer.write(backBuffer.data, scene.canvasWidth(), scene.canvasHeight(), task);
+        BitmapImage backBuffer = scene.getBackBuffer();
+        if (scene.transparentSky()) {
+          writer.write(backBuffer.data, scene.getAlphaChannel(), scene.canvasWidth(),
+              scene.canvasHeight(), task);
+        } else {
+          writer.write(backBuffer.data, scene.canvasWidth(), scene.canvasHeight(), task);
+        }
       }
       if (scene.camera().getProjectionMode() == ProjectionMode.PANORAMIC
           && scene.camera().getFov() >= 179
@@ -65,6 +75,31 @@ public class PngExportFormat implements PictureExportFormat {
       }
     }
 
+  /**
+   * Post-process the image in stripes straight from the sample buffer, and compute the
+   * alpha channel along the way if the sky is transparent.
+   */
+  private void writeStripes(Scene scene, PngFileWriter writer, TaskTracker.Task task)
+      throws IOException {
+    PixelPostProcessingFilter filter =
+        (PixelPostProcessingFilter) scene.getEffectivePostProcessingFilter();
+    boolean alpha = scene.transparentSky();
+    int width = scene.canvasWidth();
+    try (PngFileWriter.ScanlineWriter scanlines =
+        writer.scanlineWriter(width, scene.canvasHeight(), alpha)) {
+      FrameStripes stripes = new FrameStripes(scene, filter, alpha);
+      stripes.read(FrameStripes.stripeHeight(width), false, stripe -> {
+        int[] rgb = new int[stripe.rows * width];
+        for (int i = 0; i < rgb.length; ++i) {
+          rgb[i] = stripe.getRGB(i);
+        }
+        for (int y = 0; y < stripe.rows; ++y) {
+          scanlines.writeRow(rgb, stripe.alpha, y * width);
+        }
+      }, task);
+    }
+  }
+
   private static final String PNG_PANORAMA_META_ADOBE_RDF_XML =
     "<rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#'>\n" +
     " <rdf:Description rdf:about=''\n" +
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.imageformats.tiff.TiffFileWriter;
+import se.llbit.util.TaskTracker;
+
+/**
+ * 32-bit floating point TIFF stored in tiles, which lets image viewers read parts of very
+ * large images without loading whole rows.
+ */
+public class Tiff32TiledExportFormat implements PictureExportFormat {
+
+  /** Width and height of the tiles. */
+  public static final int TILE_SIZE = 256;
+
+  @Override
+  public String getName() {
+    return "TIFF_32_TILED";
+  }
+
+  @Override
+  public String getDescription() {
+    return "TIFF, 32-bit floating point, tiled";
+  }
+
+  @Override
+  public String getExtension() {
+    return ".tiff";
+  }
+
+  @Override
+  public boolean isTransparencySupported() {
+    return false;
+  }
+
+  @Override
+  public boolean isStreaming(Scene scene) {
+    return true;
+  }
+
+  @Override
+  public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
+    try (TaskTracker.Task task = taskTracker.task("Writing TIFF");
+        TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.write32Tiled(scene, TILE_SIZE, task);
+    }
+  }
+}
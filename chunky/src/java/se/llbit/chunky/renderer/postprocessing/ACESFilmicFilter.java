@@ -18,8 +18,23 @@ public class ACESFilmicFilter extends SimplePixelPostProcessingFilter {
   @Override
   public void processPixel(double[] pixel) {
     for(int i = 0; i < 3; ++i) {
-      pixel[i] = QuickMath.max(QuickMath.min((pixel[i] * (aces_a * pixel[i] + aces_b)) / (pixel[i] * (aces_c * pixel[i] + aces_d) + aces_e), 1), 0);
-      pixel[i] = FastMath.pow(pixel[i], 1 / Scene.DEFAULT_GAMMA);
+      pixel[i] = FastMath.pow(tonemap(pixel[i]), 1 / Scene.DEFAULT_GAMMA);
+    }
+  }
+
+  private static double tonemap(double x) {
+    return QuickMath.max(QuickMath.min((x * (aces_a * x + aces_b)) / (x * (aces_c * x + aces_d) + aces_e), 1), 0);
+  }
+
+  @Override
+  public void processSpan(double[] input, int inputOffset, double exposure,
+      int[] output, int outputOffset, int length) {
+    for (int i = 0; i < length; ++i) {
+      int offset = inputOffset + i * 3;
+      output[outputOffset + i] = ChannelEncoder.argb(
+          ChannelEncoder.gamma(tonemap(input[offset] * exposure)),
+          ChannelEncoder.gamma(tonemap(input[offset + 1] * exposure)),
+          ChannelEncoder.gamma(tonemap(input[offset + 2] * exposure)));
     }
   }
 
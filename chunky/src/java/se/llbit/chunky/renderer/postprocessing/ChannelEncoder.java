@@ -0,0 +1,55 @@
+package se.llbit.chunky.renderer.postprocessing;
+
+import se.llbit.chunky.renderer.scene.Scene;
+
+/**
+ * Converts post-processed color channels to 8-bit values for span filters.
+ */
+final class ChannelEncoder {
+  /**
+   * The smallest linear value that is gamma encoded as each 8-bit value. Gamma encoding by
+   * searching this table gives the same result as rounding {@code pow(value, 1 / gamma)},
+   * without evaluating the power function for each channel.
+   */
+  private static final double[] GAMMA_THRESHOLDS = new double[256];
+
+  static {
+    GAMMA_THRESHOLDS[0] = Double.NEGATIVE_INFINITY;
+    for (int i = 1; i < 256; ++i) {
+      // The filters use the float exponent 1 / DEFAULT_GAMMA.
+      GAMMA_THRESHOLDS[i] = Math.pow((i - 0.5) / 255, 1 / (double) (1 / Scene.DEFAULT_GAMMA));
+    }
+  }
+
+  private ChannelEncoder() {}
+
+  /**
+   * @return the value clamped to [0, 1] as an 8-bit value
+   */
+  static int linear(double value) {
+    if (value >= 1) {
+      return 255;
+    } else if (value > 0) {
+      return (int) (255 * value + 0.5);
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * @return the gamma encoded value clamped to [0, 1] as an 8-bit value
+   */
+  static int gamma(double value) {
+    int encoded = 0;
+    for (int step = 128; step > 0; step >>= 1) {
+      if (value >= GAMMA_THRESHOLDS[encoded + step]) {
+        encoded += step;
+      }
+    }
+    return encoded;
+  }
+
+  static int argb(int r, int g, int b) {
+    return 0xFF000000 | (r << 16) | (g << 8) | b;
+  }
+}
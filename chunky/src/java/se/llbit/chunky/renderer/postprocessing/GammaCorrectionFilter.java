@@ -11,6 +11,18 @@ public class GammaCorrectionFilter extends SimplePixelPostProcessingFilter {
     }
   }
 
+  @Override
+  public void processSpan(double[] input, int inputOffset, double exposure,
+      int[] output, int outputOffset, int length) {
+    for (int i = 0; i < length; ++i) {
+      int offset = inputOffset + i * 3;
+      output[outputOffset + i] = ChannelEncoder.argb(
+          ChannelEncoder.gamma(input[offset] * exposure),
+          ChannelEncoder.gamma(input[offset + 1] * exposure),
+          ChannelEncoder.gamma(input[offset + 2] * exposure));
+    }
+  }
+
   @Override
   public String getName() {
     return "Gamma correction";
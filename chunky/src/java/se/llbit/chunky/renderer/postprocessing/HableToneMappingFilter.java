@@ -19,9 +19,25 @@ public class HableToneMappingFilter extends SimplePixelPostProcessingFilter {
     // This adjusts the exposure by a factor of 16 so that the resulting exposure approximately matches the other
     // post-processing methods. Without this, the image would be very dark.
     for(int i = 0; i < 3; ++i) {
-      pixel[i] *= 16;
-      pixel[i] = ((pixel[i] * (hA * pixel[i] + hC * hB) + hD * hE) / (pixel[i] * (hA * pixel[i] + hB) + hD * hF)) - hE / hF;
-      pixel[i] *= whiteScale;
+      pixel[i] = tonemap(pixel[i]);
+    }
+  }
+
+  private static double tonemap(double x) {
+    x *= 16;
+    x = ((x * (hA * x + hC * hB) + hD * hE) / (x * (hA * x + hB) + hD * hF)) - hE / hF;
+    return x * whiteScale;
+  }
+
+  @Override
+  public void processSpan(double[] input, int inputOffset, double exposure,
+      int[] output, int outputOffset, int length) {
+    for (int i = 0; i < length; ++i) {
+      int offset = inputOffset + i * 3;
+      output[outputOffset + i] = ChannelEncoder.argb(
+          ChannelEncoder.linear(tonemap(input[offset] * exposure)),
+          ChannelEncoder.linear(tonemap(input[offset + 1] * exposure)),
+          ChannelEncoder.linear(tonemap(input[offset + 2] * exposure)));
     }
   }
 
@@ -17,18 +17,10 @@
  */
 package se.llbit.chunky.renderer.postprocessing;
 
-import se.llbit.chunky.main.Chunky;
-import se.llbit.chunky.resources.BitmapImage;
-import se.llbit.math.ColorUtil;
-import se.llbit.util.TaskTracker;
-
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.IntStream;
-
 /**
  * Base class for post processing filter that process each pixel independently
  */
-public abstract class SimplePixelPostProcessingFilter implements PixelPostProcessingFilter {
+public abstract class SimplePixelPostProcessingFilter implements SpanPostProcessingFilter {
   /**
    * Post-process a single channel of a single pixel
    * @param pixel Input/Output - the rgb component of the pixel with already applied exposure.
@@ -36,40 +28,25 @@ public abstract class SimplePixelPostProcessingFilter implements PixelPostProces
    */
   public abstract void processPixel(double[] pixel);
 
+  /**
+   * Post-process a span of pixels one pixel at a time with {@link #processPixel(double[])}.
+   * Subclasses can override this with a loop over the channels of the span.
+   */
   @Override
-  public void processFrame(
-    int width, int height,
-    double[] input, BitmapImage output,
-    double exposure, TaskTracker.Task task
-  ) {
-    task.update(height, 0);
-    AtomicInteger done = new AtomicInteger(0);
-    Chunky.getCommonThreads()
-      .submit(() ->
-        // do rows in parallel
-        IntStream.range(0, height).parallel()
-        .forEach(y -> {
-          double[] pixelBuffer = new double[3];
-
-          int rowOffset = y * width;
-          // columns will be processed sequential
-          // TODO: SIMD support once Vector API is finalized
-          for (int x = 0; x < width; x++) {
-            int pixelOffset = (rowOffset + x) * 3;
-            for(int i = 0; i < 3; ++i) {
-              pixelBuffer[i] = input[pixelOffset + i] * exposure;
-            }
-            processPixel(pixelBuffer);
-            for(int i = 0; i < 3; ++i) {
-              // TODO: extract clamping into own interface
-              pixelBuffer[i] = Math.min(1.0, pixelBuffer[i]);
-            }
-            output.setPixel(x, y, ColorUtil.getRGB(pixelBuffer));
-          }
-
-          task.update(height, done.incrementAndGet());
-        })
-      ).join();
+  public void processSpan(double[] input, int inputOffset, double exposure,
+      int[] output, int outputOffset, int length) {
+    double[] pixelBuffer = new double[3];
+    for (int i = 0; i < length; ++i) {
+      int pixelOffset = inputOffset + i * 3;
+      for (int j = 0; j < 3; ++j) {
+        pixelBuffer[j] = input[pixelOffset + j] * exposure;
+      }
+      processPixel(pixelBuffer);
+      output[outputOffset + i] = ChannelEncoder.argb(
+          ChannelEncoder.linear(pixelBuffer[0]),
+          ChannelEncoder.linear(pixelBuffer[1]),
+          ChannelEncoder.linear(pixelBuffer[2]));
+    }
   }
 
   @Override
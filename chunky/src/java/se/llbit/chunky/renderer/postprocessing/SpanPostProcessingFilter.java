@@ -0,0 +1,52 @@
+package se.llbit.chunky.renderer.postprocessing;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.plugin.PluginApi;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.util.TaskTracker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Post-processing filter that processes a contiguous span of pixels at a time,
+ * for example a row or a block of rows of the frame.
+ * <p>
+ * Filters implementing this avoid the per pixel overhead of {@link
+ * PixelPostProcessingFilter#processPixel(int, int, double[], int, int, double, double[])},
+ * which makes it cheap to post-process the whole frame after every render pass.
+ */
+@PluginApi
+public interface SpanPostProcessingFilter extends PixelPostProcessingFilter {
+  /**
+   * Post process a span of pixels into clamped ARGB colors.
+   * @param input The input linear image as double array, exposure has not been applied
+   * @param inputOffset The index in the input of the first channel of the first pixel
+   * @param exposure The exposure value
+   * @param output The output ARGB pixels
+   * @param outputOffset The index in the output of the first pixel
+   * @param length The number of pixels to process
+   */
+  void processSpan(double[] input, int inputOffset, double exposure,
+      int[] output, int outputOffset, int length);
+
+  @Override
+  default void processFrame(
+    int width, int height,
+    double[] input, BitmapImage output,
+    double exposure, TaskTracker.Task task
+  ) {
+    task.update(height, 0);
+    AtomicInteger done = new AtomicInteger(0);
+    Chunky.getCommonThreads()
+      .submit(() ->
+        // do rows in parallel
+        IntStream.range(0, height).parallel()
+        .forEach(y -> {
+          int rowOffset = y * width;
+          processSpan(input, rowOffset * 3, exposure, output.data, rowOffset, width);
+          task.update(height, done.incrementAndGet());
+        })
+      ).join();
+  }
+}
@@ -10,8 +10,24 @@ public class Tonemap1Filter extends SimplePixelPostProcessingFilter {
   @Override
   public void processPixel(double[] pixel) {
     for(int i = 0; i < 3; ++i) {
-      pixel[i] = QuickMath.max(0, pixel[i] - 0.004);
-      pixel[i] = (pixel[i] * (6.2 * pixel[i] + .5)) / (pixel[i] * (6.2 * pixel[i] + 1.7) + 0.06);
+      pixel[i] = tonemap(pixel[i]);
+    }
+  }
+
+  private static double tonemap(double x) {
+    x = QuickMath.max(0, x - 0.004);
+    return (x * (6.2 * x + .5)) / (x * (6.2 * x + 1.7) + 0.06);
+  }
+
+  @Override
+  public void processSpan(double[] input, int inputOffset, double exposure,
+      int[] output, int outputOffset, int length) {
+    for (int i = 0; i < length; ++i) {
+      int offset = inputOffset + i * 3;
+      output[outputOffset + i] = ChannelEncoder.argb(
+          ChannelEncoder.linear(tonemap(input[offset] * exposure)),
+          ChannelEncoder.linear(tonemap(input[offset + 1] * exposure)),
+          ChannelEncoder.linear(tonemap(input[offset + 2] * exposure)));
     }
   }
 
@@ -22,6 +22,7 @@ import se.llbit.util.TaskTracker;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.function.IntConsumer;
 
 
@@ -32,7 +33,8 @@ abstract class AbstractDumpFormat implements DumpFormat {
    *
    * @param inputStream   Stream to read samples from.
    * @param scene         Scene this dump is a part of. Do not modify.
-   * @param consumer      Pixel consumer. Does not need to be in order.
+   * @param consumer      Pixel consumer. Does not need to be in order, and may be called
+   *                      concurrently for different pixels.
    * @param pixelProgress Progress consumer. Inputs to this must be increasing and end at
    *                      {@code scene.width * scene.height}.
    */
@@ -52,6 +54,29 @@ abstract class AbstractDumpFormat implements DumpFormat {
                                        IntConsumer pixelProgress)
       throws IOException;
 
+  /**
+   * Write the alpha samples of a transparent sky render after the sample buffer.
+   * Formats that can not store alpha samples do not override this.
+   *
+   * @param outputStream  Stream to write to.
+   * @param scene         Scene to take the alpha samples from. Do not modify.
+   */
+  protected void writeAlpha(DataOutputStream outputStream, Scene scene) throws IOException {
+  }
+
+  /**
+   * Read alpha samples written by {@link #writeAlpha(DataOutputStream, Scene)}.
+   *
+   * @param inputStream   Stream to read the alpha samples from.
+   * @param scene         Scene this dump is a part of. Do not modify.
+   * @param alpha         Buffer to read the alpha samples into.
+   * @return {@code false} if the dump does not contain alpha samples
+   */
+  protected boolean readAlpha(DataInputStream inputStream, Scene scene, float[] alpha)
+      throws IOException {
+    return false;
+  }
+
   public abstract int getVersion();
 
   public abstract String getName();
@@ -73,6 +98,11 @@ abstract class AbstractDumpFormat implements DumpFormat {
         samples[offset + 1] = g;
         samples[offset + 2] = b;
       }, i -> task.updateInterval(i, scene.width));
+
+      float[] alpha = scene.getAlphaSamples();
+      if (alpha != null && !readAlpha(inputStream, scene, alpha)) {
+        Arrays.fill(alpha, Float.NaN);
+      }
     }
   }
 
@@ -82,6 +112,9 @@ abstract class AbstractDumpFormat implements DumpFormat {
     try (TaskTracker.Task task = taskTracker.task("Saving render dump", scene.width * scene.height)) {
       writeHeader(outputStream, scene);
       writeSamples(outputStream, scene, i -> task.updateInterval(i, scene.width));
+      if (scene.transparentSky() && scene.getAlphaSamples() != null) {
+        writeAlpha(outputStream, scene);
+      }
     }
   }
 
@@ -106,6 +139,22 @@ abstract class AbstractDumpFormat implements DumpFormat {
         samples[offset + 2] = (samples[offset + 2] * sceneSpp + b * dumpSpp) * sinv;
       }, i -> task.updateInterval(i, scene.width));
 
+      float[] alpha = scene.getAlphaSamples();
+      if (alpha != null) {
+        float[] dumpAlpha = new float[alpha.length];
+        if (readAlpha(inputStream, scene, dumpAlpha)) {
+          for (int i = 0; i < alpha.length; ++i) {
+            if (sceneSpp == 0 || Float.isNaN(alpha[i])) {
+              alpha[i] = dumpAlpha[i];
+            } else if (!Float.isNaN(dumpAlpha[i])) {
+              alpha[i] = (float) ((alpha[i] * sceneSpp + dumpAlpha[i] * dumpSpp) * sinv);
+            }
+          }
+        } else if (sceneSpp == 0) {
+          Arrays.fill(alpha, Float.NaN);
+        }
+      }
+
       scene.spp += sceneSpp;
       scene.renderTime += previousRenderTime;
     }
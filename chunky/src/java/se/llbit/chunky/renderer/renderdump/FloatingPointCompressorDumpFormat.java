@@ -55,7 +55,7 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
   protected void readSamples(DataInputStream inputStream, Scene scene,
                              PixelConsumer consumer, IntConsumer pixelProgress)
       throws IOException {
-    decompress(inputStream, scene.getSampleBuffer().length, consumer, pixelProgress);
+    decompress(inputStream, 0, scene.getSampleBuffer().length / 3, consumer, pixelProgress);
   }
 
   @Override
@@ -64,8 +64,18 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
       throws IOException {
     double[] samples = scene.getSampleBuffer();
     assert samples.length % 3 == 0;
+    compress(samples, 0, samples.length / 3, outputStream, pixelProgress);
+  }
 
-    int pixels = samples.length / 3;
+  /**
+   * Compress the pixels in the range {@code [start, end)} of a sample buffer.
+   * The predictors start out empty, so separately compressed pixel ranges
+   * can be decompressed independently of each other.
+   */
+  static void compress(double[] samples, int start, int end, OutputStream outputStream,
+                       IntConsumer pixelProgress)
+      throws IOException {
+    int pixels = end - start;
     int size = pixels - 1;
 
     EncoderDecoder rEncoder = new EncoderDecoder();
@@ -73,81 +83,116 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
     EncoderDecoder bEncoder = new EncoderDecoder();
 
     for (int i = 0; i < size; i += 2) {
-      int idx = 3 * i;
+      int idx = 3 * (start + i);
       rEncoder.encodePair(samples[idx], samples[idx + 3], outputStream);
       gEncoder.encodePair(samples[idx + 1], samples[idx + 4], outputStream);
       bEncoder.encodePair(samples[idx + 2], samples[idx + 5], outputStream);
-      pixelProgress.accept(i);
+      pixelProgress.accept(start + i);
     }
 
     // Add the last one and a special terminator if there is an odd number
     if (pixels % 2 == 1) {
-      int idx = 3 * size;
+      int idx = 3 * (start + size);
       rEncoder.encodeSingleWithOddTerminator(samples[idx], outputStream);
       gEncoder.encodeSingleWithOddTerminator(samples[idx + 1], outputStream);
       bEncoder.encodeSingleWithOddTerminator(samples[idx + 2], outputStream);
-      pixelProgress.accept(size);
+      pixelProgress.accept(start + size);
     }
   }
 
-  private void decompress(InputStream inputStream, int bufferLength,
-                          PixelConsumer consumer, IntConsumer pixelProgress)
+  /**
+   * Decompress the pixels in the range {@code [start, end)} compressed by
+   * {@link #compress(double[], int, int, OutputStream, IntConsumer)}.
+   */
+  static void decompress(InputStream inputStream, int start, int end,
+                         PixelConsumer consumer, IntConsumer pixelProgress)
       throws IOException {
-    assert bufferLength % 3 == 0;
-
-    int pixels = bufferLength / 3;
-    int size = pixels - 1;
+    PixelDecoder decoder = new PixelDecoder(inputStream, start, end);
+    while (decoder.remaining() > 0) {
+      decoder.decode(Math.min(decoder.remaining(), 1 << 12), consumer);
+      pixelProgress.accept(end - decoder.remaining());
+    }
+  }
 
-    EncoderDecoder rDecoder = new EncoderDecoder();
-    EncoderDecoder gDecoder = new EncoderDecoder();
-    EncoderDecoder bDecoder = new EncoderDecoder();
+  /**
+   * Incrementally decompresses the pixels in the range {@code [start, end)}, in pixel order.
+   * This makes it possible to read a dump a few rows at a time.
+   */
+  static class PixelDecoder {
+    private final InputStream inputStream;
+    private final int end;
+    private int next;
+
+    private final EncoderDecoder rDecoder = new EncoderDecoder();
+    private final EncoderDecoder gDecoder = new EncoderDecoder();
+    private final EncoderDecoder bDecoder = new EncoderDecoder();
+
+    /** Pixels are stored in pairs, the second pixel of a pair is kept until it is requested. */
+    private boolean hasPending = false;
+    private double pendingR, pendingG, pendingB;
+
+    PixelDecoder(InputStream inputStream, int start, int end) {
+      this.inputStream = inputStream;
+      this.next = start;
+      this.end = end;
+    }
 
-    for (int i = 0; i < size; i += 2) {
-      byte rGroupedHeader = (byte) inputStream.read();
-      byte rFirstHeader = (byte) ((rGroupedHeader >>> 4) & 0x0F);
-      byte rSecondHeader = (byte) (rGroupedHeader & 0x0F);
-      double r1 = rDecoder.decodeSingle(rFirstHeader, inputStream);
-      double r2 = rDecoder.decodeSingle(rSecondHeader, inputStream);
-
-      byte gGroupedHeader = (byte) inputStream.read();
-      byte gFirstHeader = (byte) ((gGroupedHeader >>> 4) & 0x0F);
-      byte gSecondHeader = (byte) (gGroupedHeader & 0x0F);
-      double g1 = gDecoder.decodeSingle(gFirstHeader, inputStream);
-      double g2 = gDecoder.decodeSingle(gSecondHeader, inputStream);
-
-      byte bGroupedHeader = (byte) inputStream.read();
-      byte bFirstHeader = (byte) ((bGroupedHeader >>> 4) & 0x0F);
-      byte bSecondHeader = (byte) (bGroupedHeader & 0x0F);
-      double b1 = bDecoder.decodeSingle(bFirstHeader, inputStream);
-      double b2 = bDecoder.decodeSingle(bSecondHeader, inputStream);
-
-      consumer.consume(i, r1, g1, b1);
-      consumer.consume(i+1, r2,  g2, b2);
-      pixelProgress.accept(i);
+    int remaining() {
+      return end - next;
     }
 
-    // Add the last one and a special terminator if there is an odd number
-    if (pixels % 2 == 1) {
-      byte rGroupedHeader = (byte) inputStream.read();
-      byte rFirstHeader = (byte) ((rGroupedHeader >>> 4) & 0x0F);
-      byte rSecondHeader = (byte) (rGroupedHeader & 0x0F);
-      double r = rDecoder.decodeSingle(rFirstHeader, inputStream);
-      rDecoder.decodeSingle(rSecondHeader, inputStream); // discard
-
-      byte gGroupedHeader = (byte) inputStream.read();
-      byte gFirstHeader = (byte) ((gGroupedHeader >>> 4) & 0x0F);
-      byte gSecondHeader = (byte) (gGroupedHeader & 0x0F);
-      double g = gDecoder.decodeSingle(gFirstHeader, inputStream);
-      gDecoder.decodeSingle(gSecondHeader, inputStream); // discard
-
-      byte bGroupedHeader = (byte) inputStream.read();
-      byte bFirstHeader = (byte) ((bGroupedHeader >>> 4) & 0x0F);
-      byte bSecondHeader = (byte) (bGroupedHeader & 0x0F);
-      double b = bDecoder.decodeSingle(bFirstHeader, inputStream);
-      bDecoder.decodeSingle(bSecondHeader, inputStream); // discard
-
-      consumer.consume(size, r, g, b);
-      pixelProgress.accept(size);
+    /**
+     * Decode the next {@code count} pixels.
+     */
+    void decode(int count, PixelConsumer consumer) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        if (hasPending) {
+          hasPending = false;
+          consumer.consume(next++, pendingR, pendingG, pendingB);
+        } else if (end - next >= 2) {
+          byte rGroupedHeader = (byte) inputStream.read();
+          byte rFirstHeader = (byte) ((rGroupedHeader >>> 4) & 0x0F);
+          byte rSecondHeader = (byte) (rGroupedHeader & 0x0F);
+          double r1 = rDecoder.decodeSingle(rFirstHeader, inputStream);
+          pendingR = rDecoder.decodeSingle(rSecondHeader, inputStream);
+
+          byte gGroupedHeader = (byte) inputStream.read();
+          byte gFirstHeader = (byte) ((gGroupedHeader >>> 4) & 0x0F);
+          byte gSecondHeader = (byte) (gGroupedHeader & 0x0F);
+          double g1 = gDecoder.decodeSingle(gFirstHeader, inputStream);
+          pendingG = gDecoder.decodeSingle(gSecondHeader, inputStream);
+
+          byte bGroupedHeader = (byte) inputStream.read();
+          byte bFirstHeader = (byte) ((bGroupedHeader >>> 4) & 0x0F);
+          byte bSecondHeader = (byte) (bGroupedHeader & 0x0F);
+          double b1 = bDecoder.decodeSingle(bFirstHeader, inputStream);
+          pendingB = bDecoder.decodeSingle(bSecondHeader, inputStream);
+
+          hasPending = true;
+          consumer.consume(next++, r1, g1, b1);
+        } else {
+          // The last pixel of an odd number of pixels is followed by a special terminator.
+          byte rGroupedHeader = (byte) inputStream.read();
+          byte rFirstHeader = (byte) ((rGroupedHeader >>> 4) & 0x0F);
+          byte rSecondHeader = (byte) (rGroupedHeader & 0x0F);
+          double r = rDecoder.decodeSingle(rFirstHeader, inputStream);
+          rDecoder.decodeSingle(rSecondHeader, inputStream); // discard
+
+          byte gGroupedHeader = (byte) inputStream.read();
+          byte gFirstHeader = (byte) ((gGroupedHeader >>> 4) & 0x0F);
+          byte gSecondHeader = (byte) (gGroupedHeader & 0x0F);
+          double g = gDecoder.decodeSingle(gFirstHeader, inputStream);
+          gDecoder.decodeSingle(gSecondHeader, inputStream); // discard
+
+          byte bGroupedHeader = (byte) inputStream.read();
+          byte bFirstHeader = (byte) ((bGroupedHeader >>> 4) & 0x0F);
+          byte bSecondHeader = (byte) (bGroupedHeader & 0x0F);
+          double b = bDecoder.decodeSingle(bFirstHeader, inputStream);
+          bDecoder.decodeSingle(bSecondHeader, inputStream); // discard
+
+          consumer.consume(next++, r, g, b);
+        }
+      }
     }
   }
 
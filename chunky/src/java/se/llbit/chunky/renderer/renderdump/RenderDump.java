@@ -25,11 +25,26 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Logic for loading render dumps using the correct strategy from AbstractDumpFormat for the given dump version. Automatically
@@ -37,10 +52,31 @@ import java.util.HashMap;
  */
 public class RenderDump {
   public static final byte[] DUMP_FORMAT_MAGIC_NUMBER = {0x44, 0x55, 0x4D, 0x50};
-  private static final int DEFAULT_DUMP_FORMAT = 1;  // FPC compressor
+  private static final int DEFAULT_DUMP_FORMAT = 5;  // Striped FPC compressor
 
   private static final HashMap<Integer, DumpFormat> RENDER_DUMP_FORMATS = new HashMap<>();
 
+  /**
+   * Writes render dumps in the background, one at a time and in the order they were requested.
+   * The thread is not a daemon so that pending dumps are completed before the JVM exits normally.
+   */
+  private static final ExecutorService DUMP_WRITER = new ThreadPoolExecutor(0, 1,
+      30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "Render Dump Writer");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+      });
+
+  /** The most recently requested background save. Completes after all earlier saves. */
+  private static CompletableFuture<Void> pendingSave = CompletableFuture.completedFuture(null);
+
+  /** Sample buffers handed out by {@link #snapshotBuffer(int)}, the only buffers that get recycled. */
+  private static final Set<double[]> snapshotBuffers =
+      Collections.newSetFromMap(new WeakHashMap<>());
+
+  /** Sample buffer of the last written snapshot, reused by the next snapshot. */
+  private static SoftReference<double[]> spareBuffer = new SoftReference<>(null);
+
   @PluginApi
   public static void addRenderDumpFormat(DumpFormat format) {
     int version = format.getVersion();
@@ -57,6 +93,7 @@ public class RenderDump {
     RenderDump.addRenderDumpFormat(UncompressedDumpFormat.INSTANCE);            // 2
     RenderDump.addRenderDumpFormat(HuffmanDumpFormat.INSTANCE);                 // 3
     RenderDump.addRenderDumpFormat(GzipDumpFormat.INSTANCE);                    // 4
+    RenderDump.addRenderDumpFormat(StripedFloatingPointCompressorDumpFormat.INSTANCE); // 5
   }
 
   private static DumpFormat getDumpFormat(int version) {
@@ -69,6 +106,14 @@ public class RenderDump {
   }
 
   private static DumpFormat readDumpFormat(DataInputStream inputStream) throws IOException {
+    return getDumpFormat(readVersion(inputStream));
+  }
+
+  /**
+   * Read the magic number and version of the render dump container format.
+   * Dumps without the magic number are classic dumps (version 0).
+   */
+  static int readVersion(DataInputStream inputStream) throws IOException {
     assert inputStream.markSupported();
     inputStream.mark(4);
     int version;
@@ -80,7 +125,7 @@ public class RenderDump {
       inputStream.reset();
       version = 0;
     }
-    return getDumpFormat(version);
+    return version;
   }
 
   /**
@@ -124,4 +169,115 @@ public class RenderDump {
     format.save(dataOutputStream, scene, taskTracker);
     dataOutputStream.flush();
   }
+
+  /**
+   * Save a render dump to a file. The dump is first written to a temporary file which then
+   * replaces the dump file, so an interrupted save never leaves a truncated dump behind.
+   * The replaced dump is kept as a {@code .backup} file.
+   */
+  public static void save(File dumpFile, Scene scene, TaskTracker taskTracker) throws IOException {
+    replaceFile(dumpFile, out -> save(out, scene, taskTracker));
+  }
+
+  interface DumpWriter {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Write a dump to a temporary file which then replaces the dump file.
+   * The replaced dump is kept as a {@code .backup} file.
+   */
+  static void replaceFile(File dumpFile, DumpWriter writer) throws IOException {
+    File tempFile = new File(dumpFile.getParentFile(), dumpFile.getName() + ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(tempFile)) {
+        writer.write(out);
+      }
+      if (dumpFile.isFile()) {
+        File backup = new File(dumpFile.getParentFile(), dumpFile.getName() + ".backup");
+        try {
+          Files.move(dumpFile.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+          // It is not a problem if we fail to create the backup.
+          Log.info("Could not create backup " + backup.getName());
+        }
+      }
+      try {
+        Files.move(tempFile.toPath(), dumpFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), dumpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Save a render dump snapshot to a file in the background, see {@link #save(File, Scene, TaskTracker)}.
+   *
+   * <p>The snapshot must be detached from rendering, see {@link Scene#renderDumpSnapshot()},
+   * and must not be used after this call: its sample buffer is recycled by later snapshots.
+   *
+   * <p>Only one dump is written at a time. If earlier dumps are still being written this waits
+   * for them, which bounds the memory used by snapshots waiting to be written.
+   *
+   * @return a future which completes when the dump has been written
+   */
+  public static CompletableFuture<Void> saveAsync(File dumpFile, Scene snapshot) {
+    awaitPendingSaves();
+    CompletableFuture<Void> save = CompletableFuture.runAsync(() -> {
+      long start = System.currentTimeMillis();
+      try {
+        save(dumpFile, snapshot, TaskTracker.NONE);
+        Log.infof("Render dump saved: %s (%d ms)", dumpFile, System.currentTimeMillis() - start);
+      } catch (IOException e) {
+        Log.warn("Failed to save the render dump", e);
+        throw new CompletionException(e);
+      } finally {
+        recycleBuffer(snapshot.getSampleBuffer());
+      }
+    }, DUMP_WRITER);
+    synchronized (RenderDump.class) {
+      pendingSave = save;
+    }
+    return save;
+  }
+
+  /**
+   * Wait until all render dumps saved with {@link #saveAsync(File, Scene)} have been written.
+   */
+  public static void awaitPendingSaves() {
+    CompletableFuture<Void> pending;
+    synchronized (RenderDump.class) {
+      pending = pendingSave;
+    }
+    try {
+      pending.join();
+    } catch (CompletionException e) {
+      // The failure has already been logged.
+    }
+  }
+
+  /**
+   * Get a sample buffer for a render dump snapshot. The buffer of the last written
+   * snapshot is reused if it has the right size, avoiding a large allocation per dump.
+   * The contents of the returned buffer are undefined.
+   */
+  public static synchronized double[] snapshotBuffer(int length) {
+    double[] buffer = spareBuffer.get();
+    spareBuffer.clear();
+    if (buffer == null || buffer.length != length) {
+      buffer = new double[length];
+      snapshotBuffers.add(buffer);
+    }
+    return buffer;
+  }
+
+  private static synchronized void recycleBuffer(double[] buffer) {
+    if (snapshotBuffers.contains(buffer)) {
+      spareBuffer = new SoftReference<>(buffer);
+    }
+  }
 }
@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.renderdump;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.util.TaskTracker;
+import se.llbit.util.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Merges several render dumps of the same scene in one streaming pass, for example dumps
+ * rendered on different machines. Each dump is weighted by its samples per pixel.
+ *
+ * <p>The dumps are read concurrently, one stripe of rows at a time, and each merged stripe
+ * is written as soon as it is complete. Only one stripe per dump is kept in memory.
+ * Dumps in formats that can not be read row by row (all but the FPC formats) are
+ * loaded completely instead.
+ *
+ * <p>Alpha samples are merged if any of the dumps has them. Each pixel is weighted over
+ * the dumps that have alpha samples for it.
+ */
+public class RenderDumpMerger implements Closeable {
+
+  /**
+   * Receives the merged samples, one stripe at a time in row order.
+   */
+  @FunctionalInterface
+  public interface StripeConsumer {
+    /**
+     * @param samples merged samples of the stripe, the first sample belongs to the first
+     *                pixel of row {@code y}
+     * @param y       first row of the stripe
+     * @param rows    number of rows in the stripe
+     */
+    void accept(double[] samples, int y, int rows) throws IOException;
+  }
+
+  private final List<StripeSource> sources = new ArrayList<>();
+  private final int width;
+  private final int height;
+  private final int spp;
+  private final long renderTime;
+
+  /**
+   * Open the render dumps and read their headers.
+   *
+   * @throws IllegalStateException If the dumps do not have the same canvas size.
+   */
+  public RenderDumpMerger(List<File> dumps) throws IOException, IllegalStateException {
+    if (dumps.isEmpty()) {
+      throw new IllegalArgumentException("No render dumps to merge");
+    }
+    try {
+      for (File dump : dumps) {
+        sources.add(StripeSource.open(dump));
+      }
+      StripeSource first = sources.get(0);
+      long totalSpp = 0;
+      long totalRenderTime = 0;
+      for (StripeSource source : sources) {
+        if (source.width != first.width || source.height != first.height) {
+          throw new IllegalStateException(String.format(
+              "Render dump size of %s (%dx%d) does not match %s (%dx%d)",
+              source.file, source.width, source.height, first.file, first.width, first.height));
+        }
+        totalSpp += source.spp;
+        totalRenderTime += source.renderTime;
+      }
+      if (totalSpp > Integer.MAX_VALUE) {
+        throw new IllegalStateException(String.format(
+            "Total SPP of the render dumps (%d) is too large for a render dump", totalSpp));
+      }
+      width = first.width;
+      height = first.height;
+      spp = (int) totalSpp;
+      renderTime = totalRenderTime;
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return the total samples per pixel of the merged dumps
+   */
+  public int getSpp() {
+    return spp;
+  }
+
+  /**
+   * @return the total render time of the merged dumps in milliseconds
+   */
+  public long getRenderTime() {
+    return renderTime;
+  }
+
+  /**
+   * Merge the dumps and write the result as a striped FPC render dump.
+   *
+   * @param outputStream Stream to write the merged dump to.
+   * @param consumer     Optional consumer of the merged stripes, for example to write an image.
+   */
+  public void merge(OutputStream outputStream, @Nullable StripeConsumer consumer,
+      TaskTracker taskTracker) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+    StripedFloatingPointCompressorDumpFormat format = StripedFloatingPointCompressorDumpFormat.INSTANCE;
+    int stripeHeight = StripedFloatingPointCompressorDumpFormat.stripeHeight(width);
+    int stripeCount = (height + stripeHeight - 1) / stripeHeight;
+    out.write(RenderDump.DUMP_FORMAT_MAGIC_NUMBER);
+    out.writeInt(format.getVersion());
+    out.writeInt(width);
+    out.writeInt(height);
+    out.writeInt(spp);
+    out.writeLong(renderTime);
+    StripedFloatingPointCompressorDumpFormat.writeStripeLayout(out, height, stripeHeight);
+
+    double[] weights = new double[sources.size()];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = spp > 0 ? sources.get(i).spp / (double) spp : 1.0 / weights.length;
+    }
+
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    int stripeSize = stripeHeight * width * 3;
+    double[][] stripes = new double[sources.size()][stripeSize];
+    // The previous merged stripe is compressed while the next one is read.
+    double[][] merged = { new double[stripeSize], new double[stripeSize] };
+    Future<byte[]> compressed = null;
+    try (TaskTracker.Task task = taskTracker.task("Merging render dumps", height)) {
+      for (int stripe = 0; stripe < stripeCount; ++stripe) {
+        int y = stripe * stripeHeight;
+        int rows = Math.min(stripeHeight, height - y);
+
+        List<Future<Void>> reads = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); ++i) {
+          StripeSource source = sources.get(i);
+          double[] buffer = stripes[i];
+          reads.add(pool.submit(() -> {
+            source.readRows(rows, buffer);
+            return null;
+          }));
+        }
+        for (Future<Void> read : reads) {
+          StripedFloatingPointCompressorDumpFormat.await(read);
+        }
+
+        double[] result = merged[stripe % 2];
+        int size = rows * width * 3;
+        for (int j = 0; j < size; ++j) {
+          double sum = 0;
+          for (int i = 0; i < stripes.length; ++i) {
+            sum += stripes[i][j] * weights[i];
+          }
+          result[j] = sum;
+        }
+        if (consumer != null) {
+          consumer.accept(result, y, rows);
+        }
+
+        if (compressed != null) {
+          StripedFloatingPointCompressorDumpFormat.writeStripe(out,
+              StripedFloatingPointCompressorDumpFormat.await(compressed));
+        }
+        int pixels = rows * width;
+        compressed = pool.submit(
+            () -> StripedFloatingPointCompressorDumpFormat.compressStripe(result, 0, pixels));
+        task.update(height, y + rows);
+      }
+      if (compressed != null) {
+        StripedFloatingPointCompressorDumpFormat.writeStripe(out,
+            StripedFloatingPointCompressorDumpFormat.await(compressed));
+      }
+    }
+    mergeAlpha(out, weights, stripeHeight);
+    out.flush();
+  }
+
+  /**
+   * Merge and write the alpha samples, after all sample stripes have been read.
+   */
+  private void mergeAlpha(DataOutputStream out, double[] weights, int stripeHeight)
+      throws IOException {
+    List<StripeSource> alphaSources = new ArrayList<>();
+    for (StripeSource source : sources) {
+      if (source.startAlpha()) {
+        alphaSources.add(source);
+      }
+    }
+    if (alphaSources.isEmpty()) {
+      return;
+    }
+    StripedFloatingPointCompressorDumpFormat.writeAlphaSection(out);
+    StripedFloatingPointCompressorDumpFormat.writeStripeLayout(out, height, stripeHeight);
+    float[][] stripes = new float[sources.size()][stripeHeight * width];
+    float[] merged = new float[stripeHeight * width];
+    for (int y = 0; y < height; y += stripeHeight) {
+      int rows = Math.min(stripeHeight, height - y);
+      int pixels = rows * width;
+      for (int i = 0; i < sources.size(); ++i) {
+        if (alphaSources.contains(sources.get(i))) {
+          sources.get(i).readAlphaRows(rows, stripes[i]);
+        } else {
+          Arrays.fill(stripes[i], 0, pixels, Float.NaN);
+        }
+      }
+      for (int j = 0; j < pixels; ++j) {
+        double sum = 0;
+        double weight = 0;
+        for (int i = 0; i < stripes.length; ++i) {
+          if (!Float.isNaN(stripes[i][j])) {
+            sum += stripes[i][j] * weights[i];
+            weight += weights[i];
+          }
+        }
+        merged[j] = weight > 0 ? (float) (sum / weight) : Float.NaN;
+      }
+      StripedFloatingPointCompressorDumpFormat.writeStripe(out,
+          StripedFloatingPointCompressorDumpFormat.compressAlpha(merged, 0, pixels));
+    }
+  }
+
+  /**
+   * Merge the dumps into a dump file, see {@link #merge(OutputStream, StripeConsumer, TaskTracker)}.
+   * The merged dump is written to a temporary file which then replaces the dump file, so the
+   * dump file can be one of the merged dumps. The input dumps are closed before that.
+   */
+  public void mergeInto(File dumpFile, @Nullable StripeConsumer consumer, TaskTracker taskTracker)
+      throws IOException {
+    RenderDump.replaceFile(dumpFile, out -> {
+      try {
+        merge(out, consumer, taskTracker);
+      } finally {
+        close();
+      }
+    });
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException error = null;
+    for (StripeSource source : sources) {
+      try {
+        source.close();
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Reads the samples of one render dump, a few rows at a time.
+   */
+  private abstract static class StripeSource implements Closeable {
+    final File file;
+    int width;
+    int height;
+    int spp;
+    long renderTime;
+
+    StripeSource(File file) {
+      this.file = file;
+    }
+
+    static StripeSource open(File file) throws IOException {
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file), 1 << 16));
+      try {
+        int version = RenderDump.readVersion(in);
+        if (version == StripedFloatingPointCompressorDumpFormat.INSTANCE.getVersion()) {
+          return new StripedSource(file, in);
+        } else if (version == FloatingPointCompressorDumpFormat.INSTANCE.getVersion()) {
+          return new FpcSource(file, in);
+        }
+        in.close();
+        return new LoadedSource(file, version);
+      } catch (IOException | RuntimeException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    void readHeader(DataInputStream in) throws IOException {
+      width = in.readInt();
+      height = in.readInt();
+      spp = in.readInt();
+      renderTime = in.readLong();
+    }
+
+    /**
+     * Read the next rows of the dump into the start of the buffer.
+     */
+    abstract void readRows(int rows, double[] buffer) throws IOException;
+
+    /**
+     * Start reading the alpha samples, after all rows have been read.
+     *
+     * @return {@code false} if the dump does not contain alpha samples
+     */
+    boolean startAlpha() throws IOException {
+      return false;
+    }
+
+    /**
+     * Read the alpha samples of the next rows into the start of the buffer.
+     */
+    void readAlphaRows(int rows, float[] buffer) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Reads a striped FPC dump one stripe at a time.
+   */
+  private static class StripedSource extends StripeSource {
+    private final DataInputStream in;
+    private final int stripeHeight;
+    private double[] stripe;
+    /** First row of the next stripe. */
+    private int stripeY = 0;
+    private int stripeRows = 0;
+    private int stripeRow = 0;
+    private int alphaStripeHeight;
+    private float[] alphaStripe;
+
+    StripedSource(File file, DataInputStream in) throws IOException {
+      super(file);
+      this.in = in;
+      readHeader(in);
+      stripeHeight = StripedFloatingPointCompressorDumpFormat.readStripeLayout(in, height);
+    }
+
+    @Override void readRows(int rows, double[] buffer) throws IOException {
+      int row = 0;
+      while (row < rows) {
+        if (stripeRow == stripeRows) {
+          nextStripe();
+        }
+        int count = Math.min(rows - row, stripeRows - stripeRow);
+        System.arraycopy(stripe, stripeRow * width * 3, buffer, row * width * 3, count * width * 3);
+        row += count;
+        stripeRow += count;
+      }
+    }
+
+    private void nextStripe() throws IOException {
+      byte[] data = StripedFloatingPointCompressorDumpFormat.readStripe(in);
+      if (stripe == null) {
+        stripe = new double[stripeHeight * width * 3];
+      }
+      double[] samples = stripe;
+      stripeRows = Math.min(stripeHeight, height - stripeY);
+      stripeRow = 0;
+      stripeY += stripeRows;
+      FloatingPointCompressorDumpFormat.decompress(new ByteArrayInputStream(data), 0,
+          stripeRows * width, (index, r, g, b) -> {
+            samples[index * 3] = r;
+            samples[index * 3 + 1] = g;
+            samples[index * 3 + 2] = b;
+          }, i -> {});
+    }
+
+    @Override boolean startAlpha() throws IOException {
+      if (!StripedFloatingPointCompressorDumpFormat.readAlphaSection(in)) {
+        return false;
+      }
+      alphaStripeHeight = StripedFloatingPointCompressorDumpFormat.readStripeLayout(in, height);
+      alphaStripe = new float[alphaStripeHeight * width];
+      stripeY = 0;
+      stripeRows = 0;
+      stripeRow = 0;
+      return true;
+    }
+
+    @Override void readAlphaRows(int rows, float[] buffer) throws IOException {
+      int row = 0;
+      while (row < rows) {
+        if (stripeRow == stripeRows) {
+          stripeRows = Math.min(alphaStripeHeight, height - stripeY);
+          stripeRow = 0;
+          StripedFloatingPointCompressorDumpFormat.decompressAlpha(
+              StripedFloatingPointCompressorDumpFormat.readStripe(in), alphaStripe, 0,
+              stripeRows * width);
+          stripeY += stripeRows;
+        }
+        int count = Math.min(rows - row, stripeRows - stripeRow);
+        System.arraycopy(alphaStripe, stripeRow * width, buffer, row * width, count * width);
+        row += count;
+        stripeRow += count;
+      }
+    }
+
+    @Override public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads an FPC dump pixel by pixel.
+   */
+  private static class FpcSource extends StripeSource {
+    private final DataInputStream in;
+    private final FloatingPointCompressorDumpFormat.PixelDecoder decoder;
+    private int nextPixel = 0;
+
+    FpcSource(File file, DataInputStream in) throws IOException {
+      super(file);
+      this.in = in;
+      readHeader(in);
+      decoder = new FloatingPointCompressorDumpFormat.PixelDecoder(in, 0, width * height);
+    }
+
+    @Override void readRows(int rows, double[] buffer) throws IOException {
+      int start = nextPixel;
+      decoder.decode(rows * width, (index, r, g, b) -> {
+        int offset = (index - start) * 3;
+        buffer[offset] = r;
+        buffer[offset + 1] = g;
+        buffer[offset + 2] = b;
+      });
+      nextPixel += rows * width;
+    }
+
+    @Override public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Loads a dump completely, for formats which are not stored in row order or can not
+   * be decoded incrementally.
+   */
+  private static class LoadedSource extends StripeSource {
+    private final double[] samples;
+    private int nextRow = 0;
+
+    LoadedSource(File file, int version) throws IOException {
+      super(file);
+      Log.warnf("Render dump %s (version %d) can not be streamed, loading it into memory.",
+          file, version);
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)))) {
+        if (version == 0) {
+          // Classic dumps are GZIP compressed without the container format.
+          DataInputStream classic = new DataInputStream(new GZIPInputStream(in));
+          width = classic.readInt();
+          height = classic.readInt();
+        } else {
+          in.skipBytes(RenderDump.DUMP_FORMAT_MAGIC_NUMBER.length + 4);
+          width = in.readInt();
+          height = in.readInt();
+        }
+      }
+      Scene scene = new Scene();
+      scene.setCanvasSize(width, height);
+      try (FileInputStream in = new FileInputStream(file)) {
+        RenderDump.load(in, scene, TaskTracker.NONE);
+      }
+      samples = scene.getSampleBuffer();
+      spp = scene.spp;
+      renderTime = scene.renderTime;
+    }
+
+    @Override void readRows(int rows, double[] buffer) {
+      System.arraycopy(samples, nextRow * width * 3, buffer, 0, rows * width * 3);
+      nextRow += rows;
+    }
+
+    @Override public void close() {
+    }
+  }
+}
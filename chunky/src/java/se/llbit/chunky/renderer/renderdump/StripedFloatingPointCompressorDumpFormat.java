@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.renderdump;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.scene.Scene;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * FPC compressed dump format where the sample buffer is split into stripes of rows.
+ * Each stripe is compressed independently, so stripes are compressed and decompressed
+ * in parallel.
+ *
+ * <p>After the usual header the dump contains the stripe height and the number of stripes,
+ * followed by the stripes. Each stripe starts with its compressed length, so a reader can
+ * skip to any stripe without decompressing the stripes before it.
+ *
+ * <p>Dumps of transparent sky renders end with an alpha section: a marker, the stripe height
+ * and number of stripes, followed by the deflated alpha samples of each stripe. Dumps without
+ * the alpha section end after the last sample stripe.
+ */
+public class StripedFloatingPointCompressorDumpFormat extends AbstractDumpFormat {
+  public static final StripedFloatingPointCompressorDumpFormat INSTANCE =
+      new StripedFloatingPointCompressorDumpFormat();
+
+  /** Approximate number of pixels per stripe. */
+  private static final int STRIPE_PIXELS = 1 << 18;
+
+  /** Marks the optional alpha section after the sample stripes ("ALPH"). */
+  private static final int ALPHA_SECTION = 0x414C5048;
+
+  private StripedFloatingPointCompressorDumpFormat() {}
+
+  @Override
+  public int getVersion() {
+    return 5;
+  }
+
+  @Override
+  public String getName() {
+    return "Striped Floating Point Compressor";
+  }
+
+  @Override
+  public String getDescription() {
+    return "FPC compressed dump format with stripes that are compressed in parallel.";
+  }
+
+  @Override
+  public String getId() {
+    return "StripedFloatingPointCompressorDumpFormat";
+  }
+
+  /**
+   * Number of rows per stripe for the given canvas width.
+   */
+  static int stripeHeight(int width) {
+    return Math.max(1, STRIPE_PIXELS / Math.max(1, width));
+  }
+
+  @Override
+  protected void readSamples(DataInputStream inputStream, Scene scene,
+                             PixelConsumer consumer, IntConsumer pixelProgress)
+      throws IOException {
+    int width = scene.width;
+    int height = scene.height;
+    int stripeHeight = readStripeLayout(inputStream, height);
+
+    // The consumer is called concurrently for different pixels.
+    readStripes(inputStream, height, stripeHeight, (data, y, rows) ->
+        FloatingPointCompressorDumpFormat.decompress(new ByteArrayInputStream(data),
+            y * width, (y + rows) * width, consumer, i -> {}),
+        y -> pixelProgress.accept(y * width));
+  }
+
+  @Override
+  protected void writeSamples(DataOutputStream outputStream, Scene scene,
+                              IntConsumer pixelProgress)
+      throws IOException {
+    double[] samples = scene.getSampleBuffer();
+    int width = scene.width;
+    int height = scene.height;
+    int stripeHeight = stripeHeight(width);
+    writeStripeLayout(outputStream, height, stripeHeight);
+    writeStripes(outputStream, height, stripeHeight,
+        (y, rows) -> compressStripe(samples, y * width, (y + rows) * width),
+        y -> pixelProgress.accept(y * width));
+  }
+
+  @Override
+  protected void writeAlpha(DataOutputStream outputStream, Scene scene) throws IOException {
+    float[] alpha = scene.getAlphaSamples();
+    int width = scene.width;
+    int height = scene.height;
+    int stripeHeight = stripeHeight(width);
+    writeAlphaSection(outputStream);
+    writeStripeLayout(outputStream, height, stripeHeight);
+    writeStripes(outputStream, height, stripeHeight,
+        (y, rows) -> compressAlpha(alpha, y * width, (y + rows) * width), y -> {});
+  }
+
+  @Override
+  protected boolean readAlpha(DataInputStream inputStream, Scene scene, float[] alpha)
+      throws IOException {
+    if (!readAlphaSection(inputStream)) {
+      return false;
+    }
+    int width = scene.width;
+    int height = scene.height;
+    int stripeHeight = readStripeLayout(inputStream, height);
+    readStripes(inputStream, height, stripeHeight,
+        (data, y, rows) -> decompressAlpha(data, alpha, y * width, (y + rows) * width), y -> {});
+    return true;
+  }
+
+  /**
+   * Compresses the stripe starting at row {@code y}.
+   */
+  @FunctionalInterface
+  interface StripeCompressor {
+    byte[] compress(int y, int rows);
+  }
+
+  /**
+   * Decompresses the stripe starting at row {@code y}.
+   */
+  @FunctionalInterface
+  interface StripeDecompressor {
+    void decompress(byte[] data, int y, int rows) throws IOException;
+  }
+
+  static void writeStripeLayout(DataOutputStream outputStream, int height, int stripeHeight)
+      throws IOException {
+    outputStream.writeInt(stripeHeight);
+    outputStream.writeInt((height + stripeHeight - 1) / stripeHeight);
+  }
+
+  /**
+   * Read the stripe height and number of stripes.
+   *
+   * @return the stripe height
+   */
+  static int readStripeLayout(DataInputStream inputStream, int height) throws IOException {
+    int stripeHeight = inputStream.readInt();
+    int stripeCount = inputStream.readInt();
+    if (stripeHeight <= 0 || stripeCount != (height + stripeHeight - 1) / stripeHeight) {
+      throw new IOException("Invalid render dump stripe layout");
+    }
+    return stripeHeight;
+  }
+
+  /**
+   * Compress stripes in parallel and write them in order, with a bounded number of
+   * compressed stripes in memory.
+   *
+   * @param rowProgress Progress consumer, called with the number of rows written.
+   */
+  static void writeStripes(DataOutputStream outputStream, int height, int stripeHeight,
+      StripeCompressor compressor, IntConsumer rowProgress) throws IOException {
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    int maxPending = 2 * pool.getParallelism();
+    ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    int written = 0;
+    for (int y = 0; y < height; y += stripeHeight) {
+      int y0 = y;
+      int rows = Math.min(stripeHeight, height - y);
+      pending.add(pool.submit(() -> compressor.compress(y0, rows)));
+      if (pending.size() >= maxPending) {
+        writeStripe(outputStream, await(pending.poll()));
+        written = Math.min(height, written + stripeHeight);
+        rowProgress.accept(written);
+      }
+    }
+    while (!pending.isEmpty()) {
+      writeStripe(outputStream, await(pending.poll()));
+      written = Math.min(height, written + stripeHeight);
+      rowProgress.accept(written);
+    }
+  }
+
+  /**
+   * Read stripes and decompress them in parallel.
+   *
+   * @param rowProgress Progress consumer, called with the number of rows decompressed.
+   */
+  static void readStripes(DataInputStream inputStream, int height, int stripeHeight,
+      StripeDecompressor decompressor, IntConsumer rowProgress) throws IOException {
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    int maxPending = 2 * pool.getParallelism();
+    ArrayDeque<Future<Integer>> pending = new ArrayDeque<>();
+    for (int y = 0; y < height; y += stripeHeight) {
+      int y0 = y;
+      int rows = Math.min(stripeHeight, height - y);
+      byte[] data = readStripe(inputStream);
+      pending.add(pool.submit(() -> {
+        try {
+          decompressor.decompress(data, y0, rows);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return y0 + rows;
+      }));
+      if (pending.size() >= maxPending) {
+        rowProgress.accept(await(pending.poll()));
+      }
+    }
+    while (!pending.isEmpty()) {
+      rowProgress.accept(await(pending.poll()));
+    }
+  }
+
+  static byte[] compressStripe(double[] samples, int start, int end) {
+    try {
+      // FPC stores at most 8.5 bytes per value, usually much less.
+      ByteArrayOutputStream out = new ByteArrayOutputStream((end - start) * 3 * 4);
+      FloatingPointCompressorDumpFormat.compress(samples, start, end, out, i -> {});
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static byte[] compressAlpha(float[] alpha, int start, int end) {
+    ByteBuffer buffer = ByteBuffer.allocate((end - start) * 4);
+    buffer.asFloatBuffer().put(alpha, start, end - start);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((end - start) / 4);
+      try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+        deflater.write(buffer.array());
+      }
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static void decompressAlpha(byte[] data, float[] alpha, int start, int end) throws IOException {
+    byte[] buffer = new byte[(end - start) * 4];
+    try (DataInputStream in = new DataInputStream(
+        new InflaterInputStream(new ByteArrayInputStream(data)))) {
+      in.readFully(buffer);
+    }
+    ByteBuffer.wrap(buffer).asFloatBuffer().get(alpha, start, end - start);
+  }
+
+  /**
+   * Check if the alpha section follows. Returns {@code false} at the end of the dump.
+   */
+  static boolean readAlphaSection(DataInputStream inputStream) throws IOException {
+    int first = inputStream.read();
+    if (first < 0) {
+      return false;
+    }
+    int marker = (first << 24) | (inputStream.readUnsignedByte() << 16)
+        | inputStream.readUnsignedShort();
+    if (marker != ALPHA_SECTION) {
+      throw new IOException("Invalid render dump alpha section");
+    }
+    return true;
+  }
+
+  static void writeAlphaSection(DataOutputStream outputStream) throws IOException {
+    outputStream.writeInt(ALPHA_SECTION);
+  }
+
+  static void writeStripe(DataOutputStream outputStream, byte[] data) throws IOException {
+    outputStream.writeInt(data.length);
+    outputStream.write(data);
+  }
+
+  static byte[] readStripe(DataInputStream inputStream) throws IOException {
+    int length = inputStream.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid render dump stripe length: " + length);
+    }
+    byte[] data = new byte[length];
+    inputStream.readFully(data);
+    return data;
+  }
+
+  /**
+   * Wait for a stripe task, rethrowing exceptions of the task.
+   */
+  static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while processing render dump stripes.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -222,6 +222,14 @@ public class AsynchronousSceneManager extends Thread implements SceneManager {
     enqueueTask(sceneManager::reloadChunks);
   }
 
+  /**
+   * Reload the chunks that changed since they were loaded
+   */
+  @Override
+  public void reloadChangedChunks() {
+    enqueueTask(sceneManager::reloadChangedChunks);
+  }
+
   /**
    * Merge a render dump into the current render.
    */
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.region.Region;
+import se.llbit.util.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The region file stamps (see {@link Region#getChunkStamp(ChunkPosition)}) of the chunks that
+ * were loaded into the octree of a scene. Used to find the chunks that changed in the world
+ * since they were loaded, and the settings they were loaded with.
+ */
+class ChunkStamps {
+  private static final int VERSION = 2;
+
+  /** Chunk and entity stamps by packed chunk position. */
+  private final Long2ObjectOpenHashMap<long[]> stamps = new Long2ObjectOpenHashMap<>();
+
+  private final String loadSettings;
+
+  /**
+   * @param loadSettings the chunk loading settings of the scene when the chunks are loaded,
+   * see {@link Scene#chunkLoadSettings()}
+   */
+  public ChunkStamps(String loadSettings) {
+    this.loadSettings = loadSettings;
+  }
+
+  /**
+   * @return the chunk loading settings that the recorded chunks were loaded with
+   */
+  public String getLoadSettings() {
+    return loadSettings;
+  }
+
+  /**
+   * Read and record the current stamps of a chunk. This should be done before the chunk data is
+   * read, so that a chunk saved in the meantime is detected as changed.
+   */
+  public synchronized void record(ChunkPosition pos, Region region) {
+    stamps.put(pos.getLong(), new long[] {
+        region.getChunkStamp(pos),
+        region.getEntityStamp(pos)
+    });
+  }
+
+  /**
+   * @return {@code true} if the chunk may have changed since it was recorded
+   */
+  public synchronized boolean isChanged(ChunkPosition pos, Region region) {
+    long[] recorded = stamps.get(pos.getLong());
+    if (recorded == null || recorded[0] == Region.UNKNOWN_STAMP
+        || recorded[1] == Region.UNKNOWN_STAMP) {
+      return true;
+    }
+    return recorded[0] != region.getChunkStamp(pos) || recorded[1] != region.getEntityStamp(pos);
+  }
+
+  /**
+   * @return {@code true} if stamps were recorded for all the given chunks
+   */
+  public synchronized boolean containsAll(Collection<ChunkPosition> chunks) {
+    for (ChunkPosition pos : chunks) {
+      if (!stamps.containsKey(pos.getLong())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write the stamps of the given chunks in order, to identify the loaded chunk data.
+   *
+   * @param chunks packed chunk positions
+   * @return {@code false} if the stamps of some chunk are missing or unknown
+   */
+  public synchronized boolean writeStamps(DataOutputStream out, long[] chunks)
+      throws IOException {
+    for (long pos : chunks) {
+      long[] recorded = stamps.get(pos);
+      if (recorded == null || recorded[0] == Region.UNKNOWN_STAMP
+          || recorded[1] == Region.UNKNOWN_STAMP) {
+        return false;
+      }
+      out.writeLong(recorded[0]);
+      out.writeLong(recorded[1]);
+    }
+    return true;
+  }
+
+  public synchronized void clear() {
+    stamps.clear();
+  }
+
+  /**
+   * Write the stamps.
+   *
+   * @param octreeTimestamp timestamp of the octree file the stamps belong to
+   */
+  public synchronized void write(DataOutputStream out, long octreeTimestamp) throws IOException {
+    out.writeInt(VERSION);
+    out.writeLong(octreeTimestamp);
+    out.writeUTF(loadSettings);
+    out.writeInt(stamps.size());
+    for (Long2ObjectMap.Entry<long[]> entry : stamps.long2ObjectEntrySet()) {
+      out.writeLong(entry.getLongKey());
+      out.writeLong(entry.getValue()[0]);
+      out.writeLong(entry.getValue()[1]);
+    }
+  }
+
+  /**
+   * Read stamps written by {@link #write(DataOutputStream, long)}.
+   *
+   * @param octreeTimestamp timestamp of the loaded octree file
+   * @return the stamps, or {@code null} if they were not written for the given octree file
+   */
+  @Nullable
+  public static ChunkStamps read(DataInputStream in, long octreeTimestamp) throws IOException {
+    if (in.readInt() != VERSION || in.readLong() != octreeTimestamp) {
+      return null;
+    }
+    ChunkStamps result = new ChunkStamps(in.readUTF());
+    int size = in.readInt();
+    for (int i = 0; i < size; ++i) {
+      long pos = in.readLong();
+      result.stamps.put(pos, new long[] { in.readLong(), in.readLong() });
+    }
+    return result;
+  }
+}
@@ -65,12 +65,12 @@ public class OctreeFinalizer {
     int y = cy - origin.y;
     if (cy > yMin && cy < yMax - 1) {
       boolean isHidden =
-          worldTree.getMaterial(x - 1, y, z, palette).opaque
-              && worldTree.getMaterial(x + 1, y, z, palette).opaque
-              && worldTree.getMaterial(x, y, z - 1, palette).opaque
-              && worldTree.getMaterial(x, y, z + 1, palette).opaque
-              && worldTree.getMaterial(x, y - 1, z, palette).opaque
-              && worldTree.getMaterial(x, y + 1, z, palette).opaque;
+          palette.isOpaque(worldTree.getBlockId(x - 1, y, z, palette))
+              && palette.isOpaque(worldTree.getBlockId(x + 1, y, z, palette))
+              && palette.isOpaque(worldTree.getBlockId(x, y, z - 1, palette))
+              && palette.isOpaque(worldTree.getBlockId(x, y, z + 1, palette))
+              && palette.isOpaque(worldTree.getBlockId(x, y - 1, z, palette))
+              && palette.isOpaque(worldTree.getBlockId(x, y + 1, z, palette));
       if (isHidden) {
         worldTree.set(BlockPalette.ANY_ID, x, y, z);
       }
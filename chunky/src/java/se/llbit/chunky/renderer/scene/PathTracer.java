@@ -69,7 +69,11 @@ public class PathTracer implements RayTracer {
         if (ray.getPrevMaterial().isWater()) {
           ray.color.set(0, 0, 0, 1);
           hit = true;
-        } else if (ray.depth == 0) {
+          break;
+        }
+        // The sky is visible through all transparent surfaces passed so far.
+        state.skyTransmittance += state.transmittedWeight;
+        if (ray.depth == 0) {
           // Direct sky hit.
           if (!scene.transparentSky()) {
             scene.sky.getSkyColorInterpolated(ray);
@@ -136,18 +140,25 @@ public class PathTracer implements RayTracer {
       // Therefore, it's still necessary to have a decent amount (20 is ok, 50 is better) of distinct starting rays for each pixel
       // scene.branchCount is the number of times we use the same first ray before casting a new one
       int count = firstReflection ? scene.getCurrentBranchCount() : 1;
+      // Only transmitted and refracted rays carry sky visibility for the alpha channel.
+      double transmittedWeight = state.transmittedWeight / count;
       for (int i = 0; i < count; i++) {
         boolean doMetal = pMetal > Ray.EPSILON && random.nextFloat() < pMetal;
         if (doMetal || (pSpecular > Ray.EPSILON && random.nextFloat() < pSpecular)) {
+          state.transmittedWeight = 0;
           hit |= doSpecularReflection(ray, next, cumulativeColor, doMetal, random, state, scene);
         } else if(random.nextFloat() < pDiffuse) {
+          state.transmittedWeight = 0;
           hit |= doDiffuseReflection(ray, next, currentMat, cumulativeColor, addEmitted, random, state, scene);
         } else if (n1 != n2) {
+          state.transmittedWeight = transmittedWeight;
           hit |= doRefraction(ray, next, currentMat, prevMat, cumulativeColor, n1, n2, pDiffuse, random, state, scene);
         } else {
+          state.transmittedWeight = transmittedWeight;
           hit |= doTransmission(ray, next, cumulativeColor, pDiffuse, state, scene);
         }
       }
+      state.transmittedWeight = transmittedWeight * count;
       ray.color.set(cumulativeColor);
       ray.color.scale(1d/count);
 
@@ -338,6 +349,7 @@ public class PathTracer implements RayTracer {
     if (doRefraction && radicand < Ray.EPSILON) {
       // Total internal reflection.
       next.specularReflection(ray, random);
+      state.transmittedWeight = 0;
       if (pathTrace(scene, next, state, 1, false)) {
         ray.emittance.x = ray.color.x * next.emittance.x;
         ray.emittance.y = ray.color.y * next.emittance.y;
@@ -362,6 +374,7 @@ public class PathTracer implements RayTracer {
 
       if (random.nextFloat() < Rtheta) {
         next.specularReflection(ray, random);
+        state.transmittedWeight = 0;
         if (pathTrace(scene, next, state, 1, false)) {
           ray.emittance.x = ray.color.x * next.emittance.x;
           ray.emittance.y = ray.color.y * next.emittance.y;
@@ -45,7 +45,9 @@ import se.llbit.chunky.renderer.projection.ProjectionMode;
 import se.llbit.chunky.renderer.renderdump.RenderDump;
 import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
 import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.chunky.resources.BlockCompressedOctreeFileFormat;
 import se.llbit.chunky.resources.OctreeFileFormat;
+import se.llbit.chunky.resources.ResourcePackLoader;
 import se.llbit.chunky.world.*;
 import se.llbit.chunky.world.biome.ArrayBiomePalette;
 import se.llbit.chunky.world.biome.Biome;
@@ -59,11 +61,16 @@ import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.Tag;
 import se.llbit.util.*;
 import se.llbit.util.annotation.NotNull;
+import se.llbit.util.annotation.Nullable;
 import se.llbit.util.mojangapi.MinecraftProfile;
 
 import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -237,6 +244,18 @@ public class Scene implements JsonSerializable, Refreshable {
   protected boolean biomeBlending = true;
   protected boolean transparentSky = false;
   protected Collection<ChunkPosition> chunks = new ArrayList<>();
+  /** Region file stamps of the loaded chunks, used to reload only changed chunks. */
+  private ChunkStamps chunkStamps = new ChunkStamps("");
+  /**
+   * Content key of the octree in the shared octree store, or {@code null} if the octree is
+   * saved with the scene.
+   */
+  private String sharedOctreeKey = null;
+  /**
+   * Content key of the loaded octree, computed when chunks are loaded or reloaded, or
+   * {@code null} if the octree can not be shared. See {@link #computeOctreeContentKey()}.
+   */
+  private String octreeContentKey = null;
   protected JsonObject cameraPresets = new JsonObject();
   /**
    * Indicates if the render should be forced to reset.
@@ -305,6 +324,14 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   protected double[] samples;
 
+  /**
+   * Alpha samples, the fraction of samples per pixel that did not escape directly to the sky.
+   * These are accumulated by the path tracing renderer when the sky is transparent.
+   * Pixels without alpha samples are {@code NaN}, for example after loading an old
+   * render dump.
+   */
+  protected float[] alphaSamples;
+
   private byte[] alphaChannel;
 
   private boolean finalized = false;
@@ -369,7 +396,8 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   public static void delete(String name, File sceneDir) {
     String[] extensions = {
-        ".json", ".dump", ".octree2", ".emittergrid", ".foliage", ".grass", ".json.backup", ".dump.backup",
+        ".json", ".dump", ".octree2", ".octree3", ".octreecache", ".chunkstamps", ".emittergrid",
+        ".bvhcache", ".foliage", ".grass", ".json.backup", ".dump.backup",
     };
     for (String extension : extensions) {
       File file = new File(sceneDir, name + extension);
@@ -378,13 +406,18 @@ public class Scene implements JsonSerializable, Refreshable {
         file.delete();
       }
     }
+    // The scene may have been the last one to use its shared octree.
+    SharedOctreeStore.getDefault().prune();
   }
 
   /**
    * Export the scene to a zip file.
+   *
+   * <p>Scenes using a shared octree keep a link to it in the scene directory, so the octree
+   * is exported with the scene.
    */
   public static void exportToZip(File sceneDirectory, String name, File targetFile) {
-    String[] extensions = { ".json", ".dump", ".octree2", ".foliage", ".grass", ".emittergrid", };
+    String[] extensions = { ".json", ".dump", ".octree2", ".octree3", ".foliage", ".grass", ".emittergrid", };
     ZipExport.zip(targetFile, sceneDirectory, name, extensions);
   }
 
@@ -397,6 +430,8 @@ public class Scene implements JsonSerializable, Refreshable {
     backBuffer = new BitmapImage(width, height);
     alphaChannel = new byte[width * height];
     samples = new double[width * height * 3];
+    alphaSamples = new float[width * height];
+    Arrays.fill(alphaSamples, Float.NaN);
   }
 
   /**
@@ -432,6 +467,9 @@ public class Scene implements JsonSerializable, Refreshable {
       yMax = other.yMax;
 
       chunks = other.chunks;
+      chunkStamps = other.chunkStamps;
+      sharedOctreeKey = other.sharedOctreeKey;
+      octreeContentKey = other.octreeContentKey;
 
       emitterGrid = other.emitterGrid;
     }
@@ -485,6 +523,7 @@ public class Scene implements JsonSerializable, Refreshable {
       frontBuffer = other.frontBuffer;
       alphaChannel = other.alphaChannel;
       samples = other.samples;
+      alphaSamples = other.alphaSamples;
     }
 
     fullWidth = other.fullWidth;
@@ -518,15 +557,39 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   public synchronized void saveScene(SceneIOProvider context, TaskTracker taskTracker)
       throws IOException {
+    saveScene(context, taskTracker, null);
+  }
+
+  /**
+   * Save the scene description, render dump, and foliage
+   * and grass textures.
+   *
+   * <p>The render dump is written in the background from a snapshot of the render state.
+   *
+   * @param dumpSnapshot render dump snapshot taken at a render pass boundary, or {@code null}
+   * to copy the render state of this scene now. Copying now is only safe when this scene is not
+   * being rendered, see {@link RenderManager#takeDumpSnapshot()}.
+   */
+  public synchronized void saveScene(SceneIOProvider context, TaskTracker taskTracker,
+      @Nullable Scene dumpSnapshot) throws IOException {
     try (TaskTracker.Task task = taskTracker.task("Saving scene", 2)) {
       task.update(1);
 
+      // The shared octree is referenced by the scene description.
+      sharedOctreeKey = PersistentSettings.getShareSceneOctrees() ? octreeContentKey : null;
+
       try (BufferedOutputStream out = new BufferedOutputStream(context.getSceneDescriptionOutputStream(name))) {
         saveDescription(out);
       }
 
       saveOctree(context, taskTracker);
-      saveDump(context, taskTracker);
+      // The scene may no longer link to the shared octree it used before.
+      SharedOctreeStore.getDefault().prune();
+      saveBvhCache(context);
+      if (dumpSnapshot == null || dumpSnapshot.width != width || dumpSnapshot.height != height) {
+        dumpSnapshot = renderDumpSnapshot();
+      }
+      saveDumpAsync(context, dumpSnapshot);
       saveEmitterGrid(context, taskTracker);
     }
   }
@@ -793,6 +856,204 @@ public class Scene implements JsonSerializable, Refreshable {
     refresh();
   }
 
+  /**
+   * Reload the loaded chunks that changed in the world since they were loaded.
+   *
+   * <p>The changed chunks are patched into the octrees in place. The render shares the octrees
+   * with this scene, so the caller must make sure that no render pass runs meanwhile, see
+   * {@link se.llbit.chunky.renderer.RenderManager#withRenderPaused}. All chunks are reloaded
+   * instead if the changes can not be patched into the scene, for example because a setting
+   * that affects chunk loading changed since the chunks were loaded.
+   */
+  public synchronized void reloadChangedChunks(TaskTracker taskTracker) {
+    if (loadedWorld == EmptyWorld.INSTANCE) {
+      Log.warn("Can not reload chunks for scene - world directory not found!");
+      return;
+    }
+    loadedWorld = World.loadWorld(loadedWorld.getWorldDirectory(), worldDimension, World.LoggedWarnings.NORMAL);
+    if (!loadChangedChunks(taskTracker, loadedWorld)) {
+      loadChunks(taskTracker, loadedWorld, chunks);
+    }
+    refresh();
+  }
+
+  /**
+   * Load the chunks that changed since they were loaded, and their neighbors, into the
+   * octrees in place.
+   *
+   * @return {@code false} if all chunks have to be reloaded instead
+   */
+  private boolean loadChangedChunks(TaskTracker taskTracker, World world) {
+    // The emitter grid can not remove emitters, and a changed Y range or loading setting
+    // changes all chunks.
+    if (worldOctree == null || palette == null || grassTexture == null || chunks.isEmpty()
+        || yMin != yClipMin || yMax != yClipMax
+        || emitterSamplingStrategy != EmitterSamplingStrategy.NONE
+        || !chunkStamps.getLoadSettings().equals(chunkLoadSettings())
+        || !chunkStamps.containsAll(chunks)) {
+      return false;
+    }
+
+    Dimension dimension = world.currentDimension();
+    Set<ChunkPosition> loadedChunks = new HashSet<>(chunks);
+    Set<ChunkPosition> changedChunks = new HashSet<>();
+
+    try (TaskTracker.Task task = taskTracker.task("(1/5) Finding changed chunks")) {
+      task.update(2, 1);
+
+      Set<ChunkPosition> regions = new HashSet<>();
+      for (ChunkPosition cp : loadedChunks) {
+        regions.add(cp.getRegionPosition());
+      }
+      for (ChunkPosition region : regions) {
+        dimension.getRegion(region).parse(yMin, yMax);
+      }
+      for (ChunkPosition cp : loadedChunks) {
+        if (chunkStamps.isChanged(cp, dimension.getRegion(cp.getRegionPosition()))) {
+          changedChunks.add(cp);
+        }
+      }
+    }
+
+    if (changedChunks.isEmpty()) {
+      Log.info("No chunks changed since they were loaded");
+      return true;
+    }
+
+    // Block connections and water levels at chunk edges depend on both sides of the edge,
+    // so the neighbors of changed chunks are loaded again too. Biome blending reads one
+    // more ring of chunks.
+    Set<ChunkPosition> reloadedChunks = withLoadedNeighbors(changedChunks, loadedChunks);
+    Set<ChunkPosition> biomeChunks = withLoadedNeighbors(reloadedChunks, loadedChunks);
+    if (2 * biomeChunks.size() > loadedChunks.size()) {
+      return false;
+    }
+
+    isLoading = true;
+
+    BiomeStructure.Factory biomeStructureFactory = BiomeStructure.get(grassTexture.biomeFormat());
+
+    BiomePalette biomePalette = new ArrayBiomePalette();
+
+    Set<ChunkPosition> nonEmptyChunks = new HashSet<>();
+    Set<ChunkPosition> legacyChunks = new HashSet<>();
+
+    Position2IntStructure biomePaletteIdxStructure = biomeStructureFactory.createIndexStructure();
+    boolean use3dBiomes = biomeStructureFactory.is3d();
+
+    entities.removeEntitiesInChunks(reloadedChunks);
+
+    try (TaskTracker.Task task = taskTracker.task("(2/5) Loading chunks")) {
+      int done = 1;
+      int target = biomeChunks.size();
+
+      int[] cubeWorldBlocks = new int[16*16*16];
+      int[] cubeWaterBlocks = new int[16*16*16];
+      Mutable<ChunkData> reuseChunkData = new Mutable<>(null);
+
+      for (ChunkPosition cp : biomeChunks) {
+        task.updateEta(target, done);
+        done += 1;
+
+        boolean reload = reloadedChunks.contains(cp);
+        if (reload) {
+          chunkStamps.record(cp, dimension.getRegion(cp.getRegionPosition()));
+        }
+
+        ChunkData chunkData;
+        try {
+          dimension.getChunk(cp).getChunkData(reuseChunkData, palette, biomePalette, yMin, yMax);
+          chunkData = reuseChunkData.get();
+        } catch (ChunkLoadingException e) {
+          Log.warn(String.format("Failed to load chunk %s", cp), e);
+          chunkData = null;
+        }
+        if (chunkData == null) {
+          chunkData = EmptyChunkData.INSTANCE;
+        }
+
+        if (reload) {
+          loadChunkIntoOctree(dimension, cp, chunkData, biomePaletteIdxStructure, use3dBiomes,
+              cubeWorldBlocks, cubeWaterBlocks, nonEmptyChunks, legacyChunks);
+        } else {
+          loadBiomeIndices(cp, chunkData, biomePaletteIdxStructure, use3dBiomes);
+          if (!chunkData.isEmpty()) {
+            nonEmptyChunks.add(cp);
+          }
+        }
+      }
+    }
+
+    entities.finalizeLoading();
+    palette.unsynchronize();
+
+    try (TaskTracker.Task task = taskTracker.task("(3/5) Finalizing octree")) {
+
+      worldOctree.startFinalization();
+      waterOctree.startFinalization();
+
+      int done = 0;
+      int target = reloadedChunks.size();
+      for (ChunkPosition cp : reloadedChunks) {
+        task.updateEta(target, done);
+        done += 1;
+        if (!nonEmptyChunks.contains(cp)) {
+          continue;
+        }
+        finalizeBiomeTextures(cp, nonEmptyChunks, biomePalette, biomePaletteIdxStructure,
+            use3dBiomes);
+        OctreeFinalizer.finalizeChunk(worldOctree, waterOctree, palette, loadedChunks, origin, cp, yMin, yMax);
+        if (legacyChunks.contains(cp)) {
+          LegacyBlocksFinalizer
+              .finalizeChunk(worldOctree, waterOctree, palette, origin, cp, yMin, yMax);
+        }
+      }
+
+      worldOctree.endFinalization();
+      waterOctree.endFinalization();
+
+      grassTexture.compact();
+      foliageTexture.compact();
+      waterTexture.compact();
+    }
+
+    // The patched octree no longer matches the saved octree file.
+    worldOctree.setTimestamp(0);
+    octreeContentKey = computeOctreeContentKey();
+
+    entities.loadDataFromOctree(worldOctree, palette, origin);
+
+    try (TaskTracker.Task task = taskTracker.task("(4/5) Building world BVH")) {
+      buildBvh(task);
+    }
+    try (TaskTracker.Task task = taskTracker.task("(5/5) Building actor BVH")) {
+      buildActorBvh(task);
+    }
+    Log.info(String.format("Reloaded %d changed chunks", changedChunks.size()));
+
+    isLoading = false;
+    return true;
+  }
+
+  /**
+   * @return the given chunks and their neighbors that are in {@code loadedChunks}
+   */
+  private static Set<ChunkPosition> withLoadedNeighbors(Set<ChunkPosition> chunks,
+      Set<ChunkPosition> loadedChunks) {
+    Set<ChunkPosition> result = new HashSet<>(chunks);
+    for (ChunkPosition cp : chunks) {
+      for (int x = cp.x - 1; x <= cp.x + 1; ++x) {
+        for (int z = cp.z - 1; z <= cp.z + 1; ++z) {
+          ChunkPosition neighbor = new ChunkPosition(x, z);
+          if (loadedChunks.contains(neighbor)) {
+            result.add(neighbor);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
   /**
    * Load chunks into the octree.
    *
@@ -805,6 +1066,7 @@ public class Scene implements JsonSerializable, Refreshable {
       return;
 
     isLoading = true;
+    octreeContentKey = null;
 
     yMin = yClipMin;
     yMax = yClipMax;
@@ -827,6 +1089,8 @@ public class Scene implements JsonSerializable, Refreshable {
         return;
       }
 
+      chunkStamps = new ChunkStamps(chunkLoadSettings());
+
       int requiredDepth = calculateOctreeOrigin(chunksToLoad, false);
 
       // Create new octree to fit all chunks.
@@ -876,8 +1140,10 @@ public class Scene implements JsonSerializable, Refreshable {
       int[] cubeWorldBlocks = new int[16*16*16];
       int[] cubeWaterBlocks = new int[16*16*16];
 
+      ChunkStamps stamps = chunkStamps;
       ExecutorService executor = Executors.newSingleThreadExecutor();
       Future<?> nextChunkDataTask = executor.submit(() -> { //Initialise first chunk data for the for loop
+        stamps.record(chunkPositions[0], dimension.getRegion(chunkPositions[0].getRegionPosition()));
         dimension.getChunk(chunkPositions[0]).getChunkData(loadingChunkData, palette, biomePalette, yMin, yMax);
         return null; // runnable can't throw non-RuntimeExceptions, so we use a callable instead and have to return something
       });
@@ -910,6 +1176,8 @@ public class Scene implements JsonSerializable, Refreshable {
           if (i + 1 < chunkPositions.length) { // schedule next task if possible
             final int finalI = i;
             nextChunkDataTask = executor.submit(() -> { //request chunk data for the next iteration of the loop
+              stamps.record(chunkPositions[finalI + 1],
+                  dimension.getRegion(chunkPositions[finalI + 1].getRegionPosition()));
               dimension.getChunk(chunkPositions[finalI + 1]).getChunkData(loadingChunkData, palette, biomePalette, yMin, yMax);
               return null; // runnable can't throw non-RuntimeExceptions, so we use a callable instead and have to return something
             });
@@ -928,388 +1196,402 @@ public class Scene implements JsonSerializable, Refreshable {
 
         numChunks += 1;
 
-        int wx0 = cp.x * 16; // Start of this chunk in world coordinates.
-        int wz0 = cp.z * 16;
-        BiomeData biomeData = chunkData.getBiomeData();
-
-        if (use3dBiomes) {
-          for (int y = chunkData.minY(); y < chunkData.maxY(); y++) {
-            for (int cz = 0; cz < 16; ++cz) {
-              int wz = cz + wz0;
-              for (int cx = 0; cx < 16; ++cx) {
-                int wx = cx + wx0;
-                int biomePaletteIdx = biomeData.getBiome(cx, y, cz);
-                biomePaletteIdxStructure.set(wx, y, wz, biomePaletteIdx);
-              }
-            }
-          }
-        } else {
-          for (int cz = 0; cz < 16; ++cz) {
-            int wz = cz + wz0;
-            for (int cx = 0; cx < 16; ++cx) {
-              int wx = cx + wx0;
-              int biomePaletteIdx = biomeData.getBiome(cx, chunkData.minY(), cz); // TODO: add an option to set the biome sample height?
-              biomePaletteIdxStructure.set(wx, chunkData.minY(), wz, biomePaletteIdx);
-            }
+        loadChunkIntoOctree(dimension, cp, chunkData, biomePaletteIdxStructure, use3dBiomes,
+            cubeWorldBlocks, cubeWaterBlocks, nonEmptyChunks, legacyChunks);
+      }
+      executor.shutdown();
+    }
+
+    entities.finalizeLoading();
+    palette.unsynchronize();
+
+    try (TaskTracker.Task task = taskTracker.task("(4/6) Finalizing octree")) {
+
+      worldOctree.startFinalization();
+      waterOctree.startFinalization();
+
+      int done = 0;
+      int target = nonEmptyChunks.size();
+      for (ChunkPosition cp : nonEmptyChunks) {
+        finalizeBiomeTextures(cp, nonEmptyChunks, biomePalette, biomePaletteIdxStructure,
+            use3dBiomes);
+        task.updateEta(target, done);
+        done += 1;
+        OctreeFinalizer.finalizeChunk(worldOctree, waterOctree, palette, loadedChunks, origin, cp, yMin, yMax);
+        if (legacyChunks.contains(cp)) {
+          LegacyBlocksFinalizer
+              .finalizeChunk(worldOctree, waterOctree, palette, origin, cp, yMin, yMax);
+        }
+      }
+
+      worldOctree.endFinalization();
+      waterOctree.endFinalization();
+
+      grassTexture.compact();
+      foliageTexture.compact();
+      waterTexture.compact();
+    }
+
+    entities.loadDataFromOctree(worldOctree, palette, origin);
+
+    if (emitterGrid != null)
+      emitterGrid.prepare();
+
+    chunks = loadedChunks;
+    octreeContentKey = computeOctreeContentKey();
+    camera.setWorldSize(1 << worldOctree.getDepth());
+    try (TaskTracker.Task task = taskTracker.task("(5/6) Building world BVH")) {
+      buildBvh(task);
+    }
+    try (TaskTracker.Task task = taskTracker.task("(6/6) Building actor BVH")) {
+      buildActorBvh(task);
+    }
+    Log.info(String.format("Loaded %d chunks", numChunks));
+
+    isLoading = false;
+  }
+
+  /**
+   * Record the biome palette indices of a chunk, used to compute the biome textures.
+   */
+  private static void loadBiomeIndices(ChunkPosition cp, ChunkData chunkData,
+      Position2IntStructure biomePaletteIdxStructure, boolean use3dBiomes) {
+    int wx0 = cp.x * 16; // Start of this chunk in world coordinates.
+    int wz0 = cp.z * 16;
+    BiomeData biomeData = chunkData.getBiomeData();
+
+    if (use3dBiomes) {
+      for (int y = chunkData.minY(); y < chunkData.maxY(); y++) {
+        for (int cz = 0; cz < 16; ++cz) {
+          int wz = cz + wz0;
+          for (int cx = 0; cx < 16; ++cx) {
+            int wx = cx + wx0;
+            int biomePaletteIdx = biomeData.getBiome(cx, y, cz);
+            biomePaletteIdxStructure.set(wx, y, wz, biomePaletteIdx);
           }
         }
+      }
+    } else {
+      for (int cz = 0; cz < 16; ++cz) {
+        int wz = cz + wz0;
+        for (int cx = 0; cx < 16; ++cx) {
+          int wx = cx + wx0;
+          int biomePaletteIdx = biomeData.getBiome(cx, chunkData.minY(), cz); // TODO: add an option to set the biome sample height?
+          biomePaletteIdxStructure.set(wx, chunkData.minY(), wz, biomePaletteIdx);
+        }
+      }
+    }
+  }
 
-        entities.loadEntitiesInChunk(this, chunkData);
-
-        int yCubeMin = yMin / 16;
-        int yCubeMax = (yMax+15) / 16;
-        for(int yCube = yCubeMin; yCube < yCubeMax; ++yCube) {
-          // Reset the cubes
-          Arrays.fill(cubeWorldBlocks, 0);
-          Arrays.fill(cubeWaterBlocks, 0);
-          for(int cy = 0; cy < 16; ++cy) { //Uses chunk min and max, rather than global - minor optimisation for pre1.13 worlds
-            int y = yCube * 16 + cy;
-            if(y < yMin || y >= yMax)
-              continue;
-            for(int cz = 0; cz < 16; ++cz) {
-              int z = cz + cp.z * 16 - origin.z;
-              for(int cx = 0; cx < 16; ++cx) {
-                int x = cx + cp.x * 16 - origin.x;
-
-                int cubeIndex = (cz * 16 + cy) * 16 + cx;
-
-                // Change the type of hidden blocks to ANY_TYPE
-                boolean onEdge = y <= yMin || y >= yMax - 1 || chunkData.isBlockOnEdge(cx, y, cz);
-                boolean isHidden = !onEdge
-                        && palette.get(chunkData.getBlockAt(cx + 1, y, cz)).opaque
-                        && palette.get(chunkData.getBlockAt(cx - 1, y, cz)).opaque
-                        && palette.get(chunkData.getBlockAt(cx, y + 1, cz)).opaque
-                        && palette.get(chunkData.getBlockAt(cx, y - 1, cz)).opaque
-                        && palette.get(chunkData.getBlockAt(cx, y, cz + 1)).opaque
-                        && palette.get(chunkData.getBlockAt(cx, y, cz - 1)).opaque;
-
-                if(isHidden) {
-                  cubeWorldBlocks[cubeIndex] = Octree.ANY_TYPE;
-                } else {
-                  int currentBlock = chunkData.getBlockAt(cx, y, cz);
-                  int octNode = currentBlock;
-                  Block block = palette.get(currentBlock);
-
-                  if(block.isBlockEntity()&&block instanceof QuadBlock){ //quickfix for blockentities
-                    Entity blockEntity = block.toBlockEntity(new Vector3(cx + cp.x * 16,y,cz + cp.z * 16), null);
-                    if (blockEntity == null) {
-                      continue;
-                    }
+  /**
+   * Insert the blocks and entities of a loaded chunk into the octrees and scene entities.
+   * Chunks with blocks are added to {@code nonEmptyChunks}, and pre-flattening chunks also to
+   * {@code legacyChunks}.
+   */
+  private void loadChunkIntoOctree(Dimension dimension, ChunkPosition cp, ChunkData chunkData,
+      Position2IntStructure biomePaletteIdxStructure, boolean use3dBiomes,
+      int[] cubeWorldBlocks, int[] cubeWaterBlocks,
+      Set<ChunkPosition> nonEmptyChunks, Set<ChunkPosition> legacyChunks) {
+    loadBiomeIndices(cp, chunkData, biomePaletteIdxStructure, use3dBiomes);
 
-                    if (blockEntity instanceof Poseable) {
-                      entities.addActor(blockEntity);
-                    } else {
-                      entities.addEntity(blockEntity);
-                      if (emitterGrid != null) {
-                        for (Grid.EmitterPosition emitterPos : blockEntity.getEmitterPosition()) {
-                          emitterPos.x -= origin.x;
-                          emitterPos.y -= origin.y;
-                          emitterPos.z -= origin.z;
-                          emitterGrid.addEmitter(emitterPos);
-                        }
-                      }
+    int wx0 = cp.x * 16; // Start of this chunk in world coordinates.
+    int wz0 = cp.z * 16;
+
+    entities.loadEntitiesInChunk(this, chunkData);
+
+    int yCubeMin = yMin / 16;
+    int yCubeMax = (yMax+15) / 16;
+    for(int yCube = yCubeMin; yCube < yCubeMax; ++yCube) {
+      // Reset the cubes
+      Arrays.fill(cubeWorldBlocks, 0);
+      Arrays.fill(cubeWaterBlocks, 0);
+      for(int cy = 0; cy < 16; ++cy) { //Uses chunk min and max, rather than global - minor optimisation for pre1.13 worlds
+        int y = yCube * 16 + cy;
+        if(y < yMin || y >= yMax)
+          continue;
+        for(int cz = 0; cz < 16; ++cz) {
+          int z = cz + cp.z * 16 - origin.z;
+          for(int cx = 0; cx < 16; ++cx) {
+            int x = cx + cp.x * 16 - origin.x;
+
+            int cubeIndex = (cz * 16 + cy) * 16 + cx;
+
+            // Change the type of hidden blocks to ANY_TYPE
+            boolean onEdge = y <= yMin || y >= yMax - 1 || chunkData.isBlockOnEdge(cx, y, cz);
+            boolean isHidden = !onEdge
+                    && palette.isOpaque(chunkData.getBlockAt(cx + 1, y, cz))
+                    && palette.isOpaque(chunkData.getBlockAt(cx - 1, y, cz))
+                    && palette.isOpaque(chunkData.getBlockAt(cx, y + 1, cz))
+                    && palette.isOpaque(chunkData.getBlockAt(cx, y - 1, cz))
+                    && palette.isOpaque(chunkData.getBlockAt(cx, y, cz + 1))
+                    && palette.isOpaque(chunkData.getBlockAt(cx, y, cz - 1));
+
+            if(isHidden) {
+              cubeWorldBlocks[cubeIndex] = Octree.ANY_TYPE;
+            } else {
+              int currentBlock = chunkData.getBlockAt(cx, y, cz);
+              int octNode = currentBlock;
+              int flags = palette.getFlags(currentBlock);
+              Block block = palette.get(currentBlock);
+
+              if((flags & BlockPalette.FLAG_BLOCK_ENTITY) != 0 && block instanceof QuadBlock){ //quickfix for blockentities
+                Entity blockEntity = block.toBlockEntity(new Vector3(cx + cp.x * 16,y,cz + cp.z * 16), null);
+                if (blockEntity == null) {
+                  continue;
+                }
+
+                if (blockEntity instanceof Poseable) {
+                  entities.addChunkActor(blockEntity);
+                } else {
+                  entities.addEntity(blockEntity);
+                  if (emitterGrid != null) {
+                    for (Grid.EmitterPosition emitterPos : blockEntity.getEmitterPosition()) {
+                      emitterPos.x -= origin.x;
+                      emitterPos.y -= origin.y;
+                      emitterPos.z -= origin.z;
+                      emitterGrid.addEmitter(emitterPos);
                     }
                   }
-                  if(block.isEntity()) {
-                    Vector3 position = new Vector3(cx + cp.x * 16, y, cz + cp.z * 16);
-                    Entity entity = block.toEntity(position);
-
-                    if (entities.shouldLoad(entity)) {
-                      if(entity instanceof Poseable && !(entity instanceof Lectern && !((Lectern) entity).hasBook())) {
-                        entities.addActor(entity);
-                      } else {
-                        entities.addEntity(entity);
-                        if (emitterGrid != null) {
-                          for (Grid.EmitterPosition emitterPos : entity.getEmitterPosition()) {
-                            emitterPos.x -= origin.x;
-                            emitterPos.y -= origin.y;
-                            emitterPos.z -= origin.z;
-                            emitterGrid.addEmitter(emitterPos);
-                          }
-                        }
-                      }
-
-                      if(!block.isBlockWithEntity()) {
-                        if(block.waterlogged) {
-                          block = palette.water;
-                          octNode = palette.waterId;
-                        } else {
-                          block = Air.INSTANCE;
-                          octNode = palette.airId;
-                        }
+                }
+              }
+              if((flags & BlockPalette.FLAG_ENTITY) != 0) {
+                Vector3 position = new Vector3(cx + cp.x * 16, y, cz + cp.z * 16);
+                Entity entity = block.toEntity(position);
+
+                if (entities.shouldLoad(entity)) {
+                  if(entity instanceof Poseable && !(entity instanceof Lectern && !((Lectern) entity).hasBook())) {
+                    entities.addChunkActor(entity);
+                  } else {
+                    entities.addEntity(entity);
+                    if (emitterGrid != null) {
+                      for (Grid.EmitterPosition emitterPos : entity.getEmitterPosition()) {
+                        emitterPos.x -= origin.x;
+                        emitterPos.y -= origin.y;
+                        emitterPos.z -= origin.z;
+                        emitterGrid.addEmitter(emitterPos);
                       }
                     }
                   }
 
-                  if(block.isWaterFilled()) {
-                    int waterNode = palette.waterId;
-                    if(y + 1 < yMax) {
-                      if(palette.get(chunkData.getBlockAt(cx, y + 1, cz)).isWaterFilled()) {
-                        waterNode = palette.getWaterId(0, 1 << Water.FULL_BLOCK);
-                      }
-                    }
-                    if(block.isWater()) {
-                      // Move plain water blocks to the water octree.
+                  if(!block.isBlockWithEntity()) {
+                    if(block.waterlogged) {
+                      block = palette.water;
+                      octNode = palette.waterId;
+                    } else {
+                      block = Air.INSTANCE;
                       octNode = palette.airId;
-
-                      if(!onEdge) {
-                        // Perform water computation now for water blocks that are not on th edge of the chunk
-                        // Test if the block has not already be marked as full
-                        if(((Water) palette.get(waterNode)).data == 0) {
-                          int level0 = 8 - ((Water) block).level;
-                          int corner0 = level0;
-                          int corner1 = level0;
-                          int corner2 = level0;
-                          int corner3 = level0;
-
-                          int level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz, level0);
-                          corner3 += level;
-                          corner0 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
-                          corner0 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz + 1, level0);
-                          corner0 += level;
-                          corner1 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
-                          corner1 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz, level0);
-                          corner1 += level;
-                          corner2 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
-                          corner2 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz - 1, level0);
-                          corner2 += level;
-                          corner3 += level;
-
-                          level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
-                          corner3 += level;
-
-                          corner0 = Math.min(7, 8 - (corner0 / 4));
-                          corner1 = Math.min(7, 8 - (corner1 / 4));
-                          corner2 = Math.min(7, 8 - (corner2 / 4));
-                          corner3 = Math.min(7, 8 - (corner3 / 4));
-                          waterNode = palette.getWaterId(((Water) block).level, (corner0 << Water.CORNER_0)
-                                          | (corner1 << Water.CORNER_1)
-                                          | (corner2 << Water.CORNER_2)
-                                          | (corner3 << Water.CORNER_3));
-                        }
-                      } else {
-                        // Water computation for water blocks on the edge of a chunk is done by the OctreeFinalizer but we need the water level information
-                        waterNode = palette.getWaterId(((Water) block).level, 0);
-                      }
                     }
-                    cubeWaterBlocks[cubeIndex] = waterNode;
-                  } else if(y + 1 < yMax && block instanceof Lava) {
-                    if(palette.get(chunkData.getBlockAt(cx, y + 1, cz)) instanceof Lava) {
-                      octNode = palette.getLavaId(0, 1 << Water.FULL_BLOCK);
-                    } else if(!onEdge) {
-                      // Compute lava level for blocks not on edge
-                      Lava lava = (Lava) block;
-                      int level0 = 8 - lava.level;
+                    flags = palette.getFlags(octNode);
+                  }
+                }
+              }
+
+              if((flags & BlockPalette.FLAG_WATER_FILLED) != 0) {
+                int waterNode = palette.waterId;
+                if(y + 1 < yMax) {
+                  if(palette.isWaterFilled(chunkData.getBlockAt(cx, y + 1, cz))) {
+                    waterNode = palette.getWaterId(0, 1 << Water.FULL_BLOCK);
+                  }
+                }
+                if((flags & BlockPalette.FLAG_WATER) != 0) {
+                  // Move plain water blocks to the water octree.
+                  octNode = palette.airId;
+
+                  if(!onEdge) {
+                    // Perform water computation now for water blocks that are not on th edge of the chunk
+                    // Test if the block has not already be marked as full
+                    if(((Water) palette.get(waterNode)).data == 0) {
+                      int level0 = 8 - ((Water) block).level;
                       int corner0 = level0;
                       int corner1 = level0;
                       int corner2 = level0;
                       int corner3 = level0;
 
-                      int level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz, level0);
+                      int level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz, level0);
                       corner3 += level;
                       corner0 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
                       corner0 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz + 1, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz + 1, level0);
                       corner0 += level;
                       corner1 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
                       corner1 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz, level0);
                       corner1 += level;
                       corner2 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
                       corner2 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz - 1, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz - 1, level0);
                       corner2 += level;
                       corner3 += level;
 
-                      level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
+                      level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
                       corner3 += level;
 
                       corner0 = Math.min(7, 8 - (corner0 / 4));
                       corner1 = Math.min(7, 8 - (corner1 / 4));
                       corner2 = Math.min(7, 8 - (corner2 / 4));
                       corner3 = Math.min(7, 8 - (corner3 / 4));
-                      octNode = palette.getLavaId(
-                              lava.level,
-                              (corner0 << Water.CORNER_0)
+                      waterNode = palette.getWaterId(((Water) block).level, (corner0 << Water.CORNER_0)
                                       | (corner1 << Water.CORNER_1)
                                       | (corner2 << Water.CORNER_2)
-                                      | (corner3 << Water.CORNER_3)
-                      );
+                                      | (corner3 << Water.CORNER_3));
                     }
+                  } else {
+                    // Water computation for water blocks on the edge of a chunk is done by the OctreeFinalizer but we need the water level information
+                    waterNode = palette.getWaterId(((Water) block).level, 0);
                   }
-                  cubeWorldBlocks[cubeIndex] = octNode;
-
-                  if(emitterGrid != null && block.emittance > 1e-4) {
-                    // X and Z are Chunky position but Y is world position
-                    emitterGrid.addEmitter(new Grid.EmitterPosition(x, y - origin.y, z, block));
-                  }
                 }
+                cubeWaterBlocks[cubeIndex] = waterNode;
+              } else if(y + 1 < yMax && (flags & BlockPalette.FLAG_LAVA) != 0) {
+                if(palette.isLava(chunkData.getBlockAt(cx, y + 1, cz))) {
+                  octNode = palette.getLavaId(0, 1 << Water.FULL_BLOCK);
+                } else if(!onEdge) {
+                  // Compute lava level for blocks not on edge
+                  Lava lava = (Lava) block;
+                  int level0 = 8 - lava.level;
+                  int corner0 = level0;
+                  int corner1 = level0;
+                  int corner2 = level0;
+                  int corner3 = level0;
+
+                  int level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz, level0);
+                  corner3 += level;
+                  corner0 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
+                  corner0 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz + 1, level0);
+                  corner0 += level;
+                  corner1 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
+                  corner1 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz, level0);
+                  corner1 += level;
+                  corner2 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
+                  corner2 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz - 1, level0);
+                  corner2 += level;
+                  corner3 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
+                  corner3 += level;
+
+                  corner0 = Math.min(7, 8 - (corner0 / 4));
+                  corner1 = Math.min(7, 8 - (corner1 / 4));
+                  corner2 = Math.min(7, 8 - (corner2 / 4));
+                  corner3 = Math.min(7, 8 - (corner3 / 4));
+                  octNode = palette.getLavaId(
+                          lava.level,
+                          (corner0 << Water.CORNER_0)
+                                  | (corner1 << Water.CORNER_1)
+                                  | (corner2 << Water.CORNER_2)
+                                  | (corner3 << Water.CORNER_3)
+                  );
+                }
+              }
+              cubeWorldBlocks[cubeIndex] = octNode;
+
+              if(emitterGrid != null && (flags & BlockPalette.FLAG_EMITTER) != 0) {
+                // X and Z are Chunky position but Y is world position
+                emitterGrid.addEmitter(new Grid.EmitterPosition(x, y - origin.y, z, block));
               }
             }
           }
-          worldOctree.setCube(4, cubeWorldBlocks, cp.x*16 - origin.x, yCube*16 - origin.y, cp.z*16 - origin.z);
-          waterOctree.setCube(4, cubeWaterBlocks, cp.x*16 - origin.x, yCube*16 - origin.y, cp.z*16 - origin.z);
         }
+      }
+      worldOctree.setCube(4, cubeWorldBlocks, cp.x*16 - origin.x, yCube*16 - origin.y, cp.z*16 - origin.z);
+      waterOctree.setCube(4, cubeWaterBlocks, cp.x*16 - origin.x, yCube*16 - origin.y, cp.z*16 - origin.z);
+    }
 
-        // Block entities are also called "tile entities". These are extra bits of metadata
-        // about certain blocks or entities.
-        // Block entities are loaded after the base block data so that metadata can be updated.
-        for (CompoundTag entityTag : chunkData.getTileEntities()) {
-          int y = entityTag.get("y").intValue(0);
-          if (y >= yMin && y < yMax) {
-            int x = entityTag.get("x").intValue(0) - wx0; // Chunk-local coordinates.
-            int z = entityTag.get("z").intValue(0) - wz0;
-            if (x < 0 || x > 15 || z < 0 || z > 15) {
-              // Block entity is out of range (bad chunk data?), ignore it
-              continue;
-            }
-            Block block = palette.get(chunkData.getBlockAt(x, y, z));
-            // Metadata is the old block data (to be replaced in future Minecraft versions?).
-            Vector3 position = new Vector3(x + wx0, y, z + wz0);
-            if (block.isModifiedByBlockEntity()) {
-              Tag newTag = block.getNewTagWithBlockEntity(palette.getBlockSpec(chunkData.getBlockAt(x, y, z)).getTag(), entityTag);
-              if (newTag != null) {
-                int id = palette.put(newTag);
-                block = palette.get(id);
-                chunkData.setBlockAt(x, y, z, id);
-                worldOctree.set(id, cp.x * 16 + x - origin.x, y - origin.y, cp.z * 16 + z - origin.z);
-              }
-            }
-            if (block.isBlockEntity()) {
-              Entity blockEntity = block.toBlockEntity(position, entityTag);
-              if (blockEntity == null) {
-                continue;
-              }
+    // Block entities are also called "tile entities". These are extra bits of metadata
+    // about certain blocks or entities.
+    // Block entities are loaded after the base block data so that metadata can be updated.
+    for (CompoundTag entityTag : chunkData.getTileEntities()) {
+      int y = entityTag.get("y").intValue(0);
+      if (y >= yMin && y < yMax) {
+        int x = entityTag.get("x").intValue(0) - wx0; // Chunk-local coordinates.
+        int z = entityTag.get("z").intValue(0) - wz0;
+        if (x < 0 || x > 15 || z < 0 || z > 15) {
+          // Block entity is out of range (bad chunk data?), ignore it
+          continue;
+        }
+        Block block = palette.get(chunkData.getBlockAt(x, y, z));
+        // Metadata is the old block data (to be replaced in future Minecraft versions?).
+        Vector3 position = new Vector3(x + wx0, y, z + wz0);
+        if (block.isModifiedByBlockEntity()) {
+          Tag newTag = block.getNewTagWithBlockEntity(palette.getBlockSpec(chunkData.getBlockAt(x, y, z)).getTag(), entityTag);
+          if (newTag != null) {
+            int id = palette.put(newTag);
+            block = palette.get(id);
+            chunkData.setBlockAt(x, y, z, id);
+            worldOctree.set(id, cp.x * 16 + x - origin.x, y - origin.y, cp.z * 16 + z - origin.z);
+          }
+        }
+        if (block.isBlockEntity()) {
+          Entity blockEntity = block.toBlockEntity(position, entityTag);
+          if (blockEntity == null) {
+            continue;
+          }
 
-              if (entities.shouldLoad(blockEntity)) {
-                if (blockEntity instanceof Poseable) {
-                  entities.addActor(blockEntity);
-                } else {
-                  entities.addEntity(blockEntity);
-                  if (emitterGrid != null) {
-                    for (Grid.EmitterPosition emitterPos : blockEntity.getEmitterPosition()) {
-                      emitterPos.x -= origin.x;
-                      emitterPos.y -= origin.y;
-                      emitterPos.z -= origin.z;
-                      emitterGrid.addEmitter(emitterPos);
-                    }
-                  }
+          if (entities.shouldLoad(blockEntity)) {
+            if (blockEntity instanceof Poseable) {
+              entities.addChunkActor(blockEntity);
+            } else {
+              entities.addEntity(blockEntity);
+              if (emitterGrid != null) {
+                for (Grid.EmitterPosition emitterPos : blockEntity.getEmitterPosition()) {
+                  emitterPos.x -= origin.x;
+                  emitterPos.y -= origin.y;
+                  emitterPos.z -= origin.z;
+                  emitterGrid.addEmitter(emitterPos);
                 }
               }
             }
           }
         }
-
-        if (!chunkData.isEmpty()){
-          nonEmptyChunks.add(cp);
-          if (dimension.getChunk(cp).getVersion() == ChunkVersion.PRE_FLATTENING) {
-            legacyChunks.add(cp);
-          }
-        }
       }
-      executor.shutdown();
     }
 
-    entities.finalizeLoading();
-    palette.unsynchronize();
-
-    try (TaskTracker.Task task = taskTracker.task("(4/6) Finalizing octree")) {
-
-      worldOctree.startFinalization();
-      waterOctree.startFinalization();
+    if (!chunkData.isEmpty()){
+      nonEmptyChunks.add(cp);
+      if (dimension.getChunk(cp).getVersion() == ChunkVersion.PRE_FLATTENING) {
+        legacyChunks.add(cp);
+      }
+    }
+  }
 
-      int done = 0;
-      int target = nonEmptyChunks.size();
-      for (ChunkPosition cp : nonEmptyChunks) {
+  /**
+   * Compute the grass, foliage and water colors of a chunk from the biome palette indices.
+   */
+  private void finalizeBiomeTextures(ChunkPosition cp, Set<ChunkPosition> nonEmptyChunks,
+      BiomePalette biomePalette, Position2IntStructure biomePaletteIdxStructure,
+      boolean use3dBiomes) {
 //        TODO: make this less special cased in some way, having 2 ifs for biomeBlending and use3dBiomes is quite awful to read and maintain
 
 //        Finalize grass and foliage textures.
 //        3x3 box blur.
-        if (biomeBlending) {
-          if (use3dBiomes) {
-            for (int sectionY = yMin >> 4; sectionY < (yMax - 1 >> 4) + 1; sectionY++) {
-              for (int x = 0; x < 16; ++x) {
-                for (int z = 0; z < 16; ++z) {
-                  for (int y = 0; y < 16; y++) {
-                    int nsum = 0;
-
-                    float[] grassMix = {0, 0, 0};
-                    float[] foliageMix = {0, 0, 0};
-                    float[] waterMix = {0, 0, 0};
-                    for (int sx = x - 1; sx <= x + 1; ++sx) {
-                      int wx = cp.x * 16 + sx;
-                      for (int sz = z - 1; sz <= z + 1; ++sz) {
-                        int wz = cp.z * 16 + sz;
-                        for (int sy = y - 1; sy < y + 1; sy++) {
-                          int wy = sectionY * 16 + sy;
-                          ChunkPosition ccp = new ChunkPosition(wx >> 4, wz >> 4);
-                          if (nonEmptyChunks.contains(ccp)) {
-                            nsum += 1;
-                            Integer id = biomePaletteIdxStructure.get(wx, wy, wz);
-                            if (id == null) {
-                              continue;
-                            }
-                            Biome biome = biomePalette.get(id);
-                            float[] grassColor = biome.grassColorLinear;
-                            grassMix[0] += grassColor[0];
-                            grassMix[1] += grassColor[1];
-                            grassMix[2] += grassColor[2];
-                            float[] foliageColor = biome.foliageColorLinear;
-                            foliageMix[0] += foliageColor[0];
-                            foliageMix[1] += foliageColor[1];
-                            foliageMix[2] += foliageColor[2];
-                            float[] waterColor = biome.waterColorLinear;
-                            waterMix[0] += waterColor[0];
-                            waterMix[1] += waterColor[1];
-                            waterMix[2] += waterColor[2];
-                          }
-                        }
-                      }
-                    }
-                    grassMix[0] /= nsum;
-                    grassMix[1] /= nsum;
-                    grassMix[2] /= nsum;
-                    grassTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, grassMix);
-
-                    foliageMix[0] /= nsum;
-                    foliageMix[1] /= nsum;
-                    foliageMix[2] /= nsum;
-                    foliageTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, foliageMix);
-
-                    waterMix[0] /= nsum;
-                    waterMix[1] /= nsum;
-                    waterMix[2] /= nsum;
-                    waterTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, waterMix);
-                  }
-                }
-              }
-            }
-          } else {
-            for (int x = 0; x < 16; ++x) {
-              for (int z = 0; z < 16; ++z) {
-
+    if (biomeBlending) {
+      if (use3dBiomes) {
+        for (int sectionY = yMin >> 4; sectionY < (yMax - 1 >> 4) + 1; sectionY++) {
+          for (int x = 0; x < 16; ++x) {
+            for (int z = 0; z < 16; ++z) {
+              for (int y = 0; y < 16; y++) {
                 int nsum = 0;
+
                 float[] grassMix = {0, 0, 0};
                 float[] foliageMix = {0, 0, 0};
                 float[] waterMix = {0, 0, 0};
@@ -1317,119 +1599,142 @@ public class Scene implements JsonSerializable, Refreshable {
                   int wx = cp.x * 16 + sx;
                   for (int sz = z - 1; sz <= z + 1; ++sz) {
                     int wz = cp.z * 16 + sz;
-
-                    ChunkPosition ccp = new ChunkPosition(wx >> 4, wz >> 4);
-                    if (nonEmptyChunks.contains(ccp)) {
-                      nsum += 1;
-                      Biome biome = biomePalette.get(biomePaletteIdxStructure.get(wx, 0, wz));
-                      float[] grassColor = biome.grassColorLinear;
-                      grassMix[0] += grassColor[0];
-                      grassMix[1] += grassColor[1];
-                      grassMix[2] += grassColor[2];
-                      float[] foliageColor = biome.foliageColorLinear;
-                      foliageMix[0] += foliageColor[0];
-                      foliageMix[1] += foliageColor[1];
-                      foliageMix[2] += foliageColor[2];
-                      float[] waterColor = biome.waterColorLinear;
-                      waterMix[0] += waterColor[0];
-                      waterMix[1] += waterColor[1];
-                      waterMix[2] += waterColor[2];
+                    for (int sy = y - 1; sy < y + 1; sy++) {
+                      int wy = sectionY * 16 + sy;
+                      ChunkPosition ccp = new ChunkPosition(wx >> 4, wz >> 4);
+                      if (nonEmptyChunks.contains(ccp)) {
+                        nsum += 1;
+                        Integer id = biomePaletteIdxStructure.get(wx, wy, wz);
+                        if (id == null) {
+                          continue;
+                        }
+                        Biome biome = biomePalette.get(id);
+                        float[] grassColor = biome.grassColorLinear;
+                        grassMix[0] += grassColor[0];
+                        grassMix[1] += grassColor[1];
+                        grassMix[2] += grassColor[2];
+                        float[] foliageColor = biome.foliageColorLinear;
+                        foliageMix[0] += foliageColor[0];
+                        foliageMix[1] += foliageColor[1];
+                        foliageMix[2] += foliageColor[2];
+                        float[] waterColor = biome.waterColorLinear;
+                        waterMix[0] += waterColor[0];
+                        waterMix[1] += waterColor[1];
+                        waterMix[2] += waterColor[2];
+                      }
                     }
                   }
                 }
                 grassMix[0] /= nsum;
                 grassMix[1] /= nsum;
                 grassMix[2] /= nsum;
-                grassTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, grassMix);
+                grassTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, grassMix);
 
                 foliageMix[0] /= nsum;
                 foliageMix[1] /= nsum;
                 foliageMix[2] /= nsum;
-                foliageTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, foliageMix);
+                foliageTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, foliageMix);
 
                 waterMix[0] /= nsum;
                 waterMix[1] /= nsum;
                 waterMix[2] /= nsum;
-                waterTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, waterMix);
+                waterTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, waterMix);
               }
             }
           }
-        } else {
-          if (use3dBiomes) {
-            for (int sectionY = yMin >> 4; sectionY < (yMax - 1 >> 4) + 1; sectionY++) {
-              for (int y = 0; y < 16; y++) {
-                int wy = sectionY * 16 + y;
-                for (int x = 0; x < 16; ++x) {
-                  int wx = cp.x * Chunk.X_MAX + x;
-                  for (int z = 0; z < 16; ++z) {
-                    int wz = cp.z * Chunk.Z_MAX + z;
-                    int nsum = 0;
-
-                    Integer id = biomePaletteIdxStructure.get(wx, wy, wz);
-                    if (id == null) {
-                      continue;
-                    }
-                    if(id != 0) {
-                      int asd = 0;
-                    }
-
-                    Biome biome = biomePalette.get(id);
-                    grassTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.grassColorLinear);
-                    foliageTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
-                    waterTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.waterColorLinear);
-                  }
+        }
+      } else {
+        for (int x = 0; x < 16; ++x) {
+          for (int z = 0; z < 16; ++z) {
+
+            int nsum = 0;
+            float[] grassMix = {0, 0, 0};
+            float[] foliageMix = {0, 0, 0};
+            float[] waterMix = {0, 0, 0};
+            for (int sx = x - 1; sx <= x + 1; ++sx) {
+              int wx = cp.x * 16 + sx;
+              for (int sz = z - 1; sz <= z + 1; ++sz) {
+                int wz = cp.z * 16 + sz;
+
+                ChunkPosition ccp = new ChunkPosition(wx >> 4, wz >> 4);
+                if (nonEmptyChunks.contains(ccp)) {
+                  nsum += 1;
+                  Biome biome = biomePalette.get(biomePaletteIdxStructure.get(wx, 0, wz));
+                  float[] grassColor = biome.grassColorLinear;
+                  grassMix[0] += grassColor[0];
+                  grassMix[1] += grassColor[1];
+                  grassMix[2] += grassColor[2];
+                  float[] foliageColor = biome.foliageColorLinear;
+                  foliageMix[0] += foliageColor[0];
+                  foliageMix[1] += foliageColor[1];
+                  foliageMix[2] += foliageColor[2];
+                  float[] waterColor = biome.waterColorLinear;
+                  waterMix[0] += waterColor[0];
+                  waterMix[1] += waterColor[1];
+                  waterMix[2] += waterColor[2];
                 }
               }
             }
-          } else {
+            grassMix[0] /= nsum;
+            grassMix[1] /= nsum;
+            grassMix[2] /= nsum;
+            grassTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, grassMix);
+
+            foliageMix[0] /= nsum;
+            foliageMix[1] /= nsum;
+            foliageMix[2] /= nsum;
+            foliageTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, foliageMix);
+
+            waterMix[0] /= nsum;
+            waterMix[1] /= nsum;
+            waterMix[2] /= nsum;
+            waterTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, waterMix);
+          }
+        }
+      }
+    } else {
+      if (use3dBiomes) {
+        for (int sectionY = yMin >> 4; sectionY < (yMax - 1 >> 4) + 1; sectionY++) {
+          for (int y = 0; y < 16; y++) {
+            int wy = sectionY * 16 + y;
             for (int x = 0; x < 16; ++x) {
-              int wx = cp.x * 16 + x;
+              int wx = cp.x * Chunk.X_MAX + x;
               for (int z = 0; z < 16; ++z) {
-                int wz = cp.z * 16 + z;
+                int wz = cp.z * Chunk.Z_MAX + z;
+                int nsum = 0;
 
-                int id = biomePaletteIdxStructure.get(wx, 0, wz);
-                Biome biome = biomePalette.get(id);
+                Integer id = biomePaletteIdxStructure.get(wx, wy, wz);
+                if (id == null) {
+                  continue;
+                }
+                if(id != 0) {
+                  int asd = 0;
+                }
 
-                grassTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.grassColorLinear);
-                foliageTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
-                waterTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.waterColorLinear);
+                Biome biome = biomePalette.get(id);
+                grassTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.grassColorLinear);
+                foliageTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
+                waterTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.waterColorLinear);
               }
             }
           }
         }
-        task.updateEta(target, done);
-        done += 1;
-        OctreeFinalizer.finalizeChunk(worldOctree, waterOctree, palette, loadedChunks, origin, cp, yMin, yMax);
-        if (legacyChunks.contains(cp)) {
-          LegacyBlocksFinalizer
-              .finalizeChunk(worldOctree, waterOctree, palette, origin, cp, yMin, yMax);
-        }
-      }
-
-      worldOctree.endFinalization();
-      waterOctree.endFinalization();
-
-      grassTexture.compact();
-      foliageTexture.compact();
-      waterTexture.compact();
-    }
-
-    entities.loadDataFromOctree(worldOctree, palette, origin);
+      } else {
+        for (int x = 0; x < 16; ++x) {
+          int wx = cp.x * 16 + x;
+          for (int z = 0; z < 16; ++z) {
+            int wz = cp.z * 16 + z;
 
-    if (emitterGrid != null)
-      emitterGrid.prepare();
+            int id = biomePaletteIdxStructure.get(wx, 0, wz);
+            Biome biome = biomePalette.get(id);
 
-    chunks = loadedChunks;
-    camera.setWorldSize(1 << worldOctree.getDepth());
-    try (TaskTracker.Task task = taskTracker.task("(5/6) Building world BVH")) {
-      buildBvh(task);
-    }
-    try (TaskTracker.Task task = taskTracker.task("(6/6) Building actor BVH")) {
-      buildActorBvh(task);
+            grassTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.grassColorLinear);
+            foliageTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
+            waterTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.waterColorLinear);
+          }
+        }
+      }
     }
-    Log.info(String.format("Loaded %d chunks", numChunks));
-
-    isLoading = false;
   }
 
   private void buildBvh(TaskTracker.Task task) {
@@ -1457,6 +1762,16 @@ public class Scene implements JsonSerializable, Refreshable {
     refresh();
   }
 
+  /**
+   * Update the actors bounding volume hierarchy after a single actor was changed, e.g. posed.
+   * This is much faster than {@link #rebuildActorBvh()} since only the primitives of the
+   * changed actor are regenerated.
+   */
+  public void updateActorBvh(Entity actor) {
+    entities.updateActorBvh(actor, origin);
+    refresh();
+  }
+
   private int calculateOctreeOrigin(Collection<ChunkPosition> chunksToLoad, boolean centerOctree) {
     int xmin = Integer.MAX_VALUE;
     int xmax = Integer.MIN_VALUE;
@@ -2109,9 +2424,17 @@ public class Scene implements JsonSerializable, Refreshable {
   /**
    * Saves the current frame into the given output stream, using the given PictureExportFormat.
    * Side effects: This will compute the alpha channel if supported by the export format
-   * and may apply post-processing if the scene has not been finalized yet.
+   * and may apply post-processing if the scene has not been finalized yet. Formats that
+   * write straight from the sample buffer skip both.
    */
   public synchronized void writeFrame(OutputStream out, PictureExportFormat mode, TaskTracker taskTracker) throws IOException {
+    if (mode.isStreaming(this)) {
+      if (transparentSky && !mode.isTransparencySupported()) {
+        Log.warn("Can not use transparent sky with " + mode.getName() +  " output mode. Use PNG instead.");
+      }
+      mode.write(out, this, taskTracker);
+      return;
+    }
     if (mode.isTransparencySupported()) {
       computeAlpha(taskTracker);
     }
@@ -2122,7 +2445,8 @@ public class Scene implements JsonSerializable, Refreshable {
   }
 
   /**
-   * Compute the alpha channel.
+   * Compute the alpha channel from the alpha samples. Sky visibility is traced only for
+   * pixels without alpha samples.
    */
   private void computeAlpha(TaskTracker taskTracker) {
     if (transparentSky) {
@@ -2161,11 +2485,7 @@ public class Scene implements JsonSerializable, Refreshable {
    * but in some cases a separate post-processing pass is needed.
    */
   public void postProcessFrame(TaskTracker.Task task) {
-    PostProcessingFilter filter = postProcessingFilter;
-    if(mode == RenderMode.PREVIEW) {
-      filter = PreviewFilter.INSTANCE;
-    }
-    filter.processFrame(
+    getEffectivePostProcessingFilter().processFrame(
       width, height,
       samples, backBuffer,
       exposure,
@@ -2174,6 +2494,17 @@ public class Scene implements JsonSerializable, Refreshable {
     finalized = true;
   }
 
+  /**
+   * @return the post-processing filter used for the current frame, which is the preview filter
+   * in preview mode
+   */
+  public PostProcessingFilter getEffectivePostProcessingFilter() {
+    if (mode == RenderMode.PREVIEW) {
+      return PreviewFilter.INSTANCE;
+    }
+    return postProcessingFilter;
+  }
+
   public void postProcessFrame(TaskTracker taskTracker) {
     try (TaskTracker.Task task = taskTracker.task("Finalizing frame")) {
       postProcessFrame(task);
@@ -2198,7 +2529,11 @@ public class Scene implements JsonSerializable, Refreshable {
   }
 
   private synchronized void saveOctree(SceneIOProvider context, TaskTracker taskTracker) {
-    String fileName = name + ".octree2";
+    if (sharedOctreeKey != null && saveSharedOctree(context, taskTracker)) {
+      return;
+    }
+    sharedOctreeKey = null;
+    String fileName = name + ".octree3";
     if (context.fileUnchangedSince(fileName, worldOctree.getTimestamp())) {
       Log.info("Skipping redundant Octree write");
       return;
@@ -2207,9 +2542,15 @@ public class Scene implements JsonSerializable, Refreshable {
       task.update(1);
       Log.info("Saving octree " + fileName);
 
+      // The octree file may be a hard link to a shared octree, which must not be overwritten.
+      File octreeFile = context.getSceneFile(fileName);
+      if (octreeFile.isFile() && !octreeFile.delete()) {
+        Log.warn("Failed to delete the old octree file " + octreeFile);
+      }
+
       boolean saved = false;
-      try (DataOutputStream out = new DataOutputStream(new FastBufferedOutputStream(new GZIPOutputStream(context.getSceneFileOutputStream(fileName))))) {
-        OctreeFileFormat.store(out, worldOctree, waterOctree, palette,
+      try (OutputStream out = new FastBufferedOutputStream(context.getSceneFileOutputStream(fileName))) {
+        BlockCompressedOctreeFileFormat.store(out, worldOctree, waterOctree, palette,
             grassTexture, foliageTexture, waterTexture);
         saved = true;
 
@@ -2221,19 +2562,276 @@ public class Scene implements JsonSerializable, Refreshable {
 
       if (saved) {
         worldOctree.setTimestamp(context.fileTimestamp(fileName));
+        saveChunkStamps(context, worldOctree.getTimestamp());
+        saveRawOctreeCache(context, name, worldOctree.getTimestamp());
+
+        if (PersistentSettings.getDeleteLegacyOctree()) {
+          // The old octree file is out of date now, but older Chunky versions can only read it.
+          File legacyFile = context.getSceneFile(name + ".octree2");
+          if (legacyFile.isFile() && !legacyFile.delete()) {
+            Log.warn("Failed to delete the outdated octree file " + legacyFile);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Save the octree to the shared octree store, unless it is already there.
+   *
+   * @return {@code false} if the octree could not be saved to the store
+   */
+  private boolean saveSharedOctree(SceneIOProvider context, TaskTracker taskTracker) {
+    SharedOctreeStore store = SharedOctreeStore.getDefault();
+    String fileName = sharedOctreeKey + ".octree3";
+    boolean saved = false;
+    if (store.contains(sharedOctreeKey)) {
+      Log.info("Octree already in the shared octree store: " + fileName);
+    } else {
+      try (TaskTracker.Task task = taskTracker.task("Saving octree", 2)) {
+        task.update(1);
+        Log.info("Saving octree " + fileName + " to the shared octree store");
+
+        String tempFileName = fileName + "." + UUID.randomUUID() + ".tmp";
+        try {
+          try (OutputStream out = new FastBufferedOutputStream(store.getSceneFileOutputStream(tempFileName))) {
+            BlockCompressedOctreeFileFormat.store(out, worldOctree, waterOctree, palette,
+                grassTexture, foliageTexture, waterTexture);
+          }
+          store.publish(tempFileName, fileName);
+          saved = true;
+
+          task.update(2);
+          Log.info("Octree saved");
+        } catch (IOException e) {
+          Log.warn("Failed to save the octree to the shared octree store", e);
+          //noinspection ResultOfMethodCallIgnored
+          store.getSceneFile(tempFileName).delete();
+          return false;
+        }
       }
     }
+
+    long timestamp = store.fileTimestamp(fileName);
+    worldOctree.setTimestamp(timestamp);
+    saveChunkStamps(context, timestamp);
+    if (saved) {
+      saveRawOctreeCache(store, sharedOctreeKey, timestamp);
+    }
+
+    // Keep the octree with the scene as well, in case the shared octree store is cleared.
+    try {
+      store.link(fileName, context.getSceneFile(name + ".octree3"));
+    } catch (IOException e) {
+      Log.warn("Failed to link the shared octree into the scene directory", e);
+    }
+    return true;
+  }
+
+  /**
+   * @return the settings that determine how chunks are loaded into the octrees and the BVH,
+   * as a string that changes when any of them changes
+   */
+  String chunkLoadSettings() {
+    return String.join("\n",
+        octreeImplementation,
+        biomeStructureImplementation,
+        Boolean.toString(biomeColors),
+        Boolean.toString(biomeBlending),
+        entities.getBvhImplementation(),
+        entities.getEntityLoadingPreferences().toJson().toCompactString());
+  }
+
+  /**
+   * @return a hash of everything that determines the content of the octree, or {@code null}
+   * if the loaded chunk data is not known well enough to share the octree
+   */
+  private String computeOctreeContentKey() {
+    if (worldOctree == null || grassTexture == null || worldPath.isEmpty() || chunks.isEmpty()) {
+      return null;
+    }
+    long[] sortedChunks = chunks.stream().mapToLong(ChunkPosition::getLong).sorted().toArray();
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeUTF(".octree3");
+      out.writeUTF(worldPath);
+      out.writeInt(worldDimension);
+      out.writeInt(yMin);
+      out.writeInt(yMax);
+      out.writeUTF(grassTexture.biomeFormat());
+      out.writeBoolean(biomeBlending);
+      out.writeUTF(entities.getEntityLoadingPreferences().toJson().toCompactString());
+      for (File pack : ResourcePackLoader.getLoadedResourcePacks()) {
+        out.writeUTF(pack.getAbsolutePath());
+        out.writeLong(pack.lastModified());
+        out.writeLong(pack.length());
+      }
+      out.writeInt(sortedChunks.length);
+      for (long pos : sortedChunks) {
+        out.writeLong(pos);
+      }
+      if (!chunkStamps.writeStamps(out, sortedChunks)) {
+        return null;
+      }
+      out.flush();
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+      return String.format("%064x", new BigInteger(1, hash));
+    } catch (IOException | NoSuchAlgorithmException e) {
+      Log.info("Could not compute the octree content key", e);
+      return null;
+    }
+  }
+
+  private OctreeFileFormat.OctreeData loadOctreeFile(SceneIOProvider context, String fileName,
+      String octreeImpl, boolean loadOctrees, TaskTracker.Task task, double progressScale)
+      throws IOException {
+    InputStream in = new PositionalInputStream(context.getSceneFileInputStream(fileName), pos -> {
+      task.updateInterval((int) (pos * progressScale), 1);
+    });
+    if (fileName.endsWith(".octree3")) {
+      try (InputStream buffered = new FastBufferedInputStream(in)) {
+        return BlockCompressedOctreeFileFormat.load(buffered, octreeImpl, loadOctrees);
+      }
+    }
+    try (DataInputStream dataIn = new DataInputStream(new FastBufferedInputStream(new GZIPInputStream(in)))) {
+      return OctreeFileFormat.load(dataIn, octreeImpl, this.biomeStructureImplementation);
+    }
+  }
+
+  /**
+   * The raw octree cache is only used for the packed octree implementation, and only next to
+   * block compressed octree files which can be read without the octrees.
+   */
+  private boolean useRawOctreeCache() {
+    return PersistentSettings.getRawOctreeCache() && octreeImplementation.equals("PACKED");
+  }
+
+  private RawOctreeCache.CachedOctrees loadRawOctreeCache(SceneIOProvider context,
+      String octreeName, String octreeFileName, long octreeTimestamp) {
+    if (!octreeFileName.endsWith(".octree3") || !useRawOctreeCache()) {
+      return null;
+    }
+    try {
+      RawOctreeCache.CachedOctrees cached =
+          RawOctreeCache.load(context.getSceneFile(octreeName + ".octreecache"), octreeTimestamp);
+      if (cached != null) {
+        Log.info("Loaded octrees from the raw octree cache");
+      }
+      return cached;
+    } catch (IOException e) {
+      Log.info("Failed to load the raw octree cache", e);
+      return null;
+    }
+  }
+
+  private void saveRawOctreeCache(SceneIOProvider context, String octreeName,
+      long octreeTimestamp) {
+    if (!useRawOctreeCache() || !RawOctreeCache.canStore(worldOctree, waterOctree)) {
+      return;
+    }
+    try {
+      RawOctreeCache.store(context.getSceneFile(octreeName + ".octreecache"), octreeTimestamp,
+          worldOctree, waterOctree);
+    } catch (IOException e) {
+      Log.warn("Failed to save the raw octree cache", e);
+    }
+  }
+
+  private boolean loadBvhCache(SceneIOProvider context, TaskTracker.Task task) {
+    if (!PersistentSettings.getBvhCache()) {
+      return false;
+    }
+    if (entities.loadBvhCache(context.getSceneFile(name + ".bvhcache"), task, origin)) {
+      Log.info("Loaded world BVH from the BVH cache");
+      return true;
+    }
+    return false;
+  }
+
+  private void saveBvhCache(SceneIOProvider context) {
+    if (!PersistentSettings.getBvhCache()) {
+      return;
+    }
+    try {
+      entities.saveBvhCache(context.getSceneFile(name + ".bvhcache"));
+    } catch (IOException e) {
+      Log.warn("Failed to save the BVH cache", e);
+    }
+  }
+
+  private void saveChunkStamps(SceneIOProvider context, long octreeTimestamp) {
+    String fileName = name + ".chunkstamps";
+    try (DataOutputStream out = new DataOutputStream(new FastBufferedOutputStream(context.getSceneFileOutputStream(fileName)))) {
+      chunkStamps.write(out, octreeTimestamp);
+    } catch (IOException e) {
+      Log.warn("Failed to save the chunk stamps", e);
+    }
+  }
+
+  private void loadChunkStamps(SceneIOProvider context, long octreeTimestamp) {
+    String fileName = name + ".chunkstamps";
+    ChunkStamps stamps = null;
+    if (context.getSceneFile(fileName).isFile()) {
+      try (DataInputStream in = new DataInputStream(new FastBufferedInputStream(context.getSceneFileInputStream(fileName)))) {
+        stamps = ChunkStamps.read(in, octreeTimestamp);
+      } catch (IOException e) {
+        Log.info("Failed to load the chunk stamps", e);
+      }
+    }
+    // Without stamps matching the octree, the next reload loads all chunks.
+    chunkStamps = stamps != null ? stamps : new ChunkStamps("");
   }
 
   public synchronized void saveDump(SceneIOProvider context, TaskTracker taskTracker) {
     File dumpFile = context.getSceneFile(name + ".dump");
     Log.info("Saving render dump: " + dumpFile);
-    try (FileOutputStream outputStream = new FileOutputStream(dumpFile)) {
-      RenderDump.save(outputStream, this, taskTracker);
+    RenderDump.awaitPendingSaves();
+    try {
+      RenderDump.save(dumpFile, this, taskTracker);
+      Log.info("Render dump saved: " + dumpFile);
     } catch (IOException e) {
       Log.warn("Failed to save the render dump", e);
     }
-    Log.info("Render dump saved: " + dumpFile);
+  }
+
+  /**
+   * Save a render dump snapshot in the background, so that rendering can continue
+   * while the dump is compressed and written.
+   *
+   * @param snapshot snapshot of the render state, see {@link #renderDumpSnapshot()}
+   * @return a future which completes when the dump has been written
+   */
+  public CompletableFuture<Void> saveDumpAsync(SceneIOProvider context, Scene snapshot) {
+    File dumpFile = context.getSceneFile(name + ".dump");
+    Log.info("Saving render dump: " + dumpFile);
+    return RenderDump.saveAsync(dumpFile, snapshot);
+  }
+
+  /**
+   * Copy the render state stored in render dumps: canvas size, samples per pixel, render time
+   * and sample buffer. The copy does not share the sample buffer with this scene, so it can be
+   * written while the render workers keep adding samples.
+   *
+   * <p>For a consistent dump this should be called at a render pass boundary,
+   * when no render worker writes to the sample buffer.
+   */
+  public synchronized Scene renderDumpSnapshot() {
+    Scene snapshot = new Scene();
+    snapshot.name = name;
+    snapshot.width = width;
+    snapshot.height = height;
+    snapshot.fullWidth = fullWidth;
+    snapshot.fullHeight = fullHeight;
+    snapshot.spp = spp;
+    snapshot.renderTime = renderTime;
+    snapshot.samples = RenderDump.snapshotBuffer(samples.length);
+    System.arraycopy(samples, 0, snapshot.samples, 0, samples.length);
+    snapshot.transparentSky = transparentSky;
+    if (transparentSky) {
+      snapshot.alphaSamples = alphaSamples.clone();
+    }
+    return snapshot;
   }
 
   private synchronized boolean loadEmitterGrid(SceneIOProvider context, TaskTracker taskTracker) {
@@ -2251,33 +2849,56 @@ public class Scene implements JsonSerializable, Refreshable {
   }
 
   private synchronized boolean loadOctree(SceneIOProvider context, TaskTracker taskTracker) {
-    String fileName = name + ".octree2";
+    SceneIOProvider octreeContext = context;
+    String octreeName = name;
+    if (sharedOctreeKey != null) {
+      SharedOctreeStore store = SharedOctreeStore.getDefault();
+      if (store.contains(sharedOctreeKey)) {
+        octreeContext = store;
+        octreeName = sharedOctreeKey;
+      } else {
+        Log.info("The shared octree of the scene was not found in the shared octree store");
+      }
+    }
+    String fileName = octreeName + ".octree3";
+    String legacyFileName = octreeName + ".octree2";
+    if (!octreeContext.getSceneFile(fileName).isFile()
+        || (octreeContext.getSceneFile(legacyFileName).isFile()
+        && octreeContext.fileTimestamp(legacyFileName) > octreeContext.fileTimestamp(fileName))) {
+      // Scenes saved before the block compressed format was added, or saved again by an older
+      // Chunky version since.
+      fileName = legacyFileName;
+    }
     try (TaskTracker.Task task = taskTracker.task("(1/3) Loading octree", 2)) {
       task.update(1);
       Log.info("Loading octree " + fileName);
 
-      long length = context.getSceneFile(fileName).length();
+      long length = octreeContext.getSceneFile(fileName).length();
       double progressScale = 1000.0 / length;
       task.update(1000, 0);
 
       try {
-        long fileTimestamp = context.fileTimestamp(fileName);
+        long fileTimestamp = octreeContext.fileTimestamp(fileName);
         OctreeFileFormat.OctreeData data;
-        try (DataInputStream in = new DataInputStream(new FastBufferedInputStream(new GZIPInputStream(new PositionalInputStream(context.getSceneFileInputStream(fileName), pos -> {
-          task.updateInterval((int) (pos * progressScale), 1);
-        }))))) {
-          data = OctreeFileFormat.load(in, octreeImplementation, this.biomeStructureImplementation);
-        } catch (PackedOctree.OctreeTooBigException e) {
-          // Octree too big, reload file and force loading as NodeBasedOctree
-          Log.warn("Octree was too big when loading dump, reloading with old (slower and bigger) implementation.");
-          DataInputStream inRetry = new DataInputStream(new FastBufferedInputStream(new GZIPInputStream(new PositionalInputStream(context.getSceneFileInputStream(fileName), pos -> {
-            task.updateInterval((int) (pos * progressScale), 1);
-          }))));
-          data = OctreeFileFormat.load(inRetry, "NODE", this.biomeStructureImplementation);
+        RawOctreeCache.CachedOctrees cached =
+            loadRawOctreeCache(octreeContext, octreeName, fileName, fileTimestamp);
+        if (cached != null) {
+          data = loadOctreeFile(octreeContext, fileName, octreeImplementation, false, task, progressScale);
+          data.worldTree = cached.worldTree;
+          data.waterTree = cached.waterTree;
+        } else {
+          try {
+            data = loadOctreeFile(octreeContext, fileName, octreeImplementation, true, task, progressScale);
+          } catch (PackedOctree.OctreeTooBigException e) {
+            // Octree too big, reload file and force loading as NodeBasedOctree
+            Log.warn("Octree was too big when loading dump, reloading with old (slower and bigger) implementation.");
+            data = loadOctreeFile(octreeContext, fileName, "NODE", true, task, progressScale);
+          }
         }
 
         worldOctree = data.worldTree;
         worldOctree.setTimestamp(fileTimestamp);
+        loadChunkStamps(context, fileTimestamp);
         waterOctree = data.waterTree;
         grassTexture = data.grassColors;
         foliageTexture = data.foliageColors;
@@ -2288,12 +2909,18 @@ public class Scene implements JsonSerializable, Refreshable {
         }
         palette = data.palette;
         palette.applyMaterials();
+        octreeContentKey = sharedOctreeKey != null ? sharedOctreeKey : computeOctreeContentKey();
         Log.info("Octree loaded");
+        if (cached == null && fileName.endsWith(".octree3")) {
+          saveRawOctreeCache(octreeContext, octreeName, fileTimestamp);
+        }
         calculateOctreeOrigin(chunks, data.version < 6);
         camera.setWorldSize(1 << worldOctree.getDepth());
 
         try (TaskTracker.Task bvhTask = taskTracker.task("(2/3) Building world BVH")) {
-          buildBvh(bvhTask);
+          if (!loadBvhCache(context, bvhTask)) {
+            buildBvh(bvhTask);
+          }
         }
         try (TaskTracker.Task bvhTask = taskTracker.task("(3/3) Building actor BVH")) {
           buildActorBvh(bvhTask);
@@ -2308,6 +2935,8 @@ public class Scene implements JsonSerializable, Refreshable {
   }
 
   public synchronized boolean loadDump(SceneIOProvider context, TaskTracker taskTracker) {
+    // Make sure a dump that is still being written is not missed.
+    RenderDump.awaitPendingSaves();
     if (!tryLoadDump(context, name + ".dump", taskTracker)) {
       // Failed to load the default render dump - try the backup file.
       if (!tryLoadDump(context, name + ".dump.backup", taskTracker)) {
@@ -2349,9 +2978,30 @@ public class Scene implements JsonSerializable, Refreshable {
   }
 
   /**
-   * Compute the alpha channel based on sky visibility.
+   * Compute the alpha channel value of a pixel.
    */
   public void computeAlpha(int x, int y, WorkerState state) {
+    alphaChannel[y * width + x] = alpha(x, y, state);
+  }
+
+  /**
+   * Get the alpha value of a pixel, without storing it in the alpha channel.
+   * This uses the alpha samples accumulated during rendering, and only traces the sky
+   * visibility of pixels without alpha samples.
+   */
+  public byte alpha(int x, int y, WorkerState state) {
+    float alpha = alphaSamples[y * width + x];
+    if (Float.isNaN(alpha)) {
+      return skyAlpha(x, y, state);
+    }
+    return (byte) (255 * Math.min(1, Math.max(0, alpha)) + 0.5);
+  }
+
+  /**
+   * Compute the alpha value of a pixel based on sky visibility, without storing it in the
+   * alpha channel. This traces four extra rays from the camera.
+   */
+  public byte skyAlpha(int x, int y, WorkerState state) {
     Ray ray = state.ray;
     double halfWidth = width / (2.0 * height);
     double invHeight = 1.0 / height;
@@ -2379,7 +3029,7 @@ public class Scene implements JsonSerializable, Refreshable {
       occlusion += PreviewRayTracer.skyOcclusion(this, state);
     }
 
-    alphaChannel[y * width + x] = (byte) (255 * occlusion * 0.25 + 0.5);
+    return (byte) (255 * occlusion * 0.25 + 0.5);
   }
 
   /**
@@ -2459,6 +3109,15 @@ public class Scene implements JsonSerializable, Refreshable {
     return samples;
   }
 
+  /**
+   * Get direct access to the alpha samples. Pixels without alpha samples are {@code NaN}.
+   *
+   * @return The alpha samples for this scene
+   */
+  public float[] getAlphaSamples() {
+    return alphaSamples;
+  }
+
   /**
    * Get the back buffer of the current frame (in ARGB format).
    * @return Back buffer
@@ -2715,6 +3374,9 @@ public class Scene implements JsonSerializable, Refreshable {
 
     // TODO: add regionList to compress the scene description size.
     json.add("chunkList", chunkList);
+    if (sharedOctreeKey != null) {
+      json.add("sharedOctree", sharedOctreeKey);
+    }
 
     json.add("octreeImplementation", octreeImplementation);
     json.add("emitterSamplingStrategy", emitterSamplingStrategy.name());
@@ -3035,6 +3697,8 @@ public class Scene implements JsonSerializable, Refreshable {
           chunks.add(new ChunkPosition(x, z));
         }
       }
+      String octreeKey = json.get("sharedOctree").asString("");
+      sharedOctreeKey = octreeKey.isEmpty() ? null : octreeKey;
     }
 
     octreeImplementation = json.get("octreeImplementation").asString(PersistentSettings.getOctreeImplementation());
@@ -7,6 +7,7 @@ import se.llbit.chunky.entity.ArmorStand;
 import se.llbit.chunky.entity.Entity;
 import se.llbit.chunky.entity.PaintingEntity;
 import se.llbit.chunky.entity.PlayerEntity;
+import se.llbit.chunky.world.ChunkPosition;
 import se.llbit.chunky.world.Dimension;
 import se.llbit.json.JsonArray;
 import se.llbit.json.JsonObject;
@@ -17,6 +18,10 @@ import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
 import se.llbit.math.Vector3i;
 import se.llbit.math.bvh.BVH;
+import se.llbit.math.bvh.BinaryBVH;
+import se.llbit.math.bvh.BvhCache;
+import se.llbit.math.bvh.RefittableBVH;
+import se.llbit.math.primitive.Primitive;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.ListTag;
 import se.llbit.nbt.Tag;
@@ -26,15 +31,19 @@ import se.llbit.util.mojangapi.MinecraftProfile;
 import se.llbit.util.mojangapi.MinecraftSkin;
 import se.llbit.util.mojangapi.MojangApi;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -54,6 +63,12 @@ public class SceneEntities {
    */
   private ArrayList<Entity> actors = new ArrayList<>();
 
+  /**
+   * Actors that were loaded from chunks, with their JSON at the time they were loaded.
+   * These are removed when their chunk is reloaded, unless they were changed since.
+   */
+  private Map<Entity, String> chunkActors = new IdentityHashMap<>();
+
   protected boolean renderActors = true;
 
   /** Poseable entities in the scene. */
@@ -62,6 +77,25 @@ public class SceneEntities {
   private BVH bvh = BVH.EMPTY;
   private BVH actorBvh = BVH.EMPTY;
 
+  /**
+   * Primitives of the world BVH in collected order, or {@code null} if the BVH can not be cached.
+   * The cache key and primitive indices are only computed from these when the cache is saved.
+   */
+  private Primitive[] bvhPrimitives = null;
+
+  /** Name of the BVH implementation and world offset that the world BVH was built with. */
+  private String bvhBuilderName = null;
+  private Vector3 bvhWorldOffset = null;
+
+  /** Key of the world BVH in the BVH cache, computed when the cache is saved or loaded. */
+  private byte[] bvhCacheKey = null;
+
+  /** Leaf primitive indices of the world BVH, see {@link BvhCache#primitiveIndices}. */
+  private int[] bvhPrimitiveIndices = null;
+
+  /** The BVH cache file that the world BVH was loaded from or saved to. */
+  private File bvhCacheFile = null;
+
   /**
    * The BVH implementation to use
    */
@@ -79,12 +113,19 @@ public class SceneEntities {
     actors.clear();
     actors.addAll(other.actors); // Create a copy so that entity changes can be reset.
     actors.trimToSize();
+    chunkActors = new IdentityHashMap<>(other.chunkActors);
     renderActors = other.renderActors;
 
     profiles = other.profiles;
 
     bvh = other.bvh;
     actorBvh = other.actorBvh;
+    bvhPrimitives = other.bvhPrimitives;
+    bvhBuilderName = other.bvhBuilderName;
+    bvhWorldOffset = other.bvhWorldOffset;
+    bvhCacheKey = other.bvhCacheKey;
+    bvhPrimitiveIndices = other.bvhPrimitiveIndices;
+    bvhCacheFile = other.bvhCacheFile;
 
     bvhImplementation = other.bvhImplementation;
   }
@@ -163,7 +204,7 @@ public class SceneEntities {
               yaw
             ));
           } else if (id.equals("minecraft:armor_stand") && entityLoadingPreferences.shouldLoadClass(ArmorStand.class)) {
-            addActor(new ArmorStand(
+            addChunkActor(new ArmorStand(
               new Vector3(x, y, z),
               tag
             ));
@@ -182,6 +223,25 @@ public class SceneEntities {
   }
 
   public void addActor(Entity entity) {
+    addActorIfNew(entity);
+  }
+
+  /**
+   * Add an actor that was loaded from a chunk. It is removed again by
+   * {@link #removeEntitiesInChunks(Set)} if it has not been changed.
+   */
+  public void addChunkActor(Entity entity) {
+    if (addActorIfNew(entity)) {
+      chunkActors.put(entity, actorState(entity));
+    }
+  }
+
+  private static String actorState(Entity entity) {
+    JsonValue json = entity.toJson();
+    return json == null ? "" : json.toCompactString();
+  }
+
+  private boolean addActorIfNew(Entity entity) {
     // don't add the actor again if it was already loaded from json
     if(actors.stream().noneMatch(actor -> {
       if(actor.getClass().equals(entity.getClass())) {
@@ -192,7 +252,9 @@ public class SceneEntities {
       return false;
     })) {
       actors.add(entity);
+      return true;
     }
+    return false;
   }
 
   public void addPlayer(PlayerEntity playerEntity) {
@@ -251,12 +313,119 @@ public class SceneEntities {
 
   public void buildBvh(TaskTracker.Task task, Vector3i origin) {
     Vector3 worldOffset = new Vector3(-origin.x, -origin.y, -origin.z);
-    bvh = BVH.Factory.create(bvhImplementation, entities, worldOffset, mainScene, task);
+    bvhPrimitives = null;
+    bvhCacheKey = null;
+    bvhPrimitiveIndices = null;
+    bvhCacheFile = null;
+    if (entities.isEmpty()) {
+      bvh = BVH.EMPTY;
+      return;
+    }
+    BVH.Factory.BVHBuilder builder = BVH.Factory.getImplementation(bvhImplementation);
+    if (!PersistentSettings.getBvhCache() || !builder.canBuildFromPrimitives()) {
+      bvh = builder.create(entities, worldOffset, mainScene, task);
+      return;
+    }
+    Primitive[] primitives = BVH.Factory.collectPrimitives(entities, worldOffset, task);
+    // The builder may reorder the array, the cache refers to the primitives in collected order.
+    BVH built = builder.create(primitives.clone(), mainScene, task);
+    if (built == null) {
+      bvh = builder.create(entities, worldOffset, mainScene, task);
+      return;
+    }
+    bvh = built;
+    bvhPrimitives = primitives;
+    bvhBuilderName = builder.getName();
+    bvhWorldOffset = worldOffset;
   }
 
+  /**
+   * Load the world BVH from a BVH cache file. The cache is only used if it was saved for the
+   * current entities and BVH implementation.
+   *
+   * @return {@code true} if the world BVH was loaded, otherwise it has to be built
+   */
+  public boolean loadBvhCache(File file, TaskTracker.Task task, Vector3i origin) {
+    if (entities.isEmpty() || !file.isFile()) {
+      return false;
+    }
+    Vector3 worldOffset = new Vector3(-origin.x, -origin.y, -origin.z);
+    BVH.Factory.BVHBuilder builder = BVH.Factory.getImplementation(bvhImplementation);
+    byte[] key = BvhCache.key(builder.getName(), entities, worldOffset);
+    try {
+      if (key == null || !BvhCache.matches(file, key)) {
+        return false;
+      }
+      Primitive[] primitives = BVH.Factory.collectPrimitives(entities, worldOffset, task);
+      BinaryBVH cached = BvhCache.load(file, key, primitives, mainScene);
+      if (cached == null) {
+        return false;
+      }
+      bvh = cached;
+      bvhPrimitives = primitives;
+      bvhBuilderName = builder.getName();
+      bvhWorldOffset = worldOffset;
+      bvhCacheKey = key;
+      bvhPrimitiveIndices = null;
+      bvhCacheFile = file;
+      return true;
+    } catch (IOException e) {
+      Log.info("Failed to load the BVH cache", e);
+      return false;
+    }
+  }
+
+  /**
+   * Save the world BVH to a BVH cache file, unless the BVH can not be cached or was already
+   * loaded from or saved to the file.
+   */
+  public void saveBvhCache(File file) throws IOException {
+    if (bvhPrimitives == null || !(bvh instanceof BinaryBVH)
+        || (file.equals(bvhCacheFile) && file.isFile())) {
+      return;
+    }
+    if (bvhCacheKey == null) {
+      bvhCacheKey = BvhCache.key(bvhBuilderName, entities, bvhWorldOffset);
+    }
+    if (bvhPrimitiveIndices == null) {
+      bvhPrimitiveIndices = BvhCache.primitiveIndices(bvh, bvhPrimitives);
+    }
+    if (bvhCacheKey == null || bvhPrimitiveIndices == null) {
+      // The BVH can not be cached, there is no need to try again.
+      bvhPrimitives = null;
+      return;
+    }
+    BvhCache.store(file, bvhCacheKey, (BinaryBVH) bvh, bvhPrimitiveIndices);
+    bvhCacheFile = file;
+  }
+
+  /**
+   * Build the actor BVH. Actors always use a {@link RefittableBVH} so that posing an actor does not
+   * require a full rebuild.
+   */
   public void buildActorBvh(TaskTracker.Task task, Vector3i origin) {
     Vector3 worldOffset = new Vector3(-origin.x, -origin.y, -origin.z);
-    actorBvh = BVH.Factory.create(bvhImplementation, actors, worldOffset, mainScene, task);
+    if (actors.isEmpty()) {
+      actorBvh = BVH.EMPTY;
+    } else {
+      actorBvh = new RefittableBVH(actors, worldOffset, mainScene, task);
+    }
+  }
+
+  /**
+   * Update the actor BVH after an actor changed, for example when it was posed or moved.
+   * The BVH is refitted if possible and rebuilt otherwise.
+   */
+  public void updateActorBvh(Entity actor, Vector3i origin) {
+    if (actorBvh instanceof RefittableBVH) {
+      Vector3 worldOffset = new Vector3(-origin.x, -origin.y, -origin.z);
+      RefittableBVH refitted = ((RefittableBVH) actorBvh).refit(actor, worldOffset);
+      if (refitted != null) {
+        actorBvh = refitted;
+        return;
+      }
+    }
+    buildActorBvh(TaskTracker.Task.NONE, origin);
   }
 
   public void finalizeLoading() {
@@ -265,15 +434,51 @@ public class SceneEntities {
   }
 
   public void removeEntity(Entity entity) {
+    chunkActors.remove(entity);
     if(entity instanceof PlayerEntity) {
       profiles.remove(entity);
     }
     actors.remove(entity);
   }
 
+  /**
+   * Remove the entities inside the given chunks, so that they can be loaded again.
+   * Actors are only removed if they were loaded from the chunk and have not been posed
+   * or otherwise changed since. The entity list is replaced rather than modified,
+   * since it may be shared with the render.
+   */
+  public void removeEntitiesInChunks(Set<ChunkPosition> chunks) {
+    ArrayList<Entity> remaining = new ArrayList<>(entities.size());
+    for (Entity entity : entities) {
+      if (!chunks.contains(chunkPosition(entity))) {
+        remaining.add(entity);
+      }
+    }
+    entities = remaining;
+
+    Iterator<Entity> iterator = actors.iterator();
+    while (iterator.hasNext()) {
+      Entity actor = iterator.next();
+      String state = chunkActors.get(actor);
+      if (state != null && chunks.contains(chunkPosition(actor))) {
+        chunkActors.remove(actor);
+        if (state.equals(actorState(actor))) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private static ChunkPosition chunkPosition(Entity entity) {
+    int cx = (int) Math.floor(entity.position.x) >> 4;
+    int cz = (int) Math.floor(entity.position.z) >> 4;
+    return new ChunkPosition(cx, cz);
+  }
+
   public void clear() {
     entities.clear();
     actors.clear();
+    chunkActors.clear();
   }
 
   public void writeJsonData(JsonObject json) {
@@ -80,6 +80,13 @@ public interface SceneManager {
    */
   void reloadChunks();
 
+  /**
+   * Attempt to reload the loaded chunks that changed since they were loaded.
+   */
+  default void reloadChangedChunks() {
+    reloadChunks();
+  }
+
   /**
    * This should only be used by the render controls dialog controller.
    * Modifications to the scene must always be protected by the intrinsic
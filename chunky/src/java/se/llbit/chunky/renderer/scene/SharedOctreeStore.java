@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import se.llbit.chunky.PersistentSettings;
+import se.llbit.chunky.renderer.SceneIOProvider;
+import se.llbit.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Octree files shared by scenes that load the same chunks.
+ *
+ * <p>The files are named by a hash of everything that determines the octree content: the
+ * world, dimension, chunk set, chunk stamps, Y range, resource packs and loading options.
+ * A scene that would save an octree already in the store just references it instead.
+ *
+ * <p>The store is a cache and may be cleared, so each scene also keeps its octree file as a
+ * hard link to the shared file. The file system counts the references, the scene still loads
+ * and exports without the store, and the octree data is only stored once on disk. Octrees that
+ * are no longer linked from any scene are removed by {@link #prune()}.
+ */
+class SharedOctreeStore implements SceneIOProvider {
+  /**
+   * Octrees are only pruned after this time, so that an octree that was just saved to the store
+   * is not removed before the scene links to it.
+   */
+  private static final long MIN_PRUNE_AGE = TimeUnit.HOURS.toMillis(1);
+
+  private final File directory;
+
+  SharedOctreeStore(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * @return the shared octree store in the cache directory
+   */
+  static SharedOctreeStore getDefault() {
+    return new SharedOctreeStore(new File(PersistentSettings.cacheDirectory(), "octrees"));
+  }
+
+  @Override public File getSceneDirectory() {
+    if (!directory.isDirectory()) {
+      //noinspection ResultOfMethodCallIgnored
+      directory.mkdirs();
+    }
+    return directory;
+  }
+
+  /**
+   * @return {@code true} if the octree file with the given content key is in the store
+   */
+  boolean contains(String key) {
+    return getSceneFile(key + ".octree3").isFile();
+  }
+
+  /**
+   * Move a completely written file into place, so that other Chunky instances sharing the
+   * store never see partially written files.
+   */
+  void publish(String tempFileName, String fileName) throws IOException {
+    File tempFile = getSceneFile(tempFileName);
+    File file = getSceneFile(fileName);
+    try {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Remove the octrees that are not linked from any scene directory anymore, together with their
+   * raw octree caches. This uses the hard link count of the files, so nothing is removed on file
+   * systems that do not report it.
+   */
+  void prune() {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".octree3"));
+    if (files == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (File file : files) {
+      if (now - file.lastModified() < MIN_PRUNE_AGE) {
+        continue;
+      }
+      Object links;
+      try {
+        links = Files.getAttribute(file.toPath(), "unix:nlink");
+      } catch (UnsupportedOperationException | IllegalArgumentException e) {
+        return;
+      } catch (IOException e) {
+        continue;
+      }
+      if (links instanceof Integer && (Integer) links <= 1) {
+        String key = file.getName().substring(0, file.getName().length() - ".octree3".length());
+        Log.info("Removing unused shared octree " + file.getName());
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        getSceneFile(key + ".octreecache").delete();
+      }
+    }
+  }
+
+  /**
+   * Make the target file a hard link to a file in the store. Where the file system does not
+   * support hard links, the file is copied instead.
+   */
+  void link(String fileName, File target) throws IOException {
+    Path file = getSceneFile(fileName).toPath();
+    if (target.isFile() && Files.isSameFile(file, target.toPath())) {
+      return;
+    }
+    Path tempFile = target.toPath().resolveSibling(target.getName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try {
+        Files.createLink(tempFile, file);
+      } catch (IOException | UnsupportedOperationException e) {
+        // The copy keeps the timestamp, the chunk stamps of the scene refer to it.
+        Files.copy(file, tempFile, StandardCopyOption.COPY_ATTRIBUTES);
+      }
+      Files.move(tempFile, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+}
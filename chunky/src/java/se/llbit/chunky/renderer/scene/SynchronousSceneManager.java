@@ -126,9 +126,12 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
 
   @PluginApi
   @Override public void saveScene(File sceneDirectory) throws InterruptedException {
+    // The snapshot is taken before locking the scene, the render manager needs the scene lock
+    // to reach the render pass boundary.
+    Scene dumpSnapshot = renderManager.takeDumpSnapshot();
     synchronized (storedScene) {
       context.setSceneDirectory(sceneDirectory);
-      saveScene(context, storedScene);
+      saveScene(context, storedScene, dumpSnapshot);
     }
   }
 
@@ -150,6 +153,10 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
   }
 
   public void saveScene(SceneIOProvider context, Scene scene) throws InterruptedException {
+    saveScene(context, scene, renderManager.takeDumpSnapshot());
+  }
+
+  private void saveScene(SceneIOProvider context, Scene scene, Scene dumpSnapshot) {
     try {
       String sceneName = scene.name();
       Log.info("Saving scene " + sceneName);
@@ -165,15 +172,14 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
         }
       }
 
-      // Create backup of scene description and current render dump.
+      // Create backup of scene description. The render dump is backed up when it is replaced.
       scene.backupFile(sceneDir, new File(sceneDir, sceneName + Scene.EXTENSION));
-      scene.backupFile(sceneDir, new File(sceneDir, sceneName + ".dump"));
 
       // Copy render status over from the renderManager.
       RenderStatus status = renderManager.getRenderStatus();
       scene.renderTime = status.getRenderTime();
       scene.spp = status.getSpp();
-      scene.saveScene(context, taskTracker);
+      scene.saveScene(context, taskTracker, dumpSnapshot);
       Log.info("Scene saved");
       this.onSceneSaved.run();
     } catch (IOException e) {
@@ -270,6 +276,23 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
     onChunksLoaded.run();
   }
 
+  @Override public void reloadChangedChunks() {
+    synchronized (scene) {
+      try {
+        // The changed chunks are patched into the octrees that the render shares with the scene.
+        renderManager.withRenderPaused(() -> scene.reloadChangedChunks(taskTracker));
+      } catch (InterruptedException e) {
+        Log.warn("Interrupted while waiting for the render to pause, chunks were not reloaded");
+        Thread.currentThread().interrupt();
+        return;
+      }
+      scene.refresh();
+      scene.setResetReason(ResetReason.SCENE_LOADED);
+      scene.setRenderMode(RenderMode.PREVIEW);
+    }
+    onChunksLoaded.run();
+  }
+
   @Override public ResetReason awaitSceneStateChange() throws InterruptedException {
     ResetReason reason;
     synchronized (scene) {
@@ -0,0 +1,564 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.resources;
+
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
+import se.llbit.math.Octree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Octree file format with independently compressed blocks (.octree3).
+ *
+ * <p>The file holds the same sections as {@link OctreeFileFormat}: the block palette, the world
+ * and water octrees, and the grass, foliage and water biome structures. Each section is split
+ * into blocks that are deflated separately. The sections follow each other in the file, each
+ * block prefixed with its compressed and uncompressed size and each section ended by
+ * {@link #END_OF_SECTION}. This lets the blocks be compressed and decompressed in parallel on the
+ * common thread pool, while the sections are serialized and deserialized concurrently.
+ *
+ * <p>Blocks are written as soon as they are compressed, and read ahead only a few blocks per
+ * section, so that neither saving nor loading holds more than a few blocks of a section in
+ * memory.
+ */
+public class BlockCompressedOctreeFileFormat {
+  private static final int MAGIC = 0x4F435433; // "OCT3"
+  private static final int VERSION = 2;
+
+  /** Uncompressed size of all but the last block of a section. */
+  private static final int BLOCK_SIZE = 1 << 22;
+
+  private static final int NUM_SECTIONS = 6;
+
+  /** Written in place of the compressed size of a block after the last block of a section. */
+  private static final int END_OF_SECTION = -1;
+
+  private interface SectionWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private interface SectionReader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+
+  /**
+   * Save octrees and grass/foliage/water textures to a file.
+   */
+  public static void store(OutputStream out, Octree octree,
+      Octree waterTree, BlockPalette palette,
+      BiomeStructure grassColors,
+      BiomeStructure foliageColors,
+      BiomeStructure waterColors)
+      throws IOException {
+    store(out, BLOCK_SIZE, octree, waterTree, palette, grassColors, foliageColors, waterColors);
+  }
+
+  static void store(OutputStream out, int blockSize, Octree octree,
+      Octree waterTree, BlockPalette palette,
+      BiomeStructure grassColors,
+      BiomeStructure foliageColors,
+      BiomeStructure waterColors)
+      throws IOException {
+    SectionWriter[] sections = {
+        palette::write,
+        octree::store,
+        waterTree::store,
+        section -> OctreeFileFormat.storeBiomeStructure(section, grassColors),
+        section -> OctreeFileFormat.storeBiomeStructure(section, foliageColors),
+        section -> OctreeFileFormat.storeBiomeStructure(section, waterColors),
+    };
+
+    BlockCompressingOutputStream[] compressed = new BlockCompressingOutputStream[NUM_SECTIONS];
+    List<Future<?>> serialized = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_SECTIONS);
+    try {
+      for (int i = 0; i < NUM_SECTIONS; ++i) {
+        SectionWriter section = sections[i];
+        BlockCompressingOutputStream blocks = new BlockCompressingOutputStream(blockSize);
+        compressed[i] = blocks;
+        serialized.add(executor.submit(() -> {
+          try (DataOutputStream sectionOut = new DataOutputStream(blocks)) {
+            section.write(sectionOut);
+          } finally {
+            blocks.finish();
+          }
+          return null;
+        }));
+      }
+
+      DataOutputStream dataOut = new DataOutputStream(out);
+      dataOut.writeInt(MAGIC);
+      dataOut.writeInt(VERSION);
+      dataOut.writeInt(OctreeFileFormat.OCTREE_VERSION);
+      dataOut.writeInt(blockSize);
+      dataOut.writeInt(NUM_SECTIONS);
+      for (int i = 0; i < NUM_SECTIONS; ++i) {
+        // The later sections are serialized meanwhile, until they have a few blocks pending.
+        BlockCompressingOutputStream.PendingBlock block;
+        while ((block = compressed[i].takeBlock()) != null) {
+          byte[] data = await(block.data);
+          dataOut.writeInt(data.length);
+          dataOut.writeInt(block.size);
+          dataOut.write(data);
+        }
+        await(serialized.get(i));
+        dataOut.writeInt(END_OF_SECTION);
+      }
+      dataOut.flush();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Load octrees and grass/foliage/water textures from a file.
+   *
+   * @param in         input stream for the file to load the scene from.
+   * @param octreeImpl The octree implementation to use
+   */
+  public static OctreeFileFormat.OctreeData load(InputStream in, String octreeImpl)
+      throws IOException {
+    return load(in, octreeImpl, true);
+  }
+
+  /**
+   * Load octrees and grass/foliage/water textures from a file.
+   *
+   * @param in          input stream for the file to load the scene from.
+   * @param octreeImpl  The octree implementation to use
+   * @param loadOctrees {@code false} to skip the world and water octrees, for example when they
+   *                    are loaded from a cache instead
+   */
+  public static OctreeFileFormat.OctreeData load(InputStream in, String octreeImpl,
+      boolean loadOctrees) throws IOException {
+    DataInputStream dataIn = new DataInputStream(in);
+    if (dataIn.readInt() != MAGIC) {
+      throw new IOException("Not a block compressed octree file.");
+    }
+    int version = dataIn.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+          "Incompatible octree format: wrong block format version (expected %d, was %d).",
+          VERSION, version));
+    }
+    int octreeVersion = dataIn.readInt();
+    if (octreeVersion != OctreeFileFormat.OCTREE_VERSION) {
+      throw new IOException(String.format(
+          "Incompatible octree format: wrong version number (expected %d, was %d).",
+          OctreeFileFormat.OCTREE_VERSION, octreeVersion));
+    }
+    int blockSize = dataIn.readInt();
+    int numSections = dataIn.readInt();
+    if (blockSize <= 0 || numSections != NUM_SECTIONS) {
+      throw new IOException("Corrupt octree file header.");
+    }
+
+    BlockInflatingInputStream[] sections = new BlockInflatingInputStream[numSections];
+    for (int i = 0; i < numSections; ++i) {
+      if (loadOctrees || (i != 1 && i != 2)) {
+        sections[i] = new BlockInflatingInputStream();
+      }
+    }
+
+    // The sections are deserialized while the compressed blocks are still being read.
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_SECTIONS);
+    try {
+      Future<BlockPalette> palette = readSection(executor, sections[0], BlockPalette::read);
+      Future<Octree> worldTree = null;
+      Future<Octree> waterTree = null;
+      if (loadOctrees) {
+        worldTree = readSection(executor, sections[1], section -> Octree.load(octreeImpl, section));
+        waterTree = readSection(executor, sections[2], section -> Octree.load(octreeImpl, section));
+      }
+      Future<BiomeStructure> grassColors = readSection(executor, sections[3],
+          OctreeFileFormat::loadBiomeStructure);
+      Future<BiomeStructure> foliageColors = readSection(executor, sections[4],
+          OctreeFileFormat::loadBiomeStructure);
+      Future<BiomeStructure> waterColors = readSection(executor, sections[5],
+          OctreeFileFormat::loadBiomeStructure);
+
+      try {
+        for (BlockInflatingInputStream section : sections) {
+          readCompressedBlocks(dataIn, blockSize, section);
+        }
+      } catch (IOException e) {
+        for (BlockInflatingInputStream section : sections) {
+          if (section != null) {
+            section.abort(e);
+          }
+        }
+        throw e;
+      }
+
+      OctreeFileFormat.OctreeData data = new OctreeFileFormat.OctreeData();
+      data.palette = await(palette);
+      if (loadOctrees) {
+        data.worldTree = await(worldTree);
+        data.waterTree = await(waterTree);
+      }
+      data.grassColors = await(grassColors);
+      data.foliageColors = await(foliageColors);
+      data.waterColors = await(waterColors);
+      data.version = octreeVersion;
+      return data;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> Future<T> readSection(ExecutorService executor,
+      BlockInflatingInputStream section, SectionReader<T> reader) {
+    return executor.submit(() -> {
+      // Closing the section lets the file reader discard blocks that are not read.
+      try (DataInputStream in = new DataInputStream(section)) {
+        return reader.read(in);
+      }
+    });
+  }
+
+  /**
+   * Read the blocks of a section from the file and pass them to the section stream.
+   *
+   * @param section the section stream, or {@code null} to skip the section
+   */
+  private static void readCompressedBlocks(DataInputStream in, int blockSize,
+      BlockInflatingInputStream section) throws IOException {
+    while (true) {
+      int compressedSize = in.readInt();
+      if (compressedSize == END_OF_SECTION) {
+        break;
+      }
+      int size = in.readInt();
+      if (compressedSize < 0 || size <= 0 || size > blockSize) {
+        throw new IOException("Corrupt octree block header.");
+      }
+      if (section == null) {
+        skipFully(in, compressedSize);
+      } else {
+        byte[] data = new byte[compressedSize];
+        in.readFully(data);
+        section.addBlock(data, size);
+      }
+    }
+    if (section != null) {
+      section.end();
+    }
+  }
+
+  private static void skipFully(DataInputStream in, int size) throws IOException {
+    int remaining = size;
+    while (remaining > 0) {
+      int skipped = in.skipBytes(remaining);
+      if (skipped == 0) {
+        if (in.read() < 0) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  /**
+   * Wait for a result, rethrowing exceptions of the task.
+   */
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for octree data.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Limit for the number of blocks per section that are being compressed or decompressed at
+   * once, so that a section never holds many uncompressed blocks in memory.
+   */
+  private static int maxPendingBlocks() {
+    return 2 * Chunky.getCommonThreads().getParallelism();
+  }
+
+  /**
+   * Splits the written data into blocks and deflates each block on the common thread pool.
+   * The writer waits when too many blocks are pending, until {@link #takeBlock()} takes them.
+   */
+  private static class BlockCompressingOutputStream extends OutputStream {
+    static class PendingBlock {
+      final Future<byte[]> data;
+      final int size;
+
+      PendingBlock(Future<byte[]> data, int size) {
+        this.data = data;
+        this.size = size;
+      }
+    }
+
+    private final int blockSize;
+    private final int maxPending = maxPendingBlocks();
+    private final ArrayDeque<PendingBlock> pending = new ArrayDeque<>();
+    private boolean finished = false;
+    private byte[] buffer;
+    private int count = 0;
+
+    BlockCompressingOutputStream(int blockSize) {
+      this.blockSize = blockSize;
+      this.buffer = new byte[blockSize];
+    }
+
+    @Override public void write(int b) throws IOException {
+      if (count == buffer.length) {
+        flushBlock();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (count == buffer.length) {
+          flushBlock();
+        }
+        int n = Math.min(len, buffer.length - count);
+        System.arraycopy(b, off, buffer, count, n);
+        count += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override public void close() throws IOException {
+      if (count > 0) {
+        flushBlock();
+      }
+    }
+
+    private void flushBlock() throws IOException {
+      byte[] block = buffer;
+      int size = count;
+      synchronized (this) {
+        try {
+          // Wait for the file writer so that the compressed data does not pile up.
+          while (pending.size() >= maxPending) {
+            wait();
+          }
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while saving octree data.");
+        }
+        pending.add(new PendingBlock(
+            Chunky.getCommonThreads().submit(() -> deflate(block, size)), size));
+        notifyAll();
+      }
+      buffer = new byte[blockSize];
+      count = 0;
+    }
+
+    /**
+     * Mark the end of the section, after the last block or after a failure.
+     */
+    synchronized void finish() {
+      finished = true;
+      notifyAll();
+    }
+
+    /**
+     * Take the next block in order, waiting until it is available.
+     *
+     * @return the block, or {@code null} after the last block
+     */
+    synchronized PendingBlock takeBlock() throws IOException {
+      try {
+        while (pending.isEmpty() && !finished) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while saving octree data.");
+      }
+      PendingBlock block = pending.poll();
+      notifyAll();
+      return block;
+    }
+
+    private static byte[] deflate(byte[] block, int size) {
+      Deflater deflater = new Deflater();
+      try {
+        deflater.setInput(block, 0, size);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size / 4 + 64);
+        byte[] buffer = new byte[1 << 16];
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buffer);
+          out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Reads the blocks of one section, inflating the next few blocks ahead of the reader on the
+   * common thread pool. The file reader waits in {@link #addBlock(byte[], int)} when too many
+   * blocks are pending.
+   */
+  private static class BlockInflatingInputStream extends InputStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int maxPending = maxPendingBlocks();
+    private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    private boolean ended = false;
+    private boolean closed = false;
+    private IOException failure = null;
+    private byte[] block = EMPTY;
+    private int pos = 0;
+
+    /** Pass the next compressed block of this section from the file. */
+    synchronized void addBlock(byte[] data, int size) throws IOException {
+      try {
+        while (pending.size() >= maxPending && !closed) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while loading octree data.");
+      }
+      if (!closed) {
+        pending.add(CompletableFuture.supplyAsync(() -> inflate(data, size),
+            Chunky.getCommonThreads()));
+        notifyAll();
+      }
+    }
+
+    /** Mark the end of the section after the last block. */
+    synchronized void end() {
+      ended = true;
+      notifyAll();
+    }
+
+    synchronized void abort(IOException cause) {
+      failure = cause;
+      ended = true;
+      notifyAll();
+    }
+
+    @Override public synchronized void close() {
+      closed = true;
+      pending.clear();
+      notifyAll();
+    }
+
+    @Override public int read() throws IOException {
+      if (pos == block.length && !nextBlock()) {
+        return -1;
+      }
+      return block[pos++] & 0xFF;
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos == block.length && !nextBlock()) {
+        return -1;
+      }
+      int n = Math.min(len, block.length - pos);
+      System.arraycopy(block, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    private boolean nextBlock() throws IOException {
+      CompletableFuture<byte[]> next;
+      synchronized (this) {
+        try {
+          while (pending.isEmpty() && !ended) {
+            wait();
+          }
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted while loading octree data.");
+        }
+        if (pending.isEmpty()) {
+          if (failure != null) {
+            throw failure;
+          }
+          return false;
+        }
+        next = pending.poll();
+        notifyAll();
+      }
+      block = await(next);
+      pos = 0;
+      return true;
+    }
+
+    private static byte[] inflate(byte[] data, int size) {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(data);
+        byte[] result = new byte[size];
+        int n = 0;
+        while (n < size && !inflater.finished()) {
+          int inflated = inflater.inflate(result, n, size - n);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          n += inflated;
+        }
+        if (n != size || !inflater.finished()) {
+          throw new UncheckedIOException(new IOException("Corrupt octree block."));
+        }
+        return result;
+      } catch (DataFormatException e) {
+        throw new UncheckedIOException(new IOException("Corrupt octree block.", e));
+      } finally {
+        inflater.end();
+      }
+    }
+  }
+}
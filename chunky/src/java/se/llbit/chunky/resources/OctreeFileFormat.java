@@ -33,7 +33,7 @@ import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
 public class OctreeFileFormat {
 
   private static final int MIN_OCTREE_VERSION = 3;
-  private static final int OCTREE_VERSION = 7;
+  static final int OCTREE_VERSION = 7;
 
   /**
    * In octree v3-v4, the top bit of the type field in a serialized octree node is reserved for
@@ -75,7 +75,7 @@ public class OctreeFileFormat {
     return data;
   }
 
-  private static BiomeStructure loadBiomeStructure(DataInputStream in) throws IOException {
+  static BiomeStructure loadBiomeStructure(DataInputStream in) throws IOException {
     String biomeFormat = in.readUTF();
     if (biomeFormat.equals("NONE")) {
       return null;
@@ -170,21 +170,16 @@ public class OctreeFileFormat {
     palette.write(out);
     octree.store(out);
     waterTree.store(out);
-    if (grassColors != null) {
-      out.writeUTF(grassColors.biomeFormat());
-      grassColors.store(out);
-    } else {
-      out.writeUTF("NONE");
-    }
-    if (foliageColors != null) {
-      out.writeUTF(foliageColors.biomeFormat());
-      foliageColors.store(out);
-    } else {
-      out.writeUTF("NONE");
-    }
-    if (waterColors != null) {
-      out.writeUTF(waterColors.biomeFormat());
-      waterColors.store(out);
+    storeBiomeStructure(out, grassColors);
+    storeBiomeStructure(out, foliageColors);
+    storeBiomeStructure(out, waterColors);
+  }
+
+  static void storeBiomeStructure(DataOutputStream out, BiomeStructure biomeStructure)
+      throws IOException {
+    if (biomeStructure != null) {
+      out.writeUTF(biomeStructure.biomeFormat());
+      biomeStructure.store(out);
     } else {
       out.writeUTF("NONE");
     }
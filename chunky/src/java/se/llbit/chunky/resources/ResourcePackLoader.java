@@ -23,6 +23,7 @@ import se.llbit.chunky.block.jsonmodels.ResourcepackBlockProvider;
 import se.llbit.chunky.world.MaterialStore;
 import se.llbit.chunky.world.biome.Biomes;
 import se.llbit.log.Log;
+import se.llbit.math.primitive.InstancedModel;
 import se.llbit.util.FileSystemUtil;
 
 import java.io.File;
@@ -121,6 +122,7 @@ public class ResourcePackLoader {
    */
   public static void loadResourcePacks(List<File> resourcePacks) {
     TextureCache.reset();
+    InstancedModel.reset();
     Biomes.reset();
 
     loadedResourcePacks = resourcePacks.stream()
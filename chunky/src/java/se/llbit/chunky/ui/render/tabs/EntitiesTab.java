@@ -178,7 +178,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         playerModel.getSelectionModel().selectedItemProperty().addListener(
             (observable, oldValue, newValue) -> {
               player.model = newValue;
-              scene.rebuildActorBvh();
+              scene.updateActorBvh(entity);
             });
         HBox modelBox = new HBox();
         modelBox.setSpacing(10.0);
@@ -201,7 +201,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           if (skinFile != null) {
             player.setTexture(skinFile.getAbsolutePath());
             skinField.setText(skinFile.getAbsolutePath());
-            scene.rebuildActorBvh();
+            scene.updateActorBvh(entity);
           }
         });
         Button downloadSkin = new Button("Download skin...");
@@ -252,7 +252,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         showOuterLayer.setSelected(player.showOuterLayer);
         showOuterLayer.selectedProperty().addListener(((observable, oldValue, newValue) -> {
           player.showOuterLayer = newValue;
-          scene.rebuildActorBvh();
+          scene.updateActorBvh(entity);
         }));
         HBox layerBox = new HBox();
         layerBox.setSpacing(10.0);
@@ -278,7 +278,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           openingAngle.setRange(0, 180);
           openingAngle.onValueChange(value -> {
             book.setOpenAngle(Math.toRadians(value));
-            scene.rebuildActorBvh();
+            scene.updateActorBvh(entity);
           });
           controls.getChildren().add(openingAngle);
 
@@ -289,7 +289,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           page1Angle.setRange(0, 180);
           page1Angle.onValueChange(value -> {
             book.setPageAngleA(Math.toRadians(value));
-            scene.rebuildActorBvh();
+            scene.updateActorBvh(entity);
           });
           controls.getChildren().add(page1Angle);
 
@@ -300,7 +300,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           page2Angle.setRange(0, 180);
           page2Angle.onValueChange(value -> {
             book.setPageAngleB(Math.toRadians(value));
-            scene.rebuildActorBvh();
+            scene.updateActorBvh(entity);
           });
           controls.getChildren().add(page2Angle);
         }
@@ -314,7 +314,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         height.setRange(1, 512);
         height.onValueChange(value -> {
           beam.setHeight(value);
-          scene.rebuildActorBvh();
+          scene.updateActorBvh(entity);
         });
         controls.getChildren().add(height);
 
@@ -366,23 +366,23 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
 
               emittance.onValueChange(value -> {
                 beamMat.emittance = value.floatValue();
-                scene.rebuildActorBvh();
+                scene.updateActorBvh(entity);
               });
               specular.onValueChange(value -> {
                 beamMat.specular = value.floatValue();
-                scene.rebuildActorBvh();
+                scene.updateActorBvh(entity);
               });
               ior.onValueChange(value -> {
                 beamMat.ior = value.floatValue();
-                scene.rebuildActorBvh();
+                scene.updateActorBvh(entity);
               });
               perceptualSmoothness.onValueChange(value -> {
                 beamMat.setPerceptualSmoothness(value);
-                scene.rebuildActorBvh();
+                scene.updateActorBvh(entity);
               });
               metalness.onValueChange(value -> {
                 beamMat.metalness = value.floatValue();
-                scene.rebuildActorBvh();
+                scene.updateActorBvh(entity);
               });
             }
         );
@@ -391,7 +391,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
               Integer index = colorHeightList.getSelectionModel().getSelectedItem();
               if (index != null) {
                 beam.getMaterials().get(index).updateColor(ColorUtil.getRGB(ColorUtil.fromFx(newColorValue)));
-                scene.rebuildActorBvh();
+                scene.updateActorBvh(entity);
               }
             }
         );
@@ -405,7 +405,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           if (index != null && index != 0) { //Prevent removal of the bottom layer
             beam.getMaterials().remove(index);
             colorHeightList.getItems().removeAll(index);
-            scene.rebuildActorBvh();
+            scene.updateActorBvh(entity);
           }
         });
         IntegerTextField layerInput = new IntegerTextField();
@@ -415,7 +415,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           if (!beam.getMaterials().containsKey(layerInput.valueProperty().get())) { //Don't allow duplicate indices
             beam.getMaterials().put(layerInput.valueProperty().get(), new BeaconBeamMaterial(BeaconBeamMaterial.DEFAULT_COLOR));
             colorHeightList.getItems().add(layerInput.valueProperty().get());
-            scene.rebuildActorBvh();
+            scene.updateActorBvh(entity);
           }
         });
 
@@ -431,22 +431,22 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         withEntity(e -> {
           Vector3 currentPosition = e.getPosition();
           e.setPosition(new Vector3(newValue.doubleValue(), currentPosition.y, currentPosition.z));
+          scene.updateActorBvh(e);
         });
-        scene.rebuildActorBvh();
       });
       posY.valueProperty().addListener((observable, oldValue, newValue) -> {
         withEntity(e -> {
           Vector3 currentPosition = e.getPosition();
           e.setPosition(new Vector3(currentPosition.x, newValue.doubleValue(), currentPosition.z));
+          scene.updateActorBvh(e);
         });
-        scene.rebuildActorBvh();
       });
       posZ.valueProperty().addListener((observable, oldValue, newValue) -> {
         withEntity(e -> {
           Vector3 currentPosition = e.getPosition();
           e.setPosition(new Vector3(currentPosition.x, currentPosition.y, newValue.doubleValue()));
+          scene.updateActorBvh(e);
         });
-        scene.rebuildActorBvh();
       });
 
       controls.getChildren().add(position);
@@ -459,7 +459,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
       scale.setRange(0.1, 10);
       scale.onValueChange(value -> {
         poseable.setScale(value);
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(entity);
       });
       controls.getChildren().add(scale);
 
@@ -471,7 +471,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         headScale.setRange(0.1, 10);
         headScale.onValueChange(value -> {
           poseable.setHeadScale(value);
-          scene.rebuildActorBvh();
+          scene.updateActorBvh(entity);
         });
         controls.getChildren().add(headScale);
       }
@@ -516,19 +516,19 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         withPose(entity, partList.getValue(), partPose -> {
           partPose.set(0, Json.of(Math.toRadians(value)));
         });
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(entity);
       });
       yaw.onValueChange(value -> {
         withPose(entity, partList.getValue(), partPose -> {
           partPose.set(1, Json.of(Math.toRadians(value)));
         });
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(entity);
       });
       roll.onValueChange(value -> {
         withPose(entity, partList.getValue(), partPose -> {
           partPose.set(2, Json.of(Math.toRadians(value)));
         });
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(entity);
       });
 
       if (partNames.length > 0) {
@@ -550,7 +550,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
             gear.add("id", gearField.getText());
           }
           geared.getGear().set(slot, gear);
-          scene.rebuildActorBvh();
+          scene.updateActorBvh(entity);
         });
         gearField.setText(geared.getGear(slot).get("id").stringValue(""));
         slotBox.getChildren().addAll(new Label(slot + ":"), gearField);
@@ -624,7 +624,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
     entityToCamera.setOnAction(e -> withEntity(entity -> {
       entity.setPosition(scene.camera().getPosition());
       updatePositionFields(entity);
-      scene.rebuildActorBvh();
+      scene.updateActorBvh(entity);
     }));
     entityToTarget.setTooltip(new Tooltip("Move the selected entity to the current target."));
     entityToTarget.setOnAction(e -> withEntity(player -> {
@@ -632,7 +632,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
       if (target != null) {
         player.position.set(target);
         updatePositionFields(player);
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(player);
       }
     }));
     faceCamera.setTooltip(new Tooltip("Makes the selected player look at the camera."));
@@ -640,7 +640,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
       if (entity instanceof Poseable) {
         Poseable player = (Poseable) entity;
         player.lookAt(scene.camera().getPosition());
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(entity);
       }
     }));
     faceTarget.setTooltip(new Tooltip("Makes the selected player look at the current view target."));
@@ -649,7 +649,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
       if (target != null && entity instanceof Poseable) {
         Poseable player = (Poseable) entity;
         player.lookAt(target);
-        scene.rebuildActorBvh();
+        scene.updateActorBvh(entity);
       }
     }));
     entityTable.getSelectionModel().selectedItemProperty()
@@ -713,7 +713,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
       playerModelSelector.getSelectionModel().select(skin.getPlayerModel());
       skinField.setText(filePath);
       Log.info("Successfully set skin");
-      scene.rebuildActorBvh();
+      scene.updateActorBvh(player);
     }
   }
 }
@@ -398,9 +398,9 @@ public class GeneralTab extends ScrollPane implements RenderControlsTab, Initial
       reloadChunks.setDisable(chunkyFxController.getChunkSelection().isEmpty());
     });
 
-    reloadChunks.setTooltip(new Tooltip("Reload all chunks in the scene."));
+    reloadChunks.setTooltip(new Tooltip("Reload the chunks in the scene that changed in the world."));
     reloadChunks.setGraphic(new ImageView(Icon.reload.fxImage()));
-    reloadChunks.setOnAction(e -> controller.getSceneManager().reloadChunks());
+    reloadChunks.setOnAction(e -> controller.getSceneManager().reloadChangedChunks());
 
     canvasSizeLabel.setGraphic(new ImageView(Icon.scale.fxImage()));
     canvasSizeInput.getSize().addListener(this::updateCanvasSize);
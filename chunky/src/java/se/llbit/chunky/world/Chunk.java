@@ -25,6 +25,7 @@ import se.llbit.chunky.chunk.BlockPalette;
 import se.llbit.chunky.chunk.ChunkData;
 import se.llbit.chunky.chunk.ChunkLoadingException;
 import se.llbit.chunky.chunk.EmptyChunkData;
+import se.llbit.chunky.chunk.LocalBlockPalette;
 import se.llbit.chunky.chunk.biome.BiomeDataFactory;
 import se.llbit.chunky.map.*;
 import se.llbit.chunky.world.biome.ArrayBiomePalette;
@@ -34,7 +35,6 @@ import se.llbit.chunky.world.region.Region;
 import se.llbit.log.Log;
 import se.llbit.math.QuickMath;
 import se.llbit.nbt.*;
-import se.llbit.util.BitBuffer;
 import se.llbit.util.Mutable;
 import se.llbit.util.annotation.NotNull;
 
@@ -116,7 +116,7 @@ public class Chunk {
    * @return loaded data, or null if something went wrong
    */
   private Map<String, Tag> getChunkTags(Set<String> request) throws ChunkLoadingException {
-    MCRegion region = (MCRegion) dimension.getRegion(position.getRegionPosition());
+    MCRegion region = getMCRegion();
     Mutable<Integer> timestamp = new Mutable<>(dataTimestamp);
     Map<String, Tag> chunkTags = region.getChunkTags(this.position, request, timestamp);
     this.dataTimestamp = timestamp.get();
@@ -128,10 +128,23 @@ public class Chunk {
    * @return loaded data, or null if something went wrong
    */
   private Map<String, Tag> getEntityTags(Set<String> request) throws ChunkLoadingException {
-    MCRegion region = (MCRegion) dimension.getRegion(position.getRegionPosition());
+    MCRegion region = getMCRegion();
     return region.getEntityTags(this.position, request);
   }
 
+  /**
+   * @return the region containing this chunk
+   * @throws ChunkLoadingException if the chunk is not stored in a Minecraft region file
+   */
+  private MCRegion getMCRegion() throws ChunkLoadingException {
+    Region region = dimension.getRegion(position.getRegionPosition());
+    if (!(region instanceof MCRegion)) {
+      throw new ChunkLoadingException(String.format(
+          "Chunk %s is not in a region file (%s)", position, region.getClass().getSimpleName()));
+    }
+    return (MCRegion) region;
+  }
+
   /**
    * Reset the rendered layers in this chunk.
    */
@@ -250,6 +263,7 @@ public class Chunk {
 
     Tag sections = getTagFromNames(data, LEVEL_SECTIONS, SECTIONS_POST_21W39A);
     if (sections.isList()) {
+      LocalBlockPalette localPalette = new LocalBlockPalette(blockPalette);
       for (SpecificTag section : sections.asList()) {
         Tag yTag = section.get("Y");
         int sectionY = yTag.byteValue();
@@ -280,39 +294,16 @@ public class Chunk {
               bpb = blockStates.longArray().length / 64;
             }
 
-            int[] subpalette = new int[localBlockPalette.size()];
-            int paletteIndex = 0;
-            for (Tag item : localBlockPalette.asList()) {
-              subpalette[paletteIndex] = blockPalette.put(item);
-              paletteIndex += 1;
-            }
-            BitBuffer buffer = new BitBuffer(blockStates.longArray(), bpb, isAligned);
-            for (int y = 0; y < SECTION_Y_MAX; y++) {
-              int blockY = sectionMinBlockY + y;
-              for (int z = 0; z < Z_MAX; z++) {
-                for(int x = 0; x < X_MAX; x++) {
-                  int b0 = buffer.read();
-                  if (b0 < subpalette.length) {
-                    chunkData.setBlockAt(x, blockY, z, subpalette[b0]);
-                  }
-                }
-              }
-            }
+            int[] subpalette = localPalette.put(localBlockPalette);
+            chunkData.setSection(sectionY, subpalette, blockStates.longArray(), bpb, isAligned);
           } else {
             // Single block palette
             if (localBlockPalette.size() == 1) {
               // Check it is not air block
-              int block = blockPalette.put(localBlockPalette.get(0));
+              int block = localPalette.put(localBlockPalette.get(0));
               if (block != blockPalette.airId) {
                 // Set the entire section
-                for (int y = 0; y < SECTION_Y_MAX; y++) {
-                  int blockY = sectionMinBlockY + y;
-                  for (int z = 0; z < Z_MAX; z++) {
-                    for(int x = 0; x < X_MAX; x++) {
-                      chunkData.setBlockAt(x, blockY, z, block);
-                    }
-                  }
-                }
+                chunkData.setSection(sectionY, new int[] { block }, null, 0, false);
               }
             }
           }
@@ -337,7 +328,7 @@ public class Chunk {
               int blockY = sectionMinBlockY + y;
               for (int z = 0; z < Z_MAX; z++) {
                 for (int x = 0; x < X_MAX; x++) {
-                  chunkData.setBlockAt(x, blockY, z, blockPalette.put(
+                  chunkData.setBlockAt(x, blockY, z, localPalette.put(
                       LegacyBlocks.getTag(offset, blocksBytes, blockDataBytes)));
                   offset += 1;
                 }
@@ -393,14 +384,14 @@ public class Chunk {
 
   public static int waterLevelAt(ChunkData chunkData, BlockPalette palette, int cx, int cy, int cz,
                                  int baseLevel) {
-    Material corner = palette.get(chunkData.getBlockAt(cx, cy, cz));
-    if (corner.isWater()) {
-      Material above = palette.get(chunkData.getBlockAt(cx, cy+1, cz));
-      boolean isFullBlock = above.isWaterFilled();
-      return isFullBlock ? 8 : 8 - ((Water) corner).level;
-    } else if (corner.waterlogged) {
+    int corner = chunkData.getBlockAt(cx, cy, cz);
+    if (palette.isWater(corner)) {
+      boolean isFullBlock = palette.isWaterFilled(chunkData.getBlockAt(cx, cy+1, cz));
+      return isFullBlock ? 8 : 8 - ((Water) palette.get(corner)).level;
+    } else if (palette.isWaterFilled(corner)) {
+      // Waterlogged block.
       return 8;
-    } else if (!corner.solid) {
+    } else if (!palette.isSolid(corner)) {
       return 0;
     }
     return baseLevel;
@@ -408,12 +399,11 @@ public class Chunk {
 
   public static int lavaLevelAt(ChunkData chunkData, BlockPalette palette, int cx, int cy, int cz,
                                 int baseLevel) {
-    Material corner = palette.get(chunkData.getBlockAt(cx, cy, cz));
-    if (corner instanceof Lava) {
-      Material above = palette.get(chunkData.getBlockAt(cx, cy+1, cz));
-      boolean isFullBlock = above instanceof Lava;
-      return isFullBlock ? 8 : 8 - ((Lava) corner).level;
-    } else if (!corner.solid) {
+    int corner = chunkData.getBlockAt(cx, cy, cz);
+    if (palette.isLava(corner)) {
+      boolean isFullBlock = palette.isLava(chunkData.getBlockAt(cx, cy+1, cz));
+      return isFullBlock ? 8 : 8 - ((Lava) palette.get(corner)).level;
+    } else if (!palette.isSolid(corner)) {
       return 0;
     }
     return baseLevel;
@@ -453,12 +443,41 @@ public class Chunk {
     request.add(LEVEL_ENTITIES);
     request.add(LEVEL_TILEENTITIES);
     request.add(BLOCK_ENTITIES_POST_21W43A);
-    Map<String, Tag> dataMap = getChunkTags(request);
-    // TODO: improve error handling here.
-    if (dataMap == null) {
-      throw new ChunkLoadingException(String.format("Got null data for chunk %s", this.position));
+
+    Region region = dimension.getRegion(position.getRegionPosition());
+    ChunkCache cache = ChunkCache.getDefault();
+    long chunkStamp = 0;
+    long entityStamp = 0;
+    Tag data = null;
+    if (cache != null) {
+      chunkStamp = region.getChunkStamp(position);
+      entityStamp = region.getEntityStamp(position);
+      data = cache.load(dimension.getRegionDirectory(), position, chunkStamp, entityStamp);
+    }
+    if (data != null) {
+      dataTimestamp = (int) chunkStamp;
+    } else {
+      Map<String, Tag> dataMap = getChunkTags(request);
+      // TODO: improve error handling here.
+      if (dataMap == null) {
+        throw new ChunkLoadingException(String.format("Got null data for chunk %s", this.position));
+      }
+
+      // post 20w45A entities
+      if (dataMap.get(DATAVERSION).intValue() >= DATAVERSION_20W45A) {
+        Set<String> entitiesRequest = new HashSet<>();
+        entitiesRequest.add(ENTITIES_POST_20W45A);
+
+        Map<String, Tag> entitiesMap = getEntityTags(entitiesRequest);
+        if (entitiesMap != null) {
+          dataMap.put(ENTITIES_POST_20W45A, entitiesMap.get(ENTITIES_POST_20W45A));
+        }
+      }
+      data = tagFromMap(dataMap);
+      if (cache != null) {
+        cache.store(dimension.getRegionDirectory(), position, chunkStamp, entityStamp, data);
+      }
     }
-    Tag data = tagFromMap(dataMap);
 
     int dataVersion = data.get(DATAVERSION).intValue();
     if(reuseChunkData.get() == null || reuseChunkData.get() instanceof EmptyChunkData) {
@@ -494,17 +513,11 @@ public class Chunk {
 
     // post 20w45A entities
     if (dataVersion >= DATAVERSION_20W45A) {
-      Set<String> entitiesRequest = new HashSet<>();
-      entitiesRequest.add(ENTITIES_POST_20W45A);
-
-      Map<String, Tag> entitiesMap = getEntityTags(entitiesRequest);
-      if (entitiesMap != null) {
-        entitiesTag = entitiesMap.get(".Entities");
-        if (entitiesTag.isList()) {
-          for (SpecificTag tag : (ListTag) entitiesTag) {
-            if (tag.isCompoundTag())
-              chunkData.addEntity((CompoundTag) tag);
-          }
+      entitiesTag = data.get(ENTITIES_POST_20W45A);
+      if (entitiesTag.isList()) {
+        for (SpecificTag tag : (ListTag) entitiesTag) {
+          if (tag.isCompoundTag())
+            chunkData.addEntity((CompoundTag) tag);
         }
       }
     }
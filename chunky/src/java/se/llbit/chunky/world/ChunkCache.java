@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world;
+
+import se.llbit.chunky.PersistentSettings;
+import se.llbit.chunky.world.region.Region;
+import se.llbit.log.Log;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.nbt.Tag;
+import se.llbit.util.NbtUtil;
+import se.llbit.util.Util;
+import se.llbit.util.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * On-disk cache of the chunk tags that are needed to load a chunk into a scene.
+ *
+ * <p>Loading a chunk from a region file means inflating the whole chunk and scanning all of its
+ * NBT data, even though a scene only needs the block sections, biomes and (block) entities. This
+ * cache stores just those tags, uncompressed, one file per chunk. The light data of the sections
+ * is not used by scenes and is left out. Entries are keyed by the region
+ * directory, the chunk position and the chunk stamps of the region and entity files (see
+ * {@link Region#getChunkStamp(ChunkPosition)}), so a chunk that was saved again by Minecraft is
+ * never served from the cache.
+ *
+ * <p>The cached tags are still in the palette-compressed form they have in the region file, so
+ * cache entries do not depend on the block or biome palette of the scene being loaded.
+ *
+ * <p>When the cache grows larger than its size limit, the least recently used entries are removed.
+ * The cache is disabled unless enabled with {@link PersistentSettings#setCacheDecodedChunks(boolean)}.
+ */
+public class ChunkCache {
+  private static final int FORMAT_VERSION = 2;
+
+  private static final String ENTRY_SUFFIX = ".chunk";
+
+  /** Section tags that are not used when loading chunks into scenes. */
+  private static final Set<String> UNUSED_TAGS =
+      new HashSet<>(Arrays.asList("SkyLight", "BlockLight"));
+
+  /** The cache is trimmed to this fraction of its size limit, so that it is not trimmed often. */
+  private static final double TRIM_FRACTION = 0.8;
+
+  private static ChunkCache defaultCache = null;
+
+  private final File directory;
+
+  private final long maxSize;
+
+  /** Approximate total size of the entries, -1 until the cache directory has been scanned. */
+  private long size = -1;
+
+  private boolean trimming = false;
+
+  /** Set after the first failure to write to the cache, to avoid logging one warning per chunk. */
+  private volatile boolean storeFailed = false;
+
+  /**
+   * @param maxSize size limit of the cache in bytes
+   */
+  public ChunkCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the chunk cache in the Chunky cache directory, or {@code null} if chunk caching
+   * is disabled
+   */
+  @Nullable
+  public static synchronized ChunkCache getDefault() {
+    if (!PersistentSettings.getCacheDecodedChunks()) {
+      return null;
+    }
+    if (defaultCache == null) {
+      defaultCache = new ChunkCache(new File(PersistentSettings.cacheDirectory(), "chunks"),
+          PersistentSettings.getChunkCacheSize() * 1024L * 1024L);
+    }
+    return defaultCache;
+  }
+
+  /**
+   * Load cached chunk tags.
+   *
+   * @param regionDirectory region directory of the dimension containing the chunk
+   * @param chunkStamp current stamp of the chunk in the region file
+   * @param entityStamp current stamp of the chunk in the entity region file
+   * @return the cached tags, or {@code null} if the chunk is not cached or the cached
+   * entry is outdated
+   */
+  @Nullable
+  public Tag load(File regionDirectory, ChunkPosition pos, long chunkStamp, long entityStamp) {
+    if (!isCacheable(chunkStamp, entityStamp)) {
+      return null;
+    }
+    File file = getCacheFile(regionDirectory, pos);
+    if (!file.isFile()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != FORMAT_VERSION
+          || !in.readUTF().equals(regionDirectory.getAbsolutePath())
+          || in.readInt() != pos.x
+          || in.readInt() != pos.z
+          || in.readLong() != chunkStamp
+          || in.readLong() != entityStamp) {
+        return null;
+      }
+      Tag data = CompoundTag.read(in);
+      if (data.isError()) {
+        return null;
+      }
+      // The modification time orders the entries by last use when the cache is trimmed.
+      file.setLastModified(System.currentTimeMillis());
+      return data;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Store chunk tags in the cache, replacing any earlier entry for the chunk.
+   *
+   * @param regionDirectory region directory of the dimension containing the chunk
+   * @param chunkStamp stamp of the chunk in the region file when the tags were read
+   * @param entityStamp stamp of the chunk in the entity region file when the tags were read
+   */
+  public void store(File regionDirectory, ChunkPosition pos, long chunkStamp, long entityStamp,
+      Tag data) {
+    if (!isCacheable(chunkStamp, entityStamp)) {
+      return;
+    }
+    File file = getCacheFile(regionDirectory, pos);
+    File parent = file.getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      return;
+    }
+    File tmp = null;
+    try {
+      // Write to a temporary file first so concurrent readers never see a partial entry.
+      tmp = File.createTempFile(file.getName(), ".tmp", parent);
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(regionDirectory.getAbsolutePath());
+        out.writeInt(pos.x);
+        out.writeInt(pos.z);
+        out.writeLong(chunkStamp);
+        out.writeLong(entityStamp);
+        NbtUtil.safeSerialize(out, data, UNUSED_TAGS);
+      }
+      long entrySize = tmp.length() - (file.isFile() ? file.length() : 0);
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+      addSize(entrySize);
+    } catch (IOException e) {
+      if (!storeFailed) {
+        storeFailed = true;
+        Log.warnf("Failed to cache chunk %s: %s", pos, e.getMessage());
+      }
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Account for a stored entry, and remove the least recently used entries when the cache
+   * has grown larger than its size limit.
+   */
+  private void addSize(long entrySize) {
+    synchronized (this) {
+      if (size < 0) {
+        size = scan().stream().mapToLong(File::length).sum();
+      } else {
+        size += entrySize;
+      }
+      if (size <= maxSize || trimming) {
+        return;
+      }
+      trimming = true;
+    }
+    try {
+      trim();
+    } finally {
+      synchronized (this) {
+        trimming = false;
+      }
+    }
+  }
+
+  private void trim() {
+    List<File> entries = scan();
+    long[] lastModified = new long[entries.size()];
+    Integer[] order = new Integer[entries.size()];
+    long total = 0;
+    for (int i = 0; i < entries.size(); ++i) {
+      File entry = entries.get(i);
+      lastModified[i] = entry.lastModified();
+      order[i] = i;
+      total += entry.length();
+    }
+    Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+    long target = (long) (maxSize * TRIM_FRACTION);
+    for (int i = 0; i < order.length && total > target; ++i) {
+      File entry = entries.get(order[i]);
+      long length = entry.length();
+      if (entry.delete()) {
+        total -= length;
+      }
+    }
+    synchronized (this) {
+      size = total;
+    }
+  }
+
+  /** @return all entry files in the cache directory */
+  private List<File> scan() {
+    List<File> entries = new ArrayList<>();
+    File[] dimensions = directory.listFiles(File::isDirectory);
+    if (dimensions != null) {
+      for (File dimension : dimensions) {
+        File[] regions = dimension.listFiles(File::isDirectory);
+        if (regions != null) {
+          for (File region : regions) {
+            File[] files = region.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+            if (files != null) {
+              entries.addAll(Arrays.asList(files));
+            }
+          }
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static boolean isCacheable(long chunkStamp, long entityStamp) {
+    return chunkStamp != 0 && chunkStamp != Region.UNKNOWN_STAMP
+        && entityStamp != Region.UNKNOWN_STAMP;
+  }
+
+  private File getCacheFile(File regionDirectory, ChunkPosition pos) {
+    File dimensionCache = new File(directory,
+        Util.cacheEncode(regionDirectory.getAbsolutePath().hashCode()));
+    File regionCache = new File(dimensionCache,
+        String.format("r.%d.%d", pos.x >> 5, pos.z >> 5));
+    return new File(regionCache, String.format("%d.%d", pos.x, pos.z) + ENTRY_SUFFIX);
+  }
+}
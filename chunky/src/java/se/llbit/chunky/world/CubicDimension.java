@@ -31,7 +31,7 @@ public class CubicDimension extends Dimension {
    * @return File object pointing to the region file directory
    */
   @Override
-  public synchronized File getRegionDirectory() {
+  public File getRegionDirectory() {
     return new File(dimensionDirectory, "region3d");
   }
 
@@ -50,7 +50,7 @@ public class CubicDimension extends Dimension {
     return new ImposterCubicRegion(pos, this);
   }
 
-  public synchronized Region getRegionWithinRange(ChunkPosition pos, int minY, int maxY) {
+  public Region getRegionWithinRange(ChunkPosition pos, int minY, int maxY) {
     return regionMap.computeIfAbsent(pos.getLong(), p -> {
       // check if the region is present in the world directory
       Region region = EmptyRegion.instance;
@@ -105,8 +105,6 @@ public class CubicDimension extends Dimension {
 
   /** Called when a new region has been discovered by the region parser. */
   public void regionDiscovered(ChunkPosition pos) {
-    synchronized (this) {
-      regionMap.computeIfAbsent(pos.getLong(), (p) -> createRegion(pos));
-    }
+    regionMap.computeIfAbsent(pos.getLong(), (p) -> createRegion(pos));
   }
 }
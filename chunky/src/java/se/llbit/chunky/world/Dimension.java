@@ -1,10 +1,8 @@
 package se.llbit.chunky.world;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.chunk.ChunkData;
-import se.llbit.chunky.chunk.GenericChunkData;
+import se.llbit.chunky.chunk.PalettedChunkData;
 import se.llbit.chunky.chunk.SimpleChunkData;
 import se.llbit.chunky.map.MapView;
 import se.llbit.chunky.map.WorldMapLoader;
@@ -26,7 +24,7 @@ import java.util.*;
 public class Dimension {
   private final World world;
 
-  protected final Long2ObjectMap<Region> regionMap = new Long2ObjectOpenHashMap<>();
+  protected final RegionMap regionMap = new RegionMap();
 
   protected final File dimensionDirectory;
   private Set<PlayerEntityData> playerEntities;
@@ -92,7 +90,7 @@ public class Dimension {
   /**
    * @return The chunk at the given position
    */
-  public synchronized Chunk getChunk(ChunkPosition pos) {
+  public Chunk getChunk(ChunkPosition pos) {
     return getRegion(pos.getRegionPosition()).getChunk(pos);
   }
 
@@ -102,10 +100,10 @@ public class Dimension {
    */
   public ChunkData createChunkData(@Nullable ChunkData chunkData, int chunkVersion) {
     if(chunkVersion >= World.VERSION_21W06A) {
-      if(chunkData instanceof GenericChunkData) {
+      if(chunkData instanceof PalettedChunkData) {
         return chunkData;
       }
-      return new GenericChunkData();
+      return new PalettedChunkData();
     } else {
       if(chunkData instanceof SimpleChunkData) {
         return chunkData;
@@ -126,7 +124,7 @@ public class Dimension {
    * @param pos Region position
    * @return The region at the given position
    */
-  public synchronized Region getRegion(ChunkPosition pos) {
+  public Region getRegion(ChunkPosition pos) {
     return regionMap.computeIfAbsent(pos.getLong(), p -> {
       // check if the region is present in the world directory
       Region region = EmptyRegion.instance;
@@ -142,7 +140,7 @@ public class Dimension {
   }
 
   /** Set the region for the given position. */
-  public synchronized void setRegion(ChunkPosition pos, Region region) {
+  public void setRegion(ChunkPosition pos, Region region) {
     regionMap.put(pos.getLong(), region);
   }
 
@@ -170,14 +168,14 @@ public class Dimension {
    *
    * @return File object pointing to the data directory
    */
-  protected synchronized File getDimensionDirectory() {
+  protected File getDimensionDirectory() {
     return dimensionDirectory;
   }
 
   /**
    * @return File object pointing to the region file directory
    */
-  public synchronized File getRegionDirectory() {
+  public File getRegionDirectory() {
     return new File(getDimensionDirectory(), "region");
   }
 
@@ -204,9 +202,7 @@ public class Dimension {
 
   /** Called when a new region has been discovered by the region parser. */
   public void regionDiscovered(ChunkPosition pos) {
-    synchronized (this) {
-      regionMap.computeIfAbsent(pos.getLong(), p -> createRegion(pos));
-    }
+    regionMap.computeIfAbsent(pos.getLong(), p -> createRegion(pos));
   }
 
   /** Notify region update listeners. */
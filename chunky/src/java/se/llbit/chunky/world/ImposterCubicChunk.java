@@ -4,6 +4,7 @@ import se.llbit.chunky.block.legacy.LegacyBlocks;
 import se.llbit.chunky.chunk.BlockPalette;
 import se.llbit.chunky.chunk.ChunkData;
 import se.llbit.chunky.chunk.EmptyChunkData;
+import se.llbit.chunky.chunk.LocalBlockPalette;
 import se.llbit.chunky.map.IconLayer;
 import se.llbit.chunky.map.SurfaceLayer;
 import se.llbit.chunky.world.biome.ArrayBiomePalette;
@@ -94,6 +95,7 @@ public class ImposterCubicChunk extends Chunk {
     BiomePalette biomePalette = new ArrayBiomePalette();
     biomePalette.put(Biomes.biomesPrePalette[0]); //We don't currently support cubic chunks biomes, and so default to ocean
 
+    LocalBlockPalette localPalette = new LocalBlockPalette(palette);
     for (Map.Entry<Integer, Map<String, Tag>> entry : data.entrySet()) {
       Integer yPos = entry.getKey();
       Map<String, Tag> cubeData = entry.getValue();
@@ -102,7 +104,7 @@ public class ImposterCubicChunk extends Chunk {
       if (sections.isList()) {
 //        extractBiomeData(cubeData.get(LEVEL_BIOMES), chunkData);
         if (version == ChunkVersion.PRE_FLATTENING || version == ChunkVersion.POST_FLATTENING) {
-          loadBlockDataCubic(yPos, cubeData, chunkData, palette, yMin, yMax);
+          loadBlockDataCubic(yPos, cubeData, chunkData, localPalette, yMin, yMax);
           queueTopography();
         }
       }
@@ -123,7 +125,7 @@ public class ImposterCubicChunk extends Chunk {
   }
 
   private static final int CUBE_DIAMETER_IN_BLOCKS = 16;
-  private void loadBlockDataCubic(int cubeY, Map<String, Tag> cubeData, ChunkData chunkData, BlockPalette blockPalette, int yMin, int yMax) {
+  private void loadBlockDataCubic(int cubeY, Map<String, Tag> cubeData, ChunkData chunkData, LocalBlockPalette blockPalette, int yMin, int yMax) {
     Tag sections = cubeData.get(LEVEL_SECTIONS);
     if(sections.isList()) {
       ListTag sectionTags = sections.asList();
@@ -180,6 +182,7 @@ public class ImposterCubicChunk extends Chunk {
     }
 
     ChunkData chunkData = reuseChunkData.get();
+    LocalBlockPalette localPalette = new LocalBlockPalette(palette);
     for (Map.Entry<Integer, Map<String, Tag>> entry : data.entrySet()) {
       Integer yPos = entry.getKey();
       Map<String, Tag> cubeData = entry.getValue();
@@ -196,7 +199,7 @@ public class ImposterCubicChunk extends Chunk {
       biomePalette.put(Biomes.biomesPrePalette[0]); //We don't currently support cubic chunks biomes, and so default to ocean
 
       if (sections.isList()) {
-        loadBlockDataCubic(yPos, cubeData, chunkData, palette, minY, maxY);
+        loadBlockDataCubic(yPos, cubeData, chunkData, localPalette, minY, maxY);
       }
 
       if (entitiesTag.isList()) {
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import se.llbit.chunky.world.region.Region;
+
+import java.util.function.LongFunction;
+
+/**
+ * Thread-safe map from packed region positions (see {@link ChunkPosition#getLong()}) to regions.
+ *
+ * <p>The map is split into a fixed number of stripes, each one a primitive hash map guarded by
+ * its own monitor. Region parser threads, chunk loaders and map tile rendering look up unrelated
+ * regions at the same time, and with striping they rarely wait on each other.
+ */
+public final class RegionMap {
+  private static final int STRIPES = 64;
+
+  private final Long2ObjectOpenHashMap<Region>[] stripes;
+
+  @SuppressWarnings("unchecked")
+  public RegionMap() {
+    stripes = new Long2ObjectOpenHashMap[STRIPES];
+    for (int i = 0; i < STRIPES; ++i) {
+      stripes[i] = new Long2ObjectOpenHashMap<>();
+    }
+  }
+
+  private Long2ObjectOpenHashMap<Region> stripe(long key) {
+    return stripes[(int) HashCommon.mix(key) & (STRIPES - 1)];
+  }
+
+  /**
+   * @return The region for the given key, or {@code null} if there is none
+   */
+  public Region get(long key) {
+    Long2ObjectOpenHashMap<Region> stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.get(key);
+    }
+  }
+
+  /**
+   * Get the region for the given key, creating it if there is none. Only one thread creates the
+   * region for a given key; other threads asking for the same key wait for it.
+   */
+  public Region computeIfAbsent(long key, LongFunction<Region> mappingFunction) {
+    Long2ObjectOpenHashMap<Region> stripe = stripe(key);
+    synchronized (stripe) {
+      Region region = stripe.get(key);
+      if (region == null) {
+        region = mappingFunction.apply(key);
+        if (region != null) {
+          stripe.put(key, region);
+        }
+      }
+      return region;
+    }
+  }
+
+  /** Set the region for the given key. */
+  public void put(long key, Region region) {
+    Long2ObjectOpenHashMap<Region> stripe = stripe(key);
+    synchronized (stripe) {
+      stripe.put(key, region);
+    }
+  }
+
+}
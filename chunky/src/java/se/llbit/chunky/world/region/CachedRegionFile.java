@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world.region;
+
+import se.llbit.chunky.world.ChunkDataSource;
+import se.llbit.chunky.world.ChunkPosition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only region file (<code>.mca</code>) with its location and timestamp tables parsed.
+ *
+ * <p>Region files are shared through a small LRU cache, see {@link #get(File)}, so reading
+ * all chunks of a region parses the header once instead of for every chunk. Each cached region
+ * keeps a read-only channel open until it is evicted. Chunk data is read with positional reads
+ * and the file is not mapped, so Minecraft can keep writing and truncating it.
+ *
+ * <a href="https://wiki.vg/Region_Files#Structure">Format documentation</a>
+ */
+public class CachedRegionFile {
+  /** Sector size in bytes. */
+  private static final int SECTOR_SIZE = 4096;
+
+  private static final int NUM_CHUNKS = 32 * 32;
+
+  /** Maximum number of region files that are cached, and kept open, at the same time. */
+  private static final int MAX_CACHED_FILES = 256;
+
+  private static final Map<File, CachedRegionFile> cache =
+      new LinkedHashMap<File, CachedRegionFile>(MAX_CACHED_FILES, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<File, CachedRegionFile> eldest) {
+          if (size() > MAX_CACHED_FILES) {
+            eldest.getValue().close();
+            return true;
+          }
+          return false;
+        }
+      };
+
+  private final File file;
+  private final long lastModified;
+  private final long length;
+  private final int[] locations = new int[NUM_CHUNKS];
+  private final int[] timestamps = new int[NUM_CHUNKS];
+
+  /** Open channel for reading chunk data, {@code null} until the first read. */
+  private FileChannel channel = null;
+
+  /** Set when the file is removed from the cache, after which the channel is not kept open. */
+  private boolean evicted = false;
+
+  private CachedRegionFile(File file, long lastModified, long length) throws IOException {
+    this.file = file;
+    this.lastModified = lastModified;
+    this.length = length;
+    if (length == 0) {
+      // Vanilla will occasionally save empty region files.
+      return;
+    }
+    if (length < 2 * SECTOR_SIZE) {
+      throw new IOException("Missing header in region file " + file.getName());
+    }
+    ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_SIZE);
+    try {
+      if (!read(header, 0)) {
+        throw new IOException("Missing header in region file " + file.getName());
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+    header.flip();
+    IntBuffer tables = header.asIntBuffer();
+    tables.get(locations);
+    tables.get(timestamps);
+  }
+
+  /**
+   * Get the region file for the given file, parsing its header if it is not cached or if it
+   * has changed since it was cached.
+   *
+   * @return the region file, or {@code null} if the file does not exist
+   * @throws IOException if the file could not be read or has a broken header
+   */
+  public static CachedRegionFile get(File file) throws IOException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      invalidate(file);
+      return null;
+    }
+    if (!attributes.isRegularFile()) {
+      invalidate(file);
+      return null;
+    }
+    long lastModified = attributes.lastModifiedTime().toMillis();
+    long length = attributes.size();
+    synchronized (cache) {
+      CachedRegionFile cached = cache.get(file);
+      if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+        return cached;
+      }
+      if (cached != null) {
+        cached.close();
+      }
+      cached = new CachedRegionFile(file, lastModified, length);
+      cache.put(file, cached);
+      return cached;
+    }
+  }
+
+  /**
+   * Remove the file from the cache.
+   */
+  public static void invalidate(File file) {
+    synchronized (cache) {
+      CachedRegionFile cached = cache.remove(file);
+      if (cached != null) {
+        cached.close();
+      }
+    }
+  }
+
+  /**
+   * Close the channel of a region file that is no longer cached. Reads that are still in
+   * progress open the file again.
+   */
+  private synchronized void close() {
+    evicted = true;
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Ignored, the channel is only used for reading.
+      }
+      channel = null;
+    }
+  }
+
+  private static int getMCAChunkIndex(ChunkPosition chunkPos) {
+    return (chunkPos.x & 31) + ((chunkPos.z & 31) << 5);
+  }
+
+  /** @return {@code true} if the file was empty */
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+  /** @return the location table entry for the chunk, zero if the chunk does not exist */
+  public int getLocation(int index) {
+    return locations[index];
+  }
+
+  /** @return the last modified timestamp of the chunk */
+  public int getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  /**
+   * Read the data of the given chunk.
+   *
+   * @return {@code null} if the chunk does not exist
+   */
+  public ChunkDataSource getChunkData(ChunkPosition chunkPos) throws IOException {
+    if (isEmpty()) {
+      return null;
+    }
+    int index = getMCAChunkIndex(chunkPos);
+    int locationEntry = locations[index];
+    int sectorCount = locationEntry & 0xFF;
+    int sectorOffset = locationEntry >> 8;
+    if (sectorOffset == 0 || sectorCount == 0) {
+      // chunk not generated yet
+      return null;
+    }
+
+    long fileOffset = (long) sectorOffset * SECTOR_SIZE;
+    if (fileOffset + 4 >= length) {
+      throw new ChunkReadException(chunkPos, String.format(
+        "Chunk is outside of region file. Expected chunk data at offset %d but file length is %d.",
+        fileOffset, length
+      ));
+    }
+    ByteBuffer chunkHeader = ByteBuffer.allocate(5);
+    if (!read(chunkHeader, fileOffset)) {
+      throw new ChunkReadException(chunkPos, String.format(
+        "Chunk is outside of region file. Expected chunk data at offset %d.", fileOffset));
+    }
+    int chunkSize = chunkHeader.getInt(0);
+
+    if (chunkSize > sectorCount * SECTOR_SIZE) {
+      throw new ChunkReadException(chunkPos, "Chunk length does not fit in allocated sectors");
+    }
+
+    if (length < fileOffset + 4 + chunkSize) {
+      throw new ChunkReadException(chunkPos, String.format(
+        "Chunk is outside of region file. Expected %d bytes at offset %d but file length is %d.",
+        chunkSize, fileOffset, length
+      ));
+    }
+
+    if (chunkSize <= 0) {
+      throw new ChunkReadException(chunkPos, String.format(
+        "Invalid chunk size: %d",
+        chunkSize
+      ));
+    }
+
+    ChunkDataSource.CompressionScheme compressionScheme;
+    byte compressionType = chunkHeader.get(4);
+    switch (compressionType) {
+      case 1:
+        compressionScheme = ChunkDataSource.CompressionScheme.GZIP;
+        break;
+      case 2:
+        compressionScheme = ChunkDataSource.CompressionScheme.ZLIB;
+        break;
+      default:
+        throw new ChunkReadException(chunkPos, String.format(
+          "Unknown chunk data compression method: %d",
+          compressionType
+        ));
+    }
+
+    byte[] data = new byte[chunkSize - 1];
+    if (!read(ByteBuffer.wrap(data), fileOffset + 5)) {
+      throw new ChunkReadException(chunkPos, String.format(
+        "Chunk is outside of region file. Expected %d bytes at offset %d.", chunkSize, fileOffset));
+    }
+    return new ChunkDataSource(timestamps[index], data, compressionScheme);
+  }
+
+  /**
+   * Read from the given file position until the buffer is full, using the open channel of
+   * this region file.
+   *
+   * @return {@code false} if the end of the file was reached first
+   */
+  private boolean read(ByteBuffer buffer, long position) throws IOException {
+    while (true) {
+      FileChannel channel;
+      boolean temporary;
+      synchronized (this) {
+        temporary = evicted;
+        if (temporary) {
+          channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } else {
+          if (this.channel == null || !this.channel.isOpen()) {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+          }
+          channel = this.channel;
+        }
+      }
+      try {
+        return readFully(channel, buffer, position);
+      } catch (ClosedByInterruptException e) {
+        throw e;
+      } catch (ClosedChannelException e) {
+        // The channel was closed by an interrupted reader or on eviction, the read continues
+        // where it stopped with a new channel.
+      } finally {
+        if (temporary) {
+          channel.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Read from the given file position until the buffer is full.
+   *
+   * @return {@code false} if the end of the file was reached first
+   */
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
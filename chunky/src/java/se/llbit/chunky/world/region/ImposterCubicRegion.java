@@ -14,6 +14,8 @@ import se.llbit.util.Mutable;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -50,6 +52,12 @@ public class ImposterCubicRegion implements Region {
    * One flag per region column */
   private final boolean[] anyUpdated = new boolean[DIAMETER_IN_CUBIC_REGIONS*DIAMETER_IN_CUBIC_REGIONS];
 
+  /**
+   * Guards {@link ImposterCubicRegion#internalRegions}. {@link ImposterCubicRegion#parse} takes the write lock,
+   * while cube reads for different columns share the read lock and can run in parallel.
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
   public ImposterCubicRegion(ChunkPosition pos, CubicDimension dimension) {
     this.dimension = dimension;
     mcRegionPos = pos;
@@ -140,7 +148,16 @@ public class ImposterCubicRegion implements Region {
    * @param maxY the maximum requested block Y to be loaded. This does NOT need to be respected by the implementation
    */
   @Override
-  public synchronized void parse(int minY, int maxY) {
+  public void parse(int minY, int maxY) {
+    lock.writeLock().lock();
+    try {
+      parseLocked(minY, maxY);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void parseLocked(int minY, int maxY) {
     //prevent weird race condition if map view is still loading regions when loading chunks into scene
     minRegionY = Math.min(minRegionY, minY >> 8);
     maxRegionY = Math.max(maxRegionY, maxY >> 8);
@@ -262,7 +279,16 @@ public class ImposterCubicRegion implements Region {
    * @param existingDataTimestamp existing timestamp
    * @return cube NBT by cube Y position
    */
-  public synchronized Map<Integer, Map<String, Tag>> getCubeTagsInColumn(ChunkPosition position, Set<String> request, Mutable<Integer> existingDataTimestamp) {
+  public Map<Integer, Map<String, Tag>> getCubeTagsInColumn(ChunkPosition position, Set<String> request, Mutable<Integer> existingDataTimestamp) {
+    lock.readLock().lock();
+    try {
+      return getCubeTagsInColumnLocked(position, request, existingDataTimestamp);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Map<Integer, Map<String, Tag>> getCubeTagsInColumnLocked(ChunkPosition position, Set<String> request, Mutable<Integer> existingDataTimestamp) {
     Map<Integer, Map<String, Tag>> cubeTagsInColumn = new HashMap<>();
 
     int regionIndex = (cubeToCubicRegion(position.x) & 1) + ((cubeToCubicRegion(position.z) & 1) * DIAMETER_IN_CUBIC_REGIONS);
@@ -288,19 +314,24 @@ public class ImposterCubicRegion implements Region {
 
   /** This is quite an expensive method call in a cubicchunks world, as it has to check all parsed regions in the column */
   @Override
-  public synchronized boolean hasChanged() {
-    for (CubicRegion112[] regions : internalRegions.values()) {
-      for (CubicRegion112 region : regions) {
-        if(region != null) {
-          File file = new File(dimension.getRegionDirectory(), region.fileName);
-          long lastModified = file.lastModified();
-          if (lastModified != region.regionTimestamp) {
-            return true;
+  public boolean hasChanged() {
+    lock.readLock().lock();
+    try {
+      for (CubicRegion112[] regions : internalRegions.values()) {
+        for (CubicRegion112 region : regions) {
+          if(region != null) {
+            File file = new File(dimension.getRegionDirectory(), region.fileName);
+            long lastModified = file.lastModified();
+            if (lastModified != region.regionTimestamp) {
+              return true;
+            }
           }
         }
       }
+      return false;
+    } finally {
+      lock.readLock().unlock();
     }
-    return false;
   }
 
   /**
@@ -343,8 +374,13 @@ public class ImposterCubicRegion implements Region {
   }
 
   @Override
-  public synchronized boolean chunkChangedSince(ChunkPosition chunkPos, int timestamp) {
-    return getAverageTimestampForRegion(cubeToCubicRegion(chunkPos.x), cubeToCubicRegion(chunkPos.z)) != timestamp;
+  public boolean chunkChangedSince(ChunkPosition chunkPos, int timestamp) {
+    lock.readLock().lock();
+    try {
+      return getAverageTimestampForRegion(cubeToCubicRegion(chunkPos.x), cubeToCubicRegion(chunkPos.z)) != timestamp;
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   @Override public Iterator<Chunk> iterator() {
@@ -138,22 +138,17 @@ public class MCRegion implements Region {
       return;
     }
     regionFileTime = modtime;
-    try (RandomAccessFile file = new RandomAccessFile(regionFile, "r")) {
-      long length = file.length();
-      if (length == 0) {
+    try {
+      CachedRegionFile file = CachedRegionFile.get(regionFile);
+      if (file == null || file.isEmpty()) {
         return; // vanilla will occasionally save empty region files, we shouldn't warn the user about these.
       }
 
-      if (length < 2 * SECTOR_SIZE) {
-        Log.warnf("Missing header in region file %s!", this.position);
-        return;
-      }
-
       for (int z = 0; z < 32; ++z) {
         for (int x = 0; x < 32; ++x) {
           ChunkPosition pos = new ChunkPosition((position.x << 5) + x, (position.z << 5) + z);
           Chunk chunk = getChunk(x, z);
-          int loc = file.readInt();
+          int loc = file.getLocation(getMCAChunkIndex(x, z));
           if (loc != 0) {
             if (chunk.isEmpty()) {
               chunk = new Chunk(pos, dimension);
@@ -168,7 +163,7 @@ public class MCRegion implements Region {
       }
 
       for (int i = 0; i < NUM_CHUNKS; ++i) {
-        chunkTimestamps[i] = file.readInt();
+        chunkTimestamps[i] = file.getTimestamp(i);
       }
 
       dimension.regionUpdated(position);
@@ -198,6 +193,47 @@ public class MCRegion implements Region {
     return String.format("r.%d.%d.mca", pos.x, pos.z);
   }
 
+  /**
+   * Get a stamp identifying the current version of a chunk in the region file. The stamp
+   * combines the location table entry and the timestamp of the chunk, so it changes whenever the
+   * chunk is saved again.
+   *
+   * @return the chunk stamp, or zero if the chunk does not exist
+   */
+  @Override
+  public long getChunkStamp(ChunkPosition chunkPos) {
+    return getChunkStamp(chunkPos, dimension.getRegionDirectory());
+  }
+
+  /**
+   * Get a stamp identifying the current version of the entities of a chunk, see
+   * {@link #getChunkStamp(ChunkPosition)}.
+   *
+   * @return the entity chunk stamp, or zero if there are no separately stored entities
+   */
+  @Override
+  public long getEntityStamp(ChunkPosition chunkPos) {
+    File regionDirectory = dimension.getRegionDirectory();
+    return getChunkStamp(chunkPos, new File(regionDirectory.getParentFile(), "entities"));
+  }
+
+  private long getChunkStamp(ChunkPosition chunkPos, File regionDirectory) {
+    try {
+      CachedRegionFile file = CachedRegionFile.get(new File(regionDirectory, fileName));
+      if (file == null || file.isEmpty()) {
+        return 0;
+      }
+      int index = getMCAChunkIndex(chunkPos);
+      int location = file.getLocation(index);
+      if (location == 0) {
+        return 0;
+      }
+      return ((long) location << 32) | (file.getTimestamp(index) & 0xFFFFFFFFL);
+    } catch (IOException e) {
+      return UNKNOWN_STAMP;
+    }
+  }
+
   @Nullable
   public Map<String, Tag> getChunkTags(ChunkPosition position, Set<String> request, Mutable<Integer> dataTimestamp) throws ChunkLoadingException {
     ChunkDataSource data = this.getChunkData(position);
@@ -254,19 +290,19 @@ public class MCRegion implements Region {
   private ChunkDataSource getChunkDataSource(ChunkPosition chunkPos, File regionDirectory) {
     File regionFile = new File(regionDirectory, fileName);
     ChunkDataSource data = null;
-    if (regionFile.exists()) {
-      // TODO: reuse RandomAccessFile instances when loading world map
-      try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
-        data = readChunkData(raf, chunkPos);
-      } catch (IOException ex) {
-        Log.warn(
-          String.format(
-            "Failed to read chunk %s in region %s",
-            chunkPos,
-            regionFile.getName()
-          ), ex
-        );
+    try {
+      CachedRegionFile file = CachedRegionFile.get(regionFile);
+      if (file != null) {
+        data = file.getChunkData(chunkPos);
       }
+    } catch (IOException ex) {
+      Log.warn(
+        String.format(
+          "Failed to read chunk %s in region %s",
+          chunkPos,
+          regionFile.getName()
+        ), ex
+      );
     }
     if (data == null) {
       data = new ChunkDataSource((int) System.currentTimeMillis());
@@ -274,91 +310,6 @@ public class MCRegion implements Region {
     return data;
   }
 
-  /**
-   * Read chunk data from region file.
-   * <a href="https://wiki.vg/Region_Files#Structure">Format documentation</a>
-   *
-   * @return {@code null} if the chunk could not be loaded
-   */
-  private static ChunkDataSource readChunkData(RandomAccessFile file, ChunkPosition chunkPos) throws IOException {
-    long index = getMCAChunkIndex(chunkPos);
-
-    long length = file.length();
-
-    if (length == 0) {
-      return null; // vanilla will occasionally save empty region files, we shouldn't warn the user about these.
-    }
-
-    // header is 2 sectors long: location table + timestamp table
-    if (length < 2 * SECTOR_SIZE) {
-      throw new ChunkReadException(chunkPos, "Missing header in region file");
-    }
-
-    // query location table for chunk location in file
-    file.seek(index << 2);
-    int locationEntry = file.readInt();
-    int sectorCount = locationEntry & 0xFF;
-    int sectorOffset = locationEntry >> 8;
-    if (sectorOffset == 0 || sectorCount == 0) {
-      // chunk not generated yet
-      return null;
-    }
-
-    // query timestamp table (chunk last modified time)
-    file.seek(SECTOR_SIZE + (index << 2));
-    int lastModifiedTimestamp = file.readInt();
-
-    long fileOffset = (long) sectorOffset * SECTOR_SIZE;
-    if (fileOffset + 4 >= length) {
-      throw new ChunkReadException(chunkPos, String.format(
-        "Chunk is outside of region file. Expected chunk data at offset %d but file length is %d.",
-        sectorOffset * SECTOR_SIZE, length
-      ));
-    }
-    file.seek(fileOffset);
-
-    int chunkSize = file.readInt();
-
-    if (chunkSize > sectorCount * SECTOR_SIZE) {
-      throw new ChunkReadException(chunkPos, "Chunk length does not fit in allocated sectors");
-    }
-
-    if (length < fileOffset + 4 + chunkSize) {
-      throw new ChunkReadException(chunkPos, String.format(
-        "Chunk is outside of region file. Expected %d bytes at offset %d but file length is %d.",
-        chunkSize, sectorOffset * SECTOR_SIZE, length
-      ));
-    }
-
-    if (chunkSize <= 0) {
-      throw new ChunkReadException(chunkPos, String.format(
-        "Invalid chunk size: %d",
-        chunkSize
-      ));
-    }
-
-    ChunkDataSource.CompressionScheme compressionScheme = readCompressionScheme(file, chunkPos);
-
-    byte[] buf = new byte[chunkSize - 1];
-    file.read(buf);
-    return new ChunkDataSource(lastModifiedTimestamp, buf, compressionScheme);
-  }
-
-  private static ChunkDataSource.CompressionScheme readCompressionScheme(RandomAccessFile file, ChunkPosition chunkPos) throws IOException {
-    byte compressionType = file.readByte();
-    switch (compressionType) {
-      case 1:
-        return ChunkDataSource.CompressionScheme.GZIP;
-      case 2:
-        return ChunkDataSource.CompressionScheme.ZLIB;
-      default:
-        throw new ChunkReadException(chunkPos, String.format(
-          "Unknown chunk data compression method: %d",
-          compressionType
-        ));
-    }
-  }
-
   /**
    * Delete the chunk from the region file.
    */
@@ -369,6 +320,7 @@ public class MCRegion implements Region {
     int z = chunkPos.z & 31;
     File regionFile = new File(regionDirectory, fileName);
     int index = x + z * 32;
+    CachedRegionFile.invalidate(regionFile);
     try (RandomAccessFile file = new RandomAccessFile(regionFile, "rw")) {
       long length = file.length();
       if (length < 2 * SECTOR_SIZE) {
@@ -42,4 +42,26 @@ public interface Region extends Iterable<Chunk> {
   boolean hasChanged();
 
   boolean chunkChangedSince(ChunkPosition chunkPos, int timestamp);
+
+  /**
+   * Get a stamp identifying the current version of a chunk. The stamp changes whenever the
+   * chunk is saved again.
+   *
+   * @return the chunk stamp, zero if the chunk does not exist, or {@link #UNKNOWN_STAMP} if
+   * the region implementation does not track chunk versions
+   */
+  default long getChunkStamp(ChunkPosition chunkPos) {
+    return UNKNOWN_STAMP;
+  }
+
+  /**
+   * Get a stamp identifying the current version of the separately stored entities of a chunk,
+   * see {@link #getChunkStamp(ChunkPosition)}.
+   */
+  default long getEntityStamp(ChunkPosition chunkPos) {
+    return UNKNOWN_STAMP;
+  }
+
+  /** Stamp returned for chunks whose version can not be determined. */
+  long UNKNOWN_STAMP = -1;
 }
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.imageformats.exr;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.util.TaskTracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Writes single-part OpenEXR images with half float channels.
+ *
+ * <p>The image is stored in blocks of scanlines, or in tiles of one resolution level.
+ * Blocks are read, converted and compressed in parallel on the common thread pool and
+ * written in order. The offset table precedes the blocks, so it is filled in afterwards
+ * when writing to a file; for other streams the compressed blocks are buffered in memory.
+ */
+public class ExrFileWriter implements AutoCloseable {
+
+  /** OpenEXR magic number. */
+  public static final int MAGIC = 20000630;
+
+  private static final int VERSION = 2;
+
+  /** Version flag for single-part tiled files. */
+  private static final int TILED_FLAG = 0x200;
+
+  private static final int PIXEL_TYPE_HALF = 1;
+
+  public enum Compression {
+    /** Uncompressed, one scanline per block. */
+    NONE(0, 1),
+
+    /**
+     * Blocks of 16 scanlines, reordered and delta encoded before being compressed with zlib.
+     */
+    ZIP(3, 16);
+
+    final int id;
+    final int linesPerBlock;
+
+    Compression(int id, int linesPerBlock) {
+      this.id = id;
+      this.linesPerBlock = linesPerBlock;
+    }
+  }
+
+  /** Reads the channel values of the image, a few rows at a time. */
+  public interface BlockReader {
+    /**
+     * Read the values of {@code rows} rows starting at row {@code y0}.
+     * This is called concurrently from worker threads.
+     *
+     * @return one array of {@code rows * width} values per channel, in the order the
+     * channels were given to the writer
+     */
+    float[][] read(int y0, int rows);
+  }
+
+  private final OutputStream out;
+
+  public ExrFileWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  public ExrFileWriter(File file) throws IOException {
+    this(new FileOutputStream(file));
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Write an image.
+   *
+   * @param channels channel names; layers use names like {@code layer.R}
+   * @param tileSize tile width and height, or 0 to write blocks of scanlines
+   */
+  public void write(int width, int height, String[] channels, Compression compression,
+      int tileSize, BlockReader reader, TaskTracker.Task task) throws IOException {
+    // Channels are stored sorted by name.
+    Integer[] order = new Integer[channels.length];
+    Arrays.setAll(order, i -> i);
+    Arrays.sort(order, Comparator.comparing(i -> channels[i]));
+
+    boolean tiled = tileSize > 0;
+    int stripeHeight = tiled ? tileSize : compression.linesPerBlock;
+    int stripes = (height + stripeHeight - 1) / stripeHeight;
+    int tilesAcross = tiled ? (width + tileSize - 1) / tileSize : 1;
+    int chunks = stripes * tilesAcross;
+
+    byte[] header = header(width, height, channels, order, compression, tileSize);
+    out.write(header);
+
+    FileChannel channel = null;
+    long start = 0;
+    if (out instanceof FileOutputStream) {
+      channel = ((FileOutputStream) out).getChannel();
+      start = channel.position() - header.length;
+      out.write(new byte[8 * chunks]); // Offset table placeholder.
+    }
+    BlockOutput output = new BlockOutput(chunks, header.length, channel == null);
+
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    int maxPending = 2 * pool.getParallelism();
+    ArrayDeque<Future<byte[][]>> pending = new ArrayDeque<>();
+    int done = 0;
+    task.update(height, 0);
+    for (int i = 0; i < stripes; ++i) {
+      int y0 = i * stripeHeight;
+      int rows = Math.min(stripeHeight, height - y0);
+      int stripe = i;
+      pending.add(pool.submit(() -> {
+        float[][] values = reader.read(y0, rows);
+        byte[][] blocks = new byte[tilesAcross][];
+        for (int tx = 0; tx < tilesAcross; ++tx) {
+          int x0 = tx * tileSize;
+          int blockWidth = tiled ? Math.min(tileSize, width - x0) : width;
+          byte[] data = encode(values, order, width, x0, blockWidth, rows, compression);
+          ByteBuffer block = ByteBuffer.allocate((tiled ? 20 : 8) + data.length)
+              .order(ByteOrder.LITTLE_ENDIAN);
+          if (tiled) {
+            block.putInt(tx);
+            block.putInt(stripe);
+            block.putInt(0); // Level x.
+            block.putInt(0); // Level y.
+          } else {
+            block.putInt(y0);
+          }
+          block.putInt(data.length);
+          block.put(data);
+          blocks[tx] = block.array();
+        }
+        return blocks;
+      }));
+      if (pending.size() >= maxPending) {
+        output.write(await(pending.poll()));
+        done += 1;
+        task.update(height, Math.min(height, done * stripeHeight));
+      }
+    }
+    while (!pending.isEmpty()) {
+      output.write(await(pending.poll()));
+      done += 1;
+      task.update(height, Math.min(height, done * stripeHeight));
+    }
+
+    ByteBuffer offsets = output.offsets;
+    offsets.flip();
+    if (channel != null) {
+      long position = start + header.length;
+      while (offsets.hasRemaining()) {
+        position += channel.write(offsets, position);
+      }
+    } else {
+      out.write(offsets.array());
+      output.buffered.writeTo(out);
+    }
+  }
+
+  /**
+   * Writes blocks in order and records their offsets.
+   */
+  private class BlockOutput {
+    final ByteBuffer offsets;
+    final ByteArrayOutputStream buffered;
+    long offset;
+
+    BlockOutput(int chunks, int headerLength, boolean buffer) {
+      offsets = ByteBuffer.allocate(8 * chunks).order(ByteOrder.LITTLE_ENDIAN);
+      offset = headerLength + 8L * chunks;
+      buffered = buffer ? new ByteArrayOutputStream() : null;
+    }
+
+    void write(byte[][] blocks) throws IOException {
+      for (byte[] block : blocks) {
+        offsets.putLong(offset);
+        offset += block.length;
+        if (buffered != null) {
+          buffered.write(block);
+        } else {
+          out.write(block);
+        }
+      }
+    }
+  }
+
+  private static byte[] header(int width, int height, String[] channels, Integer[] order,
+      Compression compression, int tileSize) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Attributes header = new Attributes(bytes);
+    header.putInt(MAGIC);
+    header.putInt(tileSize > 0 ? VERSION | TILED_FLAG : VERSION);
+
+    Attributes channelList = new Attributes(new ByteArrayOutputStream());
+    for (int i : order) {
+      channelList.putString(channels[i]);
+      channelList.putInt(PIXEL_TYPE_HALF);
+      channelList.putInt(0); // pLinear and reserved bytes.
+      channelList.putInt(1); // x sampling.
+      channelList.putInt(1); // y sampling.
+    }
+    channelList.put(0);
+    header.attribute("channels", "chlist", channelList.toByteArray());
+
+    header.attribute("compression", "compression", new byte[] { (byte) compression.id });
+    Attributes window = new Attributes(new ByteArrayOutputStream());
+    window.putInt(0);
+    window.putInt(0);
+    window.putInt(width - 1);
+    window.putInt(height - 1);
+    header.attribute("dataWindow", "box2i", window.toByteArray());
+    header.attribute("displayWindow", "box2i", window.toByteArray());
+    header.attribute("lineOrder", "lineOrder", new byte[] { 0 }); // Increasing y.
+    header.attribute("pixelAspectRatio", "float", floatBytes(1));
+    header.attribute("screenWindowCenter", "v2f", floatBytes(0, 0));
+    header.attribute("screenWindowWidth", "float", floatBytes(1));
+    if (tileSize > 0) {
+      Attributes tiles = new Attributes(new ByteArrayOutputStream());
+      tiles.putInt(tileSize);
+      tiles.putInt(tileSize);
+      tiles.put(0); // One level.
+      header.attribute("tiles", "tiledesc", tiles.toByteArray());
+    }
+    header.put(0); // End of header.
+    return bytes.toByteArray();
+  }
+
+  private static byte[] floatBytes(float... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+    for (float value : values) {
+      buffer.putFloat(value);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Convert and compress the pixels of a block. Each row stores the values of one
+   * channel after the other.
+   */
+  static byte[] encode(float[][] values, Integer[] order, int width, int x0, int blockWidth,
+      int rows, Compression compression) {
+    byte[] raw = new byte[2 * blockWidth * rows * order.length];
+    int i = 0;
+    for (int y = 0; y < rows; ++y) {
+      for (int channel : order) {
+        float[] channelValues = values[channel];
+        for (int x = x0; x < x0 + blockWidth; ++x) {
+          short half = toHalf(channelValues[y * width + x]);
+          raw[i++] = (byte) half;
+          raw[i++] = (byte) (half >> 8);
+        }
+      }
+    }
+    if (compression == Compression.ZIP) {
+      byte[] compressed = zip(raw);
+      if (compressed.length < raw.length) {
+        return compressed;
+      }
+    }
+    // Blocks that do not get smaller are stored uncompressed.
+    return raw;
+  }
+
+  /**
+   * ZIP compression as done by OpenEXR: the bytes are split into even and odd
+   * positions and delta encoded before they are deflated.
+   */
+  static byte[] zip(byte[] raw) {
+    int n = raw.length;
+    byte[] tmp = new byte[n];
+    int t1 = 0;
+    int t2 = (n + 1) / 2;
+    for (int i = 0; i < n; ++i) {
+      if ((i & 1) == 0) {
+        tmp[t1++] = raw[i];
+      } else {
+        tmp[t2++] = raw[i];
+      }
+    }
+    int previous = n > 0 ? tmp[0] : 0;
+    for (int i = 1; i < n; ++i) {
+      int value = tmp[i];
+      tmp[i] = (byte) (value - previous + (128 + 256));
+      previous = value;
+    }
+
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(tmp);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(n / 2 + 64);
+      byte[] buffer = new byte[0x10000];
+      while (!deflater.finished()) {
+        int deflated = deflater.deflate(buffer);
+        out.write(buffer, 0, deflated);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Convert a float to a half float, rounding to the nearest even value.
+   * Values too large for a half float become infinity.
+   */
+  static short toHalf(float value) {
+    int bits = Float.floatToRawIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int magnitude = bits & 0x7FFFFFFF;
+    if (magnitude > 0x7F800000) {
+      return (short) (sign | 0x7E00); // NaN.
+    }
+    if (magnitude >= 0x47800000) {
+      return (short) (sign | 0x7C00); // Infinity.
+    }
+    if (magnitude >= 0x38800000) {
+      // Normal half float: rebias the exponent and round the mantissa.
+      int half = (magnitude - 0x38000000) >>> 13;
+      int rest = magnitude & 0x1FFF;
+      if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+        half += 1;
+      }
+      return (short) (sign | half);
+    }
+    if (magnitude < 0x33000000) {
+      return (short) sign; // Rounds to zero.
+    }
+    // Subnormal half float.
+    int exponent = magnitude >>> 23;
+    int mantissa = (magnitude & 0x7FFFFF) | 0x800000;
+    int shift = 126 - exponent;
+    int half = mantissa >>> shift;
+    int rest = mantissa & ((1 << shift) - 1);
+    int halfway = 1 << (shift - 1);
+    if (rest > halfway || (rest == halfway && (half & 1) != 0)) {
+      half += 1;
+    }
+    return (short) (sign | half);
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while writing OpenEXR blocks.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /** Little-endian output of header attributes. */
+  private static class Attributes {
+    private final ByteArrayOutputStream out;
+
+    Attributes(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    void put(int b) {
+      out.write(b);
+    }
+
+    void putInt(int value) {
+      out.write(value);
+      out.write(value >> 8);
+      out.write(value >> 16);
+      out.write(value >> 24);
+    }
+
+    void putString(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+      out.write(bytes, 0, bytes.length);
+      out.write(0);
+    }
+
+    void attribute(String name, String type, byte[] value) {
+      putString(name);
+      putString(type);
+      putInt(value.length);
+      out.write(value, 0, value.length);
+    }
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+  }
+}
@@ -17,6 +17,7 @@
  */
 package se.llbit.imageformats.pfm;
 
+import se.llbit.chunky.renderer.export.FrameStripes;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.TaskTracker;
 
@@ -76,27 +77,24 @@ public class PfmFileWriter implements AutoCloseable {
 
   private void writePixelData(Scene scene, ByteOrder byteOrder, TaskTracker.Task task) throws IOException {
     int width = scene.canvasWidth();
-    int height = scene.canvasHeight();
-
-    double[] sampleBuffer = scene.getSampleBuffer();
 
     // width * (r,g,b) * float size (= 4 byte)
     ByteBuffer rowBuffer = ByteBuffer.allocate(width * 3 * 4).order(byteOrder);
     FloatBuffer rowFloatBuffer = rowBuffer.asFloatBuffer();
 
-    // write each row (bottom to top)
-    for (int y = height - 1; y >= 0; y--) {
-      rowFloatBuffer.clear();
-
-      // get the row's data as floats from raw pixel data
-      // (ignores post-processing because that would clip the value range and defeat the purpose of HDR)
-      for (int x = 0; x < 3 * width; x++) {
-        rowFloatBuffer.put((float) sampleBuffer[y * width * 3 + x]);
+    // write each row (bottom to top), straight from the raw samples
+    // (ignores post-processing because that would clip the value range and defeat the purpose of HDR)
+    FrameStripes stripes = new FrameStripes(scene, null, false);
+    stripes.read(FrameStripes.stripeHeight(width), true, stripe -> {
+      for (int y = stripe.rows - 1; y >= 0; y--) {
+        rowFloatBuffer.clear();
+        for (int x = 0; x < 3 * width; x++) {
+          rowFloatBuffer.put((float) stripe.rgb[y * width * 3 + x]);
+        }
+
+        // Write buffer to stream
+        out.write(rowBuffer.array());
       }
-
-      // Write buffer to stream
-      out.write(rowBuffer.array());
-      task.update(height, height - y - 1);
-    }
+    }, task);
   }
 }
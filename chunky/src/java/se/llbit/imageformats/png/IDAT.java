@@ -28,4 +28,16 @@ public interface IDAT {
 
   /** The filter type for no filter. */
   int FILTER_TYPE_NONE = 0;
+
+  /** The filter type for the difference to the pixel on the left. */
+  int FILTER_TYPE_SUB = 1;
+
+  /** The filter type for the difference to the pixel above. */
+  int FILTER_TYPE_UP = 2;
+
+  /** The filter type for the difference to the average of the left and above pixels. */
+  int FILTER_TYPE_AVERAGE = 3;
+
+  /** The filter type for the difference to the Paeth predictor. */
+  int FILTER_TYPE_PAETH = 4;
 }
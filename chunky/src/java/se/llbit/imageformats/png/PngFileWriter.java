@@ -17,13 +17,23 @@
  */
 package se.llbit.imageformats.png;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.annotation.Nullable;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 
 /**
@@ -38,6 +48,14 @@ public class PngFileWriter implements AutoCloseable {
 
   public static final int MAX_CHUNK_BYTES = 0x100000; // Max input/output buffer size = 1 MiB.
 
+  /** Approximate number of raw image bytes compressed per parallel block. */
+  static final int BLOCK_BYTES = 0x40000;
+
+  /** Size of the deflate dictionary window. */
+  static final int DICTIONARY_BYTES = 0x8000;
+
+  private static final int DEFLATE_BUFFER_BYTES = 0x10000;
+
   private final DataOutputStream out;
 
   /**
@@ -79,17 +97,10 @@ public class PngFileWriter implements AutoCloseable {
   public void write(int[] data, int width, int height, TaskTracker.Task task)
       throws IOException {
     writeChunk(new IHDR(width, height));
-    IDATWriter idat = new IDATWriter();
-    int i = 0;
+    IDATWriter idat = new IDATWriter(width, 3);
     for (int y = 0; y < height; ++y) {
       task.update(height, y);
-      idat.write(IDAT.FILTER_TYPE_NONE); // Scanline header.
-      for (int x = 0; x < width; ++x) {
-        int rgb = data[i++];
-        idat.write((rgb >> 16) & 0xFF);
-        idat.write((rgb >> 8) & 0xFF);
-        idat.write(rgb & 0xFF);
-      }
+      idat.writeRow(data, null, y * width);
       task.update(height, y + 1);
     }
     idat.close();
@@ -101,54 +112,181 @@ public class PngFileWriter implements AutoCloseable {
   public void write(int[] data, byte[] alpha, int width, int height,
       TaskTracker.Task task) throws IOException {
     writeChunk(new IHDR(width, height, IHDR.COLOR_TYPE_RGBA));
-    IDATWriter idat = new IDATWriter();
-    int i = 0;
+    IDATWriter idat = new IDATWriter(width, 4);
     for (int y = 0; y < height; ++y) {
       task.update(height, y);
-      idat.write(IDAT.FILTER_TYPE_NONE); // Scanline header.
-      for (int x = 0; x < width; ++x) {
-        int rgb = data[i];
-        idat.write((rgb >> 16) & 0xFF);
-        idat.write((rgb >> 8) & 0xFF);
-        idat.write(rgb & 0xFF);
-        idat.write(alpha[i]);
-        i += 1;
-      }
+      idat.writeRow(data, alpha, y * width);
       task.update(height, y + 1);
     }
     idat.close();
   }
 
+  /**
+   * Start writing an RGB image row by row, so that the whole image does not need to be in
+   * memory. Rows are written from top to bottom. The image data is complete when the
+   * returned writer is closed.
+   */
+  public ScanlineWriter scanlineWriter(int width, int height) throws IOException {
+    return scanlineWriter(width, height, false);
+  }
+
+  /**
+   * Start writing an RGB or RGBA image row by row.
+   *
+   * @see #scanlineWriter(int, int)
+   */
+  public ScanlineWriter scanlineWriter(int width, int height, boolean alpha) throws IOException {
+    if (alpha) {
+      writeChunk(new IHDR(width, height, IHDR.COLOR_TYPE_RGBA));
+    } else {
+      writeChunk(new IHDR(width, height));
+    }
+    return new ScanlineWriter(width, alpha);
+  }
+
+  /**
+   * Writes the rows of an RGB or RGBA image.
+   */
+  public class ScanlineWriter implements AutoCloseable {
+    private final IDATWriter idat;
+    private final boolean alpha;
+
+    private ScanlineWriter(int width, boolean alpha) {
+      this.idat = new IDATWriter(width, alpha ? 4 : 3);
+      this.alpha = alpha;
+    }
+
+    /**
+     * Write one row of RGB pixels, starting at the given offset in the data array.
+     */
+    public void writeRow(int[] data, int offset) throws IOException {
+      writeRow(data, null, offset);
+    }
+
+    /**
+     * Write one row of pixels, starting at the given offset in the data and alpha arrays.
+     * The alpha values must be {@code null} for RGB images.
+     */
+    public void writeRow(int[] data, @Nullable byte[] alpha, int offset) throws IOException {
+      if ((alpha != null) != this.alpha) {
+        throw new IllegalArgumentException(this.alpha
+            ? "Missing alpha values for an RGBA image."
+            : "Alpha values given for an RGB image.");
+      }
+      idat.writeRow(data, alpha, offset);
+    }
+
+    @Override public void close() throws IOException {
+      idat.close();
+    }
+  }
+
+  /**
+   * Filters and compresses scanlines into IDAT chunks.
+   *
+   * <p>Like pigz, the image data is split into blocks of whole rows that are filtered and
+   * deflated in parallel on the common thread pool. Each block is deflated on its own, with
+   * the last 32 KiB of the previous block as preset dictionary, and ends with a sync flush so
+   * that the compressed blocks can be concatenated into a single zlib stream. The zlib header
+   * and the Adler-32 checksum are written here, so any standard decoder can read the result.
+   */
   class IDATWriter {
-    Deflater deflater = new Deflater();
-    int inputSize = 0;
-    byte[] inputBuf = new byte[MAX_CHUNK_BYTES];
-    int outputSize = 0;
-    byte[] outputBuf = new byte[MAX_CHUNK_BYTES];
-
-    void write(int b) throws IOException {
-      if (inputSize == MAX_CHUNK_BYTES) {
-        deflater.setInput(inputBuf, 0, inputSize);
-        inputSize = 0;
-        deflate();
+    private final ForkJoinPool pool = Chunky.getCommonThreads();
+    private final int bpp;
+    private final int rowBytes;
+    private final int rowsPerBlock;
+    private final int maxPending;
+    private final ArrayDeque<CompletableFuture<DeflatedBlock>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int rows = 0;
+
+    /** The last raw row of the previous block, used for filtering the next block. */
+    private byte[] lastRow = null;
+
+    /** The filtered previous block, used as dictionary for the next block. */
+    private CompletableFuture<byte[]> previousBlock = null;
+
+    private boolean headerWritten = false;
+    private int adler = 1;
+    private int outputSize = 0;
+    private final byte[] outputBuf = new byte[MAX_CHUNK_BYTES];
+
+    IDATWriter(int width, int bpp) {
+      this.bpp = bpp;
+      this.rowBytes = width * bpp;
+      this.rowsPerBlock = Math.max(1, BLOCK_BYTES / Math.max(1, rowBytes));
+      this.maxPending = 2 * pool.getParallelism();
+      this.block = new byte[rowsPerBlock * rowBytes];
+    }
+
+    /**
+     * Write one row of pixels. If alpha is non-null the row is written as RGBA.
+     */
+    void writeRow(int[] data, byte[] alpha, int offset) throws IOException {
+      int i = rows * rowBytes;
+      for (int x = 0; x < rowBytes / bpp; ++x) {
+        int rgb = data[offset + x];
+        block[i++] = (byte) (rgb >> 16);
+        block[i++] = (byte) (rgb >> 8);
+        block[i++] = (byte) rgb;
+        if (alpha != null) {
+          block[i++] = alpha[offset + x];
+        }
+      }
+      rows += 1;
+      if (rows == rowsPerBlock) {
+        submitBlock(false);
       }
-      inputBuf[inputSize++] = (byte) b;
     }
 
-    void write16(int bb) throws IOException {
-      write(bb >> 8);
-      write(bb & 0xFF);
+    private void submitBlock(boolean last) throws IOException {
+      byte[] raw = block;
+      int count = rows;
+      byte[] prior = lastRow;
+      CompletableFuture<byte[]> filtered = CompletableFuture.supplyAsync(
+          () -> ScanlineFilter.filter(raw, count, rowBytes, bpp, prior), pool);
+      CompletableFuture<DeflatedBlock> deflated;
+      if (previousBlock == null) {
+        deflated = filtered.thenApplyAsync(input -> deflate(input, null, last), pool);
+      } else {
+        deflated = filtered.thenCombineAsync(previousBlock,
+            (input, dictionary) -> deflate(input, dictionary, last), pool);
+      }
+      pending.add(deflated);
+      previousBlock = filtered;
+      if (count > 0) {
+        lastRow = Arrays.copyOfRange(raw, (count - 1) * rowBytes, count * rowBytes);
+      }
+      rows = 0;
+      if (!last) {
+        block = new byte[rowsPerBlock * rowBytes];
+      }
+      while (pending.size() >= maxPending) {
+        writeBlock(await(pending.poll()));
+      }
     }
 
-    private void deflate() throws IOException {
-      int deflated;
-      do {
+    private void writeBlock(DeflatedBlock deflated) throws IOException {
+      if (!headerWritten) {
+        // zlib header: deflate with a 32 KiB window, default compression level.
+        output(new byte[] { 0x78, (byte) 0x9C }, 0, 2);
+        headerWritten = true;
+      }
+      output(deflated.data, 0, deflated.data.length);
+      adler = adler32Combine(adler, deflated.adler, deflated.length);
+    }
+
+    private void output(byte[] data, int offset, int length) throws IOException {
+      while (length > 0) {
         if (outputSize == MAX_CHUNK_BYTES) {
           writeChunk();
         }
-        deflated = deflater.deflate(outputBuf, outputSize, MAX_CHUNK_BYTES - outputSize);
-        outputSize += deflated;
-      } while (deflated != 0);
+        int n = Math.min(length, MAX_CHUNK_BYTES - outputSize);
+        System.arraycopy(data, offset, outputBuf, outputSize, n);
+        outputSize += n;
+        offset += n;
+        length -= n;
+      }
     }
 
     private void writeChunk() throws IOException {
@@ -171,16 +309,104 @@ public class PngFileWriter implements AutoCloseable {
     }
 
     void close() throws IOException {
-      if (inputSize > 0) {
-        deflater.setInput(inputBuf, 0, inputSize);
-        deflater.finish();
-        inputSize = 0;
-        deflate();
+      submitBlock(true);
+      while (!pending.isEmpty()) {
+        writeBlock(await(pending.poll()));
       }
-      if (outputSize > 0) {
-        writeChunk();
+      output(new byte[] {
+          (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler
+      }, 0, 4);
+      writeChunk();
+    }
+  }
+
+  /** A block of compressed image data. */
+  private static class DeflatedBlock {
+    final byte[] data;
+
+    /** Adler-32 checksum of the uncompressed block. */
+    final int adler;
+
+    /** Uncompressed length of the block. */
+    final int length;
+
+    DeflatedBlock(byte[] data, int adler, int length) {
+      this.data = data;
+      this.adler = adler;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Deflate one block of a zlib stream, without the zlib header and trailer.
+   * All but the last block end with a sync flush so that they end on a byte boundary.
+   */
+  private static DeflatedBlock deflate(byte[] input, byte[] dictionary, boolean last) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      if (dictionary != null && dictionary.length > 0) {
+        int length = Math.min(dictionary.length, DICTIONARY_BYTES);
+        deflater.setDictionary(dictionary, dictionary.length - length, length);
       }
+      deflater.setInput(input);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 64);
+      byte[] buffer = new byte[DEFLATE_BUFFER_BYTES];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int n = deflater.deflate(buffer);
+          out.write(buffer, 0, n);
+        }
+      } else {
+        int n;
+        do {
+          n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          out.write(buffer, 0, n);
+        } while (n == buffer.length);
+      }
+      Adler32 checksum = new Adler32();
+      checksum.update(input, 0, input.length);
+      return new DeflatedBlock(out.toByteArray(), (int) checksum.getValue(), input.length);
+    } finally {
       deflater.end();
     }
   }
+
+  /**
+   * Combine the Adler-32 checksum of two consecutive byte sequences, the same way as
+   * zlib's {@code adler32_combine}.
+   *
+   * @param adler1 checksum of the first sequence
+   * @param adler2 checksum of the second sequence
+   * @param length2 length of the second sequence
+   */
+  static int adler32Combine(int adler1, int adler2, long length2) {
+    final int base = 65521;
+    long rem = length2 % base;
+    long sum1 = adler1 & 0xFFFF;
+    long sum2 = (rem * sum1) % base;
+    sum1 += (adler2 & 0xFFFF) + base - 1;
+    sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+    if (sum1 >= base) sum1 -= base;
+    if (sum1 >= base) sum1 -= base;
+    if (sum2 >= ((long) base << 1)) sum2 -= ((long) base << 1);
+    if (sum2 >= base) sum2 -= base;
+    return (int) (sum1 | (sum2 << 16));
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while compressing PNG image data.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
 }
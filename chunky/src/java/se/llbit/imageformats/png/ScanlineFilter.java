@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.imageformats.png;
+
+/**
+ * Adaptive PNG scanline filtering.
+ *
+ * <p>Each row is filtered with the filter type that gives the smallest sum of absolute
+ * differences, which is the heuristic recommended by the PNG specification. The choice only
+ * depends on the row and the row above it, so blocks of rows can be filtered independently.
+ */
+final class ScanlineFilter {
+  private ScanlineFilter() {
+  }
+
+  /**
+   * Filter rows of raw image bytes.
+   *
+   * @param raw raw rows, without filter type bytes
+   * @param rows number of rows in {@code raw}
+   * @param rowBytes number of bytes in each raw row
+   * @param bpp bytes per pixel
+   * @param prior the raw row above the first row, or {@code null} for the first row of the image
+   * @return filtered rows, each starting with its filter type byte
+   */
+  static byte[] filter(byte[] raw, int rows, int rowBytes, int bpp, byte[] prior) {
+    byte[] out = new byte[rows * (rowBytes + 1)];
+    byte[] zero = prior == null ? new byte[rowBytes] : null;
+    for (int row = 0; row < rows; ++row) {
+      byte[] above;
+      int aboveOffset;
+      if (row > 0) {
+        above = raw;
+        aboveOffset = (row - 1) * rowBytes;
+      } else if (prior != null) {
+        above = prior;
+        aboveOffset = 0;
+      } else {
+        above = zero;
+        aboveOffset = 0;
+      }
+      int offset = row * rowBytes;
+      int type = chooseFilter(raw, offset, above, aboveOffset, rowBytes, bpp);
+      int dst = row * (rowBytes + 1);
+      out[dst] = (byte) type;
+      filterRow(type, raw, offset, above, aboveOffset, rowBytes, bpp, out, dst + 1);
+    }
+    return out;
+  }
+
+  /**
+   * Find the filter type with the minimum sum of absolute differences for a row.
+   */
+  static int chooseFilter(byte[] raw, int offset, byte[] above, int aboveOffset, int rowBytes,
+      int bpp) {
+    long none = 0, sub = 0, up = 0, average = 0, paeth = 0;
+    for (int i = 0; i < rowBytes; ++i) {
+      int x = raw[offset + i] & 0xFF;
+      int a = i >= bpp ? raw[offset + i - bpp] & 0xFF : 0;
+      int b = above[aboveOffset + i] & 0xFF;
+      int c = i >= bpp ? above[aboveOffset + i - bpp] & 0xFF : 0;
+      none += Math.abs((byte) x);
+      sub += Math.abs((byte) (x - a));
+      up += Math.abs((byte) (x - b));
+      average += Math.abs((byte) (x - ((a + b) >> 1)));
+      paeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+    }
+    int type = IDAT.FILTER_TYPE_NONE;
+    long best = none;
+    if (sub < best) {
+      type = IDAT.FILTER_TYPE_SUB;
+      best = sub;
+    }
+    if (up < best) {
+      type = IDAT.FILTER_TYPE_UP;
+      best = up;
+    }
+    if (average < best) {
+      type = IDAT.FILTER_TYPE_AVERAGE;
+      best = average;
+    }
+    if (paeth < best) {
+      type = IDAT.FILTER_TYPE_PAETH;
+    }
+    return type;
+  }
+
+  /**
+   * Apply the given filter type to a row.
+   */
+  static void filterRow(int type, byte[] raw, int offset, byte[] above, int aboveOffset,
+      int rowBytes, int bpp, byte[] out, int dst) {
+    for (int i = 0; i < rowBytes; ++i) {
+      int x = raw[offset + i] & 0xFF;
+      int a = i >= bpp ? raw[offset + i - bpp] & 0xFF : 0;
+      int b = above[aboveOffset + i] & 0xFF;
+      int predicted;
+      switch (type) {
+        case IDAT.FILTER_TYPE_SUB:
+          predicted = a;
+          break;
+        case IDAT.FILTER_TYPE_UP:
+          predicted = b;
+          break;
+        case IDAT.FILTER_TYPE_AVERAGE:
+          predicted = (a + b) >> 1;
+          break;
+        case IDAT.FILTER_TYPE_PAETH:
+          predicted = paethPredictor(a, b, i >= bpp ? above[aboveOffset + i - bpp] & 0xFF : 0);
+          break;
+        default:
+          predicted = 0;
+          break;
+      }
+      out[dst + i] = (byte) (x - predicted);
+    }
+  }
+
+  static int paethPredictor(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) {
+      return a;
+    } else if (pb <= pc) {
+      return b;
+    } else {
+      return c;
+    }
+  }
+}
@@ -17,11 +17,19 @@
  */
 package se.llbit.imageformats.tiff;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import se.llbit.chunky.renderer.export.FrameStripes;
 import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilters;
@@ -30,9 +38,10 @@ import se.llbit.log.Log;
 import se.llbit.util.TaskTracker;
 
 /**
- * TIFF image output. This supports 32-bit floating point channel output.
+ * Writes uncompressed 32-bit floating point TIFF files, either in strips of rows or in tiles.
  *
- * <p>Non-32bit output has been removed sine it was unused.
+ * <p>The image data is post-processed and written one stripe at a time straight from the
+ * sample buffer of the scene. The image file directory is written after the image data.
  *
  * @author Jesper Öqvist <jesper@llbit.se>
  */
@@ -43,6 +52,12 @@ public class TiffFileWriter implements AutoCloseable {
   private static final int LONG = 4;
   private static final int RATIONAL = 5;
 
+  /** Offset to the image data from file start. */
+  private static final int DATA_OFFSET = 8;
+
+  /** Bytes per pixel: three 32-bit floats. */
+  private static final int PIXEL_BYTES = 12;
+
   private final DataOutputStream out;
 
   public TiffFileWriter(OutputStream out) throws IOException {
@@ -68,156 +83,6 @@ public class TiffFileWriter implements AutoCloseable {
     out.close();
   }
 
-  private void writeHeader(int width, int height, int bytesPerSample) throws IOException {
-    out.writeInt(ifdOffset(width, height, bytesPerSample));
-  }
-
-  private void writeFooter(int width, int height, int bytesPerSample) throws IOException {
-    int ifdOffset = ifdOffset(width, height, bytesPerSample);
-    int numEntries = 15;
-
-    // Number of IFD entries.
-    out.writeShort(numEntries);
-
-    // 1: Width.
-    out.writeShort(0x0100);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(width);
-    out.writeShort(0);
-
-    // 2: Height.
-    out.writeShort(0x0101);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(height);
-    out.writeShort(0);
-
-    // 3: Bits per sample.
-    out.writeShort(0x0102);
-    out.writeShort(SHORT);
-    out.writeInt(3);
-    int offsetBps = ifdOffset + 2 + 12 * numEntries + 2;
-    out.writeInt(offsetBps);
-
-    // 4: Compression type.
-    out.writeShort(0x0103);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(1);
-    out.writeShort(0);
-
-    // 5: PhotometricInterpretation
-    out.writeShort(0x0106);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(2);
-    out.writeShort(0);
-
-    // 7: StripOffsets
-    out.writeShort(0x0111);
-    out.writeShort(LONG);
-    out.writeInt(1);
-    out.writeInt(8);
-
-    // 6: Orientation
-    out.writeShort(0x0112);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(1); // First row is at the top of the image.
-    out.writeShort(0);
-
-    // 8: SamplesPerPixel
-    out.writeShort(0x0115);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(3);
-    out.writeShort(0);
-
-    // 9: RowsPerStrip
-    out.writeShort(0x0116);
-    out.writeShort(LONG);
-    out.writeInt(1);
-    out.writeInt(height);
-
-    // 10: StripByteCounts
-    out.writeShort(0x0117);
-    out.writeShort(LONG);
-    out.writeInt(1);
-    int offsetSbc = ifdOffset + 2 + 12 * numEntries + 2 + 2 * 3;
-    out.writeInt(offsetSbc);
-
-    // 11: XResolution
-    out.writeShort(0x011A);
-    out.writeShort(RATIONAL);
-    out.writeInt(1);
-    int offsetXres = ifdOffset + 2 + 12 * numEntries + 2 + 2 * 3 + 4;
-    out.writeInt(offsetXres);
-
-    // 12: YResolution
-    out.writeShort(0x011B);
-    out.writeShort(RATIONAL);
-    out.writeInt(1);
-    int offsetYres = ifdOffset + 2 + 12 * numEntries + 2 + 2 * 3 + 4 + 8;
-    out.writeInt(offsetYres);
-
-    // 13: ResolutionUnit
-    out.writeShort(0x0128);
-    out.writeShort(SHORT);
-    out.writeInt(1);
-    out.writeShort(1);
-    out.writeShort(0);
-
-    // 14: SampleFormat
-    out.writeShort(0x0153);
-    out.writeShort(SHORT);
-    out.writeInt(3);
-    int offsetSampleFormat = ifdOffset + 2 + 12 * numEntries + 2 + 2 * 3 + 4 + 8 + 8;
-    out.writeInt(offsetSampleFormat);
-
-    // 15: Software
-    out.writeShort(0x0131);
-    out.writeShort(ASCII);
-    out.writeInt("Chunky".length() + 1);
-    int offsetSoftware = ifdOffset + 2 + 12 * numEntries + 2 + 2 * 3 + 4 + 8 + 8 + 2 * 3;
-    out.writeInt(offsetSoftware);
-
-    // End of IFD.
-    out.writeShort(0);
-
-    // Bits per sample, values.
-    out.writeShort(8 * bytesPerSample);
-    out.writeShort(8 * bytesPerSample);
-    out.writeShort(8 * bytesPerSample);
-
-    // Strip byte count.
-    out.writeInt(width * height * 3 * bytesPerSample);
-
-    // X resolution.
-    out.writeInt(0);
-    out.writeInt(1);
-
-    // Y resolution.
-    out.writeInt(0);
-    out.writeInt(1);
-
-    // Sample formats.
-    if (bytesPerSample == 1) {
-      out.writeShort(1);
-      out.writeShort(1);
-      out.writeShort(1);
-    } else {
-      out.writeShort(3);
-      out.writeShort(3);
-      out.writeShort(3);
-    }
-
-    for (byte b : "Chunky".getBytes()) {
-      out.write(b);
-    }
-    out.write(0);
-  }
-
   private PixelPostProcessingFilter requirePixelPostProcessingFilter(Scene scene) {
     PostProcessingFilter filter = scene.getPostProcessingFilter();
     if (filter instanceof PixelPostProcessingFilter) {
@@ -232,34 +97,234 @@ public class TiffFileWriter implements AutoCloseable {
   }
 
   /**
-   * Write an image as a 32-bit per channel TIFF file.
+   * Write an image as a 32-bit per channel TIFF file, in strips of rows.
    */
   public void write32(Scene scene, TaskTracker.Task task) throws IOException {
     PixelPostProcessingFilter filter = requirePixelPostProcessingFilter(scene);
 
     int width = scene.canvasWidth();
     int height = scene.canvasHeight();
-    writeHeader(width, height, 4);
+    int rowsPerStrip = FrameStripes.stripeHeight(width);
+    int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+    long rowBytes = (long) width * PIXEL_BYTES;
+    long[] offsets = new long[strips];
+    long[] byteCounts = new long[strips];
+    for (int i = 0; i < strips; ++i) {
+      offsets[i] = DATA_OFFSET + i * rowsPerStrip * rowBytes;
+      byteCounts[i] = Math.min(rowsPerStrip, height - i * rowsPerStrip) * rowBytes;
+    }
+    long ifdOffset = DATA_OFFSET + height * rowBytes;
+    checkFileSize(ifdOffset, strips);
+    out.writeInt((int) ifdOffset);
+
+    new FrameStripes(scene, filter, false).read(rowsPerStrip, false, stripe -> {
+      ByteBuffer buffer = ByteBuffer.allocate(stripe.rgb.length * 4);
+      for (double value : stripe.rgb) {
+        buffer.putFloat((float) value);
+      }
+      out.write(buffer.array());
+    }, task);
+
+    List<IfdEntry> entries = imageEntries(width, height);
+    entries.add(new IfdEntry(0x0111, LONG, offsets)); // StripOffsets
+    entries.add(new IfdEntry(0x0116, LONG, rowsPerStrip)); // RowsPerStrip
+    entries.add(new IfdEntry(0x0117, LONG, byteCounts)); // StripByteCounts
+    writeIfd(ifdOffset, entries);
+  }
 
-    double[] sampleBuffer = scene.getSampleBuffer();
+  /**
+   * Write an image as a 32-bit per channel TIFF file, in square tiles.
+   * Tiles on the right and bottom edges of the image are padded with zeros.
+   *
+   * @param tileSize tile width and height, a multiple of 16
+   */
+  public void write32Tiled(Scene scene, int tileSize, TaskTracker.Task task) throws IOException {
+    if (tileSize <= 0 || tileSize % 16 != 0) {
+      throw new IllegalArgumentException("TIFF tile size must be a multiple of 16: " + tileSize);
+    }
+    PixelPostProcessingFilter filter = requirePixelPostProcessingFilter(scene);
 
-    for (int y = 0; y < height; ++y) {
-      task.update(height, y);
-      for (int x = 0; x < width; ++x) {
-        double[] pixelBuffer = new double[3];
-        // TODO: refactor pixel access to remove duplicate post processing code from here
-        filter.processPixel(width, height, sampleBuffer, x, y, scene.getExposure(), pixelBuffer);
-        out.writeFloat((float) pixelBuffer[0]);
-        out.writeFloat((float) pixelBuffer[1]);
-        out.writeFloat((float) pixelBuffer[2]);
+    int width = scene.canvasWidth();
+    int height = scene.canvasHeight();
+    int tilesAcross = (width + tileSize - 1) / tileSize;
+    int tilesDown = (height + tileSize - 1) / tileSize;
+    int tiles = tilesAcross * tilesDown;
+    long tileBytes = (long) tileSize * tileSize * PIXEL_BYTES;
+    long[] offsets = new long[tiles];
+    long[] byteCounts = new long[tiles];
+    for (int i = 0; i < tiles; ++i) {
+      offsets[i] = DATA_OFFSET + i * tileBytes;
+      byteCounts[i] = tileBytes;
+    }
+    long ifdOffset = DATA_OFFSET + tiles * tileBytes;
+    checkFileSize(ifdOffset, tiles);
+    out.writeInt((int) ifdOffset);
+
+    // A row of tiles is collected from stripes that do not cross tile rows, then written at once.
+    if (tilesAcross * tileBytes > Integer.MAX_VALUE) {
+      throw new IOException("The image is too wide to be written as a tiled TIFF file.");
+    }
+    byte[] tileRow = new byte[(int) (tilesAcross * tileBytes)];
+    ByteBuffer buffer = ByteBuffer.wrap(tileRow);
+    new FrameStripes(scene, filter, false).read(subStripeHeight(tileSize, width), false, stripe -> {
+      int r0 = stripe.y0 % tileSize;
+      for (int r = 0; r < stripe.rows; ++r) {
+        for (int x = 0; x < width; ++x) {
+          int tx = x / tileSize;
+          int i = (r * width + x) * 3;
+          buffer.position((int) (tx * tileBytes) + ((r0 + r) * tileSize + x - tx * tileSize) * PIXEL_BYTES);
+          buffer.putFloat((float) stripe.rgb[i]);
+          buffer.putFloat((float) stripe.rgb[i + 1]);
+          buffer.putFloat((float) stripe.rgb[i + 2]);
+        }
+      }
+      int y1 = stripe.y0 + stripe.rows;
+      if (y1 % tileSize == 0 || y1 == height) {
+        out.write(tileRow);
+        // Pixels outside the image are padded with zeros.
+        Arrays.fill(tileRow, (byte) 0);
+      }
+    }, task);
+
+    List<IfdEntry> entries = imageEntries(width, height);
+    entries.add(new IfdEntry(0x0142, LONG, tileSize)); // TileWidth
+    entries.add(new IfdEntry(0x0143, LONG, tileSize)); // TileLength
+    entries.add(new IfdEntry(0x0144, LONG, offsets)); // TileOffsets
+    entries.add(new IfdEntry(0x0145, LONG, byteCounts)); // TileByteCounts
+    writeIfd(ifdOffset, entries);
+  }
+
+  /**
+   * @return the largest divisor of the tile size that is at most the default stripe height
+   * for the image width, so that stripes stay small and never cross a row of tiles
+   */
+  private static int subStripeHeight(int tileSize, int width) {
+    int maxRows = FrameStripes.stripeHeight(width);
+    int rows = 1;
+    for (int i = 1; i <= Math.min(tileSize, maxRows); ++i) {
+      if (tileSize % i == 0) {
+        rows = i;
       }
-      task.update(height, y + 1);
     }
+    return rows;
+  }
+
+  /**
+   * Classic TIFF files use 32-bit offsets.
+   */
+  private static void checkFileSize(long ifdOffset, int blocks) throws IOException {
+    if (ifdOffset + 512 + 8L * blocks > 0xFFFFFFFFL) {
+      throw new IOException("The image is too large to be written as a TIFF file.");
+    }
+  }
 
-    writeFooter(width, height, 4);
+  /**
+   * @return the IFD entries describing the image, except for the data layout
+   */
+  private static List<IfdEntry> imageEntries(int width, int height) {
+    List<IfdEntry> entries = new ArrayList<>();
+    entries.add(new IfdEntry(0x0100, LONG, width)); // ImageWidth
+    entries.add(new IfdEntry(0x0101, LONG, height)); // ImageLength
+    entries.add(new IfdEntry(0x0102, SHORT, 32, 32, 32)); // BitsPerSample
+    entries.add(new IfdEntry(0x0103, SHORT, 1)); // Compression: none
+    entries.add(new IfdEntry(0x0106, SHORT, 2)); // PhotometricInterpretation: RGB
+    entries.add(new IfdEntry(0x0112, SHORT, 1)); // Orientation: first row is at the top.
+    entries.add(new IfdEntry(0x0115, SHORT, 3)); // SamplesPerPixel
+    entries.add(new IfdEntry(0x011A, RATIONAL, 0, 1)); // XResolution
+    entries.add(new IfdEntry(0x011B, RATIONAL, 0, 1)); // YResolution
+    entries.add(new IfdEntry(0x0128, SHORT, 1)); // ResolutionUnit: none
+    entries.add(new IfdEntry(0x0131, ASCII, "Chunky")); // Software
+    entries.add(new IfdEntry(0x0153, SHORT, 3, 3, 3)); // SampleFormat: floating point
+    return entries;
   }
 
-  private int ifdOffset(int width, int height, int bytesPerSample) {
-    return 8 + width * height * 3 * bytesPerSample; // Offset to first IFD from file start.
+  /**
+   * Write the image file directory. Values that do not fit in an entry are written
+   * after the directory.
+   */
+  private void writeIfd(long ifdOffset, List<IfdEntry> entries) throws IOException {
+    entries.sort(Comparator.comparingInt(entry -> entry.tag));
+    long valueOffset = ifdOffset + 2 + 12L * entries.size() + 4;
+    ByteArrayOutputStream values = new ByteArrayOutputStream();
+    DataOutputStream valuesOut = new DataOutputStream(values);
+
+    out.writeShort(entries.size());
+    for (IfdEntry entry : entries) {
+      out.writeShort(entry.tag);
+      out.writeShort(entry.type);
+      out.writeInt(entry.count());
+      if (entry.size() <= 4) {
+        entry.writeValues(out);
+        for (int i = entry.size(); i < 4; ++i) {
+          out.write(0);
+        }
+      } else {
+        out.writeInt((int) (valueOffset + values.size()));
+        entry.writeValues(valuesOut);
+        if (values.size() % 2 != 0) {
+          valuesOut.write(0); // Values start on a word boundary.
+        }
+      }
+    }
+    out.writeInt(0); // No next IFD.
+    values.writeTo(out);
+  }
+
+  private static class IfdEntry {
+    final int tag;
+    final int type;
+    final long[] values;
+
+    IfdEntry(int tag, int type, long... values) {
+      this.tag = tag;
+      this.type = type;
+      this.values = values;
+    }
+
+    IfdEntry(int tag, int type, String value) {
+      this(tag, type, asciiValues(value));
+    }
+
+    private static long[] asciiValues(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+      long[] values = new long[bytes.length + 1]; // Zero terminated.
+      for (int i = 0; i < bytes.length; ++i) {
+        values[i] = bytes[i];
+      }
+      return values;
+    }
+
+    int count() {
+      return type == RATIONAL ? values.length / 2 : values.length;
+    }
+
+    int size() {
+      switch (type) {
+        case SHORT:
+          return 2 * values.length;
+        case LONG:
+        case RATIONAL:
+          return 4 * values.length;
+        default:
+          return values.length;
+      }
+    }
+
+    void writeValues(DataOutputStream out) throws IOException {
+      for (long value : values) {
+        switch (type) {
+          case SHORT:
+            out.writeShort((int) value);
+            break;
+          case LONG:
+          case RATIONAL:
+            out.writeInt((int) value);
+            break;
+          default:
+            out.write((int) value);
+            break;
+        }
+      }
+    }
   }
 }
@@ -360,6 +360,11 @@ public class BigPackedOctree implements Octree.OctreeImplementation {
     return palette.get(typeFromValue(value));
   }
 
+  @Override
+  public int getTypeAt(int x, int y, int z) {
+    return typeFromValue(getAt(getNodeIndex(x, y, z)));
+  }
+
   @Override
   public void store(DataOutputStream output) throws IOException {
     output.writeInt(depth);
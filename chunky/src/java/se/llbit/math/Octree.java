@@ -81,6 +81,24 @@ public class Octree {
       outTypeAndLevel.right(level).left(getType(node));
     }
 
+    /**
+     * Get the type (block palette ID) of the leaf node that contains the given position.
+     *
+     * x, y, z are in octree coordinates, NOT world coordinates.
+     */
+    default int getTypeAt(int x, int y, int z) {
+      NodeId node = getRoot();
+      int level = getDepth();
+      while(isBranch(node)) {
+        level -= 1;
+        int lx = x >>> level;
+        int ly = y >>> level;
+        int lz = z >>> level;
+        node = getChild(node, (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1)));
+      }
+      return getType(node);
+    }
+
     /**
      * Set a whole 2^n * 2^n * 2^n cube of blocks
      * @param cubeDepth the n
@@ -301,6 +319,21 @@ public class Octree {
     return implementation.getMaterial(x, y, z, palette);
   }
 
+  /**
+   * Get the block palette ID at the given position (relative to the octree origin).
+   * @param x x position
+   * @param y y position
+   * @param z z position
+   * @param palette Block palette
+   * @return Block ID at the given position or the air ID of the palette if the position is outside of this octree
+   */
+  public int getBlockId(int x, int y, int z, BlockPalette palette) {
+    int size = (1 << implementation.getDepth());
+    if(x < 0 || y < 0 || z < 0 || x >= size || y >= size || z >= size)
+      return palette.airId;
+    return implementation.getTypeAt(x, y, z);
+  }
+
   /**
    * Serialize this octree to a data output stream.
    *
@@ -24,6 +24,9 @@ import se.llbit.chunky.world.Material;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -552,6 +555,11 @@ public class PackedOctree implements Octree.OctreeImplementation {
     return palette.get(-treeData[nodeIndex]);
   }
 
+  @Override
+  public int getTypeAt(int x, int y, int z) {
+    return getTypeFromIndex(getNodeIndex(x, y, z));
+  }
+
   /**
    * Stores this PackedOctree into its serialized form.
    *
@@ -596,6 +604,77 @@ public class PackedOctree implements Octree.OctreeImplementation {
     return tree;
   }
 
+  /**
+   * Number of ints copied through the buffer used to read and write raw octree files.
+   */
+  private static final int RAW_WINDOW_INTS = 1 << 20;
+
+  /**
+   * Write the tree data as it is laid out in memory, in native byte order, at the current
+   * position of the channel. This includes the holes left by removed nodes, so the tree can
+   * be read back with {@link #loadRaw(FileChannel)} without rebuilding it.
+   *
+   * <p>The data is written through a buffer rather than a memory mapping, since a mapping
+   * would keep the file locked on Windows until it is garbage collected.
+   */
+  public void storeRaw(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.nativeOrder());
+    header.putInt(depth).putInt(size).putInt(freeHead).flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4 * Math.min(RAW_WINDOW_INTS, size))
+        .order(ByteOrder.nativeOrder());
+    for (int offset = 0; offset < size; offset += RAW_WINDOW_INTS) {
+      int count = Math.min(RAW_WINDOW_INTS, size - offset);
+      buffer.clear();
+      buffer.asIntBuffer().put(treeData, offset, count);
+      buffer.limit(4 * count);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Read a tree written by {@link #storeRaw(FileChannel)} from the current position of the
+   * channel. The data is read in large blocks and copied straight into the tree array.
+   */
+  public static PackedOctree loadRaw(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.nativeOrder());
+    while (header.hasRemaining()) {
+      if (channel.read(header) < 0) {
+        throw new IOException("Unexpected end of raw octree data.");
+      }
+    }
+    header.flip();
+    int depth = header.getInt();
+    int size = header.getInt();
+    int freeHead = header.getInt();
+    if (size < 1 || freeHead < -1 || freeHead >= size
+        || channel.position() + 4L * size > channel.size()) {
+      throw new IOException("Corrupt raw octree data.");
+    }
+    PackedOctree tree = new PackedOctree(depth, size);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4 * Math.min(RAW_WINDOW_INTS, size))
+        .order(ByteOrder.nativeOrder());
+    for (int offset = 0; offset < size; offset += RAW_WINDOW_INTS) {
+      int count = Math.min(RAW_WINDOW_INTS, size - offset);
+      buffer.clear();
+      buffer.limit(4 * count);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("Unexpected end of raw octree data.");
+        }
+      }
+      buffer.flip();
+      buffer.asIntBuffer().get(tree.treeData, offset, count);
+    }
+    tree.size = size;
+    tree.freeHead = freeHead;
+    return tree;
+  }
+
   /**
    * Recursively read this node in from its serialized form from an InputStream (probably from a file).
    */
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import se.llbit.util.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uncompressed cache of the world and water octrees of a scene.
+ *
+ * <p>Loading the octree file inflates and parses the trees node by node. The cache instead
+ * holds the {@link PackedOctree} arrays in their in-memory layout, which are read in bulk on
+ * load. A cache file is only valid for the octree file timestamp it was written with, and in
+ * the byte order of the machine that wrote it. The cache file is as large as the octrees in
+ * memory, so it is only written if enabled with
+ * {@link se.llbit.chunky.PersistentSettings#setRawOctreeCache(boolean)}.
+ */
+public class RawOctreeCache {
+  private static final int MAGIC = 0x4F435243; // "OCRC"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  public static class CachedOctrees {
+    public final Octree worldTree;
+    public final Octree waterTree;
+
+    CachedOctrees(Octree worldTree, Octree waterTree) {
+      this.worldTree = worldTree;
+      this.waterTree = waterTree;
+    }
+  }
+
+  /**
+   * @return {@code true} if the octrees use an implementation that can be cached
+   */
+  public static boolean canStore(Octree worldTree, Octree waterTree) {
+    return worldTree.getImplementation() instanceof PackedOctree
+        && waterTree.getImplementation() instanceof PackedOctree;
+  }
+
+  /**
+   * Write the octrees to a cache file. The file is replaced only once it has been completely
+   * written.
+   *
+   * @param octreeTimestamp timestamp of the octree file the octrees were saved to
+   */
+  public static void store(File file, long octreeTimestamp, Octree worldTree, Octree waterTree)
+      throws IOException {
+    File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+      header.putInt(MAGIC).putInt(VERSION).putLong(octreeTimestamp).flip();
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      ((PackedOctree) worldTree.getImplementation()).storeRaw(channel);
+      ((PackedOctree) waterTree.getImplementation()).storeRaw(channel);
+    } catch (IOException e) {
+      Files.deleteIfExists(tempFile.toPath());
+      throw e;
+    }
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Load the octrees from a cache file.
+   *
+   * @param octreeTimestamp timestamp of the octree file the scene is loaded from
+   * @return the cached octrees, or {@code null} if the cache file does not exist or does not
+   * belong to the octree file
+   */
+  @Nullable
+  public static CachedOctrees load(File file, long octreeTimestamp) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          return null;
+        }
+      }
+      header.flip();
+      if (header.getInt() != MAGIC || header.getInt() != VERSION
+          || header.getLong() != octreeTimestamp) {
+        return null;
+      }
+      Octree worldTree = new Octree(PackedOctree.loadRaw(channel));
+      Octree waterTree = new Octree(PackedOctree.loadRaw(channel));
+      return new CachedOctrees(worldTree, waterTree);
+    }
+  }
+}
@@ -24,10 +24,13 @@ import se.llbit.log.Log;
 import se.llbit.math.Intersectable;
 import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
 import se.llbit.util.TaskTracker;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -49,6 +52,25 @@ public interface BVH extends Intersectable {
     public interface BVHBuilder {
       BVH create(Collection<Entity> entities, Vector3 worldOffset, Scene scene, TaskTracker.Task task);
 
+      /**
+       * Build a BVH from primitives that were already collected from the entities, see
+       * {@link Factory#collectPrimitives}. Progress is reported on the second half of the task.
+       * The array may be reordered.
+       *
+       * @return the BVH, or {@code null} if this builder can only build from entities
+       */
+      default BVH create(Primitive[] primitives, Scene scene, TaskTracker.Task task) {
+        return null;
+      }
+
+      /**
+       * @return {@code true} if this builder implements {@link #create(Primitive[], Scene, TaskTracker.Task)},
+       * so that the primitives only need to be collected once to build a cacheable BVH
+       */
+      default boolean canBuildFromPrimitives() {
+        return false;
+      }
+
       String getName();
       String getDescription();
     }
@@ -89,9 +111,30 @@ public interface BVH extends Intersectable {
       MidpointBVH.registerImplementation();
       SahBVH.registerImplementation();
       SahMaBVH.registerImplementation();
+      BinnedSahBVH.registerImplementation();
+      PackedTriangleBVH.registerImplementation();
+      WideBVH.registerImplementation();
       DEFAULT_IMPLEMENTATION = implementations.get("SAH_MA");
     }
 
+    /**
+     * Gather the primitives of all entities in order, reporting progress on the first half of the task.
+     */
+    public static Primitive[] collectPrimitives(Collection<Entity> entities, Vector3 worldOffset, TaskTracker.Task task) {
+      task.update(1000, 0);
+      double entityScaler = 500.0 / entities.size();
+      int done = 0;
+
+      List<Primitive> primitives = new ArrayList<>();
+      for (Entity entity : entities) {
+        primitives.addAll(entity.primitives(worldOffset));
+
+        done++;
+        task.updateInterval((int) (done * entityScaler), 1);
+      }
+      return primitives.toArray(new Primitive[0]);
+    }
+
     /**
      * Construct a new BVH containing the given entities. This will generate the BVH using the
      * persistent BVH method (default is SAH_MA).
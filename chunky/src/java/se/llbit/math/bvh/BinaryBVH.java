@@ -40,6 +40,9 @@ public abstract class BinaryBVH implements BVH {
 
     public static final int SPLIT_LIMIT = 4;
 
+    /** Cost of traversing a node relative to intersecting a primitive, used by {@link #expectedCost()}. */
+    public static final double TRAVERSAL_COST = 1;
+
     /** Note: This is public for some plugins. Stability is not guaranteed. */
     public int[] packed;
     public int depth;
@@ -140,7 +143,7 @@ public abstract class BinaryBVH implements BVH {
         }
     }
 
-    private final Scene mainScene;
+    protected final Scene mainScene;
 
     public BinaryBVH(Scene mainScene){
       this.mainScene=mainScene;
@@ -212,6 +215,57 @@ public abstract class BinaryBVH implements BVH {
         data.add(Float.floatToIntBits((float) box.zmax));
     }
 
+    /**
+     * Estimate the expected cost of intersecting a random ray with this BVH using the surface area heuristic,
+     * in units of primitive intersection tests. Each node is weighted by the probability that a ray hitting
+     * the root also hits the node. Lower is better, this is used to compare the quality of BVHs.
+     */
+    public double expectedCost() {
+        if (packed.length == 0) {
+            return 0;
+        }
+        double rootArea = surfaceArea(packed, 0);
+        return rootArea > 0 ? surfaceAreaCost() / rootArea : surfaceAreaCost();
+    }
+
+    /**
+     * The surface area heuristic cost without normalizing by the area of the root, so that it can be
+     * compared between trees with different root bounds.
+     */
+    protected double surfaceAreaCost() {
+        double cost = 0;
+        if (packed.length == 0) {
+            return cost;
+        }
+        IntArrayList nodes = new IntArrayList(depth + 1);
+        nodes.push(0);
+        while (!nodes.isEmpty()) {
+            int node = nodes.popInt();
+            double area = surfaceArea(packed, node);
+            if (packed[node] <= 0) {
+                cost += area * leafSize(-packed[node]);
+            } else {
+                cost += area * TRAVERSAL_COST;
+                nodes.push(node + 7);
+                nodes.push(packed[node]);
+            }
+        }
+        return cost;
+    }
+
+    /** Number of primitives in a leaf, addressed by the negated value stored in its packed node. */
+    protected int leafSize(int leaf) {
+        return packedPrimitives[leaf].length;
+    }
+
+    /** Surface area of the packed AABB of a node. */
+    static double surfaceArea(int[] packed, int node) {
+        double x = Float.intBitsToFloat(packed[node + 2]) - Float.intBitsToFloat(packed[node + 1]);
+        double y = Float.intBitsToFloat(packed[node + 4]) - Float.intBitsToFloat(packed[node + 3]);
+        double z = Float.intBitsToFloat(packed[node + 6]) - Float.intBitsToFloat(packed[node + 5]);
+        return 2 * (x * y + y * z + z * x);
+    }
+
     /**
      * Find closest intersection between the ray and any object in the BVH. This uses a recursion-less algorithm
      * based on the compact BVH traversal algorithm presented in:
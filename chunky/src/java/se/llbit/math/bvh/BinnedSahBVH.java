@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.math.AABB;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.TaskTracker;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * BVH built with a binned Surface Area Heuristic. Instead of sorting the primitives at every split,
+ * primitive centroids are counted into a fixed number of bins along each axis and only the bin
+ * boundaries are evaluated as split candidates. Subtrees are built in parallel.
+ */
+public class BinnedSahBVH extends BinaryBVH {
+    /** Number of bins per axis. */
+    private static final int BINS = 16;
+
+    /** Largest leaf that is kept when splitting it would not lower the SAH cost. */
+    private static final int MAX_LEAF_SIZE = 8;
+
+    /** Subtrees with fewer primitives than this are built on the current thread. */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    /** Empty bounds, six values: xmin, xmax, ymin, ymax, zmin, zmax. */
+    private static final double[] EMPTY_BOUNDS = {
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+    };
+
+    public static void registerImplementation() {
+        Factory.addBVHBuilder(new Factory.BVHBuilder() {
+            @Override
+            public BVH create(Collection<Entity> entities, Vector3 worldOffset, Scene mainScene, TaskTracker.Task task) {
+                return create(Factory.collectPrimitives(entities, worldOffset, task), mainScene, task);
+            }
+
+            @Override
+            public BVH create(Primitive[] primitives, Scene mainScene, TaskTracker.Task task) {
+                double primitiveScaler = 500.0 / primitives.length;
+                long start = System.currentTimeMillis();
+                BinnedSahBVH bvh = new BinnedSahBVH(primitives, mainScene,
+                    i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
+                Log.infof("Built SAH_BINNED BVH with depth %d in %d ms (%d primitives, expected cost %.2f)",
+                    bvh.depth, System.currentTimeMillis() - start, primitives.length, bvh.expectedCost());
+                return bvh;
+            }
+
+            @Override
+            public boolean canBuildFromPrimitives() {
+                return true;
+            }
+
+            @Override
+            public String getName() {
+                return "SAH_BINNED";
+            }
+
+            @Override
+            public String getDescription() {
+                return "Fast parallel BVH building method, nearly as good as SAH_MA.";
+            }
+        });
+    }
+
+    /**
+     * Build a BVH without logging, for example for the small BVHs of instanced models.
+     * Builds of the scene BVH are logged by the registered builder.
+     */
+    public BinnedSahBVH(Primitive[] primitives, Scene mainScene, IntConsumer task) {
+        super(mainScene);
+        pack(build(primitives, task));
+    }
+
+    /**
+     * Build a node-based BVH using binned SAH. Subtrees are built in parallel on the common thread pool.
+     *
+     * @param task progress consumer, called with the number of primitives placed in leaves so far
+     */
+    static Node build(Primitive[] primitives, IntConsumer task) {
+        Builder builder = new Builder(primitives, task);
+        return Chunky.getCommonThreads().invoke(builder.new Subtree(0, primitives.length));
+    }
+
+    /**
+     * Shared state of a build. The primitive bounds and centroids are copied into flat arrays
+     * once, and subtrees partition disjoint ranges of the index array in place.
+     */
+    private static class Builder {
+        final Primitive[] primitives;
+        final int[] index;
+        /** Primitive bounds, six values per primitive: xmin, xmax, ymin, ymax, zmin, zmax. */
+        final double[] bounds;
+        /** Primitive centroids, three values per primitive. */
+        final double[] centroids;
+        final IntConsumer task;
+        final AtomicInteger progress = new AtomicInteger();
+
+        Builder(Primitive[] primitives, IntConsumer task) {
+            this.primitives = primitives;
+            this.task = task;
+            int count = primitives.length;
+            index = new int[count];
+            bounds = new double[count * 6];
+            centroids = new double[count * 3];
+            for (int i = 0; i < count; ++i) {
+                AABB bb = primitives[i].bounds();
+                index[i] = i;
+                bounds[i * 6] = bb.xmin;
+                bounds[i * 6 + 1] = bb.xmax;
+                bounds[i * 6 + 2] = bb.ymin;
+                bounds[i * 6 + 3] = bb.ymax;
+                bounds[i * 6 + 4] = bb.zmin;
+                bounds[i * 6 + 5] = bb.zmax;
+                centroids[i * 3] = (bb.xmin + bb.xmax) / 2;
+                centroids[i * 3 + 1] = (bb.ymin + bb.ymax) / 2;
+                centroids[i * 3 + 2] = (bb.zmin + bb.zmax) / 2;
+            }
+        }
+
+        Node leaf(int start, int end) {
+            Primitive[] leaf = new Primitive[end - start];
+            for (int i = start; i < end; ++i) {
+                leaf[i - start] = primitives[index[i]];
+            }
+            int done = progress.addAndGet(leaf.length);
+            synchronized (this) {
+                task.accept(done);
+            }
+            return new Leaf(leaf);
+        }
+
+        /**
+         * Builds the subtree for a range of the index array.
+         */
+        class Subtree extends RecursiveTask<Node> {
+            final int start;
+            final int end;
+
+            Subtree(int start, int end) {
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            protected Node compute() {
+                int count = end - start;
+                if (count < SPLIT_LIMIT) {
+                    return leaf(start, end);
+                }
+
+                double[] centroidMin = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+                double[] centroidMax = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+                double[] nodeBounds = EMPTY_BOUNDS.clone();
+                for (int i = start; i < end; ++i) {
+                    int primitive = index[i];
+                    for (int axis = 0; axis < 3; ++axis) {
+                        double c = centroids[primitive * 3 + axis];
+                        centroidMin[axis] = Math.min(centroidMin[axis], c);
+                        centroidMax[axis] = Math.max(centroidMax[axis], c);
+                    }
+                    expand(nodeBounds, 0, bounds, primitive * 6);
+                }
+
+                // Evaluate the bin boundaries of each axis.
+                int bestAxis = -1;
+                int bestBin = 0;
+                double bestCost = Double.POSITIVE_INFINITY;
+                int[] binCount = new int[BINS];
+                double[] binBounds = new double[BINS * 6];
+                double[] rightArea = new double[BINS];
+                double[] accumulated = new double[6];
+                for (int axis = 0; axis < 3; ++axis) {
+                    double extent = centroidMax[axis] - centroidMin[axis];
+                    if (extent <= 0) {
+                        continue;
+                    }
+                    double scale = BINS / extent;
+                    Arrays.fill(binCount, 0);
+                    for (int bin = 0; bin < BINS; ++bin) {
+                        System.arraycopy(EMPTY_BOUNDS, 0, binBounds, bin * 6, 6);
+                    }
+                    for (int i = start; i < end; ++i) {
+                        int primitive = index[i];
+                        int bin = bin(centroids[primitive * 3 + axis], centroidMin[axis], scale);
+                        binCount[bin] += 1;
+                        expand(binBounds, bin * 6, bounds, primitive * 6);
+                    }
+
+                    // Sweep from the right to get the area right of each boundary.
+                    System.arraycopy(EMPTY_BOUNDS, 0, accumulated, 0, 6);
+                    for (int bin = BINS - 1; bin > 0; --bin) {
+                        expand(accumulated, 0, binBounds, bin * 6);
+                        rightArea[bin] = area(accumulated);
+                    }
+                    // Sweep from the left, evaluating the boundary left of each bin.
+                    System.arraycopy(EMPTY_BOUNDS, 0, accumulated, 0, 6);
+                    int leftCount = 0;
+                    for (int bin = 1; bin < BINS; ++bin) {
+                        expand(accumulated, 0, binBounds, (bin - 1) * 6);
+                        leftCount += binCount[bin - 1];
+                        int rightCount = count - leftCount;
+                        if (leftCount == 0 || rightCount == 0) {
+                            continue;
+                        }
+                        double cost = area(accumulated) * leftCount + rightArea[bin] * rightCount;
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestAxis = axis;
+                            bestBin = bin;
+                        }
+                    }
+                }
+
+                int mid;
+                if (bestAxis == -1) {
+                    // All centroids coincide, the primitives can not be separated by a split plane.
+                    if (count <= MAX_LEAF_SIZE) {
+                        return leaf(start, end);
+                    }
+                    mid = start + count / 2;
+                } else {
+                    double nodeArea = area(nodeBounds);
+                    if (count <= MAX_LEAF_SIZE && count * nodeArea <= TRAVERSAL_COST * nodeArea + bestCost) {
+                        return leaf(start, end);
+                    }
+                    mid = partition(bestAxis, bestBin, centroidMin[bestAxis], BINS / (centroidMax[bestAxis] - centroidMin[bestAxis]));
+                }
+
+                Subtree left = new Subtree(start, mid);
+                Subtree right = new Subtree(mid, end);
+                if (count >= PARALLEL_THRESHOLD) {
+                    left.fork();
+                    Node rightNode = right.compute();
+                    return new Group(left.join(), rightNode);
+                } else {
+                    Node leftNode = left.compute();
+                    return new Group(leftNode, right.compute());
+                }
+            }
+
+            /**
+             * Move the primitives in bins left of the split bin to the start of the range.
+             *
+             * @return the index of the first primitive right of the split
+             */
+            private int partition(int axis, int splitBin, double min, double scale) {
+                int i = start;
+                int j = end - 1;
+                while (i <= j) {
+                    if (bin(centroids[index[i] * 3 + axis], min, scale) < splitBin) {
+                        i += 1;
+                    } else {
+                        int tmp = index[i];
+                        index[i] = index[j];
+                        index[j] = tmp;
+                        j -= 1;
+                    }
+                }
+                return i;
+            }
+        }
+    }
+
+    private static int bin(double centroid, double min, double scale) {
+        return Math.min(BINS - 1, (int) ((centroid - min) * scale));
+    }
+
+    /** Expand the bounds at {@code offset} in {@code target} to include the bounds at {@code sourceOffset} in {@code source}. */
+    private static void expand(double[] target, int offset, double[] source, int sourceOffset) {
+        target[offset] = Math.min(target[offset], source[sourceOffset]);
+        target[offset + 1] = Math.max(target[offset + 1], source[sourceOffset + 1]);
+        target[offset + 2] = Math.min(target[offset + 2], source[sourceOffset + 2]);
+        target[offset + 3] = Math.max(target[offset + 3], source[sourceOffset + 3]);
+        target[offset + 4] = Math.min(target[offset + 4], source[sourceOffset + 4]);
+        target[offset + 5] = Math.max(target[offset + 5], source[sourceOffset + 5]);
+    }
+
+    /** Surface area of bounds, zero for empty bounds. */
+    private static double area(double[] b) {
+        if (b[0] > b[1]) {
+            return 0;
+        }
+        double x = b[1] - b[0];
+        double y = b[3] - b[2];
+        double z = b[5] - b[4];
+        return 2 * (x * y + y * z + z * x);
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.json.JsonValue;
+import se.llbit.math.AABB;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Cache of a built {@link BinaryBVH}, stored next to the scene so that the BVH does not have to be
+ * rebuilt every time the scene is loaded.
+ *
+ * <p>Primitives reference materials and textures that only exist at runtime, so they are not stored.
+ * Instead the cache holds the packed node array and, for each leaf, the indices of its primitives in
+ * the order that {@link BVH.Factory#collectPrimitives} returns them. Loading the cache collects the
+ * primitives again, which is fast compared to building the tree. A cache file is only valid for the key
+ * it was written with, a hash of the entities and the BVH implementation, and the leaf bounds are checked
+ * against the collected primitives. The file is big-endian, like the other scene files.
+ */
+public class BvhCache {
+    private static final int MAGIC = 0x42564843; // "BVHC"
+    private static final int VERSION = 2;
+    private static final int KEY_SIZE = 32;
+    private static final int HEADER_SIZE = 8 + KEY_SIZE + 16;
+
+    /** Number of ints read or written at a time. */
+    private static final int WINDOW_INTS = 1 << 20;
+
+    /** BVH loaded from a cache file. */
+    private static class CachedBVH extends BinaryBVH {
+        CachedBVH(Scene mainScene, int[] packed, int depth, Primitive[][] packedPrimitives) {
+            super(mainScene);
+            this.packed = packed;
+            this.depth = depth;
+            this.packedPrimitives = packedPrimitives;
+        }
+    }
+
+    /**
+     * Compute the cache key for a BVH built with an implementation from entities.
+     *
+     * @return the key, or {@code null} if it could not be computed
+     */
+    @Nullable
+    public static byte[] key(String implementation, Collection<Entity> entities, Vector3 worldOffset) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(implementation);
+            out.writeDouble(worldOffset.x);
+            out.writeDouble(worldOffset.y);
+            out.writeDouble(worldOffset.z);
+            out.writeInt(entities.size());
+            for (Entity entity : entities) {
+                JsonValue json = entity.toJson();
+                // Entity JSON can be larger than writeUTF allows.
+                out.write(String.valueOf(json == null ? null : json.toCompactString()).getBytes("UTF-8"));
+                out.write(0);
+                if (bytes.size() > (1 << 16)) {
+                    out.flush();
+                    digest.update(bytes.toByteArray());
+                    bytes.reset();
+                }
+            }
+            out.flush();
+            digest.update(bytes.toByteArray());
+            return digest.digest();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the primitives of a BVH in the primitives it was built from.
+     *
+     * @param primitives the primitives the BVH was built from, in the order of
+     *                   {@link BVH.Factory#collectPrimitives}
+     * @return the index in {@code primitives} of each leaf primitive, in leaf order, or {@code null}
+     * if the BVH can not be cached
+     */
+    @Nullable
+    public static int[] primitiveIndices(BVH bvh, Primitive[] primitives) {
+        if (!(bvh instanceof BinaryBVH) || ((BinaryBVH) bvh).packedPrimitives == null) {
+            return null;
+        }
+        Map<Primitive, Integer> index = new IdentityHashMap<>(primitives.length * 2);
+        for (int i = 0; i < primitives.length; ++i) {
+            index.put(primitives[i], i);
+        }
+        int[] indices = new int[primitives.length];
+        int count = 0;
+        for (Primitive[] leaf : ((BinaryBVH) bvh).packedPrimitives) {
+            for (Primitive primitive : leaf) {
+                Integer i = index.get(primitive);
+                if (i == null || count == indices.length) {
+                    return null;
+                }
+                indices[count++] = i;
+            }
+        }
+        return count == indices.length ? indices : null;
+    }
+
+    /**
+     * Write a BVH to a cache file. The file is replaced only once it has been completely written.
+     *
+     * @param primitiveIndices leaf primitive indices from {@link #primitiveIndices}
+     */
+    public static void store(File file, byte[] key, BinaryBVH bvh, int[] primitiveIndices) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).put(key)
+                .putInt(primitiveIndices.length).putInt(bvh.depth)
+                .putInt(bvh.packed.length).putInt(bvh.packedPrimitives.length).flip();
+            writeFully(channel, header);
+            int[] leafSizes = new int[bvh.packedPrimitives.length];
+            for (int i = 0; i < leafSizes.length; ++i) {
+                leafSizes[i] = bvh.packedPrimitives[i].length;
+            }
+            writeInts(channel, bvh.packed);
+            writeInts(channel, leafSizes);
+            writeInts(channel, primitiveIndices);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw e;
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Check the header of a cache file, so that the primitives are only collected for
+     * a cache file that can be used.
+     *
+     * @return {@code true} if the cache file exists and was written for the key
+     */
+    public static boolean matches(File file, byte[] key) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readKey(channel, key) != null;
+        }
+    }
+
+    /**
+     * Read the header up to and including the key.
+     *
+     * @return the header positioned after the key, or {@code null} if the file is not a cache
+     * file for the key
+     */
+    @Nullable
+    private static ByteBuffer readKey(FileChannel channel, byte[] key) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (!readFully(channel, header)) {
+            return null;
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return null;
+        }
+        byte[] fileKey = new byte[KEY_SIZE];
+        header.get(fileKey);
+        return MessageDigest.isEqual(fileKey, key) ? header : null;
+    }
+
+    /**
+     * Load a BVH from a cache file.
+     *
+     * @param primitives the primitives collected from the entities the key was computed for
+     * @return the cached BVH, or {@code null} if the cache file does not exist or does not match
+     * the key or the primitives
+     */
+    @Nullable
+    public static BinaryBVH load(File file, byte[] key, Primitive[] primitives, Scene mainScene) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = readKey(channel, key);
+            if (header == null) {
+                return null;
+            }
+            int primitiveCount = header.getInt();
+            int depth = header.getInt();
+            int packedLength = header.getInt();
+            int leafCount = header.getInt();
+            if (primitiveCount != primitives.length || packedLength < 7 || leafCount < 1
+                || channel.size() != HEADER_SIZE + 4L * packedLength + 4L * leafCount + 4L * primitiveCount) {
+                return null;
+            }
+            int[] packed = readInts(channel, packedLength);
+            int[] leafSizes = readInts(channel, leafCount);
+            int[] indices = readInts(channel, primitiveCount);
+
+            // Distribute the primitives to the leaves, every primitive must be used once.
+            boolean[] used = new boolean[primitiveCount];
+            Primitive[][] packedPrimitives = new Primitive[leafCount][];
+            int next = 0;
+            for (int leaf = 0; leaf < leafCount; ++leaf) {
+                if (leafSizes[leaf] < 0 || leafSizes[leaf] > primitiveCount - next) {
+                    return null;
+                }
+                packedPrimitives[leaf] = new Primitive[leafSizes[leaf]];
+                for (int i = 0; i < leafSizes[leaf]; ++i) {
+                    int index = indices[next++];
+                    if (index < 0 || index >= primitiveCount || used[index]) {
+                        return null;
+                    }
+                    used[index] = true;
+                    packedPrimitives[leaf][i] = primitives[index];
+                }
+            }
+            if (next != primitiveCount || !checkNodes(packed, packedPrimitives)) {
+                return null;
+            }
+            return new CachedBVH(mainScene, packed, depth, packedPrimitives);
+        }
+    }
+
+    /**
+     * Check that the node references are in range and that the stored leaf bounds are the bounds
+     * of the primitives. If the entities generated different primitives than when the BVH was built,
+     * the leaf bounds do not match.
+     */
+    private static boolean checkNodes(int[] packed, Primitive[][] packedPrimitives) {
+        if (packed.length % 7 != 0) {
+            return false;
+        }
+        for (int node = 0; node < packed.length; node += 7) {
+            int value = packed[node];
+            if (value > 0) {
+                if (value <= node || value % 7 != 0 || value >= packed.length || node + 7 >= packed.length) {
+                    return false;
+                }
+            } else {
+                if (-value >= packedPrimitives.length) {
+                    return false;
+                }
+                AABB bb = BinaryBVH.bb(packedPrimitives[-value]);
+                if (packed[node + 1] != Float.floatToIntBits((float) bb.xmin)
+                    || packed[node + 2] != Float.floatToIntBits((float) bb.xmax)
+                    || packed[node + 3] != Float.floatToIntBits((float) bb.ymin)
+                    || packed[node + 4] != Float.floatToIntBits((float) bb.ymax)
+                    || packed[node + 5] != Float.floatToIntBits((float) bb.zmin)
+                    || packed[node + 6] != Float.floatToIntBits((float) bb.zmax)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeInts(FileChannel channel, int[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * Math.min(WINDOW_INTS, Math.max(data.length, 1)));
+        for (int offset = 0; offset < data.length; offset += WINDOW_INTS) {
+            int count = Math.min(WINDOW_INTS, data.length - offset);
+            buffer.clear();
+            buffer.asIntBuffer().put(data, offset, count);
+            buffer.limit(4 * count);
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static int[] readInts(FileChannel channel, int length) throws IOException {
+        int[] data = new int[length];
+        ByteBuffer buffer = ByteBuffer.allocate(4 * Math.min(WINDOW_INTS, Math.max(length, 1)));
+        for (int offset = 0; offset < length; offset += WINDOW_INTS) {
+            int count = Math.min(WINDOW_INTS, length - offset);
+            buffer.clear();
+            buffer.limit(4 * count);
+            if (!readFully(channel, buffer)) {
+                throw new IOException("Unexpected end of BVH cache.");
+            }
+            buffer.flip();
+            buffer.asIntBuffer().get(data, offset, count);
+        }
+        return data;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.TaskTracker;
+
+import java.util.Collection;
+
+/**
+ * Binary BVH built with binned SAH that stores the leaf primitives in structure-of-arrays form
+ * (see {@link PackedTriangles}) instead of as {@link Primitive} objects. Leaves are intersected
+ * in a tight loop and the traversal stack is reused by each render worker thread.
+ * <p>
+ * The {@code packedPrimitives} array is not kept, leaf {@code i} instead covers the range
+ * {@code [leafStart[i], leafStart[i + 1])} of the packed triangles.
+ */
+public class PackedTriangleBVH extends BinaryBVH {
+    private final PackedTriangles triangles;
+    private final int[] leafStart;
+    private final ThreadLocal<int[]> traversalStack;
+
+    public static void registerImplementation() {
+        Factory.addBVHBuilder(new Factory.BVHBuilder() {
+            @Override
+            public BVH create(Collection<Entity> entities, Vector3 worldOffset, Scene mainScene, TaskTracker.Task task) {
+                return create(Factory.collectPrimitives(entities, worldOffset, task), mainScene, task);
+            }
+
+            @Override
+            public BVH create(Primitive[] allPrimitives, Scene mainScene, TaskTracker.Task task) {
+                double primitiveScaler = 500.0 / allPrimitives.length;
+                long start = System.currentTimeMillis();
+                PackedTriangleBVH bvh = new PackedTriangleBVH(
+                    BinnedSahBVH.build(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1)),
+                    mainScene);
+                Log.infof("Built SAH_BINNED_PACKED BVH with depth %d in %d ms (%d primitives, expected cost %.2f)",
+                    bvh.depth, System.currentTimeMillis() - start, allPrimitives.length, bvh.expectedCost());
+                return bvh;
+            }
+
+            @Override
+            public String getName() {
+                return "SAH_BINNED_PACKED";
+            }
+
+            @Override
+            public String getDescription() {
+                return "Same tree as SAH_BINNED with compact triangle storage, faster to render but uses more memory while building.";
+            }
+        });
+    }
+
+    /**
+     * Pack a node-based BVH.
+     */
+    public PackedTriangleBVH(Node root, Scene mainScene) {
+        super(mainScene);
+        pack(root);
+
+        leafStart = new int[packedPrimitives.length + 1];
+        int count = 0;
+        for (int i = 0; i < packedPrimitives.length; ++i) {
+            leafStart[i] = count;
+            count += packedPrimitives[i].length;
+        }
+        leafStart[packedPrimitives.length] = count;
+        Primitive[] primitives = new Primitive[count];
+        for (int i = 0; i < packedPrimitives.length; ++i) {
+            System.arraycopy(packedPrimitives[i], 0, primitives, leafStart[i], packedPrimitives[i].length);
+        }
+        packedPrimitives = null;
+        triangles = new PackedTriangles(primitives, mainScene);
+
+        // The traversal stack never holds more than one node per level of the tree.
+        int stackSize = height(packed) + 1;
+        traversalStack = ThreadLocal.withInitial(() -> new int[stackSize]);
+    }
+
+    /**
+     * Height of a packed tree. Children are always packed after their parent, so the levels can
+     * be computed in a single pass over the nodes.
+     */
+    static int height(int[] packed) {
+        int[] level = new int[packed.length / 7];
+        int height = 0;
+        for (int node = 0; node < packed.length; node += 7) {
+            int nodeLevel = level[node / 7];
+            height = Math.max(height, nodeLevel);
+            if (packed[node] > 0) {
+                level[node / 7 + 1] = nodeLevel + 1;
+                level[packed[node] / 7] = nodeLevel + 1;
+            }
+        }
+        return height;
+    }
+
+    @Override
+    protected int leafSize(int leaf) {
+        return leafStart[leaf + 1] - leafStart[leaf];
+    }
+
+    /**
+     * Find closest intersection between the ray and any object in the BVH. This is the same traversal
+     * as {@link BinaryBVH#closestIntersection(Ray)}.
+     *
+     * @return {@code true} if there exists any intersection
+     */
+    @Override
+    public boolean closestIntersection(Ray ray) {
+        boolean hit = false;
+        int currentNode = 0;
+        int[] nodesToVisit = traversalStack.get();
+        int stackSize = 0;
+
+        double rx = 1 / ray.d.x;
+        double ry = 1 / ray.d.y;
+        double rz = 1 / ray.d.z;
+
+        while (true) {
+            if (packed[currentNode] <= 0) {
+                // Is leaf
+                int leaf = -packed[currentNode];
+                hit |= triangles.intersect(ray, leafStart[leaf], leafStart[leaf + 1]);
+
+                if (stackSize == 0) break;
+                currentNode = nodesToVisit[--stackSize];
+            } else {
+                // Is branch, find closest node
+                int offset = currentNode+7;
+                double t1 = quickAabbIntersect(ray, Float.intBitsToFloat(packed[offset+1]), Float.intBitsToFloat(packed[offset+2]),
+                        Float.intBitsToFloat(packed[offset+3]), Float.intBitsToFloat(packed[offset+4]),
+                        Float.intBitsToFloat(packed[offset+5]), Float.intBitsToFloat(packed[offset+6]),
+                        rx, ry, rz);
+                offset = packed[currentNode];
+                double t2 = quickAabbIntersect(ray, Float.intBitsToFloat(packed[offset+1]), Float.intBitsToFloat(packed[offset+2]),
+                        Float.intBitsToFloat(packed[offset+3]), Float.intBitsToFloat(packed[offset+4]),
+                        Float.intBitsToFloat(packed[offset+5]), Float.intBitsToFloat(packed[offset+6]),
+                        rx, ry, rz);
+
+                if (t1 > ray.t | t1 == -1) {
+                    if (t2 > ray.t | t2 == -1) {
+                        if (stackSize == 0) break;
+                        currentNode = nodesToVisit[--stackSize];
+                    } else {
+                        currentNode = packed[currentNode];
+                    }
+                } else if (t2 > ray.t | t2 == -1) {
+                    currentNode += 7;
+                } else if (t1 < t2) {
+                    nodesToVisit[stackSize++] = packed[currentNode];
+                    currentNode += 7;
+                } else {
+                    nodesToVisit[stackSize++] = currentNode + 7;
+                    currentNode = packed[currentNode];
+                }
+            }
+        }
+
+        return hit;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.model.Tint;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.world.Material;
+import se.llbit.math.Ray;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+import se.llbit.math.primitive.TintedTexturedTriangle;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structure-of-arrays storage for the primitives of BVH leaves. Textured triangles are copied into
+ * flat arrays so that a leaf is intersected in a tight loop over contiguous memory, without a
+ * virtual call or temporary vectors per triangle. Other primitives are kept as objects.
+ */
+final class PackedTriangles {
+    private static final double EPSILON = 0.000001;
+
+    /** Number of doubles per triangle in {@link #geometry}: origin, first edge, second edge and normal. */
+    private static final int GEOMETRY_STRIDE = 12;
+
+    /** Number of doubles per triangle in {@link #uv}. */
+    private static final int UV_STRIDE = 6;
+
+    private final double[] geometry;
+    private final double[] uv;
+    private final Material[] materials;
+    private final boolean[] doubleSided;
+    /** Index into {@link #tintPalette} for each triangle, or -1 if the triangle is not tinted. */
+    private final int[] tintIds;
+    private final Tint[] tintPalette;
+    /** Primitives that are not textured triangles, or {@code null} if there are none. */
+    private final Primitive[] others;
+    private final Scene scene;
+
+    /**
+     * Copy the primitives into packed storage. The primitive at index {@code i} is stored at index {@code i}.
+     *
+     * @param scene the scene used for biome tints
+     */
+    PackedTriangles(Primitive[] primitives, Scene scene) {
+        int count = primitives.length;
+        this.scene = scene;
+        geometry = new double[count * GEOMETRY_STRIDE];
+        uv = new double[count * UV_STRIDE];
+        materials = new Material[count];
+        doubleSided = new boolean[count];
+        tintIds = new int[count];
+        Primitive[] others = null;
+        Map<Tint, Integer> tints = new IdentityHashMap<>();
+        List<Tint> palette = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            Primitive primitive = primitives[i];
+            tintIds[i] = -1;
+            if (!(primitive instanceof TexturedTriangle)) {
+                if (others == null) {
+                    others = new Primitive[count];
+                }
+                others[i] = primitive;
+                continue;
+            }
+            TexturedTriangle triangle = (TexturedTriangle) primitive;
+            int g = i * GEOMETRY_STRIDE;
+            geometry[g] = triangle.o.x;
+            geometry[g + 1] = triangle.o.y;
+            geometry[g + 2] = triangle.o.z;
+            geometry[g + 3] = triangle.e1.x;
+            geometry[g + 4] = triangle.e1.y;
+            geometry[g + 5] = triangle.e1.z;
+            geometry[g + 6] = triangle.e2.x;
+            geometry[g + 7] = triangle.e2.y;
+            geometry[g + 8] = triangle.e2.z;
+            geometry[g + 9] = triangle.n.x;
+            geometry[g + 10] = triangle.n.y;
+            geometry[g + 11] = triangle.n.z;
+            int t = i * UV_STRIDE;
+            uv[t] = triangle.t1u;
+            uv[t + 1] = triangle.t1v;
+            uv[t + 2] = triangle.t2u;
+            uv[t + 3] = triangle.t2v;
+            uv[t + 4] = triangle.t3u;
+            uv[t + 5] = triangle.t3v;
+            materials[i] = triangle.material;
+            doubleSided[i] = triangle.doubleSided;
+            if (triangle instanceof TintedTexturedTriangle) {
+                Tint tint = ((TintedTexturedTriangle) triangle).getTint();
+                tintIds[i] = tints.computeIfAbsent(tint, key -> {
+                    palette.add(key);
+                    return palette.size() - 1;
+                });
+            }
+        }
+        this.others = others;
+        tintPalette = palette.toArray(new Tint[0]);
+    }
+
+    /**
+     * Intersect the ray with the primitives in the range {@code [start, end)}. This gives the same
+     * result as calling {@link Primitive#intersect(Ray)} on each primitive and applying the tint of
+     * tinted triangles that were hit.
+     *
+     * @return {@code true} if any primitive was hit
+     */
+    boolean intersect(Ray ray, int start, int end) {
+        boolean hit = false;
+        double dx = ray.d.x;
+        double dy = ray.d.y;
+        double dz = ray.d.z;
+        double ox = ray.o.x;
+        double oy = ray.o.y;
+        double oz = ray.o.z;
+        for (int i = start; i < end; ++i) {
+            if (others != null && others[i] != null) {
+                hit |= others[i].intersect(ray);
+                continue;
+            }
+
+            // Möller-Trumbore triangle intersection, see TexturedTriangle.
+            int g = i * GEOMETRY_STRIDE;
+            double e1x = geometry[g + 3];
+            double e1y = geometry[g + 4];
+            double e1z = geometry[g + 5];
+            double e2x = geometry[g + 6];
+            double e2y = geometry[g + 7];
+            double e2z = geometry[g + 8];
+
+            double px = dy * e2z - dz * e2y;
+            double py = dz * e2x - dx * e2z;
+            double pz = dx * e2y - dy * e2x;
+            double det = e1x * px + e1y * py + e1z * pz;
+            if (doubleSided[i]) {
+                if (det > -EPSILON && det < EPSILON) {
+                    continue;
+                }
+            } else if (det > -EPSILON) {
+                continue;
+            }
+            double recip = 1 / det;
+
+            double tx = ox - geometry[g];
+            double ty = oy - geometry[g + 1];
+            double tz = oz - geometry[g + 2];
+
+            double u = (tx * px + ty * py + tz * pz) * recip;
+            if (u < 0 || u > 1) {
+                continue;
+            }
+
+            double qx = ty * e1z - tz * e1y;
+            double qy = tz * e1x - tx * e1z;
+            double qz = tx * e1y - ty * e1x;
+
+            double v = (dx * qx + dy * qy + dz * qz) * recip;
+            if (v < 0 || (u + v) > 1) {
+                continue;
+            }
+
+            double t = (e2x * qx + e2y * qy + e2z * qz) * recip;
+            if (t > EPSILON && t < ray.t) {
+                int c = i * UV_STRIDE;
+                double w = 1 - u - v;
+                ray.u = uv[c] * u + uv[c + 2] * v + uv[c + 4] * w;
+                ray.v = uv[c + 1] * u + uv[c + 3] * v + uv[c + 5] * w;
+                Material material = materials[i];
+                float[] color = material.getColor(ray.u, ray.v);
+                if (color[3] > 0) {
+                    ray.color.set(color);
+                    ray.setCurrentMaterial(material);
+                    ray.t = t;
+                    ray.setNormal(geometry[g + 9], geometry[g + 10], geometry[g + 11]);
+                    hit = true;
+                    if (tintIds[i] >= 0) {
+                        tintPalette[tintIds[i]].tint(ray.color, ray, scene);
+                    }
+                }
+            }
+        }
+        return hit;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.math.AABB;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.TaskTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binned SAH BVH over a list of entities that can be updated when one of the entities changes, for example
+ * when an actor is posed. The primitives of the changed entity are replaced in the leaves they were placed in,
+ * and the node bounds are refitted bottom-up instead of rebuilding the tree.
+ * <p>
+ * Refitting does not change the tree structure, so the quality of the BVH degrades when entities move far.
+ * The surface area heuristic cost is compared to the cost when the tree was built, and {@link #refit} gives up
+ * when it grows too much.
+ */
+public class RefittableBVH extends BinaryBVH {
+    /**
+     * Refitting gives up when the expected traversal cost grows by more than this factor from the cost
+     * of the freshly built tree.
+     */
+    public static final double REBUILD_THRESHOLD = 1.5;
+
+    private final Entity[] entities;
+
+    /** The primitives of entity {@code i} have the indices {@code [entityStart[i], entityStart[i + 1])}. */
+    private final int[] entityStart;
+
+    /** Leaf of each primitive, or -1 if the primitive could not be located. */
+    private final int[] primitiveLeaf;
+
+    /** Index of each primitive in its leaf. */
+    private final int[] primitiveSlot;
+
+    /** Packed node index of each leaf. */
+    private final int[] leafNode;
+
+    /** Unnormalized surface area heuristic cost of the freshly built tree. */
+    private final double buildCost;
+
+    public RefittableBVH(Collection<Entity> entities, Vector3 worldOffset, Scene mainScene, TaskTracker.Task task) {
+        super(mainScene);
+        this.entities = entities.toArray(new Entity[0]);
+        entityStart = new int[this.entities.length + 1];
+
+        task.update(1000, 0);
+        double entityScaler = 500.0 / this.entities.length;
+        List<Primitive> primitives = new ArrayList<>();
+        for (int i = 0; i < this.entities.length; ++i) {
+            entityStart[i] = primitives.size();
+            primitives.addAll(this.entities[i].primitives(worldOffset));
+            task.updateInterval((int) ((i + 1) * entityScaler), 1);
+        }
+        entityStart[this.entities.length] = primitives.size();
+        Primitive[] allPrimitives = primitives.toArray(new Primitive[0]);
+
+        double primitiveScaler = 500.0 / allPrimitives.length;
+        pack(BinnedSahBVH.build(allPrimitives,
+            i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1)));
+
+        // Locate the primitives in the packed leaves.
+        Map<Primitive, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < allPrimitives.length; ++i) {
+            index.put(allPrimitives[i], i);
+        }
+        primitiveLeaf = new int[allPrimitives.length];
+        primitiveSlot = new int[allPrimitives.length];
+        Arrays.fill(primitiveLeaf, -1);
+        for (int leaf = 0; leaf < packedPrimitives.length; ++leaf) {
+            Primitive[] leafPrimitives = packedPrimitives[leaf];
+            for (int slot = 0; slot < leafPrimitives.length; ++slot) {
+                int primitive = index.get(leafPrimitives[slot]);
+                primitiveLeaf[primitive] = leaf;
+                primitiveSlot[primitive] = slot;
+            }
+        }
+        leafNode = new int[packedPrimitives.length];
+        for (int node = 0; node < packed.length; node += 7) {
+            if (packed[node] <= 0) {
+                leafNode[-packed[node]] = node;
+            }
+        }
+
+        buildCost = surfaceAreaCost();
+    }
+
+    /**
+     * Copy the tree of another BVH. The node array and the outer primitive array are copied so that
+     * they can be modified, the leaves are shared until they are replaced.
+     */
+    private RefittableBVH(RefittableBVH other) {
+        super(other.mainScene);
+        entities = other.entities;
+        entityStart = other.entityStart;
+        primitiveLeaf = other.primitiveLeaf;
+        primitiveSlot = other.primitiveSlot;
+        leafNode = other.leafNode;
+        buildCost = other.buildCost;
+        packed = other.packed.clone();
+        packedPrimitives = other.packedPrimitives.clone();
+        depth = other.depth;
+    }
+
+    /**
+     * Create an updated copy of this BVH after an entity changed. This BVH is not modified, since it
+     * may be used by a render in progress.
+     *
+     * @return the refitted BVH, or {@code null} if the BVH must be rebuilt because the entity is not
+     * in this BVH, its number of primitives changed, or the quality of the refitted tree is too low
+     */
+    public RefittableBVH refit(Entity entity, Vector3 worldOffset) {
+        int entityIndex = -1;
+        for (int i = 0; i < entities.length; ++i) {
+            if (entities[i] == entity) {
+                entityIndex = i;
+                break;
+            }
+        }
+        if (entityIndex == -1) {
+            return null;
+        }
+        int start = entityStart[entityIndex];
+        int end = entityStart[entityIndex + 1];
+        Collection<Primitive> primitives = entity.primitives(worldOffset);
+        if (primitives.size() != end - start) {
+            return null;
+        }
+
+        RefittableBVH refitted = new RefittableBVH(this);
+        boolean[] replaced = new boolean[packedPrimitives.length];
+        int primitive = start;
+        for (Primitive replacement : primitives) {
+            int leaf = primitiveLeaf[primitive];
+            if (leaf == -1) {
+                return null;
+            }
+            if (!replaced[leaf]) {
+                replaced[leaf] = true;
+                refitted.packedPrimitives[leaf] = refitted.packedPrimitives[leaf].clone();
+            }
+            refitted.packedPrimitives[leaf][primitiveSlot[primitive]] = replacement;
+            primitive += 1;
+        }
+
+        for (int leaf = 0; leaf < replaced.length; ++leaf) {
+            if (replaced[leaf]) {
+                refitted.setBounds(leafNode[leaf], bb(refitted.packedPrimitives[leaf]));
+            }
+        }
+        refitted.refitInnerNodes();
+
+        // The unnormalized costs are compared because the root bounds may have grown.
+        if (refitted.surfaceAreaCost() > buildCost * REBUILD_THRESHOLD) {
+            return null;
+        }
+        return refitted;
+    }
+
+    /**
+     * Recompute the bounds of all inner nodes from their children. Children are always packed after
+     * their parent, so visiting the nodes in reverse order updates the children first.
+     */
+    private void refitInnerNodes() {
+        for (int node = packed.length - 7; node >= 0; node -= 7) {
+            int child2 = packed[node];
+            if (child2 > 0) {
+                int child1 = node + 7;
+                for (int i = 1; i <= 5; i += 2) {
+                    float min = Math.min(Float.intBitsToFloat(packed[child1 + i]), Float.intBitsToFloat(packed[child2 + i]));
+                    float max = Math.max(Float.intBitsToFloat(packed[child1 + i + 1]), Float.intBitsToFloat(packed[child2 + i + 1]));
+                    packed[node + i] = Float.floatToIntBits(min);
+                    packed[node + i + 1] = Float.floatToIntBits(max);
+                }
+            }
+        }
+    }
+
+    private void setBounds(int node, AABB box) {
+        packed[node + 1] = Float.floatToIntBits((float) box.xmin);
+        packed[node + 2] = Float.floatToIntBits((float) box.xmax);
+        packed[node + 3] = Float.floatToIntBits((float) box.ymin);
+        packed[node + 4] = Float.floatToIntBits((float) box.ymax);
+        packed[node + 5] = Float.floatToIntBits((float) box.zmin);
+        packed[node + 6] = Float.floatToIntBits((float) box.zmax);
+    }
+}
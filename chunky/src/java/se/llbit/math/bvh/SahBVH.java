@@ -52,6 +52,17 @@ public class SahBVH extends BinaryBVH {
                 return new SahBVH(allPrimitives, mainScene, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
             }
 
+            @Override
+            public BVH create(Primitive[] primitives, Scene mainScene, TaskTracker.Task task) {
+                double primitiveScaler = 500.0 / primitives.length;
+                return new SahBVH(primitives, mainScene, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
+            }
+
+            @Override
+            public boolean canBuildFromPrimitives() {
+                return true;
+            }
+
             @Override
             public String getName() {
                 return "SAH";
@@ -53,6 +53,17 @@ public class SahMaBVH extends BinaryBVH {
                 return new SahMaBVH(allPrimitives, mainScene, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
             }
 
+            @Override
+            public BVH create(Primitive[] primitives, Scene mainScene, TaskTracker.Task task) {
+                double primitiveScaler = 500.0 / primitives.length;
+                return new SahMaBVH(primitives, mainScene, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
+            }
+
+            @Override
+            public boolean canBuildFromPrimitives() {
+                return true;
+            }
+
             @Override
             public String getName() {
                 return "SAH_MA";
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.math.AABB;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.TaskTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static se.llbit.math.Ray.OFFSET;
+
+/**
+ * 4-wide BVH, built by collapsing a binary binned SAH tree so that each node has up to four children.
+ * This halves the depth of the tree and tests four child bounds per traversal step.
+ * <p>
+ * The child bounds of a node are stored in lanes: for node {@code n}, {@code bounds[n * 24 + 4 * k + lane]}
+ * is bound {@code k} (xmin, xmax, ymin, ymax, zmin, zmax) of child {@code lane}. The slab tests for the four
+ * children thereby read a single contiguous block of floats, and the same bound of each child is in adjacent lanes.
+ * Leaf primitives are stored in {@link PackedTriangles}.
+ * <p>
+ * This implementation is experimental: the four children are slab tested one at a time, and
+ * {@code BvhBenchmark} has not shown it to trace faster than {@link PackedTriangleBVH}.
+ */
+public class WideBVH implements BVH {
+    /** Number of children per node. */
+    public static final int WIDTH = 4;
+
+    private static final int BOUNDS_STRIDE = WIDTH * 6;
+
+    /**
+     * Child bounds, in lanes as described above.
+     */
+    private final float[] bounds;
+
+    /**
+     * Child references, {@code WIDTH} per node. Positive values are node indices, negative values
+     * are leaves ({@code -1 - leafIndex}) and zero marks an unused child slot (the root is never a child).
+     */
+    private final int[] children;
+
+    /** Leaf {@code i} covers the range {@code [leafStart[i], leafStart[i + 1])} of the packed triangles. */
+    private final int[] leafStart;
+    private final PackedTriangles triangles;
+    private final int depth;
+    private final ThreadLocal<TraversalState> traversalState;
+
+    public static void registerImplementation() {
+        Factory.addBVHBuilder(new Factory.BVHBuilder() {
+            @Override
+            public BVH create(Collection<Entity> entities, Vector3 worldOffset, Scene mainScene, TaskTracker.Task task) {
+                return create(Factory.collectPrimitives(entities, worldOffset, task), mainScene, task);
+            }
+
+            @Override
+            public BVH create(Primitive[] allPrimitives, Scene mainScene, TaskTracker.Task task) {
+                double primitiveScaler = 500.0 / allPrimitives.length;
+                long start = System.currentTimeMillis();
+                WideBVH bvh = new WideBVH(
+                    BinnedSahBVH.build(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1)),
+                    mainScene);
+                Log.infof("Built SAH_BINNED_WIDE BVH with depth %d and %d nodes in %d ms (%d primitives)",
+                    bvh.depth, bvh.children.length / WIDTH, System.currentTimeMillis() - start, allPrimitives.length);
+                return bvh;
+            }
+
+            @Override
+            public String getName() {
+                return "SAH_BINNED_WIDE";
+            }
+
+            @Override
+            public String getDescription() {
+                return "Experimental binned SAH tree with four children per node. Not measured to be faster than SAH_BINNED_PACKED.";
+            }
+        });
+    }
+
+    /**
+     * Per thread traversal stack, with the entry distance of each node so that nodes further away
+     * than the closest hit found so far can be skipped.
+     */
+    private static class TraversalState {
+        final int[] nodes;
+        final double[] distances;
+
+        TraversalState(int size) {
+            nodes = new int[size];
+            distances = new double[size];
+        }
+    }
+
+    /**
+     * Collapse a binary node-based BVH.
+     */
+    public WideBVH(BinaryBVH.Node root, Scene mainScene) {
+        Builder builder = new Builder();
+        if (root instanceof BinaryBVH.Leaf) {
+            // The root must be an inner node.
+            builder.allocateNode();
+            builder.setChild(0, 0, root);
+        } else {
+            builder.collapse(root);
+        }
+        bounds = Arrays.copyOf(builder.bounds, builder.nodes * BOUNDS_STRIDE);
+        children = Arrays.copyOf(builder.children, builder.nodes * WIDTH);
+        leafStart = builder.leafStart.stream().mapToInt(Integer::intValue).toArray();
+        triangles = new PackedTriangles(builder.primitives.toArray(new Primitive[0]), mainScene);
+        depth = builder.depth;
+
+        // Each inner node on the path to the current node can leave up to three siblings on the stack.
+        int stackSize = (WIDTH - 1) * depth + 1;
+        traversalState = ThreadLocal.withInitial(() -> new TraversalState(stackSize));
+    }
+
+    private static class Builder {
+        float[] bounds = new float[BOUNDS_STRIDE * 64];
+        int[] children = new int[WIDTH * 64];
+        int nodes = 0;
+        int depth = 0;
+        final List<Integer> leafStart = new ArrayList<>();
+        final List<Primitive> primitives = new ArrayList<>();
+
+        Builder() {
+            leafStart.add(0);
+        }
+
+        int allocateNode() {
+            if ((nodes + 1) * WIDTH > children.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            return nodes++;
+        }
+
+        /**
+         * Pull up the grandchildren of a binary node until it has {@code WIDTH} children,
+         * always opening the child with the largest surface area.
+         *
+         * @return the index of the new node
+         */
+        int collapse(BinaryBVH.Node binaryNode) {
+            return collapse(binaryNode, 1);
+        }
+
+        private int collapse(BinaryBVH.Node binaryNode, int level) {
+            depth = Math.max(depth, level);
+            List<BinaryBVH.Node> nodeChildren = new ArrayList<>(WIDTH);
+            BinaryBVH.Group group = (BinaryBVH.Group) binaryNode;
+            nodeChildren.add(group.child1);
+            nodeChildren.add(group.child2);
+            while (nodeChildren.size() < WIDTH) {
+                int largest = -1;
+                double largestArea = -1;
+                for (int i = 0; i < nodeChildren.size(); ++i) {
+                    BinaryBVH.Node child = nodeChildren.get(i);
+                    double area = area(child.bb);
+                    if (child instanceof BinaryBVH.Group && area > largestArea) {
+                        largest = i;
+                        largestArea = area;
+                    }
+                }
+                if (largest == -1) {
+                    break;
+                }
+                BinaryBVH.Group opened = (BinaryBVH.Group) nodeChildren.remove(largest);
+                nodeChildren.add(opened.child1);
+                nodeChildren.add(opened.child2);
+            }
+
+            int node = allocateNode();
+            for (int lane = 0; lane < nodeChildren.size(); ++lane) {
+                BinaryBVH.Node child = nodeChildren.get(lane);
+                setChild(node, lane, child);
+                if (child instanceof BinaryBVH.Group) {
+                    int childNode = collapse(child, level + 1);
+                    children[node * WIDTH + lane] = childNode;
+                }
+            }
+            return node;
+        }
+
+        /**
+         * Store the bounds of a child. Leaf primitives are added immediately, inner nodes must
+         * be linked by the caller.
+         */
+        void setChild(int node, int lane, BinaryBVH.Node child) {
+            int base = node * BOUNDS_STRIDE + lane;
+            AABB bb = child.bb;
+            bounds[base] = (float) bb.xmin;
+            bounds[base + WIDTH] = (float) bb.xmax;
+            bounds[base + 2 * WIDTH] = (float) bb.ymin;
+            bounds[base + 3 * WIDTH] = (float) bb.ymax;
+            bounds[base + 4 * WIDTH] = (float) bb.zmin;
+            bounds[base + 5 * WIDTH] = (float) bb.zmax;
+            if (child instanceof BinaryBVH.Leaf) {
+                children[node * WIDTH + lane] = -leafStart.size();
+                primitives.addAll(Arrays.asList(((BinaryBVH.Leaf) child).primitives));
+                leafStart.add(primitives.size());
+            }
+        }
+
+        private static double area(AABB bb) {
+            double x = bb.xmax - bb.xmin;
+            double y = bb.ymax - bb.ymin;
+            double z = bb.zmax - bb.zmin;
+            return 2 * (x * y + y * z + z * x);
+        }
+    }
+
+    /**
+     * Find closest intersection between the ray and any object in the BVH. Child nodes are visited
+     * in order of their entry distance, and skipped once a closer intersection has been found.
+     *
+     * @return {@code true} if there exists any intersection
+     */
+    @Override
+    public boolean closestIntersection(Ray ray) {
+        TraversalState state = traversalState.get();
+        int[] nodes = state.nodes;
+        double[] distances = state.distances;
+        boolean hit = false;
+
+        double ox = ray.o.x;
+        double oy = ray.o.y;
+        double oz = ray.o.z;
+        double rx = 1 / ray.d.x;
+        double ry = 1 / ray.d.y;
+        double rz = 1 / ray.d.z;
+
+        nodes[0] = 0;
+        distances[0] = Double.NEGATIVE_INFINITY;
+        int size = 1;
+        while (size > 0) {
+            size -= 1;
+            if (distances[size] > ray.t) {
+                continue;
+            }
+            int node = nodes[size];
+            if (node < 0) {
+                int leaf = -1 - node;
+                hit |= triangles.intersect(ray, leafStart[leaf], leafStart[leaf + 1]);
+                continue;
+            }
+
+            float[] bounds = this.bounds;
+            int base = node * BOUNDS_STRIDE;
+            // Slab test each child and push the children that were hit, sorted so that the
+            // nearest child is visited next. See BinaryBVH.quickAabbIntersect.
+            int first = size;
+            int childBase = node * WIDTH;
+            for (int lane = 0; lane < WIDTH; ++lane) {
+                int child = children[childBase + lane];
+                if (child == 0) {
+                    // Unused child slots are always last.
+                    break;
+                }
+                double tx1 = (bounds[base + lane] - ox) * rx;
+                double tx2 = (bounds[base + WIDTH + lane] - ox) * rx;
+                double ty1 = (bounds[base + 2 * WIDTH + lane] - oy) * ry;
+                double ty2 = (bounds[base + 3 * WIDTH + lane] - oy) * ry;
+                double tz1 = (bounds[base + 4 * WIDTH + lane] - oz) * rz;
+                double tz2 = (bounds[base + 5 * WIDTH + lane] - oz) * rz;
+                double tmin = tx1 < tx2 ? tx1 : tx2;
+                double tmax = tx1 < tx2 ? tx2 : tx1;
+                double t = ty1 < ty2 ? ty1 : ty2;
+                tmin = t > tmin ? t : tmin;
+                t = ty1 < ty2 ? ty2 : ty1;
+                tmax = t < tmax ? t : tmax;
+                t = tz1 < tz2 ? tz1 : tz2;
+                tmin = t > tmin ? t : tmin;
+                t = tz1 < tz2 ? tz2 : tz1;
+                tmax = t < tmax ? t : tmax;
+                if (tmin > tmax + OFFSET || tmax < 0 || tmin > ray.t) {
+                    continue;
+                }
+                int i = size++;
+                while (i > first && distances[i - 1] < tmin) {
+                    nodes[i] = nodes[i - 1];
+                    distances[i] = distances[i - 1];
+                    i -= 1;
+                }
+                nodes[i] = child;
+                distances[i] = tmin;
+            }
+        }
+
+        return hit;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.primitive;
+
+import se.llbit.math.AABB;
+import se.llbit.math.Ray;
+import se.llbit.math.Transform;
+import se.llbit.math.bvh.BVH;
+import se.llbit.math.bvh.BinaryBVH;
+import se.llbit.math.bvh.BinnedSahBVH;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Geometry that is shared by all instances of an entity model. The primitives are stored once, in
+ * object space, in a small BVH of their own. Each placed copy of the model is an
+ * {@link InstancedPrimitive} that only stores its transform.
+ *
+ * <p>Models are cached by a key that must identify everything that affects the object space
+ * geometry and materials, for example the type and design of the entity. A model stays in the cache
+ * as long as any instance of it is in use.
+ *
+ * <p>Tinted triangles are not supported in models since tinting requires the scene.
+ */
+public class InstancedModel {
+
+  /** Cache entry that is removed from the cache once the model is no longer used. */
+  private static class CacheEntry extends WeakReference<InstancedModel> {
+    final Object key;
+
+    CacheEntry(Object key, InstancedModel model) {
+      super(model, unused);
+      this.key = key;
+    }
+  }
+
+  private static final ReferenceQueue<InstancedModel> unused = new ReferenceQueue<>();
+  private static final Map<Object, CacheEntry> cache = new HashMap<>();
+
+  private final BVH bvh;
+  private final AABB bounds;
+
+  public InstancedModel(Collection<Primitive> primitives) {
+    Primitive[] array = primitives.toArray(new Primitive[0]);
+    bounds = BinaryBVH.bb(array);
+    bvh = array.length == 0 ? BVH.EMPTY : new BinnedSahBVH(array, null, i -> {});
+  }
+
+  /**
+   * Get the cached model for a key, or create it if it is not in the cache.
+   *
+   * @param primitives creates the object space primitives of the model
+   */
+  public static synchronized InstancedModel get(Object key, Supplier<Collection<Primitive>> primitives) {
+    Reference<? extends InstancedModel> entry;
+    while ((entry = unused.poll()) != null) {
+      cache.remove(((CacheEntry) entry).key, entry);
+    }
+    CacheEntry cached = cache.get(key);
+    InstancedModel model = cached != null ? cached.get() : null;
+    if (model == null) {
+      model = new InstancedModel(primitives.get());
+      cache.put(key, new CacheEntry(key, model));
+    }
+    return model;
+  }
+
+  /**
+   * Clear the model cache. This is needed when the textures used by models are reloaded.
+   */
+  public static synchronized void reset() {
+    cache.clear();
+  }
+
+  /**
+   * Create an instance of this model.
+   *
+   * @param transform the transform from object space to world space, it must not mirror the model
+   */
+  public InstancedPrimitive instance(Transform transform) {
+    return new InstancedPrimitive(this, transform);
+  }
+
+  /**
+   * @return object space bounds of the model
+   */
+  public AABB bounds() {
+    return bounds;
+  }
+
+  /**
+   * Intersect a ray, in object space, with the model.
+   *
+   * @return {@code true} if there was an intersection
+   */
+  boolean intersect(Ray ray) {
+    return bvh.closestIntersection(ray);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.primitive;
+
+import se.llbit.math.AABB;
+import se.llbit.math.Ray;
+import se.llbit.math.Transform;
+import se.llbit.math.Vector3;
+
+/**
+ * A copy of an {@link InstancedModel} placed in the world by an affine transform.
+ *
+ * <p>Rays are intersected with the model by transforming them into object space. The ray
+ * direction is not normalized after the transform, so the ray distance is the same in object
+ * space and world space. The normal of the hit is transformed back to world space.
+ */
+public class InstancedPrimitive implements Primitive {
+
+  private final InstancedModel model;
+
+  /** Object space to world space: linear part (row major) and translation. */
+  private final double m11, m12, m13, m21, m22, m23, m31, m32, m33;
+  private final double tx, ty, tz;
+
+  /** World space to object space linear part (row major). */
+  private final double i11, i12, i13, i21, i22, i23, i31, i32, i33;
+
+  private final AABB bounds;
+
+  public InstancedPrimitive(InstancedModel model, Transform transform) {
+    this.model = model;
+
+    // The transform can only be applied to vectors, so find its matrix from the
+    // transformed origin and unit vectors.
+    Vector3 origin = new Vector3(0, 0, 0);
+    transform.apply(origin);
+    Vector3 x = new Vector3(1, 0, 0);
+    transform.apply(x);
+    x.sub(origin);
+    Vector3 y = new Vector3(0, 1, 0);
+    transform.apply(y);
+    y.sub(origin);
+    Vector3 z = new Vector3(0, 0, 1);
+    transform.apply(z);
+    z.sub(origin);
+    m11 = x.x; m12 = y.x; m13 = z.x;
+    m21 = x.y; m22 = y.y; m23 = z.y;
+    m31 = x.z; m32 = y.z; m33 = z.z;
+    tx = origin.x;
+    ty = origin.y;
+    tz = origin.z;
+
+    double det = m11 * (m22 * m33 - m23 * m32)
+        - m12 * (m21 * m33 - m23 * m31)
+        + m13 * (m21 * m32 - m22 * m31);
+    if (!(det > 0)) {
+      throw new IllegalArgumentException("The instance transform must not mirror or flatten the model");
+    }
+    double recip = 1 / det;
+    i11 = (m22 * m33 - m23 * m32) * recip;
+    i12 = (m13 * m32 - m12 * m33) * recip;
+    i13 = (m12 * m23 - m13 * m22) * recip;
+    i21 = (m23 * m31 - m21 * m33) * recip;
+    i22 = (m11 * m33 - m13 * m31) * recip;
+    i23 = (m13 * m21 - m11 * m23) * recip;
+    i31 = (m21 * m32 - m22 * m31) * recip;
+    i32 = (m12 * m31 - m11 * m32) * recip;
+    i33 = (m11 * m22 - m12 * m21) * recip;
+
+    // The world bounds contain the transformed corners of the model bounds.
+    AABB box = model.bounds();
+    double xmin = Double.POSITIVE_INFINITY, xmax = Double.NEGATIVE_INFINITY;
+    double ymin = Double.POSITIVE_INFINITY, ymax = Double.NEGATIVE_INFINITY;
+    double zmin = Double.POSITIVE_INFINITY, zmax = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < 8; ++i) {
+      double cx = (i & 1) == 0 ? box.xmin : box.xmax;
+      double cy = (i & 2) == 0 ? box.ymin : box.ymax;
+      double cz = (i & 4) == 0 ? box.zmin : box.zmax;
+      double wx = m11 * cx + m12 * cy + m13 * cz + tx;
+      double wy = m21 * cx + m22 * cy + m23 * cz + ty;
+      double wz = m31 * cx + m32 * cy + m33 * cz + tz;
+      xmin = Math.min(xmin, wx);
+      xmax = Math.max(xmax, wx);
+      ymin = Math.min(ymin, wy);
+      ymax = Math.max(ymax, wy);
+      zmin = Math.min(zmin, wz);
+      zmax = Math.max(zmax, wz);
+    }
+    bounds = new AABB(xmin, xmax, ymin, ymax, zmin, zmax);
+  }
+
+  public InstancedModel getModel() {
+    return model;
+  }
+
+  @Override public boolean intersect(Ray ray) {
+    double ox = ray.o.x;
+    double oy = ray.o.y;
+    double oz = ray.o.z;
+    double dx = ray.d.x;
+    double dy = ray.d.y;
+    double dz = ray.d.z;
+
+    double px = ox - tx;
+    double py = oy - ty;
+    double pz = oz - tz;
+    ray.o.set(i11 * px + i12 * py + i13 * pz, i21 * px + i22 * py + i23 * pz,
+        i31 * px + i32 * py + i33 * pz);
+    ray.d.set(i11 * dx + i12 * dy + i13 * dz, i21 * dx + i22 * dy + i23 * dz,
+        i31 * dx + i32 * dy + i33 * dz);
+    boolean hit = model.intersect(ray);
+    ray.o.set(ox, oy, oz);
+    ray.d.set(dx, dy, dz);
+
+    if (hit) {
+      // Normals are transformed by the inverse transpose.
+      Vector3 g = ray.getGeometryNormal();
+      double gx = i11 * g.x + i21 * g.y + i31 * g.z;
+      double gy = i12 * g.x + i22 * g.y + i32 * g.z;
+      double gz = i13 * g.x + i23 * g.y + i33 * g.z;
+      Vector3 n = ray.getNormal();
+      double nx = i11 * n.x + i21 * n.y + i31 * n.z;
+      double ny = i12 * n.x + i22 * n.y + i32 * n.z;
+      double nz = i13 * n.x + i23 * n.y + i33 * n.z;
+      double gScale = 1 / Math.sqrt(gx * gx + gy * gy + gz * gz);
+      double nScale = 1 / Math.sqrt(nx * nx + ny * ny + nz * nz);
+      ray.setNormal(gx * gScale, gy * gScale, gz * gScale);
+      ray.setShadingNormal(nx * nScale, ny * nScale, nz * nScale);
+    }
+    return hit;
+  }
+
+  @Override public AABB bounds() {
+    return bounds;
+  }
+}
@@ -40,7 +40,12 @@ public class BitBuffer {
     this.data = data;
     this.stride = stride;
     this.aligned = aligned;
-    mask = (1 << stride) - 1;
+    mask = mask(stride);
+  }
+
+  /** @return a mask of the lowest <code>stride</code> bits, for strides 1-32 */
+  private static int mask(int stride) {
+    return (int) (-1L >>> (64 - stride));
   }
 
   public int read() {
@@ -64,11 +69,141 @@ public class BitBuffer {
         offset += 1;
         int rem = stride - bits;
         // Low bits:
-        res |= ((int) data[offset] & ((1 << rem) - 1)) << bits;
+        res |= ((int) data[offset] & mask(rem)) << bits;
         shift = rem;
       }
     }
 
     return res;
   }
+
+  /**
+   * Unpack <code>count</code> fixed-width bit fields from a long array into an int array.
+   * This reads the same values as calling {@link #read()} <code>count</code> times on a new
+   * buffer, but in a single tight loop.
+   *
+   * @param data the packed data
+   * @param stride the number of bits per value (1-32)
+   * @param aligned whether or not the bits are aligned at 8-byte boundaries or not
+   * @param out the output array
+   * @param outOffset index in the output array of the first value
+   * @param count the number of values to unpack
+   */
+  public static void unpack(long[] data, int stride, boolean aligned, int[] out, int outOffset,
+      int count) {
+    if (64 % stride == 0) {
+      // No value crosses a long boundary, so both layouts are identical.
+      switch (stride) {
+        case 4:
+          unpack4(data, out, outOffset, count);
+          return;
+        case 8:
+          unpack8(data, out, outOffset, count);
+          return;
+        default:
+          unpackAligned(data, stride, out, outOffset, count);
+          return;
+      }
+    }
+    if (aligned) {
+      unpackAligned(data, stride, out, outOffset, count);
+    } else {
+      unpackUnaligned(data, stride, out, outOffset, count);
+    }
+  }
+
+  /**
+   * Read the fixed-width bit field with the given index, the same value that
+   * {@link #unpack(long[], int, boolean, int[], int, int)} writes at that index.
+   *
+   * @param data the packed data
+   * @param stride the number of bits per value (1-32)
+   * @param aligned whether or not the bits are aligned at 8-byte boundaries or not
+   * @param index the index of the value
+   */
+  public static int get(long[] data, int stride, boolean aligned, int index) {
+    int mask = mask(stride);
+    if (aligned || 64 % stride == 0) {
+      int valuesPerLong = 64 / stride;
+      return (int) (data[index / valuesPerLong] >>> ((index % valuesPerLong) * stride)) & mask;
+    }
+    long bit = (long) index * stride;
+    int offset = (int) (bit >>> 6);
+    int shift = (int) (bit & 63);
+    int value = (int) (data[offset] >>> shift);
+    if (shift + stride > 64) {
+      // High bits are in the next long.
+      value |= (int) data[offset + 1] << (64 - shift);
+    }
+    return value & mask;
+  }
+
+  private static void unpack4(long[] data, int[] out, int outOffset, int count) {
+    int end = outOffset + count;
+    int o = outOffset;
+    int i = 0;
+    for (; o + 16 <= end; ++i, o += 16) {
+      long word = data[i];
+      for (int j = 0; j < 16; ++j) {
+        out[o + j] = (int) (word >>> (j << 2)) & 0xF;
+      }
+    }
+    for (long word = o < end ? data[i] : 0; o < end; ++o, word >>>= 4) {
+      out[o] = (int) word & 0xF;
+    }
+  }
+
+  private static void unpack8(long[] data, int[] out, int outOffset, int count) {
+    int end = outOffset + count;
+    int o = outOffset;
+    int i = 0;
+    for (; o + 8 <= end; ++i, o += 8) {
+      long word = data[i];
+      for (int j = 0; j < 8; ++j) {
+        out[o + j] = (int) (word >>> (j << 3)) & 0xFF;
+      }
+    }
+    for (long word = o < end ? data[i] : 0; o < end; ++o, word >>>= 8) {
+      out[o] = (int) word & 0xFF;
+    }
+  }
+
+  private static void unpackAligned(long[] data, int stride, int[] out, int outOffset,
+      int count) {
+    int mask = mask(stride);
+    int valuesPerLong = 64 / stride;
+    int end = outOffset + count;
+    int o = outOffset;
+    int i = 0;
+    for (; o + valuesPerLong <= end; ++i) {
+      long word = data[i];
+      for (int j = 0; j < valuesPerLong; ++j, ++o, word >>>= stride) {
+        out[o] = (int) word & mask;
+      }
+    }
+    for (long word = o < end ? data[i] : 0; o < end; ++o, word >>>= stride) {
+      out[o] = (int) word & mask;
+    }
+  }
+
+  private static void unpackUnaligned(long[] data, int stride, int[] out, int outOffset,
+      int count) {
+    int mask = mask(stride);
+    int end = outOffset + count;
+    int offset = 0;
+    int shift = 0;
+    for (int o = outOffset; o < end; ++o) {
+      int value = (int) (data[offset] >>> shift);
+      shift += stride;
+      if (shift >= 64) {
+        offset += 1;
+        shift -= 64;
+        if (shift > 0) {
+          // High bits are in the next long.
+          value |= (int) data[offset] << (stride - shift);
+        }
+      }
+      out[o] = value & mask;
+    }
+  }
 }
@@ -3,8 +3,10 @@ package se.llbit.util;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.ErrorTag;
@@ -25,11 +27,27 @@ public class NbtUtil {
    * @throws IOException if writing to the stream fails
    */
   public static void safeSerialize(DataOutputStream out, Tag tag) throws IOException {
+    safeSerialize(out, tag, Collections.emptySet());
+  }
+
+  /**
+   * Write the given NBT tag like {@link #safeSerialize(DataOutputStream, Tag)}, but leave out
+   * all named tags with one of the given names, at any depth.
+   *
+   * @param out output stream
+   * @param tag NBT tag
+   * @param skippedNames names of the tags to leave out
+   * @throws IOException if writing to the stream fails
+   */
+  public static void safeSerialize(DataOutputStream out, Tag tag, Set<String> skippedNames)
+      throws IOException {
     if (tag instanceof ErrorTag) {
       // ignore invalid tag
     } else if (tag instanceof CompoundTag) {
       for (NamedTag item : (CompoundTag) tag) {
-        safeSerialize(out, item);
+        if (!skippedNames.contains(item.name())) {
+          safeSerialize(out, item, skippedNames);
+        }
       }
       out.writeByte(Tag.TAG_END);
     } else if (tag instanceof ListTag) {
@@ -42,7 +60,7 @@ public class NbtUtil {
       }
       out.writeInt(validItems.size());
       for (SpecificTag item : validItems) {
-        safeSerialize(out, item);
+        safeSerialize(out, item, skippedNames);
       }
     } else if (tag instanceof NamedTag) {
       if (((NamedTag) tag).getTag() instanceof ErrorTag) {
@@ -51,7 +69,7 @@ public class NbtUtil {
       }
       ((NamedTag) tag).getTag().writeType(out);
       out.writeUTF(((NamedTag) tag).name());
-      safeSerialize(out, ((NamedTag) tag).getTag());
+      safeSerialize(out, ((NamedTag) tag).getTag(), skippedNames);
     } else {
       tag.write(out);
     }
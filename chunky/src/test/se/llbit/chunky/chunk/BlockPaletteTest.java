@@ -4,7 +4,16 @@ import org.junit.Test;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.StringTag;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class BlockPaletteTest {
   // Test that the block palette reuses existing blocks with the same tag data.
@@ -33,4 +42,58 @@ public class BlockPaletteTest {
     BlockPalette palette = new BlockPalette();
     assertEquals(palette.waterId, palette.put(water));
   }
+
+  // Test that the block flags match the properties of the blocks.
+  @Test public void testFlags() {
+    BlockPalette palette = new BlockPalette();
+    assertTrue(palette.isOpaque(palette.stoneId));
+    assertTrue(palette.isOpaque(BlockPalette.ANY_ID));
+    assertFalse(palette.isOpaque(palette.airId));
+    assertTrue(palette.isWater(palette.waterId));
+    assertTrue(palette.isWaterFilled(palette.waterId));
+    assertFalse(palette.isWaterFilled(palette.stoneId));
+    int lava = palette.getLavaId(0, 0);
+    assertTrue(palette.isLava(lava));
+    assertTrue(palette.isEmitter(lava));
+  }
+
+  // Test that the flag table grows with the palette.
+  @Test public void testFlagsGrow() {
+    BlockPalette palette = new BlockPalette();
+    for (int level = 0; level < 16; ++level) {
+      for (int data = 0; data < 8; ++data) {
+        assertTrue(palette.isWater(palette.getWaterId(level, data)));
+      }
+    }
+  }
+
+  // Test that concurrent writers get the same, resolvable, IDs for the same blocks.
+  @Test public void testConcurrentPut() throws Exception {
+    BlockPalette palette = new BlockPalette();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<int[]>> results = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        results.add(executor.submit(() -> {
+          int[] ids = new int[100];
+          for (int i = 0; i < ids.length; ++i) {
+            CompoundTag tag = new CompoundTag();
+            tag.add("Name", new StringTag("block" + i));
+            ids[i] = palette.put(tag);
+            assertNotNull(palette.get(ids[i]));
+          }
+          return ids;
+        }));
+      }
+      int[] expected = results.get(0).get();
+      for (Future<int[]> result : results) {
+        int[] ids = result.get();
+        for (int i = 0; i < ids.length; ++i) {
+          assertEquals(expected[i], ids[i]);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
@@ -0,0 +1,72 @@
+package se.llbit.chunky.chunk;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PalettedChunkDataTest {
+  private static long[] randomData(Random random, int bitsPerBlock, boolean aligned) {
+    int size = aligned
+        ? (4096 + (64 / bitsPerBlock) - 1) / (64 / bitsPerBlock)
+        : (4096 * bitsPerBlock + 63) / 64;
+    long[] data = new long[size];
+    for (int i = 0; i < size; ++i) {
+      data[i] = random.nextLong();
+    }
+    return data;
+  }
+
+  private static void assertSameBlocks(ChunkData expected, ChunkData actual) {
+    assertEquals(expected.minY(), actual.minY());
+    assertEquals(expected.maxY(), actual.maxY());
+    for (int y = expected.minY(); y < expected.maxY(); ++y) {
+      for (int z = 0; z < 16; ++z) {
+        for (int x = 0; x < 16; ++x) {
+          assertEquals(expected.getBlockAt(x, y, z), actual.getBlockAt(x, y, z));
+        }
+      }
+    }
+  }
+
+  // Test that lazily decoded sections match eagerly decoded sections.
+  @Test public void testPackedSections() {
+    Random random = new Random(0);
+    for (int bpb = 4; bpb <= 12; ++bpb) {
+      for (boolean aligned : new boolean[] { false, true }) {
+        // Use a palette smaller than the index range to test out of range indices.
+        int[] palette = new int[(1 << bpb) - 3];
+        for (int i = 0; i < palette.length; ++i) {
+          palette[i] = i;
+        }
+        long[] data = randomData(random, bpb, aligned);
+        GenericChunkData expected = new GenericChunkData();
+        PalettedChunkData actual = new PalettedChunkData();
+        expected.setSection(-1, palette, data, bpb, aligned);
+        actual.setSection(-1, palette, data, bpb, aligned);
+        assertSameBlocks(expected, actual);
+      }
+    }
+  }
+
+  // Test setting single blocks in uniform and packed sections.
+  @Test public void testSetBlock() {
+    Random random = new Random(0);
+    int[] palette = { 0, 7, 8, 9 };
+    long[] data = randomData(random, 4, true);
+    GenericChunkData expected = new GenericChunkData();
+    PalettedChunkData actual = new PalettedChunkData();
+    expected.setSection(0, palette, data, 4, true);
+    actual.setSection(0, palette, data, 4, true);
+    expected.setSection(1, new int[] { 5 }, null, 0, false);
+    actual.setSection(1, new int[] { 5 }, null, 0, false);
+    expected.setBlockAt(3, 4, 5, 42);
+    actual.setBlockAt(3, 4, 5, 42);
+    expected.setBlockAt(3, 20, 5, 43);
+    actual.setBlockAt(3, 20, 5, 43);
+    expected.setBlockAt(1, 40, 1, 44);
+    actual.setBlockAt(1, 40, 1, 44);
+    assertSameBlocks(expected, actual);
+  }
+}
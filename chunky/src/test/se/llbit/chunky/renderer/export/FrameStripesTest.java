@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.export;
+
+import org.junit.Test;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.util.ProgressListener;
+import se.llbit.util.TaskTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameStripesTest {
+  // Test that a PNG written from the sample buffer matches the post-processed frame.
+  @Test public void testStreamingPng() throws IOException {
+    int width = 400;
+    int height = 300;
+    Scene scene = new Scene();
+    scene.setCanvasSize(width, height);
+    double[] samples = scene.getSampleBuffer();
+    Random random = new Random(0);
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = random.nextDouble() * 1.5;
+    }
+
+    PictureExportFormat png = PictureExportFormats.PNG;
+    assertTrue(png.isStreaming(scene));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    png.write(out, scene, new TaskTracker(ProgressListener.NONE));
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+    scene.postProcessFrame(TaskTracker.Task.NONE);
+    int[] frame = scene.getBackBuffer().data;
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        assertEquals(frame[y * width + x], image.getRGB(x, y));
+      }
+    }
+  }
+}
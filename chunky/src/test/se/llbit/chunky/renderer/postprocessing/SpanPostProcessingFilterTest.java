@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.postprocessing;
+
+import org.junit.Test;
+import se.llbit.math.ColorUtil;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpanPostProcessingFilterTest {
+  // Test that processing a span gives the same colors as processing each pixel.
+  @Test public void testSpanMatchesPixels() {
+    int width = 64;
+    int height = 16;
+    double exposure = 1.5;
+    Random random = new Random(1);
+    double[] input = new double[width * height * 3];
+    for (int i = 0; i < input.length; ++i) {
+      input[i] = random.nextInt(10) == 0 ? random.nextDouble() * 20 : random.nextDouble();
+    }
+    SimplePixelPostProcessingFilter[] filters = {
+        new NoneFilter(), new GammaCorrectionFilter(), new Tonemap1Filter(),
+        new ACESFilmicFilter(), new HableToneMappingFilter(), PreviewFilter.INSTANCE,
+    };
+    for (SimplePixelPostProcessingFilter filter : filters) {
+      int[] output = new int[width * height];
+      // Process a span starting in the middle of the first row.
+      filter.processSpan(input, 3 * 3, exposure, output, 3, width * height - 3);
+      double[] pixel = new double[3];
+      for (int i = 3; i < width * height; ++i) {
+        filter.processPixel(width, height, input, i % width, i / width, exposure, pixel);
+        for (int j = 0; j < 3; ++j) {
+          pixel[j] = Math.min(1, pixel[j]);
+        }
+        assertEquals(filter.getClass().getSimpleName(), ColorUtil.getRGB(pixel), output[i]);
+      }
+    }
+  }
+}
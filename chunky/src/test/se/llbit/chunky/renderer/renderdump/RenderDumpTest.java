@@ -17,13 +17,18 @@
 package se.llbit.chunky.renderer.renderdump;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.ProgressListener;
 import se.llbit.util.TaskTracker;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Base64;
@@ -32,6 +37,7 @@ import java.util.Map;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class RenderDumpTest {
@@ -63,6 +69,8 @@ public class RenderDumpTest {
     }
   }
 
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   protected TaskTracker taskTracker;
 
   @Before
@@ -151,10 +159,117 @@ public class RenderDumpTest {
     Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
     System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    RenderDump.save(outputStream, scene, taskTracker);
+    RenderDump.save(outputStream, scene, taskTracker, FloatingPointCompressorDumpFormat.INSTANCE.getVersion());
     assertArrayEquals(getTestDump(dumpName), outputStream.toByteArray());
   }
 
+  // Striped dumps with several stripes and an odd number of pixels per stripe load correctly.
+  @Test
+  public void testStripedFormatRoundTrip() throws IOException {
+    int width = 1001;
+    int height = 600;
+    Scene scene = createTestScene(width, height, testSPP, testRenderTime);
+    double[] samples = scene.getSampleBuffer();
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = (i % 7) * 0.25 + i / (double) samples.length;
+    }
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker, StripedFloatingPointCompressorDumpFormat.INSTANCE.getVersion());
+
+    Scene loaded = createTestScene(width, height, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(samples, loaded.getSampleBuffer(), 0.0);
+    assertEquals(testSPP, loaded.spp);
+    assertEquals(testRenderTime, loaded.renderTime);
+  }
+
+  // Alpha samples of transparent sky renders are stored in striped dumps and merged by spp.
+  @Test
+  public void testStripedFormatAlpha() throws IOException {
+    int width = 1001;
+    int height = 600;
+    Scene scene = createTestScene(width, height, 100, testRenderTime);
+    scene.setTransparentSky(true);
+    scene.spp = 100;
+    float[] alpha = scene.getAlphaSamples();
+    for (int i = 0; i < alpha.length; ++i) {
+      alpha[i] = (i % 5) * 0.25f;
+    }
+    alpha[7] = Float.NaN;
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker, StripedFloatingPointCompressorDumpFormat.INSTANCE.getVersion());
+
+    Scene loaded = createTestScene(width, height, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(alpha, loaded.getAlphaSamples(), 0.0f);
+
+    Scene merged = createTestScene(width, height, 300, 0);
+    Arrays.fill(merged.getAlphaSamples(), 1.0f);
+    RenderDump.merge(new ByteArrayInputStream(outputStream.toByteArray()), merged, taskTracker);
+    assertEquals(400, merged.spp);
+    assertEquals(0.75f + 0.25f * alpha[1], merged.getAlphaSamples()[1], 1e-6f);
+    assertEquals(1.0f, merged.getAlphaSamples()[7], 0.0f);
+
+    // Dumps without alpha samples leave the alpha samples unset.
+    scene.setTransparentSky(false);
+    outputStream.reset();
+    RenderDump.save(outputStream, scene, taskTracker, StripedFloatingPointCompressorDumpFormat.INSTANCE.getVersion());
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertTrue(Float.isNaN(loaded.getAlphaSamples()[1]));
+  }
+
+  // Dumps in different formats are merged in one pass, weighted by their spp.
+  @Test
+  public void testMergeDumpFiles() throws IOException {
+    Scene first = createTestScene(testWidth, testHeight, 100, 1000);
+    Arrays.fill(first.getSampleBuffer(), 1.0);
+    Scene second = createTestScene(testWidth, testHeight, 300, 2000);
+    System.arraycopy(testSampleBuffer, 0, second.getSampleBuffer(), 0, testSampleBuffer.length);
+    File firstDump = tmpFolder.newFile("first.dump");
+    File secondDump = tmpFolder.newFile("second.dump");
+    try (FileOutputStream out = new FileOutputStream(firstDump)) {
+      RenderDump.save(out, first, taskTracker, FloatingPointCompressorDumpFormat.INSTANCE.getVersion());
+    }
+    try (FileOutputStream out = new FileOutputStream(secondDump)) {
+      RenderDump.save(out, second, taskTracker, StripedFloatingPointCompressorDumpFormat.INSTANCE.getVersion());
+    }
+
+    try (RenderDumpMerger merger = new RenderDumpMerger(Arrays.asList(firstDump, secondDump))) {
+      merger.mergeInto(firstDump, null, taskTracker);
+    }
+    Scene merged = createTestScene(testWidth, testHeight, 0, 0);
+    try (FileInputStream in = new FileInputStream(firstDump)) {
+      RenderDump.load(in, merged, taskTracker);
+    }
+    assertEquals(400, merged.spp);
+    assertEquals(3000, merged.renderTime);
+    double[] samples = merged.getSampleBuffer();
+    for (int i = 0; i < samples.length; ++i) {
+      assertEquals(0.25 + 0.75 * testSampleBuffer[i], samples[i], 1e-12);
+    }
+  }
+
+  // The snapshot is written in the background and is not affected by later samples.
+  @Test
+  public void testSaveSnapshotAsync() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
+    Scene snapshot = scene.renderDumpSnapshot();
+    Arrays.fill(scene.getSampleBuffer(), 1);
+    scene.spp += 1;
+
+    File dumpFile = tmpFolder.newFile("scene.dump");
+    RenderDump.saveAsync(dumpFile, snapshot).join();
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    try (FileInputStream in = new FileInputStream(dumpFile)) {
+      RenderDump.load(in, loaded, taskTracker);
+    }
+    assertArrayEquals(testSampleBuffer, loaded.getSampleBuffer(), 0.0);
+    assertEquals(testSPP, loaded.spp);
+    assertTrue(new File(dumpFile.getParentFile(), "scene.dump.backup").isFile());
+    assertFalse(new File(dumpFile.getParentFile(), "scene.dump.tmp").exists());
+  }
+
   // This is just at the bottom because the strings are soooo lllooooonnnnngggggg
   private static final Map<String, String> testDumps = new HashMap<String, String>() {{
 
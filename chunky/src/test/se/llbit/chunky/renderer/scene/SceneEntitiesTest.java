@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.Test;
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonValue;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SceneEntitiesTest {
+  /** Actor with a pose that can be changed. */
+  private static class TestActor extends Entity {
+    double pose = 0;
+
+    TestActor(Vector3 position) {
+      super(position);
+    }
+
+    @Override public Collection<Primitive> primitives(Vector3 offset) {
+      return Collections.emptyList();
+    }
+
+    @Override public JsonValue toJson() {
+      JsonObject json = new JsonObject();
+      json.add("position", position.toJson());
+      json.add("pose", pose);
+      return json;
+    }
+  }
+
+  /** Simulate reloading a chunk: remove its entities and load its actors again. */
+  private static void reload(SceneEntities entities, Set<ChunkPosition> chunks) {
+    entities.removeEntitiesInChunks(chunks);
+    entities.addChunkActor(new TestActor(new Vector3(1, 64, 1)));
+    entities.addChunkActor(new TestActor(new Vector3(5, 64, 5)));
+  }
+
+  // Reloading a chunk must not duplicate or keep stale actors loaded from the chunk.
+  @Test public void testReloadChunkActors() {
+    SceneEntities entities = new SceneEntities(null);
+    Set<ChunkPosition> chunks = Collections.singleton(new ChunkPosition(0, 0));
+    entities.addChunkActor(new TestActor(new Vector3(1, 64, 1)));
+    entities.addChunkActor(new TestActor(new Vector3(5, 64, 5)));
+    assertEquals(2, entities.getActors().size());
+
+    reload(entities, chunks);
+    assertEquals(2, entities.getActors().size());
+    reload(entities, chunks);
+    assertEquals(2, entities.getActors().size());
+  }
+
+  // Posed actors and actors added by the user are kept when their chunk is reloaded.
+  @Test public void testReloadKeepsUserActors() {
+    SceneEntities entities = new SceneEntities(null);
+    Set<ChunkPosition> chunks = Collections.singleton(new ChunkPosition(0, 0));
+    TestActor posed = new TestActor(new Vector3(1, 64, 1));
+    entities.addChunkActor(posed);
+    entities.addChunkActor(new TestActor(new Vector3(5, 64, 5)));
+    TestActor added = new TestActor(new Vector3(9, 64, 9));
+    entities.addActor(added);
+    posed.pose = 1;
+
+    reload(entities, chunks);
+    reload(entities, chunks);
+    assertEquals(3, entities.getActors().size());
+    assertSame(posed, entities.getActors().get(0));
+    assertSame(added, entities.getActors().get(1));
+  }
+}
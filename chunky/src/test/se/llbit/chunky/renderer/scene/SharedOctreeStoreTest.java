@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class SharedOctreeStoreTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  // Test that the scene keeps its octree when the shared octree store is cleared.
+  @Test public void testLinkSurvivesClearedStore() throws IOException {
+    SharedOctreeStore store = new SharedOctreeStore(tmp.newFolder("octrees"));
+    File sceneFile = new File(tmp.newFolder("scene"), "scene.octree3");
+    byte[] data = { 1, 2, 3, 4 };
+    Files.write(store.getSceneFile("key.octree3").toPath(), data);
+
+    store.link("key.octree3", sceneFile);
+    assertEquals(store.fileTimestamp("key.octree3"), sceneFile.lastModified());
+
+    assertTrue(store.getSceneFile("key.octree3").delete());
+    assertArrayEquals(data, Files.readAllBytes(sceneFile.toPath()));
+  }
+
+  // Test that linking replaces an outdated scene octree and can be repeated.
+  @Test public void testLinkReplacesOctree() throws IOException {
+    SharedOctreeStore store = new SharedOctreeStore(tmp.newFolder("octrees"));
+    File sceneDir = tmp.newFolder("scene");
+    File sceneFile = new File(sceneDir, "scene.octree3");
+    Files.write(sceneFile.toPath(), new byte[] { 9 });
+    byte[] data = { 1, 2, 3, 4 };
+    Files.write(store.getSceneFile("key.octree3").toPath(), data);
+
+    store.link("key.octree3", sceneFile);
+    store.link("key.octree3", sceneFile);
+    assertArrayEquals(data, Files.readAllBytes(sceneFile.toPath()));
+    assertEquals(1, sceneDir.list().length);
+  }
+
+  // Test that pruning removes old octrees that no scene links to anymore.
+  @Test public void testPrune() throws IOException {
+    SharedOctreeStore store = new SharedOctreeStore(tmp.newFolder("octrees"));
+    File sceneFile = new File(tmp.newFolder("scene"), "scene.octree3");
+    Files.write(store.getSceneFile("linked.octree3").toPath(), new byte[] { 1 });
+    Files.write(store.getSceneFile("unused.octree3").toPath(), new byte[] { 2 });
+    Files.write(store.getSceneFile("unused.octreecache").toPath(), new byte[] { 3 });
+    Files.write(store.getSceneFile("recent.octree3").toPath(), new byte[] { 4 });
+    store.link("linked.octree3", sceneFile);
+    assumeTrue(Files.isSameFile(sceneFile.toPath(), store.getSceneFile("linked.octree3").toPath()));
+    assertTrue(store.getSceneFile("linked.octree3").setLastModified(1000000));
+    assertTrue(store.getSceneFile("unused.octree3").setLastModified(1000000));
+
+    store.prune();
+    assertTrue(store.contains("linked"));
+    assertFalse(store.contains("unused"));
+    assertFalse(store.getSceneFile("unused.octreecache").exists());
+    assertTrue(store.contains("recent"));
+  }
+}
@@ -0,0 +1,72 @@
+package se.llbit.chunky.resources;
+
+import org.junit.Test;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.math.Octree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BlockCompressedOctreeFileFormatTest {
+  // Test that octrees split over many blocks are read back unchanged.
+  @Test public void testRoundTrip() throws IOException {
+    BlockPalette palette = new BlockPalette();
+    Octree worldTree = new Octree("NODE", 4);
+    Octree waterTree = new Octree("NODE", 4);
+    for (int i = 0; i < 16; ++i) {
+      worldTree.set(palette.stoneId, i, i, 15 - i);
+      waterTree.set(palette.waterId, i, 0, i);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlockCompressedOctreeFileFormat.store(out, 64, worldTree, waterTree, palette, null, null, null);
+
+    OctreeFileFormat.OctreeData data = BlockCompressedOctreeFileFormat.load(
+        new ByteArrayInputStream(out.toByteArray()), "NODE");
+    for (int i = 0; i < 16; ++i) {
+      assertEquals(palette.stoneId, data.worldTree.getBlockId(i, i, 15 - i, data.palette));
+      assertEquals(palette.waterId, data.waterTree.getBlockId(i, 0, i, data.palette));
+    }
+    assertEquals(palette.airId, data.worldTree.getBlockId(0, 15, 0, data.palette));
+    assertNull(data.grassColors);
+  }
+
+  // Test that the octrees can be skipped while the other sections are still loaded.
+  @Test public void testSkipOctrees() throws IOException {
+    BlockPalette palette = new BlockPalette();
+    Octree worldTree = new Octree("NODE", 4);
+    Octree waterTree = new Octree("NODE", 4);
+    for (int i = 0; i < 16; ++i) {
+      worldTree.set(palette.stoneId, i, i, i);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlockCompressedOctreeFileFormat.store(out, 64, worldTree, waterTree, palette, null, null, null);
+
+    OctreeFileFormat.OctreeData data = BlockCompressedOctreeFileFormat.load(
+        new ByteArrayInputStream(out.toByteArray()), "NODE", false);
+    assertNull(data.worldTree);
+    assertNull(data.waterTree);
+    assertEquals(palette.stoneId, data.palette.stoneId);
+  }
+
+  // Test that a truncated file is rejected.
+  @Test public void testTruncated() throws IOException {
+    BlockPalette palette = new BlockPalette();
+    Octree worldTree = new Octree("NODE", 4);
+    Octree waterTree = new Octree("NODE", 4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlockCompressedOctreeFileFormat.store(out, 64, worldTree, waterTree, palette, null, null, null);
+    byte[] bytes = out.toByteArray();
+    try {
+      BlockCompressedOctreeFileFormat.load(
+          new ByteArrayInputStream(bytes, 0, bytes.length - 10), "NODE");
+      fail("Expected exception.");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package se.llbit.chunky.world;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.nbt.IntTag;
+import se.llbit.nbt.ListTag;
+import se.llbit.nbt.Tag;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkCacheTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static CompoundTag chunkTags() {
+    CompoundTag data = new CompoundTag();
+    data.add(Chunk.DATAVERSION, new IntTag(3465));
+    return data;
+  }
+
+  // Test that cached chunk tags are returned for matching stamps.
+  @Test public void testRoundTrip() throws Exception {
+    ChunkCache cache = new ChunkCache(tmp.newFolder("cache"), Long.MAX_VALUE);
+    File regionDirectory = new File(tmp.getRoot(), "region");
+    ChunkPosition pos = new ChunkPosition(-33, 5);
+    cache.store(regionDirectory, pos, 123L << 32 | 456, 0, chunkTags());
+    Tag data = cache.load(regionDirectory, pos, 123L << 32 | 456, 0);
+    assertNotNull(data);
+    assertEquals(3465, data.get(Chunk.DATAVERSION).intValue());
+  }
+
+  // Test that outdated or unrelated entries are not returned.
+  @Test public void testMiss() throws Exception {
+    ChunkCache cache = new ChunkCache(tmp.newFolder("cache"), Long.MAX_VALUE);
+    File regionDirectory = new File(tmp.getRoot(), "region");
+    ChunkPosition pos = new ChunkPosition(3, 7);
+    cache.store(regionDirectory, pos, 1, 2, chunkTags());
+    assertNull(cache.load(regionDirectory, pos, 1, 3));
+    assertNull(cache.load(regionDirectory, pos, 4, 2));
+    assertNull(cache.load(regionDirectory, new ChunkPosition(4, 7), 1, 2));
+    assertNull(cache.load(new File(tmp.getRoot(), "region3d"), pos, 1, 2));
+  }
+
+  // Test that chunks that are not in a region file are not cached.
+  @Test public void testMissingChunk() throws Exception {
+    ChunkCache cache = new ChunkCache(tmp.newFolder("cache"), Long.MAX_VALUE);
+    File regionDirectory = new File(tmp.getRoot(), "region");
+    ChunkPosition pos = new ChunkPosition(0, 0);
+    cache.store(regionDirectory, pos, 0, 0, chunkTags());
+    assertNull(cache.load(regionDirectory, pos, 0, 0));
+  }
+
+  // Test that the light data of sections is not cached.
+  @Test public void testUnusedTags() throws Exception {
+    ChunkCache cache = new ChunkCache(tmp.newFolder("cache"), Long.MAX_VALUE);
+    File regionDirectory = new File(tmp.getRoot(), "region");
+    ChunkPosition pos = new ChunkPosition(1, 2);
+    CompoundTag section = new CompoundTag();
+    section.add("Y", new IntTag(3));
+    section.add("SkyLight", new IntTag(15));
+    CompoundTag data = chunkTags();
+    data.add(Chunk.SECTIONS_POST_21W39A, new ListTag(Tag.TAG_COMPOUND,
+        Collections.singletonList(section)));
+    cache.store(regionDirectory, pos, 1, 0, data);
+    Tag cached = cache.load(regionDirectory, pos, 1, 0).get(Chunk.SECTIONS_POST_21W39A).get(0);
+    assertEquals(3, cached.get("Y").intValue());
+    assertTrue(cached.get("SkyLight").isError());
+  }
+
+  /** Set the modification time of all cache entries, to control the order of use. */
+  private static void setLastModified(File directory, long time) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          setLastModified(file, time);
+        } else {
+          assertTrue(file.setLastModified(time));
+        }
+      }
+    }
+  }
+
+  private static long size(File directory) {
+    long size = 0;
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        size += file.isDirectory() ? size(file) : file.length();
+      }
+    }
+    return size;
+  }
+
+  // Test that the least recently used entries are removed when the cache grows too large.
+  @Test public void testSizeLimit() throws Exception {
+    File directory = tmp.newFolder("cache");
+    File regionDirectory = new File(tmp.getRoot(), "region");
+    new ChunkCache(directory, Long.MAX_VALUE)
+        .store(regionDirectory, new ChunkPosition(0, 0), 1, 0, chunkTags());
+    long entrySize = size(directory);
+
+    ChunkCache cache = new ChunkCache(directory, entrySize * 5 / 2);
+    cache.store(regionDirectory, new ChunkPosition(1, 0), 1, 0, chunkTags());
+    setLastModified(directory, 1000000);
+    assertNotNull(cache.load(regionDirectory, new ChunkPosition(0, 0), 1, 0));
+    cache.store(regionDirectory, new ChunkPosition(2, 0), 1, 0, chunkTags());
+
+    assertNotNull(cache.load(regionDirectory, new ChunkPosition(0, 0), 1, 0));
+    assertNull(cache.load(regionDirectory, new ChunkPosition(1, 0), 1, 0));
+    assertNotNull(cache.load(regionDirectory, new ChunkPosition(2, 0), 1, 0));
+    assertTrue(size(directory) <= entrySize * 5 / 2);
+  }
+}
@@ -0,0 +1,62 @@
+package se.llbit.chunky.world;
+
+import org.junit.Test;
+import se.llbit.chunky.world.region.EmptyRegion;
+import se.llbit.chunky.world.region.MCRegion;
+import se.llbit.chunky.world.region.Region;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RegionMapTest {
+  // Test that put regions can be looked up again.
+  @Test public void testPutGet() {
+    RegionMap map = new RegionMap();
+    long key = new ChunkPosition(-3, 7).getLong();
+    assertNull(map.get(key));
+    map.put(key, EmptyRegion.instance);
+    assertSame(EmptyRegion.instance, map.get(key));
+    assertNull(map.get(new ChunkPosition(7, -3).getLong()));
+  }
+
+  // Test that concurrent callers create each region exactly once.
+  @Test public void testConcurrentComputeIfAbsent() throws Exception {
+    RegionMap map = new RegionMap();
+    AtomicInteger created = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Region[]>> results = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        results.add(executor.submit(() -> {
+          Region[] regions = new Region[256];
+          for (int i = 0; i < regions.length; ++i) {
+            ChunkPosition pos = new ChunkPosition(i & 15, i >> 4);
+            regions[i] = map.computeIfAbsent(pos.getLong(), key -> {
+              created.incrementAndGet();
+              return new MCRegion(pos, null);
+            });
+          }
+          return regions;
+        }));
+      }
+      Region[] expected = results.get(0).get();
+      for (Future<Region[]> result : results) {
+        Region[] regions = result.get();
+        for (int i = 0; i < regions.length; ++i) {
+          assertSame(expected[i], regions[i]);
+        }
+      }
+      assertEquals(256, created.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
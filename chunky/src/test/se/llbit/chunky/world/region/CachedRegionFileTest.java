@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world.region;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.llbit.chunky.world.ChunkDataSource;
+import se.llbit.chunky.world.ChunkPosition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachedRegionFileTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  /** Write a region file with one zlib compressed chunk at the given chunk index. */
+  private static void writeRegion(File file, int index, byte[] chunk) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+      out.write(chunk);
+    }
+    int sectors = (5 + compressed.size() + 4095) / 4096;
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < 1024; ++i) {
+        out.writeInt(i == index ? (2 << 8) | sectors : 0);
+      }
+      for (int i = 0; i < 1024; ++i) {
+        out.writeInt(i == index ? 1234 : 0);
+      }
+      out.writeInt(compressed.size() + 1);
+      out.writeByte(2);
+      compressed.writeTo(out);
+      out.write(new byte[sectors * 4096 - 5 - compressed.size()]);
+    }
+  }
+
+  private static byte[] read(ChunkDataSource data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = data.getInputStream()) {
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        bytes.write(buffer, 0, n);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  // Test that chunk data and timestamps are read from the region file.
+  @Test public void testReadChunk() throws IOException {
+    File file = new File(tmp.getRoot(), "r.0.0.mca");
+    byte[] chunk = new byte[10000];
+    for (int i = 0; i < chunk.length; ++i) {
+      chunk[i] = (byte) (i * 31 / 7);
+    }
+    writeRegion(file, 3 + 32 * 5, chunk);
+
+    CachedRegionFile region = CachedRegionFile.get(file);
+    assertNotNull(region);
+    assertEquals(1234, region.getTimestamp(3 + 32 * 5));
+    assertNull(region.getChunkData(new ChunkPosition(4, 5)));
+    ChunkDataSource data = region.getChunkData(new ChunkPosition(3, 5));
+    assertNotNull(data);
+    assertEquals(1234, data.timestamp);
+    assertArrayEquals(chunk, read(data));
+  }
+
+  // Test that a region file is parsed again after it changes, and dropped after it is deleted.
+  @Test public void testChangedFile() throws IOException {
+    File file = new File(tmp.getRoot(), "r.0.0.mca");
+    writeRegion(file, 0, new byte[] { 1, 2, 3 });
+    assertTrue(file.setLastModified(1000000));
+    assertNotNull(CachedRegionFile.get(file).getChunkData(new ChunkPosition(0, 0)));
+
+    byte[] chunk = new byte[20000];
+    writeRegion(file, 1, chunk);
+    assertTrue(file.setLastModified(2000000));
+    CachedRegionFile region = CachedRegionFile.get(file);
+    assertNull(region.getChunkData(new ChunkPosition(0, 0)));
+    assertArrayEquals(chunk, read(region.getChunkData(new ChunkPosition(1, 0))));
+
+    assertTrue(file.delete());
+    assertNull(CachedRegionFile.get(file));
+  }
+
+  // Test that a region file can still be read after it was removed from the cache.
+  @Test public void testReadAfterInvalidate() throws IOException {
+    File file = new File(tmp.getRoot(), "r.0.0.mca");
+    byte[] chunk = new byte[] { 4, 5, 6 };
+    writeRegion(file, 0, chunk);
+    CachedRegionFile region = CachedRegionFile.get(file);
+    assertArrayEquals(chunk, read(region.getChunkData(new ChunkPosition(0, 0))));
+
+    CachedRegionFile.invalidate(file);
+    assertArrayEquals(chunk, read(region.getChunkData(new ChunkPosition(0, 0))));
+  }
+}
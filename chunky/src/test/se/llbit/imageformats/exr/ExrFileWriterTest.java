@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.imageformats.exr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExrFileWriterTest {
+  // Test float to half float conversion, including rounding, subnormals and overflow.
+  @Test public void testToHalf() {
+    assertEquals(0x0000, ExrFileWriter.toHalf(0.f) & 0xFFFF);
+    assertEquals(0x8000, ExrFileWriter.toHalf(-0.f) & 0xFFFF);
+    assertEquals(0x3C00, ExrFileWriter.toHalf(1.f) & 0xFFFF);
+    assertEquals(0xC000, ExrFileWriter.toHalf(-2.f) & 0xFFFF);
+    assertEquals(0x3555, ExrFileWriter.toHalf(1 / 3.f) & 0xFFFF);
+    assertEquals(0x7BFF, ExrFileWriter.toHalf(65504.f) & 0xFFFF);
+    assertEquals(0x7C00, ExrFileWriter.toHalf(65520.f) & 0xFFFF);
+    assertEquals(0x7C00, ExrFileWriter.toHalf(Float.POSITIVE_INFINITY) & 0xFFFF);
+    assertEquals(0x7E00, ExrFileWriter.toHalf(Float.NaN) & 0xFFFF);
+    // Smallest subnormal, and half of it which rounds to even (zero).
+    assertEquals(0x0001, ExrFileWriter.toHalf((float) Math.pow(2, -24)) & 0xFFFF);
+    assertEquals(0x0000, ExrFileWriter.toHalf((float) Math.pow(2, -25)) & 0xFFFF);
+    // 1 + 2^-11 is halfway between 1 and the next half float, and rounds to even.
+    assertEquals(0x3C00, ExrFileWriter.toHalf(1 + (float) Math.pow(2, -11)) & 0xFFFF);
+  }
+}
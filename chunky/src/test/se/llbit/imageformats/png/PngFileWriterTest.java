@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.imageformats.png;
+
+import org.junit.Test;
+import se.llbit.util.TaskTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PngFileWriterTest {
+  // Test that images compressed in several parallel blocks decode with a standard decoder.
+  @Test public void testRoundTrip() throws IOException {
+    Random random = new Random(0);
+    int width = 1001;
+    int height = 777;
+    int[] data = new int[width * height];
+    byte[] alpha = new byte[width * height];
+    for (int i = 0; i < data.length; ++i) {
+      int x = i % width;
+      int y = i / width;
+      data[i] = random.nextInt(4) == 0 ? random.nextInt() : (x * 7) ^ (y * 13);
+      alpha[i] = (byte) random.nextInt();
+    }
+
+    ByteArrayOutputStream rgb = new ByteArrayOutputStream();
+    try (PngFileWriter writer = new PngFileWriter(rgb)) {
+      writer.write(data, width, height, TaskTracker.Task.NONE);
+    }
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(rgb.toByteArray()));
+    for (int i = 0; i < data.length; ++i) {
+      assertEquals(0xFF000000 | (data[i] & 0xFFFFFF), image.getRGB(i % width, i / width));
+    }
+
+    ByteArrayOutputStream rgba = new ByteArrayOutputStream();
+    try (PngFileWriter writer = new PngFileWriter(rgba)) {
+      writer.write(data, alpha, width, height, TaskTracker.Task.NONE);
+    }
+    image = ImageIO.read(new ByteArrayInputStream(rgba.toByteArray()));
+    for (int i = 0; i < data.length; ++i) {
+      assertEquals((alpha[i] & 0xFF) << 24 | (data[i] & 0xFFFFFF),
+          image.getRGB(i % width, i / width));
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.imageformats.tiff;
+
+import org.junit.Test;
+import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.util.TaskTracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TiffFileWriterTest {
+  private static final int WIDTH = 1000;
+  private static final int HEIGHT = 150;
+
+  private static Scene scene() {
+    Scene scene = new Scene();
+    scene.setCanvasSize(WIDTH, HEIGHT);
+    double[] samples = scene.getSampleBuffer();
+    Random random = new Random(0);
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = random.nextDouble() * 1.5;
+    }
+    return scene;
+  }
+
+  /** Read the tags of the first image file directory, and check the header and tag order. */
+  private static Map<Integer, long[]> readTags(ByteBuffer file) {
+    assertEquals(0x4D4D002A, file.getInt(0));
+    int ifdOffset = file.getInt(4);
+    int entries = file.getShort(ifdOffset) & 0xFFFF;
+    Map<Integer, long[]> tags = new HashMap<>();
+    int previous = -1;
+    for (int i = 0; i < entries; ++i) {
+      int entry = ifdOffset + 2 + 12 * i;
+      int tag = file.getShort(entry) & 0xFFFF;
+      int type = file.getShort(entry + 2);
+      int count = file.getInt(entry + 4);
+      assertTrue(tag > previous);
+      previous = tag;
+
+      int valueSize = type == 3 ? 2 : type == 4 ? 4 : type == 5 ? 8 : 1;
+      int offset = valueSize * count <= 4 ? entry + 8 : file.getInt(entry + 8);
+      long[] values = new long[count];
+      for (int j = 0; j < count; ++j) {
+        switch (type) {
+          case 3:
+            values[j] = file.getShort(offset + 2 * j) & 0xFFFF;
+            break;
+          case 4:
+            values[j] = file.getInt(offset + 4 * j) & 0xFFFFFFFFL;
+            break;
+          case 5:
+            values[j] = file.getInt(offset + 8 * j);
+            break;
+          default:
+            values[j] = file.get(offset + j);
+            break;
+        }
+      }
+      tags.put(tag, values);
+    }
+    assertEquals(0, file.getInt(ifdOffset + 2 + 12 * entries)); // No next IFD.
+    assertEquals(WIDTH, tags.get(0x0100)[0]);
+    assertEquals(HEIGHT, tags.get(0x0101)[0]);
+    assertEquals(3, tags.get(0x0115)[0]);
+    return tags;
+  }
+
+  /** Check a pixel against the post-processed sample buffer of the scene. */
+  private static void assertPixel(Scene scene, ByteBuffer file, int offset, int x, int y) {
+    double[] pixel = new double[3];
+    ((PixelPostProcessingFilter) scene.getPostProcessingFilter()).processPixel(WIDTH, HEIGHT,
+        scene.getSampleBuffer(), x, y, scene.getExposure(), pixel);
+    for (int i = 0; i < 3; ++i) {
+      assertEquals((float) pixel[i], file.getFloat(offset + 4 * i), 0);
+    }
+  }
+
+  // Test that the strip offsets point to the rows of the image.
+  @Test public void testStrips() throws IOException {
+    Scene scene = scene();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.write32(scene, TaskTracker.Task.NONE);
+    }
+    ByteBuffer file = ByteBuffer.wrap(out.toByteArray());
+    Map<Integer, long[]> tags = readTags(file);
+
+    int rowsPerStrip = (int) tags.get(0x0116)[0];
+    long[] offsets = tags.get(0x0111);
+    long[] byteCounts = tags.get(0x0117);
+    assertEquals((HEIGHT + rowsPerStrip - 1) / rowsPerStrip, offsets.length);
+    assertEquals(offsets.length, byteCounts.length);
+    for (int strip = 0; strip < offsets.length; ++strip) {
+      int rows = Math.min(rowsPerStrip, HEIGHT - strip * rowsPerStrip);
+      assertEquals(rows * WIDTH * 12L, byteCounts[strip]);
+      assertTrue(offsets[strip] + byteCounts[strip] <= file.getInt(4));
+      for (int r = 0; r < rows; ++r) {
+        for (int x = 0; x < WIDTH; ++x) {
+          assertPixel(scene, file, (int) offsets[strip] + (r * WIDTH + x) * 12, x, strip * rowsPerStrip + r);
+        }
+      }
+    }
+  }
+
+  // Test that the tile offsets point to the tiles of the image, for tiles that are
+  // read in one stripe and tiles that are read in several stripes.
+  @Test public void testTiles() throws IOException {
+    Scene scene = scene();
+    for (int tileSize : new int[] { 64, 256 }) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (TiffFileWriter writer = new TiffFileWriter(out)) {
+        writer.write32Tiled(scene, tileSize, TaskTracker.Task.NONE);
+      }
+      ByteBuffer file = ByteBuffer.wrap(out.toByteArray());
+      Map<Integer, long[]> tags = readTags(file);
+
+      assertEquals(tileSize, tags.get(0x0142)[0]);
+      assertEquals(tileSize, tags.get(0x0143)[0]);
+      int tilesAcross = (WIDTH + tileSize - 1) / tileSize;
+      int tilesDown = (HEIGHT + tileSize - 1) / tileSize;
+      long[] offsets = tags.get(0x0144);
+      long[] byteCounts = tags.get(0x0145);
+      assertEquals(tilesAcross * tilesDown, offsets.length);
+      assertEquals(offsets.length, byteCounts.length);
+      for (int tile = 0; tile < offsets.length; ++tile) {
+        assertEquals(tileSize * tileSize * 12L, byteCounts[tile]);
+        assertTrue(offsets[tile] + byteCounts[tile] <= file.getInt(4));
+        int x0 = (tile % tilesAcross) * tileSize;
+        int y0 = (tile / tilesAcross) * tileSize;
+        for (int r = 0; r < tileSize; ++r) {
+          for (int c = 0; c < tileSize; ++c) {
+            int offset = (int) offsets[tile] + (r * tileSize + c) * 12;
+            if (x0 + c < WIDTH && y0 + r < HEIGHT) {
+              assertPixel(scene, file, offset, x0 + c, y0 + r);
+            } else {
+              assertEquals(0, file.getLong(offset));
+              assertEquals(0, file.getInt(offset + 8));
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package se.llbit.math;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.llbit.chunky.chunk.BlockPalette;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RawOctreeCacheTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  // Test that cached octrees are loaded back unchanged.
+  @Test public void testRoundTrip() throws IOException {
+    BlockPalette palette = new BlockPalette();
+    Octree worldTree = new Octree("PACKED", 5);
+    Octree waterTree = new Octree("PACKED", 5);
+    for (int i = 0; i < 32; ++i) {
+      worldTree.set(palette.stoneId, i, 31 - i, i);
+      waterTree.set(palette.waterId, i, 0, 0);
+    }
+    File file = new File(tmp.getRoot(), "scene.octreecache");
+    RawOctreeCache.store(file, 1234, worldTree, waterTree);
+
+    RawOctreeCache.CachedOctrees cached = RawOctreeCache.load(file, 1234);
+    assertNotNull(cached);
+    assertEquals(worldTree.getDepth(), cached.worldTree.getDepth());
+    for (int i = 0; i < 32; ++i) {
+      assertEquals(palette.stoneId, cached.worldTree.getBlockId(i, 31 - i, i, palette));
+      assertEquals(palette.waterId, cached.waterTree.getBlockId(i, 0, 0, palette));
+    }
+    assertEquals(palette.airId, cached.worldTree.getBlockId(0, 0, 31, palette));
+  }
+
+  // Test that the cache is ignored for another octree file timestamp.
+  @Test public void testOutdated() throws IOException {
+    File file = new File(tmp.getRoot(), "scene.octreecache");
+    RawOctreeCache.store(file, 1234, new Octree("PACKED", 4), new Octree("PACKED", 4));
+    assertNull(RawOctreeCache.load(file, 1235));
+    assertNull(RawOctreeCache.load(new File(tmp.getRoot(), "missing.octreecache"), 1234));
+  }
+}
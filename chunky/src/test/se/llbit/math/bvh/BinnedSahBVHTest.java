@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.Test;
+import se.llbit.math.primitive.Primitive;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinnedSahBVHTest {
+  private static int leafPrimitives(BinaryBVH bvh) {
+    return Arrays.stream(bvh.packedPrimitives).mapToInt(leaf -> leaf.length).sum();
+  }
+
+  /**
+   * Build both BVHs and check that the binned one holds every primitive once, reports all of
+   * them as progress, and matches SAH_MA in cost and intersections.
+   */
+  private static void assertSimilarToSahMa(Primitive[] primitives, Random random) {
+    AtomicInteger progress = new AtomicInteger();
+    BinaryBVH reference = new SahMaBVH(primitives.clone(), null, i -> {});
+    BinaryBVH binned = new BinnedSahBVH(primitives.clone(), null, i -> progress.accumulateAndGet(i, Math::max));
+    assertEquals(primitives.length, progress.get());
+    assertEquals(primitives.length, leafPrimitives(binned));
+
+    // Binning evaluates fewer split planes than SAH_MA, but the tree must be about as good.
+    assertEquals(reference.expectedCost(), binned.expectedCost(), reference.expectedCost() * 0.1);
+
+    BvhTestUtil.assertSameIntersections(reference, binned, random, 1000);
+  }
+
+  // The binned BVH must hit the same primitives as SAH_MA at a similar expected cost.
+  @Test public void testSameIntersections() {
+    Random random = new Random(1);
+    assertSimilarToSahMa(BvhTestUtil.randomTriangles(random, 2000), random);
+  }
+
+  // Subtrees above the parallel threshold are built as fork/join tasks.
+  @Test public void testParallelBuild() {
+    Random random = new Random(2);
+    Primitive[] primitives = BvhTestUtil.randomTriangles(random, 20000);
+    assertSimilarToSahMa(primitives, random);
+
+    // Subtrees partition disjoint ranges, so the result does not depend on scheduling.
+    BinaryBVH bvh1 = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    BinaryBVH bvh2 = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    assertArrayEquals(bvh1.packed, bvh2.packed);
+  }
+
+  // Primitives with the same centroid can not be binned and are split in the middle instead.
+  @Test public void testCoincidentCentroids() {
+    Random random = new Random(3);
+    Primitive[] primitives = new Primitive[100];
+    Arrays.fill(primitives, BvhTestUtil.randomTriangles(random, 1)[0]);
+    BinaryBVH reference = new SahMaBVH(primitives.clone(), null, i -> {});
+    BinaryBVH binned = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    assertTrue(binned.depth > 1);
+    assertEquals(primitives.length, leafPrimitives(binned));
+    BvhTestUtil.assertSameIntersections(reference, binned, random, 100);
+  }
+}
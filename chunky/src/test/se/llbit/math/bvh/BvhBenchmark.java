@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.math.Ray;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+import se.llbit.util.TaskTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Single-threaded tracing benchmark for the BVH implementations that can build from primitives.
+ *
+ * <p>The scene is a field of synthetic entities of 24 triangles each (two boxes), seen by a
+ * camera above the field. Each implementation traces the same camera rays a number of times and
+ * the median time is printed. Run with {@code ./gradlew :chunky:bvhBenchmark --args="ENTITIES"},
+ * for example 2000 entities for 48k triangles or 20000 entities for 480k triangles.
+ */
+public class BvhBenchmark {
+  private static final String[] IMPLEMENTATIONS = {
+      "SAH_MA", "SAH_BINNED", "SAH_BINNED_PACKED", "SAH_BINNED_WIDE"
+  };
+
+  private static final int RAYS = 300000;
+  private static final int RUNS = 9;
+
+  public static void main(String[] args) {
+    int entities = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    Primitive[] primitives = entityField(new Random(1), entities);
+    Ray[] rays = cameraRays(new Random(2), entities);
+    System.out.printf("%d triangles, %d rays, median of %d runs%n", primitives.length, rays.length, RUNS);
+
+    for (String name : IMPLEMENTATIONS) {
+      BVH.Factory.BVHBuilder builder = BVH.Factory.getImplementation(name);
+      long start = System.nanoTime();
+      BVH bvh = builder.create(primitives.clone(), null, TaskTracker.Task.NONE);
+      long buildTime = (System.nanoTime() - start) / 1000000;
+
+      long[] times = new long[RUNS];
+      int hits = 0;
+      for (int run = 0; run < RUNS; ++run) {
+        hits = 0;
+        start = System.nanoTime();
+        for (Ray original : rays) {
+          Ray ray = new Ray(original);
+          ray.t = Double.POSITIVE_INFINITY;
+          if (bvh.closestIntersection(ray)) {
+            hits += 1;
+          }
+        }
+        times[run] = (System.nanoTime() - start) / 1000000;
+      }
+      Arrays.sort(times);
+      System.out.printf("%-18s build %5d ms, trace %5d ms (%d hits)%n",
+          name, buildTime, times[RUNS / 2], hits);
+    }
+  }
+
+  /** Entities of two boxes each, a body and a head, spread over a square field. */
+  private static Primitive[] entityField(Random random, int entities) {
+    List<Primitive> primitives = new ArrayList<>();
+    double size = fieldSize(entities);
+    for (int i = 0; i < entities; ++i) {
+      double x = random.nextDouble() * size;
+      double z = random.nextDouble() * size;
+      addBox(primitives, new Vector3(x, 0, z), new Vector3(x + 0.6, 1.4, z + 0.3));
+      addBox(primitives, new Vector3(x + 0.05, 1.4, z - 0.1), new Vector3(x + 0.55, 1.9, z + 0.4));
+    }
+    return primitives.toArray(new Primitive[0]);
+  }
+
+  private static double fieldSize(int entities) {
+    return Math.sqrt(entities);
+  }
+
+  private static void addBox(List<Primitive> primitives, Vector3 min, Vector3 max) {
+    Vector3[] corners = new Vector3[8];
+    for (int i = 0; i < 8; ++i) {
+      corners[i] = new Vector3(
+          (i & 1) == 0 ? min.x : max.x,
+          (i & 2) == 0 ? min.y : max.y,
+          (i & 4) == 0 ? min.z : max.z);
+    }
+    int[][] faces = {
+        { 0, 2, 6, 4 }, { 1, 5, 7, 3 }, // x
+        { 0, 4, 5, 1 }, { 2, 3, 7, 6 }, // y
+        { 0, 1, 3, 2 }, { 4, 6, 7, 5 }, // z
+    };
+    Vector2 t1 = new Vector2(0, 0);
+    Vector2 t2 = new Vector2(1, 0);
+    Vector2 t3 = new Vector2(1, 1);
+    Vector2 t4 = new Vector2(0, 1);
+    for (int[] face : faces) {
+      Vector3 c1 = corners[face[0]];
+      Vector3 c2 = corners[face[1]];
+      Vector3 c3 = corners[face[2]];
+      Vector3 c4 = corners[face[3]];
+      primitives.add(new TexturedTriangle(c1, c2, c3, t1, t2, t3, BvhTestUtil.MATERIAL));
+      primitives.add(new TexturedTriangle(c1, c3, c4, t1, t3, t4, BvhTestUtil.MATERIAL));
+    }
+  }
+
+  /** Jittered rays from a camera above one corner of the field, looking towards its center. */
+  private static Ray[] cameraRays(Random random, int entities) {
+    double size = fieldSize(entities);
+    Vector3 origin = new Vector3(-size * 0.1, size * 0.3, -size * 0.1);
+    Vector3 forward = new Vector3(size * 0.6, -size * 0.3, size * 0.6);
+    forward.normalize();
+    Vector3 right = new Vector3();
+    right.cross(forward, new Vector3(0, 1, 0));
+    right.normalize();
+    Vector3 up = new Vector3();
+    up.cross(right, forward);
+
+    int width = (int) Math.sqrt(RAYS * 16.0 / 9);
+    int height = RAYS / width;
+    Ray[] rays = new Ray[width * height];
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        double u = ((x + random.nextDouble()) / width - 0.5) * 16 / 9;
+        double v = (y + random.nextDouble()) / height - 0.5;
+        Ray ray = new Ray();
+        ray.o.set(origin);
+        ray.d.set(forward.x + u * right.x + v * up.x,
+            forward.y + u * right.y + v * up.y,
+            forward.z + u * right.z + v * up.z);
+        ray.d.normalize();
+        rays[y * width + x] = ray;
+      }
+    }
+    return rays;
+  }
+}
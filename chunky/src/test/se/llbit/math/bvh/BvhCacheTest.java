@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.llbit.math.primitive.Primitive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BvhCacheTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static byte[] key(int seed) {
+    byte[] key = new byte[32];
+    new Random(seed).nextBytes(key);
+    return key;
+  }
+
+  // A cached BVH must give exactly the same intersections as the BVH it was stored from.
+  @Test public void testRoundTrip() throws IOException {
+    Random random = new Random(1);
+    Primitive[] primitives = BvhTestUtil.randomTriangles(random, 2000);
+    BinaryBVH bvh = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    int[] indices = BvhCache.primitiveIndices(bvh, primitives);
+    assertNotNull(indices);
+
+    File file = new File(tmp.getRoot(), "scene.bvhcache");
+    BvhCache.store(file, key(1), bvh, indices);
+    BinaryBVH cached = BvhCache.load(file, key(1), primitives, null);
+    assertNotNull(cached);
+    assertEquals(bvh.expectedCost(), cached.expectedCost(), 0);
+
+    BvhTestUtil.assertSameIntersections(bvh, cached, random, 1000);
+  }
+
+  // The cache is ignored for another key or when the primitives do not match the stored BVH.
+  @Test public void testMismatch() throws IOException {
+    Random random = new Random(2);
+    Primitive[] primitives = BvhTestUtil.randomTriangles(random, 100);
+    BinaryBVH bvh = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    File file = new File(tmp.getRoot(), "scene.bvhcache");
+    BvhCache.store(file, key(1), bvh, BvhCache.primitiveIndices(bvh, primitives));
+
+    assertTrue(BvhCache.matches(file, key(1)));
+    assertFalse(BvhCache.matches(file, key(2)));
+    assertFalse(BvhCache.matches(new File(tmp.getRoot(), "missing.bvhcache"), key(1)));
+    assertNull(BvhCache.load(file, key(2), primitives, null));
+    assertNull(BvhCache.load(file, key(1), Arrays.copyOf(primitives, 99), null));
+    assertNull(BvhCache.load(file, key(1), BvhTestUtil.randomTriangles(random, 100), null));
+    assertNull(BvhCache.load(new File(tmp.getRoot(), "missing.bvhcache"), key(1), primitives, null));
+  }
+}
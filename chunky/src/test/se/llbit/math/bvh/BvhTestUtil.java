@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.model.Tint;
+import se.llbit.chunky.world.Material;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+import se.llbit.math.primitive.TintedTexturedTriangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fixtures shared by the BVH tests.
+ */
+final class BvhTestUtil {
+  /** Opaque material, except for a transparent corner to test cutouts. */
+  static final Material MATERIAL = new Material("test", null) {
+    @Override public float[] getColor(double u, double v) {
+      return new float[] { (float) u, (float) v, 0.5f, u > 0.8 ? 0 : 1 };
+    }
+  };
+
+  private static final Tint TINT = new Tint(0xFF804020);
+
+  private BvhTestUtil() {
+  }
+
+  /**
+   * Random small triangles in a 16x16x16 box, alternating between single and double sided
+   * textured triangles and tinted triangles.
+   */
+  static Primitive[] randomTriangles(Random random, int count) {
+    List<Primitive> primitives = new ArrayList<>();
+    Vector2 t1 = new Vector2(0, 0);
+    Vector2 t2 = new Vector2(1, 0);
+    Vector2 t3 = new Vector2(0, 1);
+    for (int i = 0; i < count; ++i) {
+      Vector3 c1 = new Vector3(random.nextDouble() * 16, random.nextDouble() * 16, random.nextDouble() * 16);
+      Vector3 c2 = new Vector3(c1.x + random.nextDouble(), c1.y + random.nextDouble(), c1.z);
+      Vector3 c3 = new Vector3(c1.x, c1.y + random.nextDouble(), c1.z + random.nextDouble());
+      switch (i % 3) {
+        case 0:
+          primitives.add(new TexturedTriangle(c1, c2, c3, t1, t2, t3, MATERIAL));
+          break;
+        case 1:
+          primitives.add(new TexturedTriangle(c1, c2, c3, t1, t2, t3, MATERIAL, false));
+          break;
+        default:
+          primitives.add(new TintedTexturedTriangle(c1, c2, c3, t1, t2, t3, MATERIAL, TINT));
+          break;
+      }
+    }
+    return primitives.toArray(new Primitive[0]);
+  }
+
+  /** A ray that starts in front of the box of {@link #randomTriangles} and points into it. */
+  static Ray randomRay(Random random) {
+    Ray ray = new Ray();
+    ray.o.set(random.nextDouble() * 16, random.nextDouble() * 16, -4);
+    ray.d.set(random.nextGaussian() * 0.3, random.nextGaussian() * 0.3, 1);
+    ray.d.normalize();
+    ray.t = Double.POSITIVE_INFINITY;
+    return ray;
+  }
+
+  /**
+   * Trace random rays from {@link #randomRay} through both BVHs and check that they report
+   * exactly the same hits.
+   */
+  static void assertSameIntersections(BVH expected, BVH actual, Random random, int rays) {
+    assertSameIntersections(expected, actual, random, rays, BvhTestUtil::randomRay);
+  }
+
+  /**
+   * Trace random rays through both BVHs and check that they report exactly the same hits:
+   * distance, color and normal. The color of {@link #MATERIAL} encodes the texture coordinates
+   * of the hit. {@code ray.u} and {@code ray.v} are not compared, because textured triangles
+   * also write them for cutout misses, which makes them depend on the traversal order.
+   */
+  static void assertSameIntersections(BVH expected, BVH actual, Random random, int rays,
+      Function<Random, Ray> randomRay) {
+    for (int i = 0; i < rays; ++i) {
+      Ray ray1 = randomRay.apply(random);
+      Ray ray2 = new Ray(ray1);
+      ray2.t = ray1.t;
+      assertEquals(expected.closestIntersection(ray1), actual.closestIntersection(ray2));
+      assertEquals(ray1.t, ray2.t, 0);
+      assertEquals(ray1.color.x, ray2.color.x, 0);
+      assertEquals(ray1.color.y, ray2.color.y, 0);
+      assertEquals(ray1.color.z, ray2.color.z, 0);
+      assertEquals(ray1.getNormal().x, ray2.getNormal().x, 0);
+      assertEquals(ray1.getNormal().y, ray2.getNormal().y, 0);
+      assertEquals(ray1.getNormal().z, ray2.getNormal().z, 0);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.Test;
+import se.llbit.math.primitive.Primitive;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PackedTriangleBVHTest {
+  // The packed BVH must give exactly the same intersections as the object based BVH.
+  @Test public void testSameIntersections() {
+    Random random = new Random(1);
+    Primitive[] primitives = BvhTestUtil.randomTriangles(random, 2000);
+    BinaryBVH reference = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    BinaryBVH packed = new PackedTriangleBVH(BinnedSahBVH.build(primitives.clone(), i -> {}), null);
+    assertEquals(reference.expectedCost(), packed.expectedCost(), 0);
+
+    BvhTestUtil.assertSameIntersections(reference, packed, random, 1000);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.Test;
+import se.llbit.chunky.entity.Entity;
+import se.llbit.json.JsonValue;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+import se.llbit.util.TaskTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RefittableBVHTest {
+  /**
+   * Entity made of a few overlapping triangles around its position. The triangles are stacked
+   * at slightly different heights so that no two of them are hit at the same distance.
+   */
+  private static class TriangleEntity extends Entity {
+    int triangles = 8;
+
+    TriangleEntity(Vector3 position) {
+      super(position);
+    }
+
+    @Override public Collection<Primitive> primitives(Vector3 offset) {
+      List<Primitive> primitives = new ArrayList<>();
+      Vector2 t1 = new Vector2(0, 0);
+      Vector2 t2 = new Vector2(1, 0);
+      Vector2 t3 = new Vector2(0, 1);
+      for (int i = 0; i < triangles; ++i) {
+        Vector3 c1 = new Vector3(position.x + offset.x + i * 0.1, position.y + offset.y + i * 0.01, position.z + offset.z);
+        Vector3 c2 = new Vector3(c1.x + 0.5, c1.y, c1.z + 0.5);
+        Vector3 c3 = new Vector3(c1.x, c1.y, c1.z + 1);
+        primitives.add(new TexturedTriangle(c1, c2, c3, t1, t2, t3, BvhTestUtil.MATERIAL));
+      }
+      return primitives;
+    }
+
+    @Override public JsonValue toJson() {
+      return null;
+    }
+  }
+
+  private static List<Entity> randomEntities(Random random, int count) {
+    List<Entity> entities = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      entities.add(new TriangleEntity(new Vector3(random.nextDouble() * 16, random.nextDouble() * 4, random.nextDouble() * 16)));
+    }
+    return entities;
+  }
+
+  /** A ray that points down into the entities from above. */
+  private static Ray downwardRay(Random random) {
+    Ray ray = new Ray();
+    ray.o.set(random.nextDouble() * 16, 8, random.nextDouble() * 16);
+    ray.d.set(random.nextGaussian() * 0.2, -1, random.nextGaussian() * 0.2);
+    ray.d.normalize();
+    ray.t = Double.POSITIVE_INFINITY;
+    return ray;
+  }
+
+  // A refitted BVH must intersect the moved entity at its new position.
+  @Test public void testRefitMovedEntity() {
+    Random random = new Random(1);
+    Vector3 offset = new Vector3(0, 0, 0);
+    List<Entity> entities = randomEntities(random, 100);
+    RefittableBVH bvh = new RefittableBVH(entities, offset, null, TaskTracker.Task.NONE);
+
+    Entity moved = entities.get(42);
+    moved.position.set(moved.position.x + 1, moved.position.y + 2, moved.position.z - 1);
+    RefittableBVH refitted = bvh.refit(moved, offset);
+    assertNotNull(refitted);
+
+    RefittableBVH rebuilt = new RefittableBVH(entities, offset, null, TaskTracker.Task.NONE);
+    BvhTestUtil.assertSameIntersections(rebuilt, refitted, random, 1000, RefittableBVHTest::downwardRay);
+  }
+
+  // Refitting gives up when an entity moves so far that the tree quality degrades too much.
+  @Test public void testRefitFarMovedEntity() {
+    Random random = new Random(3);
+    Vector3 offset = new Vector3(0, 0, 0);
+    List<Entity> entities = randomEntities(random, 100);
+    RefittableBVH bvh = new RefittableBVH(entities, offset, null, TaskTracker.Task.NONE);
+
+    Entity moved = entities.get(42);
+    moved.position.set(moved.position.x + 1000, moved.position.y, moved.position.z + 1000);
+    assertNull(bvh.refit(moved, offset));
+  }
+
+  // Refitting is not possible when the number of primitives changes.
+  @Test public void testRefitChangedPrimitiveCount() {
+    Random random = new Random(2);
+    Vector3 offset = new Vector3(0, 0, 0);
+    List<Entity> entities = randomEntities(random, 10);
+    RefittableBVH bvh = new RefittableBVH(entities, offset, null, TaskTracker.Task.NONE);
+
+    TriangleEntity changed = (TriangleEntity) entities.get(3);
+    changed.triangles = 4;
+    assertNull(bvh.refit(changed, offset));
+    assertNull(bvh.refit(new TriangleEntity(new Vector3(0, 0, 0)), offset));
+  }
+}
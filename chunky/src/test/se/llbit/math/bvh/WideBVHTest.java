@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.Test;
+import se.llbit.math.primitive.Primitive;
+
+import java.util.Random;
+
+public class WideBVHTest {
+  // Collapsing the binary tree must not change which primitives are hit.
+  @Test public void testSameIntersections() {
+    Random random = new Random(2);
+    Primitive[] primitives = BvhTestUtil.randomTriangles(random, 2000);
+    BVH reference = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    BVH wide = new WideBVH(BinnedSahBVH.build(primitives.clone(), i -> {}), null);
+
+    BvhTestUtil.assertSameIntersections(reference, wide, random, 1000);
+  }
+
+  // A tree with a single leaf still needs an inner root node.
+  @Test public void testSingleLeaf() {
+    Random random = new Random(3);
+    Primitive[] primitives = BvhTestUtil.randomTriangles(random, 2);
+    BVH reference = new BinnedSahBVH(primitives.clone(), null, i -> {});
+    BVH wide = new WideBVH(BinnedSahBVH.build(primitives.clone(), i -> {}), null);
+
+    BvhTestUtil.assertSameIntersections(reference, wide, random, 100);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.primitive;
+
+import org.junit.Test;
+import se.llbit.chunky.world.Material;
+import se.llbit.math.Ray;
+import se.llbit.math.Transform;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InstancedPrimitiveTest {
+  private static final Material MATERIAL = new Material("test", null) {
+    @Override public float[] getColor(double u, double v) {
+      return new float[] { (float) u, (float) v, 0.5f, 1 };
+    }
+  };
+
+  /** Random triangles in the unit cube, transformed by the given transform. */
+  private static Collection<Primitive> triangles(long seed, Transform transform) {
+    Random random = new Random(seed);
+    List<Primitive> triangles = new ArrayList<>();
+    for (int i = 0; i < 50; ++i) {
+      Vector3 c1 = new Vector3(random.nextDouble(), random.nextDouble(), random.nextDouble());
+      Vector3 c2 = new Vector3(c1.x + random.nextDouble() * 0.3, c1.y + random.nextDouble() * 0.3, c1.z);
+      Vector3 c3 = new Vector3(c1.x, c1.y + random.nextDouble() * 0.3, c1.z + random.nextDouble() * 0.3);
+      transform.apply(c1);
+      transform.apply(c2);
+      transform.apply(c3);
+      triangles.add(new TexturedTriangle(c1, c2, c3, new Vector2(0, 0), new Vector2(1, 0),
+          new Vector2(0, 1), MATERIAL, random.nextBoolean()));
+    }
+    return triangles;
+  }
+
+  // An instance must be intersected like the transformed geometry.
+  @Test public void testSameAsTransformedGeometry() {
+    Transform transform = Transform.NONE.translate(-0.5, 0, -0.5)
+        .rotateY(0.7)
+        .translate(10, 3, -4);
+    InstancedModel model = new InstancedModel(triangles(1, Transform.NONE));
+    Primitive instance = model.instance(transform);
+    Collection<Primitive> transformed = triangles(1, transform);
+
+    Random random = new Random(2);
+    int hits = 0;
+    for (int i = 0; i < 2000; ++i) {
+      Ray ray1 = new Ray();
+      ray1.o.set(10 + random.nextGaussian() * 0.5, 3.5 + random.nextGaussian() * 0.5, -6);
+      ray1.d.set(random.nextGaussian() * 0.1, random.nextGaussian() * 0.1, 1);
+      ray1.d.normalize();
+      ray1.t = Double.POSITIVE_INFINITY;
+      Ray ray2 = new Ray(ray1);
+      ray2.t = ray1.t;
+      boolean hit = false;
+      for (Primitive triangle : transformed) {
+        hit |= triangle.intersect(ray1);
+      }
+      assertEquals(hit, instance.intersect(ray2));
+      if (hit) {
+        hits += 1;
+        assertEquals(ray1.t, ray2.t, 1e-9);
+        assertEquals(ray1.u, ray2.u, 1e-9);
+        assertEquals(ray1.v, ray2.v, 1e-9);
+        assertEquals(ray1.getNormal().x, ray2.getNormal().x, 1e-9);
+        assertEquals(ray1.getNormal().y, ray2.getNormal().y, 1e-9);
+        assertEquals(ray1.getNormal().z, ray2.getNormal().z, 1e-9);
+      }
+      // The ray itself must not be changed by the object space transform.
+      assertEquals(ray1.o.x, ray2.o.x, 0);
+      assertEquals(ray1.d.z, ray2.d.z, 0);
+    }
+    assertTrue(hits > 100);
+
+    for (Primitive triangle : transformed) {
+      assertTrue(instance.bounds().inside(((TexturedTriangle) triangle).o));
+    }
+  }
+
+  // Models are shared between instances with the same key.
+  @Test public void testModelCache() {
+    InstancedModel model = InstancedModel.get("test", () -> triangles(3, Transform.NONE));
+    assertSame(model, InstancedModel.get("test", () -> triangles(4, Transform.NONE)));
+  }
+}
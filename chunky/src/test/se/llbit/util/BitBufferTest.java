@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitBufferTest {
+  // Test that bulk unpacking and random access read the same values as reading one value at a time.
+  @Test public void testUnpack() {
+    Random random = new Random(0);
+    for (int stride = 1; stride <= 32; ++stride) {
+      for (boolean aligned : new boolean[] { false, true }) {
+        for (int count : new int[] { 4096, 4095, 7 }) {
+          int valuesPerLong = 64 / stride;
+          int size = aligned
+              ? (count + valuesPerLong - 1) / valuesPerLong
+              : (count * stride + 63) / 64;
+          long[] data = new long[size];
+          for (int i = 0; i < size; ++i) {
+            data[i] = random.nextLong();
+          }
+          int[] out = new int[count + 3];
+          BitBuffer.unpack(data, stride, aligned, out, 3, count);
+          BitBuffer buffer = new BitBuffer(data, stride, aligned);
+          for (int i = 0; i < count; ++i) {
+            assertEquals(buffer.read(), out[i + 3]);
+            assertEquals(out[i + 3], BitBuffer.get(data, stride, aligned, i));
+          }
+        }
+      }
+    }
+  }
+
+  // Test that values using the full 32 bits are not masked out.
+  @Test public void testFullWidth() {
+    long[] data = { 0xFEDCBA9876543210L, 0xFFFFFFFF80000001L };
+    int[] out = new int[4];
+    BitBuffer.unpack(data, 32, true, out, 0, 4);
+    assertEquals(0x76543210, out[0]);
+    assertEquals(0xFEDCBA98, out[1]);
+    assertEquals(0x80000001, out[2]);
+    assertEquals(0xFFFFFFFF, out[3]);
+    BitBuffer buffer = new BitBuffer(data, 32, false);
+    for (int value : out) {
+      assertEquals(value, buffer.read());
+    }
+  }
+}
@@ -66,6 +66,7 @@ public final class PersistentSettings {
   public static final int DEFAULT_RAY_DEPTH = 5;
   public static final int DEFAULT_BRANCH_COUNT = 10;
   public static final int DEFAULT_SPP_TARGET = 1000;
+  public static final int DEFAULT_CHUNK_CACHE_SIZE_MB = 4096;
 
   public static final int DEFAULT_DIMENSION = 0;
 
@@ -588,6 +589,87 @@ public final class PersistentSettings {
     save();
   }
 
+  /**
+   * Checks if chunks loaded into scenes should be cached in decoded form in the cache directory,
+   * so that reloading unchanged chunks does not need to inflate and parse them again.
+   * The cache keeps one uncompressed file per chunk, so this is disabled by default.
+   */
+  public static boolean getCacheDecodedChunks() {
+    return settings.getBool("cacheDecodedChunks", false);
+  }
+
+  public static void setCacheDecodedChunks(boolean value) {
+    settings.setBool("cacheDecodedChunks", value);
+    save();
+  }
+
+  /**
+   * @return the size limit of the decoded chunk cache in megabytes. The least recently used
+   * chunks are removed from the cache when it grows larger.
+   */
+  public static int getChunkCacheSize() {
+    return settings.getInt("chunkCacheSize", DEFAULT_CHUNK_CACHE_SIZE_MB);
+  }
+
+  public static void setChunkCacheSize(int megabytes) {
+    settings.setInt("chunkCacheSize", megabytes);
+    save();
+  }
+
+  /**
+   * Checks if scenes should keep an uncompressed copy of their octrees next to the octree file,
+   * so that they can be reopened without parsing the octree file. The copy is as large as
+   * the octrees in memory, so this is disabled by default.
+   */
+  public static boolean getRawOctreeCache() {
+    return settings.getBool("rawOctreeCache", false);
+  }
+
+  public static void setRawOctreeCache(boolean value) {
+    settings.setBool("rawOctreeCache", value);
+    save();
+  }
+
+  /**
+   * Checks if saving a scene should delete the octree file in the format read by older
+   * Chunky versions. The old file is kept by default so that older versions can still
+   * open the scene.
+   */
+  public static boolean getDeleteLegacyOctree() {
+    return settings.getBool("deleteLegacyOctree", false);
+  }
+
+  public static void setDeleteLegacyOctree(boolean value) {
+    settings.setBool("deleteLegacyOctree", value);
+    save();
+  }
+
+  /**
+   * Checks if scenes should store the built world BVH next to the scene, so that it does not
+   * have to be rebuilt when the scene is loaded.
+   */
+  public static boolean getBvhCache() {
+    return settings.getBool("bvhCache", true);
+  }
+
+  public static void setBvhCache(boolean value) {
+    settings.setBool("bvhCache", value);
+    save();
+  }
+
+  /**
+   * Checks if scene octrees should be saved in a store in the cache directory that is shared
+   * by all scenes, so that scenes loading the same chunks do not each keep a copy.
+   */
+  public static boolean getShareSceneOctrees() {
+    return settings.getBool("shareSceneOctrees", false);
+  }
+
+  public static void setShareSceneOctrees(boolean value) {
+    settings.setBool("shareSceneOctrees", value);
+    save();
+  }
+
   public static int getCanvasScale() {
     return settings.getInt("canvasScale", 100);
   }